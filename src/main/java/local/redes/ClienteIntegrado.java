@@ -38,7 +38,12 @@ import javax.swing.UnsupportedLookAndFeelException;
 import javax.swing.border.EmptyBorder;
 import javax.swing.border.TitledBorder;
 
+import local.redes.multicast.ChatAreaAppender;
+import local.redes.multicast.ChatHistory;
+import local.redes.multicast.ChatHistoryView;
+import local.redes.multicast.MulticastFrame;
 import local.redes.multicast.MulticastManager;
+import local.redes.multicast.Presence;
 
 /**
  * Cliente integrado que suporta tanto comunicação UDP ponto-a-ponto
@@ -75,7 +80,8 @@ public class ClienteIntegrado extends JFrame {
     private JTextArea campoRespostaPessoa;
     
     // Componentes da tela de Chat
-    private JTextArea chatArea;
+    private ChatHistoryView chatView;
+    private ChatAreaAppender chatAppender;
     private JTextField messageField;
     private JLabel statusLabel;
     
@@ -320,15 +326,13 @@ public class ClienteIntegrado extends JFrame {
         titleLabel.setFont(new Font("SansSerif", Font.BOLD, 16));
         panel.add(titleLabel, BorderLayout.NORTH);
         
-        // Área de chat
-        chatArea = new JTextArea();
-        chatArea.setEditable(false);
-        chatArea.setLineWrap(true);
-        chatArea.setWrapStyleWord(true);
-        chatArea.setFont(new Font("SansSerif", Font.PLAIN, 14));
-        chatArea.setBackground(new Color(248, 248, 248));
+        // Área de chat: histórico limitado em memória, só as linhas visíveis são desenhadas
+        chatView = new ChatHistoryView(new ChatHistory());
+        chatView.setFont(new Font("SansSerif", Font.PLAIN, 14));
+        chatView.setBackground(new Color(248, 248, 248));
+        chatAppender = new ChatAreaAppender(chatView);
         
-        JScrollPane scrollPane = new JScrollPane(chatArea);
+        JScrollPane scrollPane = new JScrollPane(chatView);
         scrollPane.setBorder(BorderFactory.createLineBorder(new Color(200, 200, 200)));
         panel.add(scrollPane, BorderLayout.CENTER);
         
@@ -448,7 +452,21 @@ public class ClienteIntegrado extends JFrame {
                 return; // Cancelado pelo usuário
             }
             
+            String roomStr = JOptionPane.showInputDialog(
+                    this,
+                    "Sala (0 a " + MulticastFrame.MAX_ROOM + "):",
+                    String.valueOf(MulticastFrame.DEFAULT_ROOM)
+            );
+            
+            if (roomStr == null) {
+                return; // Cancelado pelo usuário
+            }
+            
             int port = Integer.parseInt(portStr);
+            int room = Integer.parseInt(roomStr.trim());
+            if (room < 0 || room > MulticastFrame.MAX_ROOM) {
+                throw new NumberFormatException(roomStr);
+            }
             InetAddress groupAddress = InetAddress.getByName(multicastAddress);
             
             // Verificar se é um endereço multicast válido
@@ -464,24 +482,20 @@ public class ClienteIntegrado extends JFrame {
             }
             
             // Inicializar gerenciador multicast
-            multicastManager = new MulticastManager(groupAddress, port, nomeUsuario);
-            multicastManager.setMessageListener(new MulticastManager.MessageListener() {
-                @Override
-                public void onMessageReceived(String message, String sender) {
-                    SwingUtilities.invokeLater(() -> {
-                        adicionarMensagemChat(message);
-                    });
-                }
-            });
+            multicastManager = new MulticastManager(groupAddress, port, nomeUsuario, room);
+            // Mensagens recebidas são acumuladas e escritas uma vez por quadro de tela
+            multicastManager.setMessageListener((message, sender) -> chatAppender.append(message));
+            multicastManager.enableFloodGuard().addListener(this::remetenteSilenciado);
+            
+            // Limpar área de chat antes de começar a receber
+            chatAppender.clear();
+            chatView.getHistory().clear();
             
             // Iniciar recebimento de mensagens
             multicastManager.startReceiving();
             
-            // Limpar área de chat
-            chatArea.setText("");
-            
             // Atualizar status
-            statusLabel.setText("Conectado ao grupo " + groupAddress.getHostAddress() + ":" + port);
+            statusLabel.setText("Conectado ao grupo " + groupAddress.getHostAddress() + ":" + port + ", sala " + room);
             adicionarMensagemSistema("Você entrou na sala de chat.");
             
             // Mostrar painel de chat
@@ -493,7 +507,7 @@ public class ClienteIntegrado extends JFrame {
         } catch (NumberFormatException e) {
             JOptionPane.showMessageDialog(
                     this,
-                    "Porta inválida. Por favor, digite um número.",
+                    "Porta ou sala inválida. Por favor, digite um número.",
                     "Erro",
                     JOptionPane.ERROR_MESSAGE
             );
@@ -649,20 +663,14 @@ public class ClienteIntegrado extends JFrame {
         }
         
         if (multicastManager != null && multicastManager.isRunning()) {
-            try {
-                // Enviar mensagem
-                multicastManager.sendMessage(message);
-                
-                // Adicionar mensagem local (sem duplicação no listener)
-                adicionarMensagemPropria(message);
-                
-                // Limpar campo de texto
-                messageField.setText("");
-                
-            } catch (IOException e) {
-                LOGGER.log(Level.WARNING, "Erro ao enviar mensagem", e);
-                adicionarMensagemSistema("Erro ao enviar mensagem: " + e.getMessage());
-            }
+            // Publicar sem esperar pelo socket; falhas chegam pelo ouvinte
+            multicastManager.publishAsync(message, this::falhaNoEnvio);
+            
+            // Adicionar mensagem local (sem duplicação no listener)
+            adicionarMensagemPropria(message);
+            
+            // Limpar campo de texto
+            messageField.setText("");
         } else {
             JOptionPane.showMessageDialog(
                     this,
@@ -673,15 +681,42 @@ public class ClienteIntegrado extends JFrame {
         }
     }
     
+    /**
+     * Avisa na área de chat que uma mensagem publicada não foi enviada.
+     * Pode ser chamado pela thread de envio.
+     * 
+     * @param message Mensagem que não foi enviada
+     * @param cause Motivo da falha
+     */
+    private void falhaNoEnvio(String message, IOException cause) {
+        LOGGER.log(Level.WARNING, "Erro ao enviar mensagem", cause);
+        SwingUtilities.invokeLater(() -> adicionarMensagemSistema(
+                "Mensagem não enviada (" + cause.getMessage() + "): " + message));
+    }
+    
+    /**
+     * Avisa na área de chat que um participante foi silenciado por mandar
+     * mensagens demais. Chamado pela thread do reator.
+     * 
+     * @param senderId Identificador do remetente
+     * @param origem Endereço de origem
+     * @param silencioMillis Duração do silêncio
+     */
+    private void remetenteSilenciado(long senderId, InetAddress origem, long silencioMillis) {
+        MulticastManager manager = multicastManager;
+        Presence.Member participante = manager != null ? manager.getPresence().getMember(senderId) : null;
+        String nome = participante != null ? participante.getName() : origem.getHostAddress();
+        chatAppender.append(nome + " foi silenciado por " + (silencioMillis / 1000) + " s por excesso de mensagens.");
+    }
+    
     /**
      * Adiciona uma mensagem de sistema à área de chat.
      * 
      * @param message Mensagem de sistema
      */
     private void adicionarMensagemSistema(String message) {
-        chatArea.append("[" + MulticastManager.getCurrentTimestamp() + "] " + 
-                message + "\n");
-        chatArea.setCaretPosition(chatArea.getDocument().getLength());
+        chatAppender.append(message);
+        chatAppender.flush();
     }
     
     /**
@@ -690,20 +725,8 @@ public class ClienteIntegrado extends JFrame {
      * @param message Mensagem enviada pelo usuário
      */
     private void adicionarMensagemPropria(String message) {
-        chatArea.append("[" + MulticastManager.getCurrentTimestamp() + "] " + 
-                "Você diz: " + message + "\n");
-        chatArea.setCaretPosition(chatArea.getDocument().getLength());
-    }
-    
-    /**
-     * Adiciona uma mensagem recebida à área de chat.
-     * 
-     * @param message Mensagem recebida
-     */
-    private void adicionarMensagemChat(String message) {
-        chatArea.append("[" + MulticastManager.getCurrentTimestamp() + "] " + 
-                message + "\n");
-        chatArea.setCaretPosition(chatArea.getDocument().getLength());
+        chatAppender.append("Você diz: " + message);
+        chatAppender.flush();
     }
     
     /**
@@ -734,6 +757,7 @@ public class ClienteIntegrado extends JFrame {
             if (multicastManager != null) {
                 multicastManager.stop();
             }
+            chatView.getHistory().close();
             
             dispose();
             System.exit(0);
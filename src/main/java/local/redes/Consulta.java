@@ -0,0 +1,140 @@
+package local.redes;
+
+import java.io.Serializable;
+
+/**
+ * Consulta de estatísticas enviada ao servidor no lugar de um objeto Pessoa.
+ * O servidor responde com texto, sem percorrer os registros recebidos.
+ *
+ * @author Igor Rozalem
+ */
+public class Consulta implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Tipos de consulta suportados pelo servidor.
+     */
+    public enum Tipo {
+        /** Quantidade de pessoas com idade entre idadeMinima e idadeMaxima. */
+        CONTAGEM_IDADE,
+        /** Distribuição de idades entre idadeMinima e idadeMaxima. */
+        DISTRIBUICAO_IDADE,
+        /** Nomes mais frequentes (aproximado), limitado a 'limite' nomes. */
+        TOP_NOMES,
+        /** Quantidade aproximada de nomes e clientes distintos. */
+        CARDINALIDADE
+    }
+
+    private Tipo tipo;
+    private int idadeMinima;
+    private int idadeMaxima;
+    private int limite;
+
+    /**
+     * Construtor padrão.
+     */
+    public Consulta() {
+        // Construtor vazio necessário para serialização
+    }
+
+    /**
+     * Construtor com parâmetros.
+     *
+     * @param tipo Tipo da consulta
+     * @param idadeMinima Limite inferior da faixa de idades
+     * @param idadeMaxima Limite superior da faixa de idades
+     */
+    public Consulta(Tipo tipo, int idadeMinima, int idadeMaxima) {
+        this.tipo = tipo;
+        this.idadeMinima = idadeMinima;
+        this.idadeMaxima = idadeMaxima;
+    }
+
+    /**
+     * Cria uma consulta de contagem de pessoas por faixa de idade.
+     *
+     * @param idadeMinima Limite inferior (inclusivo)
+     * @param idadeMaxima Limite superior (inclusivo)
+     * @return Nova consulta
+     */
+    public static Consulta contagemEntre(int idadeMinima, int idadeMaxima) {
+        return new Consulta(Tipo.CONTAGEM_IDADE, idadeMinima, idadeMaxima);
+    }
+
+    /**
+     * Cria uma consulta da distribuição completa de idades.
+     *
+     * @return Nova consulta
+     */
+    public static Consulta distribuicaoIdades() {
+        return new Consulta(Tipo.DISTRIBUICAO_IDADE, 0, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Cria uma consulta dos nomes mais frequentes.
+     *
+     * @param limite Quantidade máxima de nomes na resposta
+     * @return Nova consulta
+     */
+    public static Consulta topNomes(int limite) {
+        Consulta consulta = new Consulta(Tipo.TOP_NOMES, 0, 0);
+        consulta.limite = limite;
+        return consulta;
+    }
+
+    /**
+     * Cria uma consulta da quantidade de nomes e clientes distintos.
+     *
+     * @return Nova consulta
+     */
+    public static Consulta cardinalidade() {
+        return new Consulta(Tipo.CARDINALIDADE, 0, 0);
+    }
+
+    /**
+     * Obtém o tipo da consulta.
+     *
+     * @return O tipo da consulta
+     */
+    public Tipo getTipo() {
+        return tipo;
+    }
+
+    /**
+     * Obtém o limite inferior da faixa de idades.
+     *
+     * @return A idade mínima
+     */
+    public int getIdadeMinima() {
+        return idadeMinima;
+    }
+
+    /**
+     * Obtém o limite superior da faixa de idades.
+     *
+     * @return A idade máxima
+     */
+    public int getIdadeMaxima() {
+        return idadeMaxima;
+    }
+
+    /**
+     * Obtém a quantidade máxima de itens na resposta.
+     *
+     * @return O limite de itens
+     */
+    public int getLimite() {
+        return limite;
+    }
+
+    @Override
+    public String toString() {
+        return "Consulta{" +
+                "tipo=" + tipo +
+                ", idadeMinima=" + idadeMinima +
+                ", idadeMaxima=" + idadeMaxima +
+                ", limite=" + limite +
+                '}';
+    }
+}
@@ -0,0 +1,317 @@
+package local.redes;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+
+import local.redes.multicast.PayloadCompressor;
+
+/**
+ * Cabeçalho opcional de requisição e confirmação binária compacta.
+ *
+ * Clientes legados enviam apenas o objeto serializado e recebem a resposta
+ * em texto. Clientes de máquina podem prefixar o objeto com um cabeçalho de
+ * 7 bytes (magia "RQ", flags e ID da requisição) e pedir uma confirmação
+ * binária de 21 bytes no lugar do texto:
+ *
+ * <pre>
+ * requisição: 'R' 'Q' | flags (1) | idRequisicao (4) | objeto serializado
+ * resposta:   status (1) | idRequisicao (4) | epochMillis (8) | sequencia (8)
+ * </pre>
+ *
+ * Uma {@link Consulta} com cabeçalho binário recebe a mesma confirmação,
+ * com a sequência do último registro do servidor, seguida do texto da
+ * resposta em UTF-8. Objetos que o servidor não trata recebem a confirmação
+ * com {@link #STATUS_ERRO}.
+ *
+ * Todos os inteiros usam ordem de bytes big-endian. Um fluxo de serialização
+ * Java sempre começa com 0xACED, portanto não há ambiguidade com a magia.
+ *
+ * Com {@link #FLAG_COMPRIMIDO}, o objeto serializado vai comprimido pelo
+ * {@link #COMPRESSOR}, cujo dicionário é um lote de pessoas serializado: a
+ * descrição da classe, que se repete em toda requisição, vira poucas
+ * referências, e lotes grandes ({@code Pessoa[]}) cabem em um datagrama.
+ *
+ * @author Igor Rozalem
+ */
+public final class ProtocoloBinario {
+
+    public static final byte MAGIA_0 = 'R';
+    public static final byte MAGIA_1 = 'Q';
+    public static final int TAMANHO_CABECALHO = 7;
+    public static final int TAMANHO_ACK = 21;
+
+    /** Flag: o cliente deseja a confirmação binária em vez do texto. */
+    public static final byte FLAG_RESPOSTA_BINARIA = 0x01;
+    /** Flag: o objeto serializado está comprimido pelo {@link #COMPRESSOR}. */
+    public static final byte FLAG_COMPRIMIDO = 0x02;
+
+    /** Compressor das requisições, com dicionário montado de um lote de pessoas. */
+    public static final PayloadCompressor COMPRESSOR =
+            new PayloadCompressor(montarDicionario(), PayloadCompressor.DEFAULT_MIN_SIZE);
+
+    public static final byte STATUS_OK = 0;
+    public static final byte STATUS_ERRO = 1;
+
+    private ProtocoloBinario() {
+        // Classe utilitária
+    }
+
+    /**
+     * Serializa um lote típico para servir de dicionário. A serialização é
+     * determinística, então cliente e servidor chegam ao mesmo dicionário.
+     *
+     * @return Dicionário do {@link #COMPRESSOR}
+     */
+    private static byte[] montarDicionario() {
+        Pessoa[] lote = {
+            new Pessoa("Maria da Silva", 34),
+            new Pessoa("José dos Santos", 27),
+            new Pessoa("Ana Oliveira", 45),
+            new Pessoa("João Pereira", 19)
+        };
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream saida = new ObjectOutputStream(bytes)) {
+            saida.writeObject(lote);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Confirmação binária decodificada.
+     */
+    public static final class Ack {
+        private final byte status;
+        private final int idRequisicao;
+        private final long epochMillis;
+        private final long sequencia;
+
+        /**
+         * Cria uma confirmação.
+         *
+         * @param status Código de status
+         * @param idRequisicao ID da requisição confirmada
+         * @param epochMillis Horário do servidor
+         * @param sequencia Número de sequência do registro no servidor
+         */
+        public Ack(byte status, int idRequisicao, long epochMillis, long sequencia) {
+            this.status = status;
+            this.idRequisicao = idRequisicao;
+            this.epochMillis = epochMillis;
+            this.sequencia = sequencia;
+        }
+
+        /**
+         * Obtém o código de status.
+         *
+         * @return O código de status
+         */
+        public byte getStatus() {
+            return status;
+        }
+
+        /**
+         * Obtém o ID da requisição confirmada.
+         *
+         * @return O ID da requisição confirmada
+         */
+        public int getIdRequisicao() {
+            return idRequisicao;
+        }
+
+        /**
+         * Obtém o horário do servidor em milissegundos.
+         *
+         * @return O horário do servidor em milissegundos
+         */
+        public long getEpochMillis() {
+            return epochMillis;
+        }
+
+        /**
+         * Obtém o número de sequência do registro.
+         *
+         * @return O número de sequência do registro
+         */
+        public long getSequencia() {
+            return sequencia;
+        }
+
+        @Override
+        public String toString() {
+            return "Ack{" +
+                    "status=" + status +
+                    ", idRequisicao=" + idRequisicao +
+                    ", epochMillis=" + epochMillis +
+                    ", sequencia=" + sequencia +
+                    '}';
+        }
+    }
+
+    /**
+     * Monta uma requisição com cabeçalho a partir do objeto já serializado.
+     *
+     * @param flags Flags da requisição
+     * @param idRequisicao ID escolhido pelo cliente
+     * @param objetoSerializado Bytes do objeto serializado
+     * @return Requisição pronta para envio
+     */
+    public static byte[] montarRequisicao(byte flags, int idRequisicao, byte[] objetoSerializado) {
+        ByteBuffer buffer = ByteBuffer.allocate(TAMANHO_CABECALHO + objetoSerializado.length);
+        buffer.put(MAGIA_0).put(MAGIA_1).put(flags).putInt(idRequisicao).put(objetoSerializado);
+        return buffer.array();
+    }
+
+    /**
+     * Monta uma requisição com cabeçalho e comprime o objeto, se compensar.
+     * Objetos pequenos, ou que não encolheriam, vão sem compressão e sem
+     * {@link #FLAG_COMPRIMIDO}.
+     *
+     * @param flags Flags da requisição
+     * @param idRequisicao ID escolhido pelo cliente
+     * @param objetoSerializado Bytes do objeto serializado
+     * @return Requisição pronta para envio
+     */
+    public static byte[] montarRequisicaoComprimida(byte flags, int idRequisicao, byte[] objetoSerializado) {
+        byte[] comprimido = new byte[objetoSerializado.length];
+        int tamanho = COMPRESSOR.compress(objetoSerializado, 0, objetoSerializado.length, comprimido, 0);
+        if (tamanho < 0) {
+            return montarRequisicao(flags, idRequisicao, objetoSerializado);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(TAMANHO_CABECALHO + tamanho);
+        buffer.put(MAGIA_0).put(MAGIA_1).put((byte) (flags | FLAG_COMPRIMIDO)).putInt(idRequisicao)
+                .put(comprimido, 0, tamanho);
+        return buffer.array();
+    }
+
+    /**
+     * Descomprime o objeto de uma requisição com {@link #FLAG_COMPRIMIDO}.
+     *
+     * @param dados Dados recebidos
+     * @param offset Início do objeto comprimido, depois do cabeçalho
+     * @param tamanho Tamanho do objeto comprimido
+     * @return Bytes do objeto serializado
+     * @throws IOException Se os dados comprimidos forem inválidos
+     */
+    public static byte[] descomprimir(byte[] dados, int offset, int tamanho) throws IOException {
+        if (tamanho < PayloadCompressor.LENGTH_SIZE) {
+            throw new IOException("Requisição comprimida truncada");
+        }
+        byte[] objetoSerializado = new byte[PayloadCompressor.uncompressedLength(dados, offset)];
+        try {
+            COMPRESSOR.decompress(dados, offset, tamanho, objetoSerializado, 0);
+        } catch (DataFormatException e) {
+            throw new IOException("Requisição comprimida inválida", e);
+        }
+        return objetoSerializado;
+    }
+
+    /**
+     * Verifica se os dados começam com o cabeçalho de requisição.
+     *
+     * @param dados Dados recebidos
+     * @param offset Início dos dados no array
+     * @param tamanho Quantidade de bytes válidos
+     * @return true se houver cabeçalho
+     */
+    public static boolean possuiCabecalho(byte[] dados, int offset, int tamanho) {
+        return tamanho >= TAMANHO_CABECALHO
+                && dados[offset] == MAGIA_0
+                && dados[offset + 1] == MAGIA_1;
+    }
+
+    /**
+     * Lê as flags de uma requisição com cabeçalho.
+     *
+     * @param dados Dados recebidos
+     * @param offset Início dos dados no array
+     * @return Flags da requisição
+     */
+    public static byte lerFlags(byte[] dados, int offset) {
+        return dados[offset + 2];
+    }
+
+    /**
+     * Lê o ID de uma requisição com cabeçalho.
+     *
+     * @param dados Dados recebidos
+     * @param offset Início dos dados no array
+     * @return ID da requisição
+     */
+    public static int lerIdRequisicao(byte[] dados, int offset) {
+        return ByteBuffer.wrap(dados, offset + 3, 4).getInt();
+    }
+
+    /**
+     * Codifica uma confirmação binária.
+     *
+     * @param status Código de status
+     * @param idRequisicao ID da requisição confirmada
+     * @param epochMillis Horário do servidor
+     * @param sequencia Número de sequência do registro
+     * @return Array de 21 bytes
+     */
+    public static byte[] codificarAck(byte status, int idRequisicao, long epochMillis, long sequencia) {
+        ByteBuffer buffer = ByteBuffer.allocate(TAMANHO_ACK);
+        buffer.put(status).putInt(idRequisicao).putLong(epochMillis).putLong(sequencia);
+        return buffer.array();
+    }
+
+    /**
+     * Codifica a resposta binária de uma consulta: a confirmação seguida do
+     * texto da resposta em UTF-8.
+     *
+     * @param idRequisicao ID da requisição respondida
+     * @param epochMillis Horário do servidor
+     * @param sequencia Número de sequência do último registro no servidor
+     * @param texto Texto da resposta
+     * @return Confirmação com o texto anexado
+     */
+    public static byte[] codificarRespostaConsulta(int idRequisicao, long epochMillis, long sequencia, String texto) {
+        byte[] bytesTexto = texto.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(TAMANHO_ACK + bytesTexto.length);
+        buffer.put(STATUS_OK).putInt(idRequisicao).putLong(epochMillis).putLong(sequencia).put(bytesTexto);
+        return buffer.array();
+    }
+
+    /**
+     * Lê o texto de uma resposta binária de consulta. A confirmação que o
+     * precede é lida com {@link #decodificarAck} sobre os primeiros
+     * {@value #TAMANHO_ACK} bytes.
+     *
+     * @param dados Dados recebidos
+     * @param offset Início dos dados no array
+     * @param tamanho Quantidade de bytes válidos
+     * @return Texto da resposta
+     * @throws IllegalArgumentException Se os dados não tiverem a confirmação completa
+     */
+    public static String lerTextoResposta(byte[] dados, int offset, int tamanho) {
+        if (tamanho < TAMANHO_ACK) {
+            throw new IllegalArgumentException("Tamanho inválido para resposta de consulta: " + tamanho);
+        }
+        return new String(dados, offset + TAMANHO_ACK, tamanho - TAMANHO_ACK, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Decodifica uma confirmação binária.
+     *
+     * @param dados Dados recebidos
+     * @param offset Início dos dados no array
+     * @param tamanho Quantidade de bytes válidos
+     * @return Confirmação decodificada
+     * @throws IllegalArgumentException Se o tamanho não corresponder a uma confirmação
+     */
+    public static Ack decodificarAck(byte[] dados, int offset, int tamanho) {
+        if (tamanho != TAMANHO_ACK) {
+            throw new IllegalArgumentException("Tamanho inválido para confirmação: " + tamanho);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(dados, offset, tamanho);
+        return new Ack(buffer.get(), buffer.getInt(), buffer.getLong(), buffer.getLong());
+    }
+}
@@ -9,11 +9,31 @@ import java.net.InetAddress;
 import java.net.SocketException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
+import local.redes.estatisticas.ConsumidorJanela;
+import local.redes.estatisticas.HistogramaIdade;
+import local.redes.estatisticas.HistogramaLatencia;
+import local.redes.estatisticas.HyperLogLog;
+import local.redes.estatisticas.JanelaTumbling;
+import local.redes.estatisticas.MapaContadoresCliente;
+import local.redes.estatisticas.QuadroEstatisticas;
+import local.redes.estatisticas.TopKNomes;
+import local.redes.multicast.MulticastManager;
+import local.redes.multicast.UnicastHub;
+
 /**
  * Servidor UDP para processar requisições de clientes usando threads.
  * 
@@ -28,6 +48,51 @@ public class Servidor {
     
     // Pool de threads para gerenciar as conexões de clientes
     private static final ExecutorService THREAD_POOL = Executors.newCachedThreadPool();
+    
+    // Índice de idades atualizado a cada Pessoa recebida
+    private static final HistogramaIdade HISTOGRAMA_IDADE = new HistogramaIdade();
+    
+    // Número de sequência atribuído a cada Pessoa registrada
+    private static final AtomicLong SEQUENCIA_REGISTROS = new AtomicLong();
+    
+    // Estatísticas aproximadas em memória fixa, atualizadas sem bloqueio
+    private static final int TOP_K_NOMES = 10;
+    private static final TopKNomes TOP_NOMES = new TopKNomes(TOP_K_NOMES);
+    private static final HyperLogLog NOMES_DISTINTOS = new HyperLogLog(12);
+    private static final HyperLogLog CLIENTES_DISTINTOS = new HyperLogLog(12);
+    
+    // Janelas de taxa por cliente (endereço IPv4 + porta)
+    private static final ConsumidorJanela CONSUMIDOR_PADRAO = Servidor::registrarJanelaFechada;
+    private static final JanelaTumbling JANELA_SEGUNDO = new JanelaTumbling(1000, CONSUMIDOR_PADRAO);
+    private static final JanelaTumbling JANELA_MINUTO = new JanelaTumbling(60000, CONSUMIDOR_PADRAO);
+    
+    // Métricas operacionais publicadas no feed de estatísticas
+    private static final LongAdder REQUISICOES_PROCESSADAS = new LongAdder();
+    private static final LongAdder REQUISICOES_DESCARTADAS = new LongAdder();
+    private static final AtomicInteger REQUISICOES_PENDENTES = new AtomicInteger();
+    private static final HistogramaLatencia LATENCIA_PROCESSAMENTO = new HistogramaLatencia();
+    private static final long ID_SERVIDOR = new Random().nextLong();
+    
+    // Totais do último quadro publicado, para calcular os valores do intervalo
+    private static long processadasAnterior;
+    private static long descartadasAnterior;
+    
+    // Configuração do feed multicast de estatísticas (desativado sem grupo)
+    private static final String PROPRIEDADE_GRUPO_ESTATISTICAS = "servidor.estatisticas.grupo";
+    private static final String PROPRIEDADE_PORTA_ESTATISTICAS = "servidor.estatisticas.porta";
+    private static final String PROPRIEDADE_INTERVALO_ESTATISTICAS = "servidor.estatisticas.intervalo";
+    private static final int PORTA_ESTATISTICAS_PADRAO = 9100;
+    private static final int INTERVALO_ESTATISTICAS_PADRAO = 1000;
+    
+    // Hub unicast para o chat em redes sem multicast (desativado sem a propriedade)
+    private static final String PROPRIEDADE_PORTA_HUB = "servidor.hub.porta";
+    
+    // Tarefas periódicas (rotação de janelas e publicação de estatísticas)
+    private static final ScheduledExecutorService AGENDADOR = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "servidor-agendador");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     /**
      * Classe interna que implementa o processamento de cada requisição de
@@ -36,6 +101,7 @@ public class Servidor {
     private static class TratadorRequisicao implements Runnable {
         private final DatagramPacket pacoteRecebido;
         private final DatagramSocket socketServidor;
+        private final long instanteRecebimento;
 
         /**
          * Construtor que recebe o pacote e o socket do servidor.
@@ -46,14 +112,21 @@ public class Servidor {
         public TratadorRequisicao(DatagramPacket pacote, DatagramSocket socket) {
             this.pacoteRecebido = pacote;
             this.socketServidor = socket;
+            this.instanteRecebimento = System.nanoTime();
         }
 
         @Override
         public void run() {
             try {
                 processarRequisicao();
+                REQUISICOES_PROCESSADAS.increment();
             } catch (Exception e) {
+                REQUISICOES_DESCARTADAS.increment();
                 LOGGER.log(Level.SEVERE, "Erro na thread do servidor", e);
+            } finally {
+                // Latência inclui a espera no pool, não só o processamento
+                LATENCIA_PROCESSAMENTO.registrar(System.nanoTime() - instanteRecebimento);
+                REQUISICOES_PENDENTES.decrementAndGet();
             }
         }
         
@@ -65,27 +138,162 @@ public class Servidor {
         private void processarRequisicao() throws Exception {
             // Obter dados do pacote
             byte[] dadosRecebidos = pacoteRecebido.getData();
+            int inicioDados = pacoteRecebido.getOffset();
+            int tamanhoDados = pacoteRecebido.getLength();
 
             // Obter endereço e porta do cliente para resposta
             InetAddress enderecoCliente = pacoteRecebido.getAddress();
             int portaCliente = pacoteRecebido.getPort();
             String enderecoClienteCompleto = enderecoCliente + ":" + portaCliente;
+            
+            // Contabilizar a requisição nas janelas de taxa do cliente
+            long chaveCliente = MapaContadoresCliente.chave(enderecoCliente, portaCliente);
+            JANELA_SEGUNDO.registrar(chaveCliente, tamanhoDados);
+            JANELA_MINUTO.registrar(chaveCliente, tamanhoDados);
 
-            // Deserializar o objeto Pessoa
-            Pessoa pessoa;
-            try (ByteArrayInputStream byteStream = new ByteArrayInputStream(dadosRecebidos);
-                 ObjectInputStream objectStream = new ObjectInputStream(byteStream)) {
-                pessoa = (Pessoa) objectStream.readObject();
+            // Cabeçalho opcional negocia a confirmação binária
+            boolean respostaBinaria = false;
+            boolean comprimido = false;
+            int idRequisicao = 0;
+            if (ProtocoloBinario.possuiCabecalho(dadosRecebidos, inicioDados, tamanhoDados)) {
+                byte flags = ProtocoloBinario.lerFlags(dadosRecebidos, inicioDados);
+                respostaBinaria = (flags & ProtocoloBinario.FLAG_RESPOSTA_BINARIA) != 0;
+                comprimido = (flags & ProtocoloBinario.FLAG_COMPRIMIDO) != 0;
+                idRequisicao = ProtocoloBinario.lerIdRequisicao(dadosRecebidos, inicioDados);
+                inicioDados += ProtocoloBinario.TAMANHO_CABECALHO;
+                tamanhoDados -= ProtocoloBinario.TAMANHO_CABECALHO;
+            }
+
+            // Deserializar o objeto recebido (Pessoa, lote de Pessoa ou Consulta)
+            Object objetoRecebido;
+            try {
+                if (comprimido) {
+                    dadosRecebidos = ProtocoloBinario.descomprimir(dadosRecebidos, inicioDados, tamanhoDados);
+                    inicioDados = 0;
+                    tamanhoDados = dadosRecebidos.length;
+                }
+                objetoRecebido = lerObjeto(dadosRecebidos, inicioDados, tamanhoDados);
+            } catch (IOException | ClassNotFoundException e) {
+                if (respostaBinaria) {
+                    enviarResposta(ProtocoloBinario.codificarAck(ProtocoloBinario.STATUS_ERRO, idRequisicao,
+                            System.currentTimeMillis(), 0), enderecoCliente, portaCliente);
+                }
+                throw e;
+            }
+
+            // Consultas são respondidas a partir dos índices, sem registrar dados
+            if (objetoRecebido instanceof Consulta) {
+                String respostaConsulta = montarRespostaConsulta((Consulta) objetoRecebido);
+                if (respostaBinaria) {
+                    enviarResposta(ProtocoloBinario.codificarRespostaConsulta(idRequisicao,
+                            System.currentTimeMillis(), SEQUENCIA_REGISTROS.get(), respostaConsulta),
+                            enderecoCliente, portaCliente);
+                } else {
+                    enviarResposta(respostaConsulta.getBytes(), enderecoCliente, portaCliente);
+                }
+                logRespostaEnviada(enderecoClienteCompleto);
+                return;
             }
 
-            // Mostrar dados no console
+            // Um lote registra cada pessoa e recebe uma só resposta
+            Pessoa[] pessoas = comoPessoas(objetoRecebido);
+            if (pessoas == null) {
+                if (respostaBinaria) {
+                    enviarResposta(ProtocoloBinario.codificarAck(ProtocoloBinario.STATUS_ERRO, idRequisicao,
+                            System.currentTimeMillis(), 0), enderecoCliente, portaCliente);
+                }
+                throw new IOException("Objeto não suportado: "
+                        + (objetoRecebido != null ? objetoRecebido.getClass().getName() : "null"));
+            }
             String threadId = String.valueOf(Thread.currentThread().getId());
-            logRequisicao(threadId, enderecoClienteCompleto, pessoa);
+            long sequencia = 0;
+            for (Pessoa pessoa : pessoas) {
+                registrarEstatisticas(pessoa, enderecoCliente);
+                sequencia = SEQUENCIA_REGISTROS.incrementAndGet();
+
+                // Mostrar dados no console
+                logRequisicao(threadId, enderecoClienteCompleto, pessoa);
+            }
 
-            // Preparar resposta para o cliente
-            String mensagemResposta = montarResposta(pessoa);
-            byte[] dadosResposta = mensagemResposta.getBytes();
+            // Preparar resposta para o cliente; no lote, a sequência é a do último registro
+            if (respostaBinaria) {
+                enviarResposta(ProtocoloBinario.codificarAck(ProtocoloBinario.STATUS_OK, idRequisicao,
+                        System.currentTimeMillis(), sequencia), enderecoCliente, portaCliente);
+            } else {
+                String mensagemResposta = pessoas.length == 1
+                        ? montarResposta(pessoas[0])
+                        : montarRespostaLote(pessoas.length);
+                enviarResposta(mensagemResposta.getBytes(), enderecoCliente, portaCliente);
+            }
 
+            logRespostaEnviada(enderecoClienteCompleto);
+        }
+        
+        /**
+         * Deserializa o objeto enviado pelo cliente.
+         * 
+         * @param dados Array com o objeto serializado
+         * @param inicio Início do objeto no array
+         * @param tamanho Tamanho do objeto serializado
+         * @return O objeto recebido
+         * @throws IOException Se os dados não formarem um objeto serializado
+         * @throws ClassNotFoundException Se a classe do objeto não for conhecida
+         */
+        private Object lerObjeto(byte[] dados, int inicio, int tamanho) throws IOException, ClassNotFoundException {
+            try (ByteArrayInputStream byteStream = new ByteArrayInputStream(dados, inicio, tamanho);
+                 ObjectInputStream objectStream = new ObjectInputStream(byteStream)) {
+                return objectStream.readObject();
+            }
+        }
+        
+        /**
+         * Converte o objeto recebido nas pessoas a registrar.
+         * 
+         * @param objeto Objeto deserializado
+         * @return A pessoa ou o lote recebido, ou null se o objeto não for
+         *         uma pessoa nem um lote sem posições vazias
+         */
+        private Pessoa[] comoPessoas(Object objeto) {
+            if (objeto instanceof Pessoa) {
+                return new Pessoa[]{(Pessoa) objeto};
+            }
+            if (!(objeto instanceof Pessoa[])) {
+                return null;
+            }
+            Pessoa[] lote = (Pessoa[]) objeto;
+            for (Pessoa pessoa : lote) {
+                if (pessoa == null) {
+                    return null;
+                }
+            }
+            return lote;
+        }
+        
+        /**
+         * Atualiza os índices e sketches com a pessoa recebida.
+         * 
+         * @param pessoa A pessoa recebida do cliente
+         * @param enderecoCliente Endereço do cliente
+         */
+        private void registrarEstatisticas(Pessoa pessoa, InetAddress enderecoCliente) {
+            HISTOGRAMA_IDADE.registrar(pessoa.getIdade());
+            CLIENTES_DISTINTOS.adicionar(enderecoCliente.getAddress());
+            if (pessoa.getNome() != null) {
+                TOP_NOMES.registrar(pessoa.getNome());
+                NOMES_DISTINTOS.adicionar(pessoa.getNome());
+            }
+        }
+        
+        /**
+         * Envia os dados de resposta para o cliente.
+         * 
+         * @param dadosResposta Dados a serem enviados
+         * @param enderecoCliente Endereço do cliente
+         * @param portaCliente Porta do cliente
+         * @throws IOException Se ocorrer um erro ao enviar
+         */
+        private void enviarResposta(byte[] dadosResposta, InetAddress enderecoCliente, int portaCliente) 
+                throws IOException {
             // Criar pacote de resposta
             DatagramPacket pacoteResposta = new DatagramPacket(
                     dadosResposta,
@@ -96,8 +304,81 @@ public class Servidor {
 
             // Enviar resposta
             socketServidor.send(pacoteResposta);
-
-            logRespostaEnviada(enderecoClienteCompleto);
+        }
+        
+        /**
+         * Monta a resposta para uma consulta de estatísticas.
+         * 
+         * @param consulta A consulta recebida do cliente
+         * @return A mensagem de resposta
+         */
+        private String montarRespostaConsulta(Consulta consulta) {
+            if (consulta.getTipo() == null) {
+                return "Consulta inválida: tipo não informado.";
+            }
+            
+            switch (consulta.getTipo()) {
+                case CONTAGEM_IDADE:
+                    return String.format(
+                        "Pessoas com idade entre %d e %d: %d",
+                        consulta.getIdadeMinima(),
+                        consulta.getIdadeMaxima(),
+                        HISTOGRAMA_IDADE.contarEntre(consulta.getIdadeMinima(), consulta.getIdadeMaxima())
+                    );
+                case DISTRIBUICAO_IDADE:
+                    return montarDistribuicao(consulta.getIdadeMinima(), consulta.getIdadeMaxima());
+                case TOP_NOMES:
+                    return montarTopNomes(consulta.getLimite());
+                case CARDINALIDADE:
+                    return String.format(
+                        "Nomes distintos (aprox.): %d\nClientes distintos (aprox.): %d",
+                        NOMES_DISTINTOS.estimar(),
+                        CLIENTES_DISTINTOS.estimar()
+                    );
+                default:
+                    return "Consulta inválida: " + consulta.getTipo();
+            }
+        }
+        
+        /**
+         * Monta a lista dos nomes mais frequentes no formato "nome:contagem".
+         * 
+         * @param limite Quantidade máxima de nomes (0 para o padrão do servidor)
+         * @return A lista formatada
+         */
+        private String montarTopNomes(int limite) {
+            List<Map.Entry<String, Long>> topNomes = TOP_NOMES.retrato();
+            int quantidade = limite > 0 ? Math.min(limite, topNomes.size()) : topNomes.size();
+            
+            StringBuilder resposta = new StringBuilder("Nomes mais frequentes (aprox.):");
+            for (int i = 0; i < quantidade; i++) {
+                Map.Entry<String, Long> entrada = topNomes.get(i);
+                resposta.append('\n').append(entrada.getKey()).append(':').append(entrada.getValue());
+            }
+            return resposta.toString();
+        }
+        
+        /**
+         * Monta a distribuição de idades no formato compacto "idade:contagem".
+         * Idades sem registros são omitidas para manter a resposta pequena.
+         * 
+         * @param idadeMinima Limite inferior da faixa
+         * @param idadeMaxima Limite superior da faixa
+         * @return A distribuição formatada
+         */
+        private String montarDistribuicao(int idadeMinima, int idadeMaxima) {
+            long[] distribuicao = HISTOGRAMA_IDADE.distribuicao();
+            int inicio = Math.max(idadeMinima, HistogramaIdade.IDADE_MINIMA);
+            int fim = Math.min(idadeMaxima, HistogramaIdade.IDADE_MAXIMA);
+            
+            StringBuilder resposta = new StringBuilder("Distribuição de idades:");
+            for (int idade = inicio; idade <= fim; idade++) {
+                long contagem = distribuicao[idade - HistogramaIdade.IDADE_MINIMA];
+                if (contagem > 0) {
+                    resposta.append(' ').append(idade).append(':').append(contagem);
+                }
+            }
+            return resposta.toString();
         }
         
         /**
@@ -117,6 +398,21 @@ public class Servidor {
             );
         }
         
+        /**
+         * Monta a mensagem de resposta para um lote de pessoas.
+         * 
+         * @param quantidade Quantidade de pessoas registradas
+         * @return A mensagem de resposta
+         */
+        private String montarRespostaLote(int quantidade) {
+            return String.format(
+                "Lote de %d pessoas recebido com sucesso!\n" +
+                "Timestamp: %s",
+                quantidade,
+                LocalDateTime.now().format(FORMATTER)
+            );
+        }
+        
         /**
          * Registra informações da requisição recebida.
          * 
@@ -148,6 +444,147 @@ public class Servidor {
         }
     }
 
+    /**
+     * Define o destino das janelas de taxa fechadas (por segundo e por minuto).
+     * Usado para alimentar detecção de abuso e cobrança.
+     * 
+     * @param consumidor Consumidor das janelas, ou null para restaurar o padrão
+     */
+    public static void definirConsumidorJanelas(ConsumidorJanela consumidor) {
+        ConsumidorJanela destino = consumidor != null ? consumidor : CONSUMIDOR_PADRAO;
+        JANELA_SEGUNDO.setConsumidor(destino);
+        JANELA_MINUTO.setConsumidor(destino);
+    }
+    
+    /**
+     * Consumidor padrão: registra um resumo de cada janela fechada no log.
+     * 
+     * @param inicioMillis Início da janela
+     * @param duracaoMillis Duração da janela
+     * @param contadores Contadores por cliente
+     */
+    private static void registrarJanelaFechada(long inicioMillis, long duracaoMillis, 
+            MapaContadoresCliente contadores) {
+        if (LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.log(Level.FINE, "Janela de {0} ms iniciada em {1}: {2} clientes",
+                    new Object[]{duracaoMillis, inicioMillis, contadores.tamanho()});
+        }
+    }
+    
+    /**
+     * Agenda a rotação periódica das janelas, para que janelas sem tráfego
+     * também sejam fechadas e entregues ao consumidor.
+     */
+    private static void agendarRotacaoJanelas() {
+        AGENDADOR.scheduleAtFixedRate(() -> {
+            long agora = System.currentTimeMillis();
+            JANELA_SEGUNDO.rotacionarSeNecessario(agora);
+            JANELA_MINUTO.rotacionarSeNecessario(agora);
+        }, 1, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Inicia a publicação periódica de estatísticas no grupo multicast
+     * configurado pela propriedade {@value #PROPRIEDADE_GRUPO_ESTATISTICAS}.
+     * Sem a propriedade, o feed fica desativado.
+     */
+    private static void iniciarFeedEstatisticas() {
+        String grupo = System.getProperty(PROPRIEDADE_GRUPO_ESTATISTICAS);
+        if (grupo == null || grupo.trim().isEmpty()) {
+            return;
+        }
+        
+        try {
+            InetAddress enderecoGrupo = InetAddress.getByName(grupo.trim());
+            int porta = Integer.getInteger(PROPRIEDADE_PORTA_ESTATISTICAS, PORTA_ESTATISTICAS_PADRAO);
+            int intervalo = Integer.getInteger(PROPRIEDADE_INTERVALO_ESTATISTICAS, INTERVALO_ESTATISTICAS_PADRAO);
+            
+            MulticastManager publicador = new MulticastManager(enderecoGrupo, porta, "servidor-" + PORTA);
+            AGENDADOR.scheduleAtFixedRate(() -> publicarEstatisticas(publicador, intervalo),
+                    intervalo, intervalo, TimeUnit.MILLISECONDS);
+            
+            System.out.println("Publicando estatísticas em " + enderecoGrupo.getHostAddress() + ":" + porta
+                    + " a cada " + intervalo + " ms");
+        } catch (IOException | NumberFormatException e) {
+            LOGGER.log(Level.WARNING, "Não foi possível iniciar o feed de estatísticas", e);
+        }
+    }
+    
+    /**
+     * Inicia o hub unicast do chat na porta da propriedade
+     * {@value #PROPRIEDADE_PORTA_HUB}, para redes em que o multicast não
+     * passa. Os clientes o usam com a propriedade
+     * {@value MulticastManager#HUB_PROPERTY}. Sem a propriedade, o hub
+     * fica desativado.
+     * 
+     * @return Hub iniciado, ou null se desativado ou se a porta estiver em uso
+     */
+    static UnicastHub iniciarHub() {
+        String porta = System.getProperty(PROPRIEDADE_PORTA_HUB);
+        if (porta == null || porta.trim().isEmpty()) {
+            return null;
+        }
+        
+        try {
+            UnicastHub hub = new UnicastHub(Integer.parseInt(porta.trim()));
+            hub.start();
+            System.out.println("Hub unicast do chat ativo na porta " + hub.getPort());
+            return hub;
+        } catch (IOException | NumberFormatException e) {
+            LOGGER.log(Level.WARNING, "Não foi possível iniciar o hub unicast", e);
+            return null;
+        }
+    }
+    
+    /**
+     * Monta e publica um quadro com as estatísticas do último intervalo.
+     * 
+     * @param publicador Gerenciador multicast usado para o envio
+     * @param intervaloMillis Duração do intervalo medido
+     */
+    private static void publicarEstatisticas(MulticastManager publicador, int intervaloMillis) {
+        try {
+            publicador.sendBytes(montarQuadroEstatisticas(intervaloMillis).codificar());
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Erro ao publicar estatísticas", e);
+        }
+    }
+    
+    /**
+     * Monta o quadro de estatísticas do último intervalo.
+     * Chamado apenas pela thread do agendador.
+     * 
+     * @param intervaloMillis Duração do intervalo medido
+     * @return Quadro pronto para publicação
+     */
+    static QuadroEstatisticas montarQuadroEstatisticas(int intervaloMillis) {
+        long processadas = REQUISICOES_PROCESSADAS.sum();
+        long descartadas = REQUISICOES_DESCARTADAS.sum();
+        HistogramaLatencia.Retrato latencias = LATENCIA_PROCESSAMENTO.retratoEZerar();
+        int threadsAtivas = THREAD_POOL instanceof ThreadPoolExecutor
+                ? ((ThreadPoolExecutor) THREAD_POOL).getActiveCount() : 0;
+        
+        QuadroEstatisticas quadro = new QuadroEstatisticas(
+                ID_SERVIDOR,
+                PORTA,
+                System.currentTimeMillis(),
+                intervaloMillis,
+                processadas - processadasAnterior,
+                descartadas - descartadasAnterior,
+                latencias.percentil(50) / 1000,
+                latencias.percentil(90) / 1000,
+                latencias.percentil(99) / 1000,
+                latencias.getMaximo() / 1000,
+                REQUISICOES_PENDENTES.get(),
+                threadsAtivas,
+                processadas
+        );
+        
+        processadasAnterior = processadas;
+        descartadasAnterior = descartadas;
+        return quadro;
+    }
+
     /**
      * Método principal que inicia o servidor.
      * 
@@ -178,6 +615,10 @@ public class Servidor {
         System.out.println("Aguardando conexões...");
         System.out.println("=================================================");
 
+        agendarRotacaoJanelas();
+        iniciarFeedEstatisticas();
+        iniciarHub();
+
         // Loop infinito para aceitar conexões
         while (true) {
             // Preparar buffer para receber dados
@@ -191,6 +632,7 @@ public class Servidor {
             System.out.println("Conexão recebida de " + clienteInfo);
 
             // Submeter tarefa ao pool de threads para processamento assíncrono
+            REQUISICOES_PENDENTES.incrementAndGet();
             THREAD_POOL.submit(new TratadorRequisicao(pacoteRecebido, socketServidor));
             
             System.out.println("Nova thread iniciada para atender o cliente " + clienteInfo);
@@ -0,0 +1,20 @@
+package local.redes.estatisticas;
+
+/**
+ * Destino das janelas de contagem fechadas por um {@link JanelaTumbling}.
+ *
+ * @author Igor Rozalem
+ */
+public interface ConsumidorJanela {
+
+    /**
+     * Chamado quando uma janela é fechada.
+     * O mapa é reutilizado na próxima rotação e só é válido durante a chamada;
+     * consumidores que precisem guardá-lo devem copiar os valores.
+     *
+     * @param inicioMillis Início da janela (epoch em milissegundos)
+     * @param duracaoMillis Duração da janela em milissegundos
+     * @param contadores Requisições e bytes de cada cliente na janela
+     */
+    void janelaFechada(long inicioMillis, long duracaoMillis, MapaContadoresCliente contadores);
+}
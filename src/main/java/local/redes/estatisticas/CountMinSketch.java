@@ -0,0 +1,117 @@
+package local.redes.estatisticas;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Count-Min Sketch com contadores atômicos.
+ * Estima a frequência de cada chave em memória fixa; a estimativa nunca
+ * é menor que a contagem real e o erro cresce com o total de eventos.
+ *
+ * @author Igor Rozalem
+ */
+public class CountMinSketch {
+
+    private final int profundidade;
+    private final int largura;
+    private final int mascara;
+    private final AtomicLongArray contadores;
+
+    /**
+     * Cria um sketch com as dimensões informadas.
+     *
+     * @param profundidade Número de linhas (funções de hash)
+     * @param largura Número de colunas, arredondado para potência de dois
+     */
+    public CountMinSketch(int profundidade, int largura) {
+        if (profundidade <= 0 || largura <= 0) {
+            throw new IllegalArgumentException("Dimensões do sketch devem ser positivas");
+        }
+        this.profundidade = profundidade;
+        this.largura = potenciaDeDois(largura);
+        this.mascara = this.largura - 1;
+        this.contadores = new AtomicLongArray(profundidade * this.largura);
+    }
+
+    private static int potenciaDeDois(int valor) {
+        int potencia = Integer.highestOneBit(valor);
+        return potencia == valor ? valor : potencia << 1;
+    }
+
+    /**
+     * Incrementa a contagem da chave e retorna a nova estimativa.
+     *
+     * @param chave Chave a ser contada
+     * @return Frequência estimada após o incremento
+     */
+    public long adicionar(CharSequence chave) {
+        return adicionarHash(Hash64.de(chave));
+    }
+
+    /**
+     * Incrementa a contagem a partir de um hash já calculado.
+     *
+     * @param hash Hash de 64 bits da chave
+     * @return Frequência estimada após o incremento
+     */
+    public long adicionarHash(long hash) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        long minimo = Long.MAX_VALUE;
+        for (int linha = 0; linha < profundidade; linha++) {
+            int coluna = (h1 + linha * h2) & mascara;
+            long valor = contadores.incrementAndGet(linha * largura + coluna);
+            if (valor < minimo) {
+                minimo = valor;
+            }
+        }
+        return minimo;
+    }
+
+    /**
+     * Estima a frequência de uma chave sem alterá-la.
+     *
+     * @param chave Chave a ser consultada
+     * @return Frequência estimada
+     */
+    public long estimar(CharSequence chave) {
+        return estimarHash(Hash64.de(chave));
+    }
+
+    /**
+     * Estima a frequência a partir de um hash já calculado.
+     *
+     * @param hash Hash de 64 bits da chave
+     * @return Frequência estimada
+     */
+    public long estimarHash(long hash) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        long minimo = Long.MAX_VALUE;
+        for (int linha = 0; linha < profundidade; linha++) {
+            int coluna = (h1 + linha * h2) & mascara;
+            long valor = contadores.get(linha * largura + coluna);
+            if (valor < minimo) {
+                minimo = valor;
+            }
+        }
+        return minimo;
+    }
+
+    /**
+     * Retorna a largura efetiva do sketch.
+     *
+     * @return Número de colunas
+     */
+    public int getLargura() {
+        return largura;
+    }
+
+    /**
+     * Retorna a profundidade do sketch.
+     *
+     * @return Número de linhas
+     */
+    public int getProfundidade() {
+        return profundidade;
+    }
+}
@@ -0,0 +1,62 @@
+package local.redes.estatisticas;
+
+/**
+ * Funções de hash de 64 bits usadas pelos sketches probabilísticos.
+ * Combina FNV-1a com a finalização do MurmurHash3 para espalhar bem os bits.
+ *
+ * @author Igor Rozalem
+ */
+final class Hash64 {
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private Hash64() {
+        // Classe utilitária
+    }
+
+    /**
+     * Calcula o hash de uma sequência de caracteres.
+     *
+     * @param texto Texto a ser processado
+     * @return Hash de 64 bits
+     */
+    static long de(CharSequence texto) {
+        long hash = FNV_OFFSET;
+        for (int i = 0; i < texto.length(); i++) {
+            hash ^= texto.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        return misturar(hash);
+    }
+
+    /**
+     * Calcula o hash de um array de bytes.
+     *
+     * @param dados Bytes a serem processados
+     * @return Hash de 64 bits
+     */
+    static long de(byte[] dados) {
+        long hash = FNV_OFFSET;
+        for (byte b : dados) {
+            hash ^= (b & 0xff);
+            hash *= FNV_PRIME;
+        }
+        return misturar(hash);
+    }
+
+    /**
+     * Finalizador do MurmurHash3 (fmix64).
+     *
+     * @param valor Valor a ser misturado
+     * @return Valor com bits bem distribuídos
+     */
+    static long misturar(long valor) {
+        valor ^= valor >>> 33;
+        valor *= 0xff51afd7ed558ccdL;
+        valor ^= valor >>> 33;
+        valor *= 0xc4ceb9fe1a85ec53L;
+        valor ^= valor >>> 33;
+        return valor;
+    }
+}
@@ -0,0 +1,97 @@
+package local.redes.estatisticas;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Índice primitivo de contagem por idade.
+ * Mantém um contador por idade possível, atualizado a cada objeto Pessoa
+ * recebido, permitindo consultas por faixa sem percorrer registros.
+ *
+ * @author Igor Rozalem
+ */
+public class HistogramaIdade {
+
+    public static final int IDADE_MINIMA = 0;
+    public static final int IDADE_MAXIMA = 150;
+
+    // Um LongAdder por idade evita contenção entre as threads do servidor
+    private final LongAdder[] contadores;
+    private final LongAdder foraDoIntervalo;
+
+    /**
+     * Cria um histograma vazio para idades entre IDADE_MINIMA e IDADE_MAXIMA.
+     */
+    public HistogramaIdade() {
+        contadores = new LongAdder[IDADE_MAXIMA - IDADE_MINIMA + 1];
+        for (int i = 0; i < contadores.length; i++) {
+            contadores[i] = new LongAdder();
+        }
+        foraDoIntervalo = new LongAdder();
+    }
+
+    /**
+     * Registra uma ocorrência da idade informada.
+     *
+     * @param idade Idade a ser registrada
+     * @return true se a idade foi registrada, false se estiver fora do intervalo
+     */
+    public boolean registrar(int idade) {
+        if (idade < IDADE_MINIMA || idade > IDADE_MAXIMA) {
+            foraDoIntervalo.increment();
+            return false;
+        }
+        contadores[idade - IDADE_MINIMA].increment();
+        return true;
+    }
+
+    /**
+     * Conta as pessoas com idade entre os limites informados (inclusivos).
+     * Limites fora do intervalo suportado são ajustados automaticamente.
+     *
+     * @param idadeMinima Limite inferior da faixa
+     * @param idadeMaxima Limite superior da faixa
+     * @return Quantidade de pessoas na faixa
+     */
+    public long contarEntre(int idadeMinima, int idadeMaxima) {
+        int inicio = Math.max(idadeMinima, IDADE_MINIMA);
+        int fim = Math.min(idadeMaxima, IDADE_MAXIMA);
+
+        long total = 0;
+        for (int idade = inicio; idade <= fim; idade++) {
+            total += contadores[idade - IDADE_MINIMA].sum();
+        }
+        return total;
+    }
+
+    /**
+     * Retorna uma cópia da distribuição de idades.
+     * A posição i do array corresponde à idade IDADE_MINIMA + i.
+     *
+     * @return Array com a contagem de cada idade
+     */
+    public long[] distribuicao() {
+        long[] copia = new long[contadores.length];
+        for (int i = 0; i < contadores.length; i++) {
+            copia[i] = contadores[i].sum();
+        }
+        return copia;
+    }
+
+    /**
+     * Retorna o total de idades registradas.
+     *
+     * @return Total de registros dentro do intervalo suportado
+     */
+    public long getTotal() {
+        return contarEntre(IDADE_MINIMA, IDADE_MAXIMA);
+    }
+
+    /**
+     * Retorna quantas idades foram descartadas por estarem fora do intervalo.
+     *
+     * @return Total de idades rejeitadas
+     */
+    public long getForaDoIntervalo() {
+        return foraDoIntervalo.sum();
+    }
+}
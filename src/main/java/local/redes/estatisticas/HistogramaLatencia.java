@@ -0,0 +1,137 @@
+package local.redes.estatisticas;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Histograma log-linear de latências em nanossegundos.
+ * Cada potência de dois é dividida em 16 sub-faixas, o que limita o erro
+ * relativo dos percentis a cerca de 6% com memória fixa (1024 contadores).
+ * O registro é um único incremento atômico e pode ser feito por várias
+ * threads ao mesmo tempo.
+ *
+ * @author Igor Rozalem
+ */
+public class HistogramaLatencia {
+
+    private static final int BITS_SUBFAIXA = 4;
+    private static final int SUBFAIXAS = 1 << BITS_SUBFAIXA;
+    private static final int TOTAL_FAIXAS = 64 * SUBFAIXAS;
+
+    private final AtomicLongArray contadores = new AtomicLongArray(TOTAL_FAIXAS);
+
+    /**
+     * Retrato imutável das contagens em um instante.
+     */
+    public static final class Retrato {
+        private final long[] contagens;
+        private final long total;
+
+        private Retrato(long[] contagens) {
+            this.contagens = contagens;
+            long soma = 0;
+            for (long contagem : contagens) {
+                soma += contagem;
+            }
+            this.total = soma;
+        }
+
+        /**
+         * Retorna a quantidade de amostras.
+         *
+         * @return Total de amostras
+         */
+        public long getContagem() {
+            return total;
+        }
+
+        /**
+         * Retorna o valor no percentil informado.
+         *
+         * @param percentil Percentil entre 0 e 100
+         * @return Limite superior da faixa do percentil, ou 0 sem amostras
+         */
+        public long percentil(double percentil) {
+            if (total == 0) {
+                return 0;
+            }
+            long alvo = (long) Math.ceil(total * Math.min(100.0, Math.max(0.0, percentil)) / 100.0);
+            alvo = Math.max(1, alvo);
+            long acumulado = 0;
+            for (int i = 0; i < contagens.length; i++) {
+                acumulado += contagens[i];
+                if (acumulado >= alvo) {
+                    return limiteSuperior(i);
+                }
+            }
+            return limiteSuperior(contagens.length - 1);
+        }
+
+        /**
+         * Retorna o maior valor registrado (aproximado pela faixa).
+         *
+         * @return Valor máximo, ou 0 sem amostras
+         */
+        public long getMaximo() {
+            for (int i = contagens.length - 1; i >= 0; i--) {
+                if (contagens[i] > 0) {
+                    return limiteSuperior(i);
+                }
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * Registra uma amostra de latência.
+     *
+     * @param valor Latência em nanossegundos (valores negativos contam como 0)
+     */
+    public void registrar(long valor) {
+        contadores.incrementAndGet(indice(Math.max(0, valor)));
+    }
+
+    /**
+     * Retorna um retrato das contagens acumuladas.
+     *
+     * @return Retrato atual
+     */
+    public Retrato retrato() {
+        long[] copia = new long[TOTAL_FAIXAS];
+        for (int i = 0; i < TOTAL_FAIXAS; i++) {
+            copia[i] = contadores.get(i);
+        }
+        return new Retrato(copia);
+    }
+
+    /**
+     * Retorna um retrato e zera as contagens, para relatórios por intervalo.
+     *
+     * @return Retrato do intervalo encerrado
+     */
+    public Retrato retratoEZerar() {
+        long[] copia = new long[TOTAL_FAIXAS];
+        for (int i = 0; i < TOTAL_FAIXAS; i++) {
+            copia[i] = contadores.getAndSet(i, 0);
+        }
+        return new Retrato(copia);
+    }
+
+    static int indice(long valor) {
+        if (valor < SUBFAIXAS) {
+            return (int) valor;
+        }
+        int expoente = 63 - Long.numberOfLeadingZeros(valor);
+        int subfaixa = (int) (valor >>> (expoente - BITS_SUBFAIXA)) & (SUBFAIXAS - 1);
+        return (expoente - BITS_SUBFAIXA + 1) * SUBFAIXAS + subfaixa;
+    }
+
+    static long limiteSuperior(int indice) {
+        if (indice < SUBFAIXAS) {
+            return indice;
+        }
+        int expoente = indice / SUBFAIXAS + BITS_SUBFAIXA - 1;
+        long subfaixa = indice % SUBFAIXAS;
+        long inicio = (1L << expoente) + (subfaixa << (expoente - BITS_SUBFAIXA));
+        return inicio + (1L << (expoente - BITS_SUBFAIXA)) - 1;
+    }
+}
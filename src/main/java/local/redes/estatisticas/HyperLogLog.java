@@ -0,0 +1,105 @@
+package local.redes.estatisticas;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Estimador de cardinalidade HyperLogLog com registradores atômicos.
+ * Conta elementos distintos em memória fixa (2^precisao registradores)
+ * com erro relativo aproximado de 1.04 / sqrt(2^precisao).
+ *
+ * @author Igor Rozalem
+ */
+public class HyperLogLog {
+
+    private final int precisao;
+    private final int quantidadeRegistradores;
+    private final AtomicIntegerArray registradores;
+
+    /**
+     * Cria um estimador com a precisão informada.
+     *
+     * @param precisao Bits usados para escolher o registrador (4 a 18)
+     */
+    public HyperLogLog(int precisao) {
+        if (precisao < 4 || precisao > 18) {
+            throw new IllegalArgumentException("Precisão deve estar entre 4 e 18");
+        }
+        this.precisao = precisao;
+        this.quantidadeRegistradores = 1 << precisao;
+        this.registradores = new AtomicIntegerArray(quantidadeRegistradores);
+    }
+
+    /**
+     * Adiciona um texto ao conjunto.
+     *
+     * @param valor Texto a ser adicionado
+     */
+    public void adicionar(CharSequence valor) {
+        adicionarHash(Hash64.de(valor));
+    }
+
+    /**
+     * Adiciona um valor binário (por exemplo, um endereço IP) ao conjunto.
+     *
+     * @param valor Bytes a serem adicionados
+     */
+    public void adicionar(byte[] valor) {
+        adicionarHash(Hash64.de(valor));
+    }
+
+    /**
+     * Adiciona um elemento a partir de seu hash de 64 bits.
+     *
+     * @param hash Hash do elemento
+     */
+    public void adicionarHash(long hash) {
+        int indice = (int) (hash >>> (64 - precisao));
+        // Bit sentinela garante posto máximo de 64 - precisao + 1
+        long restante = (hash << precisao) | (1L << (precisao - 1));
+        int posto = Long.numberOfLeadingZeros(restante) + 1;
+
+        int atual = registradores.get(indice);
+        while (posto > atual) {
+            if (registradores.compareAndSet(indice, atual, posto)) {
+                return;
+            }
+            atual = registradores.get(indice);
+        }
+    }
+
+    /**
+     * Estima a quantidade de elementos distintos adicionados.
+     *
+     * @return Cardinalidade estimada
+     */
+    public long estimar() {
+        double soma = 0;
+        int zeros = 0;
+        for (int i = 0; i < quantidadeRegistradores; i++) {
+            int valor = registradores.get(i);
+            soma += 1.0 / (1L << valor);
+            if (valor == 0) {
+                zeros++;
+            }
+        }
+
+        double m = quantidadeRegistradores;
+        double alfa = 0.7213 / (1 + 1.079 / m);
+        double estimativa = alfa * m * m / soma;
+
+        // Correção para cardinalidades pequenas (contagem linear)
+        if (estimativa <= 2.5 * m && zeros > 0) {
+            estimativa = m * Math.log(m / zeros);
+        }
+        return Math.round(estimativa);
+    }
+
+    /**
+     * Retorna a precisão configurada.
+     *
+     * @return Bits de precisão
+     */
+    public int getPrecisao() {
+        return precisao;
+    }
+}
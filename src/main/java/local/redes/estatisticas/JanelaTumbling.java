@@ -0,0 +1,160 @@
+package local.redes.estatisticas;
+
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Agregação em janelas fixas (tumbling) de requisições e bytes por cliente.
+ * Os contadores ficam em faixas de mapas primitivos, cada uma com seu próprio
+ * monitor, de modo que threads atendendo clientes diferentes raramente
+ * disputam o mesmo lock. Ao fim de cada janela os mapas são trocados pelos
+ * reservas, mesclados e entregues ao consumidor configurado.
+ *
+ * @author Igor Rozalem
+ */
+public class JanelaTumbling {
+
+    private static final Logger LOGGER = Logger.getLogger(JanelaTumbling.class.getName());
+
+    private final long duracaoMillis;
+    private final Faixa[] faixas;
+    private final int mascaraFaixas;
+    private final MapaContadoresCliente janelaFechada;
+    private volatile ConsumidorJanela consumidor;
+    private volatile long inicioJanela;
+    private volatile long fimJanela;
+
+    /**
+     * Faixa de contadores protegida por seu próprio monitor.
+     */
+    private static final class Faixa {
+        private MapaContadoresCliente atual = new MapaContadoresCliente();
+        private MapaContadoresCliente reserva = new MapaContadoresCliente();
+    }
+
+    /**
+     * Cria uma janela com número de faixas proporcional aos processadores.
+     *
+     * @param duracaoMillis Duração de cada janela em milissegundos
+     * @param consumidor Destino das janelas fechadas (pode ser null)
+     */
+    public JanelaTumbling(long duracaoMillis, ConsumidorJanela consumidor) {
+        this(duracaoMillis, Runtime.getRuntime().availableProcessors() * 2, consumidor);
+    }
+
+    /**
+     * Cria uma janela com o número de faixas informado.
+     *
+     * @param duracaoMillis Duração de cada janela em milissegundos
+     * @param quantidadeFaixas Número de faixas, arredondado para potência de dois
+     * @param consumidor Destino das janelas fechadas (pode ser null)
+     */
+    public JanelaTumbling(long duracaoMillis, int quantidadeFaixas, ConsumidorJanela consumidor) {
+        if (duracaoMillis <= 0) {
+            throw new IllegalArgumentException("Duração da janela deve ser positiva");
+        }
+        this.duracaoMillis = duracaoMillis;
+        int total = Integer.highestOneBit(Math.max(1, quantidadeFaixas));
+        this.faixas = new Faixa[total];
+        for (int i = 0; i < total; i++) {
+            faixas[i] = new Faixa();
+        }
+        this.mascaraFaixas = total - 1;
+        this.janelaFechada = new MapaContadoresCliente();
+        this.consumidor = consumidor;
+        this.inicioJanela = -1;
+        this.fimJanela = -1;
+    }
+
+    /**
+     * Registra uma requisição do cliente no instante atual.
+     *
+     * @param chaveCliente Chave do cliente ({@link MapaContadoresCliente#chave})
+     * @param bytes Tamanho da requisição em bytes
+     */
+    public void registrar(long chaveCliente, int bytes) {
+        registrar(chaveCliente, bytes, System.currentTimeMillis());
+    }
+
+    /**
+     * Registra uma requisição do cliente no instante informado.
+     *
+     * @param chaveCliente Chave do cliente ({@link MapaContadoresCliente#chave})
+     * @param bytes Tamanho da requisição em bytes
+     * @param agoraMillis Instante da requisição (epoch em milissegundos)
+     */
+    public void registrar(long chaveCliente, int bytes, long agoraMillis) {
+        if (agoraMillis >= fimJanela) {
+            rotacionarSeNecessario(agoraMillis);
+        }
+
+        Faixa faixa = faixas[(int) Hash64.misturar(chaveCliente) & mascaraFaixas];
+        synchronized (faixa) {
+            faixa.atual.adicionar(chaveCliente, bytes);
+        }
+    }
+
+    /**
+     * Fecha a janela corrente se o instante informado já passou de seu fim.
+     * Também pode ser chamado periodicamente para fechar janelas ociosas.
+     *
+     * @param agoraMillis Instante atual (epoch em milissegundos)
+     */
+    public synchronized void rotacionarSeNecessario(long agoraMillis) {
+        if (agoraMillis < fimJanela) {
+            return;
+        }
+
+        long novoInicio = agoraMillis - (agoraMillis % duracaoMillis);
+        if (inicioJanela >= 0) {
+            fecharJanela();
+        }
+        inicioJanela = novoInicio;
+        fimJanela = novoInicio + duracaoMillis;
+    }
+
+    /**
+     * Troca os mapas de todas as faixas e entrega a janela mesclada.
+     */
+    private void fecharJanela() {
+        janelaFechada.limpar();
+        for (Faixa faixa : faixas) {
+            MapaContadoresCliente fechado;
+            synchronized (faixa) {
+                fechado = faixa.atual;
+                faixa.atual = faixa.reserva;
+                faixa.reserva = fechado;
+            }
+            // O mapa reserva só é tocado por quem detém o lock desta janela
+            janelaFechada.mesclar(fechado);
+            fechado.limpar();
+        }
+
+        ConsumidorJanela destino = consumidor;
+        if (destino != null && janelaFechada.tamanho() > 0) {
+            try {
+                destino.janelaFechada(inicioJanela, duracaoMillis, janelaFechada);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Erro no consumidor de janelas", e);
+            }
+        }
+    }
+
+    /**
+     * Define o destino das janelas fechadas.
+     *
+     * @param consumidor Novo consumidor (pode ser null)
+     */
+    public void setConsumidor(ConsumidorJanela consumidor) {
+        this.consumidor = consumidor;
+    }
+
+    /**
+     * Retorna a duração da janela.
+     *
+     * @return Duração em milissegundos
+     */
+    public long getDuracaoMillis() {
+        return duracaoMillis;
+    }
+}
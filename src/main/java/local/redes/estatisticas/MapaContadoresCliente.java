@@ -0,0 +1,230 @@
+package local.redes.estatisticas;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.util.Arrays;
+
+/**
+ * Mapa primitivo de contadores por cliente, indexado por chave long.
+ * Usa endereçamento aberto com sondagem linear em arrays paralelos, sem
+ * objetos por entrada. Não é thread-safe; o sincronismo fica a cargo de
+ * quem o utiliza.
+ *
+ * @author Igor Rozalem
+ */
+public class MapaContadoresCliente {
+
+    private static final long VAZIO = -1L;
+    private static final int CAPACIDADE_MINIMA = 16;
+
+    private long[] chaves;
+    private long[] requisicoes;
+    private long[] bytes;
+    private int tamanho;
+    private int mascara;
+
+    /**
+     * Interface para percorrer as entradas sem criar objetos.
+     */
+    public interface Visitante {
+        /**
+         * Chamado para cada cliente presente no mapa.
+         *
+         * @param chave Chave do cliente (IPv4 e porta empacotados)
+         * @param requisicoes Quantidade de requisições
+         * @param bytes Total de bytes recebidos
+         */
+        void visitar(long chave, long requisicoes, long bytes);
+    }
+
+    /**
+     * Cria um mapa com capacidade inicial padrão.
+     */
+    public MapaContadoresCliente() {
+        this(CAPACIDADE_MINIMA);
+    }
+
+    /**
+     * Cria um mapa com a capacidade inicial informada.
+     *
+     * @param capacidadeInicial Quantidade esperada de clientes
+     */
+    public MapaContadoresCliente(int capacidadeInicial) {
+        int capacidade = Integer.highestOneBit(Math.max(CAPACIDADE_MINIMA, capacidadeInicial * 2 - 1)) << 1;
+        alocar(capacidade);
+    }
+
+    private void alocar(int capacidade) {
+        chaves = new long[capacidade];
+        Arrays.fill(chaves, VAZIO);
+        requisicoes = new long[capacidade];
+        bytes = new long[capacidade];
+        mascara = capacidade - 1;
+        tamanho = 0;
+    }
+
+    /**
+     * Empacota endereço e porta em uma chave long.
+     * Endereços IPv4 ocupam os bits 16 a 47 e a porta os 16 bits inferiores;
+     * outros endereços são reduzidos por hash a 32 bits, com o bit 48 ligado
+     * para não colidirem com endereços IPv4.
+     *
+     * @param endereco Endereço do cliente
+     * @param porta Porta do cliente
+     * @return Chave não negativa
+     */
+    public static long chave(InetAddress endereco, int porta) {
+        byte[] bytesEndereco = endereco.getAddress();
+        long parteEndereco;
+        if (endereco instanceof Inet4Address) {
+            parteEndereco = ((bytesEndereco[0] & 0xffL) << 24)
+                    | ((bytesEndereco[1] & 0xffL) << 16)
+                    | ((bytesEndereco[2] & 0xffL) << 8)
+                    | (bytesEndereco[3] & 0xffL);
+        } else {
+            parteEndereco = (Hash64.de(bytesEndereco) & 0xffffffffL) | 0x100000000L;
+        }
+        return (parteEndereco << 16) | (porta & 0xffff);
+    }
+
+    /**
+     * Descreve uma chave no formato "a.b.c.d:porta".
+     *
+     * @param chave Chave gerada por {@link #chave(InetAddress, int)}
+     * @return Descrição legível da chave
+     */
+    public static String descrever(long chave) {
+        long endereco = chave >>> 16;
+        int porta = (int) (chave & 0xffff);
+        if (endereco > 0xffffffffL) {
+            return "ipv6#" + Long.toHexString(endereco & 0xffffffffL) + ":" + porta;
+        }
+        return ((endereco >>> 24) & 0xff) + "." + ((endereco >>> 16) & 0xff) + "."
+                + ((endereco >>> 8) & 0xff) + "." + (endereco & 0xff) + ":" + porta;
+    }
+
+    /**
+     * Soma uma requisição e seus bytes ao cliente informado.
+     *
+     * @param chave Chave do cliente (não negativa)
+     * @param quantidadeBytes Bytes da requisição
+     */
+    public void adicionar(long chave, long quantidadeBytes) {
+        adicionar(chave, 1, quantidadeBytes);
+    }
+
+    /**
+     * Soma contadores ao cliente informado.
+     *
+     * @param chave Chave do cliente (não negativa)
+     * @param quantidadeRequisicoes Requisições a somar
+     * @param quantidadeBytes Bytes a somar
+     */
+    public void adicionar(long chave, long quantidadeRequisicoes, long quantidadeBytes) {
+        if (chave < 0) {
+            throw new IllegalArgumentException("Chave deve ser não negativa");
+        }
+        int indice = posicao(chave);
+        if (chaves[indice] == VAZIO) {
+            chaves[indice] = chave;
+            tamanho++;
+        }
+        requisicoes[indice] += quantidadeRequisicoes;
+        bytes[indice] += quantidadeBytes;
+
+        // Mantém fator de carga abaixo de 0,5 para sondagens curtas
+        if (tamanho * 2 > chaves.length) {
+            redimensionar();
+        }
+    }
+
+    private int posicao(long chave) {
+        int indice = (int) Hash64.misturar(chave) & mascara;
+        while (chaves[indice] != VAZIO && chaves[indice] != chave) {
+            indice = (indice + 1) & mascara;
+        }
+        return indice;
+    }
+
+    private void redimensionar() {
+        long[] chavesAntigas = chaves;
+        long[] requisicoesAntigas = requisicoes;
+        long[] bytesAntigos = bytes;
+        alocar(chavesAntigas.length * 2);
+        for (int i = 0; i < chavesAntigas.length; i++) {
+            if (chavesAntigas[i] != VAZIO) {
+                int indice = posicao(chavesAntigas[i]);
+                chaves[indice] = chavesAntigas[i];
+                requisicoes[indice] = requisicoesAntigas[i];
+                bytes[indice] = bytesAntigos[i];
+                tamanho++;
+            }
+        }
+    }
+
+    /**
+     * Retorna a quantidade de requisições do cliente.
+     *
+     * @param chave Chave do cliente
+     * @return Requisições registradas, ou 0 se ausente
+     */
+    public long getRequisicoes(long chave) {
+        int indice = posicao(chave);
+        return chaves[indice] == chave ? requisicoes[indice] : 0;
+    }
+
+    /**
+     * Retorna a quantidade de bytes do cliente.
+     *
+     * @param chave Chave do cliente
+     * @return Bytes registrados, ou 0 se ausente
+     */
+    public long getBytes(long chave) {
+        int indice = posicao(chave);
+        return chaves[indice] == chave ? bytes[indice] : 0;
+    }
+
+    /**
+     * Percorre todas as entradas do mapa.
+     *
+     * @param visitante Visitante chamado para cada cliente
+     */
+    public void paraCada(Visitante visitante) {
+        for (int i = 0; i < chaves.length; i++) {
+            if (chaves[i] != VAZIO) {
+                visitante.visitar(chaves[i], requisicoes[i], bytes[i]);
+            }
+        }
+    }
+
+    /**
+     * Soma todas as entradas de outro mapa a este.
+     *
+     * @param outro Mapa de origem
+     */
+    public void mesclar(MapaContadoresCliente outro) {
+        outro.paraCada(this::adicionar);
+    }
+
+    /**
+     * Remove todas as entradas, mantendo a capacidade alocada.
+     */
+    public void limpar() {
+        if (tamanho == 0) {
+            return;
+        }
+        Arrays.fill(chaves, VAZIO);
+        Arrays.fill(requisicoes, 0);
+        Arrays.fill(bytes, 0);
+        tamanho = 0;
+    }
+
+    /**
+     * Retorna a quantidade de clientes no mapa.
+     *
+     * @return Número de entradas
+     */
+    public int tamanho() {
+        return tamanho;
+    }
+}
@@ -0,0 +1,152 @@
+package local.redes.estatisticas;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import local.redes.multicast.MulticastManager;
+
+/**
+ * Ferramenta de linha de comando que assina o feed multicast de estatísticas
+ * e agrega os quadros de todos os servidores do grupo.
+ *
+ * @author Igor Rozalem
+ */
+public class MonitorEstatisticas implements MulticastManager.RawMessageListener {
+
+    private static final Logger LOGGER = Logger.getLogger(MonitorEstatisticas.class.getName());
+    private static final int INTERVALO_PADRAO = 2000;
+
+    // Servidores sem quadro há mais de N intervalos próprios são removidos
+    private static final int INTERVALOS_ATE_EXPIRAR = 3;
+
+    private final Map<Long, Entrada> servidores = new ConcurrentHashMap<>();
+
+    /**
+     * Último quadro recebido de um servidor.
+     */
+    private static final class Entrada {
+        private final QuadroEstatisticas quadro;
+        private final InetAddress origem;
+        private final long recebidoEm;
+
+        private Entrada(QuadroEstatisticas quadro, InetAddress origem, long recebidoEm) {
+            this.quadro = quadro;
+            this.origem = origem;
+            this.recebidoEm = recebidoEm;
+        }
+    }
+
+    @Override
+    public void onPacketReceived(ByteBuffer data, InetAddress source) {
+        if (!QuadroEstatisticas.ehQuadro(data)) {
+            return;
+        }
+        QuadroEstatisticas quadro = QuadroEstatisticas.decodificar(data);
+        servidores.put(quadro.getIdServidor(), new Entrada(quadro, source, System.currentTimeMillis()));
+    }
+
+    /**
+     * Remove servidores que pararam de publicar e retorna os ativos.
+     *
+     * @param agora Instante atual em milissegundos
+     * @return Entradas dos servidores ativos
+     */
+    private List<Entrada> servidoresAtivos(long agora) {
+        List<Entrada> ativos = new ArrayList<>();
+        for (Map.Entry<Long, Entrada> item : servidores.entrySet()) {
+            Entrada entrada = item.getValue();
+            long limite = (long) Math.max(1, entrada.quadro.getIntervaloMillis()) * INTERVALOS_ATE_EXPIRAR;
+            if (agora - entrada.recebidoEm > limite) {
+                servidores.remove(item.getKey(), entrada);
+            } else {
+                ativos.add(entrada);
+            }
+        }
+        return ativos;
+    }
+
+    /**
+     * Monta a tabela com uma linha por servidor e o total da frota.
+     *
+     * @return Texto da tabela
+     */
+    public String montarRelatorio() {
+        List<Entrada> ativos = servidoresAtivos(System.currentTimeMillis());
+
+        StringBuilder relatorio = new StringBuilder();
+        relatorio.append("==================================================================================\n");
+        relatorio.append(String.format("%-22s %10s %8s %8s %8s %8s %8s %8s%n",
+                "Servidor", "req/s", "p50(us)", "p90(us)", "p99(us)", "max(us)", "descart.", "pend."));
+
+        double vazaoTotal = 0;
+        long p99Maximo = 0;
+        long maximo = 0;
+        long descartadas = 0;
+        long pendentes = 0;
+        for (Entrada entrada : ativos) {
+            QuadroEstatisticas q = entrada.quadro;
+            relatorio.append(String.format("%-22s %10.1f %8d %8d %8d %8d %8d %8d%n",
+                    entrada.origem.getHostAddress() + ":" + q.getPorta(),
+                    q.getVazao(), q.getLatenciaP50Micros(), q.getLatenciaP90Micros(),
+                    q.getLatenciaP99Micros(), q.getLatenciaMaximaMicros(),
+                    q.getDescartadas(), q.getPendentes()));
+            vazaoTotal += q.getVazao();
+            p99Maximo = Math.max(p99Maximo, q.getLatenciaP99Micros());
+            maximo = Math.max(maximo, q.getLatenciaMaximaMicros());
+            descartadas += q.getDescartadas();
+            pendentes += q.getPendentes();
+        }
+
+        relatorio.append("----------------------------------------------------------------------------------\n");
+        relatorio.append(String.format("%-22s %10.1f %8s %8s %8d %8d %8d %8d%n",
+                "Frota (" + ativos.size() + " servidores)", vazaoTotal, "-", "-",
+                p99Maximo, maximo, descartadas, pendentes));
+        return relatorio.toString();
+    }
+
+    /**
+     * Método principal para iniciar o monitor.
+     *
+     * @param args grupo multicast, porta e intervalo de exibição opcional (ms)
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.out.println("Uso: java MonitorEstatisticas <endereco_multicast> <porta> [intervalo_ms]");
+            System.out.println("Exemplo: java MonitorEstatisticas 239.1.1.1 9100 2000");
+            System.exit(1);
+        }
+
+        try {
+            InetAddress grupo = InetAddress.getByName(args[0]);
+            int porta = Integer.parseInt(args[1]);
+            int intervalo = args.length > 2 ? Integer.parseInt(args[2]) : INTERVALO_PADRAO;
+
+            MonitorEstatisticas monitor = new MonitorEstatisticas();
+            MulticastManager manager = new MulticastManager(grupo, porta, "monitor");
+            manager.setRawMessageListener(monitor);
+            manager.startReceiving();
+            Runtime.getRuntime().addShutdownHook(new Thread(manager::stop));
+
+            System.out.println("Monitorando estatísticas em " + grupo.getHostAddress() + ":" + porta);
+            while (true) {
+                Thread.sleep(intervalo);
+                System.out.print(monitor.montarRelatorio());
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Número inválido: " + e.getMessage());
+            System.exit(1);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Erro ao assinar o feed de estatísticas", e);
+            System.exit(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package local.redes.estatisticas;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Quadro binário de estatísticas publicado periodicamente pelo servidor.
+ * Formato fixo de {@value #TAMANHO} bytes, big-endian:
+ *
+ * <pre>
+ * magia 'S' 'T' (2) | versão (1) | reservado (1) | idServidor (8) | porta (4)
+ * epochMillis (8) | intervaloMillis (4) | requisicoes (8) | descartadas (8)
+ * latência p50 (8) | p90 (8) | p99 (8) | máxima (8) em microssegundos
+ * pendentes (4) | threadsAtivas (4) | totalRequisicoes (8)
+ * </pre>
+ *
+ * @author Igor Rozalem
+ */
+public final class QuadroEstatisticas {
+
+    public static final byte MAGIA_0 = 'S';
+    public static final byte MAGIA_1 = 'T';
+    public static final byte VERSAO = 1;
+    public static final int TAMANHO = 92;
+
+    private final long idServidor;
+    private final int porta;
+    private final long epochMillis;
+    private final int intervaloMillis;
+    private final long requisicoes;
+    private final long descartadas;
+    private final long latenciaP50Micros;
+    private final long latenciaP90Micros;
+    private final long latenciaP99Micros;
+    private final long latenciaMaximaMicros;
+    private final int pendentes;
+    private final int threadsAtivas;
+    private final long totalRequisicoes;
+
+    /**
+     * Cria um quadro com os valores informados.
+     *
+     * @param idServidor Identificador aleatório do processo servidor
+     * @param porta Porta UDP atendida pelo servidor
+     * @param epochMillis Instante da publicação
+     * @param intervaloMillis Duração do intervalo medido
+     * @param requisicoes Requisições processadas no intervalo
+     * @param descartadas Requisições descartadas por erro no intervalo
+     * @param latenciaP50Micros Mediana da latência de processamento
+     * @param latenciaP90Micros Percentil 90 da latência
+     * @param latenciaP99Micros Percentil 99 da latência
+     * @param latenciaMaximaMicros Latência máxima
+     * @param pendentes Requisições aguardando ou em processamento
+     * @param threadsAtivas Threads ocupadas no pool do servidor
+     * @param totalRequisicoes Requisições processadas desde o início
+     */
+    public QuadroEstatisticas(long idServidor, int porta, long epochMillis, int intervaloMillis,
+            long requisicoes, long descartadas, long latenciaP50Micros, long latenciaP90Micros,
+            long latenciaP99Micros, long latenciaMaximaMicros, int pendentes, int threadsAtivas,
+            long totalRequisicoes) {
+        this.idServidor = idServidor;
+        this.porta = porta;
+        this.epochMillis = epochMillis;
+        this.intervaloMillis = intervaloMillis;
+        this.requisicoes = requisicoes;
+        this.descartadas = descartadas;
+        this.latenciaP50Micros = latenciaP50Micros;
+        this.latenciaP90Micros = latenciaP90Micros;
+        this.latenciaP99Micros = latenciaP99Micros;
+        this.latenciaMaximaMicros = latenciaMaximaMicros;
+        this.pendentes = pendentes;
+        this.threadsAtivas = threadsAtivas;
+        this.totalRequisicoes = totalRequisicoes;
+    }
+
+    /**
+     * Codifica o quadro em bytes.
+     *
+     * @return Array de {@value #TAMANHO} bytes
+     */
+    public byte[] codificar() {
+        ByteBuffer buffer = ByteBuffer.allocate(TAMANHO);
+        buffer.put(MAGIA_0).put(MAGIA_1).put(VERSAO).put((byte) 0)
+                .putLong(idServidor).putInt(porta)
+                .putLong(epochMillis).putInt(intervaloMillis)
+                .putLong(requisicoes).putLong(descartadas)
+                .putLong(latenciaP50Micros).putLong(latenciaP90Micros)
+                .putLong(latenciaP99Micros).putLong(latenciaMaximaMicros)
+                .putInt(pendentes).putInt(threadsAtivas)
+                .putLong(totalRequisicoes);
+        return buffer.array();
+    }
+
+    /**
+     * Verifica se os dados parecem ser um quadro de estatísticas.
+     *
+     * @param dados Dados recebidos
+     * @param offset Início dos dados
+     * @param tamanho Quantidade de bytes válidos
+     * @return true se a magia, a versão e o tamanho conferem
+     */
+    public static boolean ehQuadro(byte[] dados, int offset, int tamanho) {
+        return ehQuadro(ByteBuffer.wrap(dados, offset, tamanho));
+    }
+
+    /**
+     * Verifica se os bytes restantes do buffer parecem ser um quadro de estatísticas.
+     * A posição do buffer não é alterada.
+     *
+     * @param dados Buffer posicionado no início dos dados
+     * @return true se a magia, a versão e o tamanho conferem
+     */
+    public static boolean ehQuadro(ByteBuffer dados) {
+        int inicio = dados.position();
+        return dados.remaining() == TAMANHO
+                && dados.get(inicio) == MAGIA_0
+                && dados.get(inicio + 1) == MAGIA_1
+                && dados.get(inicio + 2) == VERSAO;
+    }
+
+    /**
+     * Decodifica um quadro de estatísticas.
+     *
+     * @param dados Dados recebidos
+     * @param offset Início dos dados
+     * @param tamanho Quantidade de bytes válidos
+     * @return Quadro decodificado
+     * @throws IllegalArgumentException Se os dados não forem um quadro válido
+     */
+    public static QuadroEstatisticas decodificar(byte[] dados, int offset, int tamanho) {
+        return decodificar(ByteBuffer.wrap(dados, offset, tamanho));
+    }
+
+    /**
+     * Decodifica um quadro de estatísticas a partir dos bytes restantes do buffer.
+     * A posição do buffer não é alterada.
+     *
+     * @param dados Buffer posicionado no início dos dados
+     * @return Quadro decodificado
+     * @throws IllegalArgumentException Se os dados não forem um quadro válido
+     */
+    public static QuadroEstatisticas decodificar(ByteBuffer dados) {
+        if (!ehQuadro(dados)) {
+            throw new IllegalArgumentException("Dados não são um quadro de estatísticas");
+        }
+        ByteBuffer buffer = dados.duplicate().order(ByteOrder.BIG_ENDIAN);
+        buffer.position(buffer.position() + 4);
+        return new QuadroEstatisticas(
+                buffer.getLong(), buffer.getInt(),
+                buffer.getLong(), buffer.getInt(),
+                buffer.getLong(), buffer.getLong(),
+                buffer.getLong(), buffer.getLong(),
+                buffer.getLong(), buffer.getLong(),
+                buffer.getInt(), buffer.getInt(),
+                buffer.getLong());
+    }
+
+    /**
+     * Calcula a vazão do intervalo em requisições por segundo.
+     *
+     * @return Requisições por segundo
+     */
+    public double getVazao() {
+        return intervaloMillis > 0 ? requisicoes * 1000.0 / intervaloMillis : 0;
+    }
+
+    /**
+     * Obtém o identificador do servidor.
+     *
+     * @return O identificador do servidor
+     */
+    public long getIdServidor() {
+        return idServidor;
+    }
+
+    /**
+     * Obtém a porta UDP do servidor.
+     *
+     * @return A porta UDP do servidor
+     */
+    public int getPorta() {
+        return porta;
+    }
+
+    /**
+     * Obtém o instante da publicação.
+     *
+     * @return O instante da publicação
+     */
+    public long getEpochMillis() {
+        return epochMillis;
+    }
+
+    /**
+     * Obtém a duração do intervalo em milissegundos.
+     *
+     * @return A duração do intervalo em milissegundos
+     */
+    public int getIntervaloMillis() {
+        return intervaloMillis;
+    }
+
+    /**
+     * Obtém as requisições processadas no intervalo.
+     *
+     * @return As requisições processadas no intervalo
+     */
+    public long getRequisicoes() {
+        return requisicoes;
+    }
+
+    /**
+     * Obtém as requisições descartadas no intervalo.
+     *
+     * @return As requisições descartadas no intervalo
+     */
+    public long getDescartadas() {
+        return descartadas;
+    }
+
+    /**
+     * Obtém a mediana da latência em microssegundos.
+     *
+     * @return A mediana da latência em microssegundos
+     */
+    public long getLatenciaP50Micros() {
+        return latenciaP50Micros;
+    }
+
+    /**
+     * Obtém o percentil 90 da latência em microssegundos.
+     *
+     * @return O percentil 90 da latência em microssegundos
+     */
+    public long getLatenciaP90Micros() {
+        return latenciaP90Micros;
+    }
+
+    /**
+     * Obtém o percentil 99 da latência em microssegundos.
+     *
+     * @return O percentil 99 da latência em microssegundos
+     */
+    public long getLatenciaP99Micros() {
+        return latenciaP99Micros;
+    }
+
+    /**
+     * Obtém a latência máxima em microssegundos.
+     *
+     * @return A latência máxima em microssegundos
+     */
+    public long getLatenciaMaximaMicros() {
+        return latenciaMaximaMicros;
+    }
+
+    /**
+     * Obtém as requisições pendentes.
+     *
+     * @return As requisições pendentes
+     */
+    public int getPendentes() {
+        return pendentes;
+    }
+
+    /**
+     * Obtém as threads ativas no pool.
+     *
+     * @return As threads ativas no pool
+     */
+    public int getThreadsAtivas() {
+        return threadsAtivas;
+    }
+
+    /**
+     * Obtém o total de requisições desde o início.
+     *
+     * @return O total de requisições desde o início
+     */
+    public long getTotalRequisicoes() {
+        return totalRequisicoes;
+    }
+}
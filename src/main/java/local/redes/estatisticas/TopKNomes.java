@@ -0,0 +1,169 @@
+package local.redes.estatisticas;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Estimativa contínua dos K nomes mais frequentes.
+ * As frequências vêm de um Count-Min Sketch e um conjunto fixo de candidatos
+ * guarda os nomes mais pesados; o heap é montado apenas ao tirar um retrato,
+ * de modo que o registro nunca bloqueia as threads do servidor.
+ *
+ * @author Igor Rozalem
+ */
+public class TopKNomes {
+
+    // Candidatos extras reduzem a chance de perder nomes em ascensão
+    private static final int FATOR_CANDIDATOS = 4;
+
+    /**
+     * Nome candidato e seu hash, publicados juntos em uma única referência.
+     */
+    private static final class Candidato {
+        private final String nome;
+        private final long hash;
+
+        Candidato(String nome, long hash) {
+            this.nome = nome;
+            this.hash = hash;
+        }
+    }
+
+    private final int k;
+    private final CountMinSketch sketch;
+    private final AtomicReferenceArray<Candidato> candidatos;
+    private final AtomicLong limiarMinimo;
+
+    /**
+     * Cria um rastreador de top-K com sketch de dimensões padrão.
+     *
+     * @param k Quantidade de nomes a reportar
+     */
+    public TopKNomes(int k) {
+        this(k, new CountMinSketch(4, 2048));
+    }
+
+    /**
+     * Cria um rastreador de top-K usando o sketch informado.
+     *
+     * @param k Quantidade de nomes a reportar
+     * @param sketch Sketch usado para estimar frequências
+     */
+    public TopKNomes(int k, CountMinSketch sketch) {
+        if (k <= 0) {
+            throw new IllegalArgumentException("K deve ser positivo");
+        }
+        this.k = k;
+        this.sketch = sketch;
+        this.candidatos = new AtomicReferenceArray<>(k * FATOR_CANDIDATOS);
+        this.limiarMinimo = new AtomicLong(0);
+    }
+
+    /**
+     * Registra uma ocorrência do nome.
+     *
+     * @param nome Nome recebido
+     */
+    public void registrar(String nome) {
+        if (nome == null) {
+            return;
+        }
+
+        long hash = Hash64.de(nome);
+        long estimativa = sketch.adicionarHash(hash);
+
+        // Caminho rápido: nomes leves não disputam vaga de candidato
+        if (estimativa <= limiarMinimo.get()) {
+            return;
+        }
+
+        int vaga = -1;
+        Candidato substituido = null;
+        long menorEstimativa = Long.MAX_VALUE;
+        for (int i = 0; i < candidatos.length(); i++) {
+            Candidato atual = candidatos.get(i);
+            if (atual == null) {
+                if (menorEstimativa > 0) {
+                    vaga = i;
+                    substituido = null;
+                    menorEstimativa = 0;
+                }
+                continue;
+            }
+            if (atual.hash == hash && atual.nome.equals(nome)) {
+                return;
+            }
+            long estimativaAtual = sketch.estimarHash(atual.hash);
+            if (estimativaAtual < menorEstimativa) {
+                menorEstimativa = estimativaAtual;
+                vaga = i;
+                substituido = atual;
+            }
+        }
+
+        // Só troca se a vaga ainda guarda o candidato avaliado
+        if (vaga >= 0 && estimativa > menorEstimativa
+                && candidatos.compareAndSet(vaga, substituido, new Candidato(nome, hash))) {
+            atualizarLimiar();
+        }
+    }
+
+    /**
+     * Recalcula o menor peso entre os candidatos quando todas as vagas estão ocupadas.
+     */
+    private void atualizarLimiar() {
+        long menor = Long.MAX_VALUE;
+        for (int i = 0; i < candidatos.length(); i++) {
+            Candidato candidato = candidatos.get(i);
+            if (candidato == null) {
+                return;
+            }
+            menor = Math.min(menor, sketch.estimarHash(candidato.hash));
+        }
+        limiarMinimo.set(menor);
+    }
+
+    /**
+     * Retorna um retrato dos K nomes mais frequentes, do maior para o menor.
+     *
+     * @return Lista de pares nome/frequência estimada
+     */
+    public List<Map.Entry<String, Long>> retrato() {
+        PriorityQueue<Map.Entry<String, Long>> heap = new PriorityQueue<>(
+                k + 1, (a, b) -> Long.compare(a.getValue(), b.getValue()));
+
+        // Inserções concorrentes podem ocupar duas vagas com o mesmo nome
+        Set<String> vistos = new HashSet<>();
+        for (int i = 0; i < candidatos.length(); i++) {
+            Candidato candidato = candidatos.get(i);
+            if (candidato == null || !vistos.add(candidato.nome)) {
+                continue;
+            }
+            heap.offer(new AbstractMap.SimpleImmutableEntry<>(candidato.nome, sketch.estimarHash(candidato.hash)));
+            if (heap.size() > k) {
+                heap.poll();
+            }
+        }
+
+        List<Map.Entry<String, Long>> resultado = new ArrayList<>(heap);
+        resultado.sort(Collections.reverseOrder((a, b) -> Long.compare(a.getValue(), b.getValue())));
+        return resultado;
+    }
+
+    /**
+     * Retorna a quantidade de nomes reportados.
+     *
+     * @return Valor de K
+     */
+    public int getK() {
+        return k;
+    }
+}
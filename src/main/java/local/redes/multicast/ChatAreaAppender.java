@@ -0,0 +1,139 @@
+package local.redes.multicast;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import javax.swing.SwingUtilities;
+
+/**
+ * Acrescenta mensagens ao histórico de um chat em lotes, no máximo uma vez
+ * por quadro de tela (~{@value #FRAME_MILLIS} ms).
+ *
+ * Qualquer thread pode chamar {@link #append(String)}: a mensagem só entra em
+ * uma fila concorrente. A primeira mensagem após uma atualização agenda a
+ * próxima para {@value #FRAME_MILLIS} ms depois da anterior, e então a thread
+ * de eventos junta tudo o que chegou, faz uma só inserção no
+ * {@link ChatHistory} e rola a lista uma vez. Assim uma sala movimentada custa
+ * algumas dezenas de atualizações da tela por segundo, e não uma por mensagem.
+ *
+ * @author Igor Rozalem
+ */
+public final class ChatAreaAppender {
+
+    /** Intervalo mínimo entre duas atualizações da área, em milissegundos. */
+    public static final int FRAME_MILLIS = 16;
+
+    // Limite de linhas por atualização, para não prender a thread de eventos
+    static final int MAX_LINES_PER_FLUSH = 5000;
+
+    private static final long FRAME_NANOS = TimeUnit.MILLISECONDS.toNanos(FRAME_MILLIS);
+
+    // Agenda as atualizações de todas as áreas; a escrita em si é na thread de eventos
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(task -> {
+        Thread thread = new Thread(task, "chat-render");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final ChatHistoryView view;
+    private final Queue<String> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final Runnable flushTask = this::flush;
+    private volatile long lastFlushNanos = System.nanoTime() - FRAME_NANOS;
+
+    // Acessados apenas pela thread de eventos
+    private final List<String> batch = new ArrayList<>();
+    private long flushes;
+    private long appended;
+
+    /**
+     * Cria o acumulador para a lista informada.
+     *
+     * @param view Lista do chat que recebe as mensagens
+     */
+    public ChatAreaAppender(ChatHistoryView view) {
+        this.view = view;
+    }
+
+    /**
+     * Enfileira uma mensagem para a próxima atualização. Pode ser chamado de
+     * qualquer thread; o horário é acrescentado na atualização.
+     *
+     * @param message Mensagem, sem quebra de linha final
+     */
+    public void append(String message) {
+        pending.offer(message);
+        if (scheduled.compareAndSet(false, true)) {
+            schedule();
+        }
+    }
+
+    /**
+     * Agenda a próxima atualização, respeitando o intervalo desde a anterior.
+     */
+    private void schedule() {
+        long delay = lastFlushNanos + FRAME_NANOS - System.nanoTime();
+        if (delay <= 0) {
+            SwingUtilities.invokeLater(flushTask);
+        } else {
+            SCHEDULER.schedule(() -> SwingUtilities.invokeLater(flushTask), delay, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Escreve no histórico as mensagens pendentes. Deve ser chamado na thread de
+     * eventos; a atualização agendada o chama sozinha, mas quem precisa da área
+     * atualizada na hora (ex.: ao exibir a própria mensagem) pode antecipá-lo.
+     */
+    public void flush() {
+        // Liberar o agendamento antes de esvaziar: o que chegar depois agenda de novo
+        lastFlushNanos = System.nanoTime();
+        scheduled.set(false);
+
+        String prefix = "[" + MulticastManager.getCurrentTimestamp() + "] ";
+        String message;
+        while (batch.size() < MAX_LINES_PER_FLUSH && (message = pending.poll()) != null) {
+            batch.add(prefix + message);
+        }
+        if (!batch.isEmpty()) {
+            view.getHistory().addAll(batch);
+            view.scrollToEnd();
+            flushes++;
+            appended += batch.size();
+            batch.clear();
+        }
+        if (!pending.isEmpty() && scheduled.compareAndSet(false, true)) {
+            schedule();
+        }
+    }
+
+    /**
+     * Descarta as mensagens ainda não escritas.
+     */
+    public void clear() {
+        pending.clear();
+    }
+
+    /**
+     * Retorna a quantidade de atualizações feitas no histórico. Chamado na thread de eventos.
+     *
+     * @return Atualizações da área
+     */
+    public long getFlushes() {
+        return flushes;
+    }
+
+    /**
+     * Retorna a quantidade de mensagens escritas no histórico. Chamado na thread de eventos.
+     *
+     * @return Mensagens escritas
+     */
+    public long getAppended() {
+        return appended;
+    }
+}
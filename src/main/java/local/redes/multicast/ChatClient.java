@@ -11,22 +11,26 @@ import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.io.IOException;
 import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.swing.BorderFactory;
 import javax.swing.JButton;
 import javax.swing.JFrame;
 import javax.swing.JLabel;
+import javax.swing.JList;
 import javax.swing.JOptionPane;
 import javax.swing.JPanel;
 import javax.swing.JScrollPane;
-import javax.swing.JTextArea;
 import javax.swing.JTextField;
 import javax.swing.SwingUtilities;
 import javax.swing.UIManager;
 import javax.swing.UnsupportedLookAndFeelException;
 import javax.swing.border.EmptyBorder;
 
+import local.redes.multicast.log.ChatLog;
+
 /**
  * Cliente para chat multicast com interface gráfica.
  * 
@@ -36,14 +40,31 @@ public class ChatClient extends JFrame implements MulticastManager.MessageListen
     private static final Logger LOGGER = Logger.getLogger(ChatClient.class.getName());
     private static final long serialVersionUID = 1L;
     
+    // Mensagens do histórico exibidas ao abrir a sala
+    private static final int SCROLLBACK_LINES = 1000;
+    // Resultados exibidos por busca
+    private static final int SEARCH_LIMIT = 200;
+    
     // Componentes da interface
-    private JTextArea chatArea;
+    private ChatHistoryView chatView;
     private JTextField messageField;
     private JButton sendButton;
+    private JButton searchButton;
     private JLabel statusLabel;
+    private ChatAreaAppender chatAppender;
     
     // Gerenciador de comunicação multicast
     private MulticastManager multicastManager;
+    private final String username;
+    
+    // Histórico persistente da sala, ou null se não puder ser aberto
+    private volatile ChatLog chatLog;
+    // Horário da última mensagem já gravada ao abrir a sala e da entrada
+    private long lastLoggedAt;
+    private volatile long joinedAt;
+    
+    // Status da conexão, completado com a quantidade de participantes
+    private String connectionStatus = "Não conectado";
     
     /**
      * Construtor padrão.
@@ -53,15 +74,31 @@ public class ChatClient extends JFrame implements MulticastManager.MessageListen
      * @param username Nome do usuário
      */
     public ChatClient(InetAddress groupAddress, int port, String username) {
+        this(groupAddress, port, username, MulticastFrame.DEFAULT_ROOM);
+    }
+    
+    /**
+     * Construtor para uma sala específica do grupo.
+     * 
+     * @param groupAddress Endereço do grupo multicast
+     * @param port Porta do grupo multicast
+     * @param username Nome do usuário
+     * @param room Sala, de 0 a {@value MulticastFrame#MAX_ROOM}
+     */
+    public ChatClient(InetAddress groupAddress, int port, String username, int room) {
         // Configuração da janela
         super("Chat Multicast - " + username);
         setDefaultCloseOperation(JFrame.DO_NOTHING_ON_CLOSE);
         setSize(600, 500);
         setLocationRelativeTo(null);
+        this.username = username;
         
         // Inicializar componentes da interface
         initializeInterface();
         
+        // Reabrir o histórico da sala antes de receber mensagens novas
+        openChatLog(groupAddress, port, room);
+        
         // Configurar manipulador de fechamento de janela
         addWindowListener(new WindowAdapter() {
             @Override
@@ -72,16 +109,28 @@ public class ChatClient extends JFrame implements MulticastManager.MessageListen
         
         try {
             // Inicializar gerenciador multicast
-            multicastManager = new MulticastManager(groupAddress, port, username);
+            multicastManager = new MulticastManager(groupAddress, port, username, room);
             multicastManager.setMessageListener(this);
+            multicastManager.getPresence().addListener(this::onPresenceChanged);
+            multicastManager.enableFloodGuard().addListener(this::onSenderMuted);
             
             // Iniciar recebimento de mensagens
             multicastManager.startReceiving();
             
             // Atualizar status
-            statusLabel.setText("Conectado ao grupo " + groupAddress.getHostAddress() + ":" + port);
+            connectionStatus = "Conectado ao grupo " + groupAddress.getHostAddress() + ":" + port
+                    + (room != MulticastFrame.DEFAULT_ROOM ? ", sala " + room : "");
+            updateStatus();
             appendSystemMessage("Você entrou na sala de chat.");
             
+            // Pedir à sala o que foi dito antes da entrada
+            joinedAt = System.currentTimeMillis();
+            try {
+                multicastManager.requestState(StateTransfer.HISTORY_SIZE, this::onStateReceived);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Não foi possível pedir as mensagens anteriores", e);
+            }
+            
         } catch (IOException e) {
             LOGGER.log(Level.SEVERE, "Erro ao inicializar gerenciador multicast", e);
             showError("Erro ao conectar ao grupo multicast: " + e.getMessage());
@@ -89,6 +138,60 @@ public class ChatClient extends JFrame implements MulticastManager.MessageListen
         }
     }
     
+    /**
+     * Abre o histórico persistente da sala e exibe as últimas mensagens.
+     * Sem histórico o chat continua funcionando, apenas sem busca.
+     * 
+     * @param groupAddress Endereço do grupo multicast
+     * @param port Porta do grupo multicast
+     * @param room Sala
+     */
+    private void openChatLog(InetAddress groupAddress, int port, int room) {
+        try {
+            chatLog = ChatLog.openRoom(groupAddress, port, room);
+            List<String> lines = new ArrayList<>();
+            for (ChatLog.Entry entry : chatLog.tail(SCROLLBACK_LINES)) {
+                lines.add(entry.toString());
+                lastLoggedAt = entry.getTimestamp();
+            }
+            chatView.getHistory().addAll(lines);
+            chatView.scrollToEnd();
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Histórico da sala indisponível", e);
+            chatLog = null;
+            searchButton.setEnabled(false);
+        }
+    }
+    
+    /**
+     * Grava uma mensagem no histórico persistente, se houver.
+     * 
+     * @param sender Remetente, ou null para mensagens de sistema
+     * @param text Texto exibido
+     */
+    private void logMessage(String sender, String text) {
+        logMessage(System.currentTimeMillis(), sender, text);
+    }
+    
+    /**
+     * Grava uma mensagem com horário próprio no histórico persistente, se houver.
+     * 
+     * @param timestamp Horário da mensagem em epoch millis
+     * @param sender Remetente, ou null para mensagens de sistema
+     * @param text Texto exibido
+     */
+    private void logMessage(long timestamp, String sender, String text) {
+        ChatLog log = chatLog;
+        if (log == null) {
+            return;
+        }
+        try {
+            log.append(timestamp, sender, text);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Erro ao gravar histórico da sala", e);
+        }
+    }
+    
     /**
      * Inicializa os componentes da interface gráfica.
      */
@@ -98,15 +201,13 @@ public class ChatClient extends JFrame implements MulticastManager.MessageListen
         mainPanel.setBorder(new EmptyBorder(10, 10, 10, 10));
         setContentPane(mainPanel);
         
-        // Área de chat
-        chatArea = new JTextArea();
-        chatArea.setEditable(false);
-        chatArea.setLineWrap(true);
-        chatArea.setWrapStyleWord(true);
-        chatArea.setFont(new Font("SansSerif", Font.PLAIN, 14));
-        chatArea.setBackground(new Color(248, 248, 248));
+        // Área de chat: histórico limitado em memória, só as linhas visíveis são desenhadas
+        chatView = new ChatHistoryView(new ChatHistory());
+        chatView.setFont(new Font("SansSerif", Font.PLAIN, 14));
+        chatView.setBackground(new Color(248, 248, 248));
+        chatAppender = new ChatAreaAppender(chatView);
         
-        JScrollPane scrollPane = new JScrollPane(chatArea);
+        JScrollPane scrollPane = new JScrollPane(chatView);
         scrollPane.setBorder(BorderFactory.createLineBorder(new Color(200, 200, 200)));
         mainPanel.add(scrollPane, BorderLayout.CENTER);
         
@@ -130,8 +231,20 @@ public class ChatClient extends JFrame implements MulticastManager.MessageListen
             }
         });
         
+        searchButton = new JButton("Buscar");
+        searchButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                searchHistory();
+            }
+        });
+        
+        JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT, 5, 0));
+        buttonPanel.add(sendButton);
+        buttonPanel.add(searchButton);
+        
         inputPanel.add(messageField, BorderLayout.CENTER);
-        inputPanel.add(sendButton, BorderLayout.EAST);
+        inputPanel.add(buttonPanel, BorderLayout.EAST);
         
         // Painel de status
         JPanel statusPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
@@ -166,25 +279,72 @@ public class ChatClient extends JFrame implements MulticastManager.MessageListen
         }
         
         if (multicastManager != null && multicastManager.isRunning()) {
-            try {
-                // Enviar mensagem
-                multicastManager.sendMessage(message);
-                
-                // Adicionar mensagem local (sem duplicação)
-                appendMyMessage(message);
-                
-                // Limpar campo de texto
-                messageField.setText("");
-                
-            } catch (IOException e) {
-                LOGGER.log(Level.WARNING, "Erro ao enviar mensagem", e);
-                appendSystemMessage("Erro ao enviar mensagem: " + e.getMessage());
-            }
+            // Publicar sem esperar pelo socket; falhas chegam pelo ouvinte
+            multicastManager.publishAsync(message, this::onSendFailed);
+            
+            // Adicionar mensagem local (sem duplicação)
+            appendMyMessage(message);
+            
+            // Limpar campo de texto
+            messageField.setText("");
         } else {
             showError("Não conectado ao grupo multicast.");
         }
     }
     
+    /**
+     * Avisa na área de chat que uma mensagem publicada não foi enviada.
+     * Pode ser chamado pela thread de envio.
+     * 
+     * @param message Mensagem que não foi enviada
+     * @param cause Motivo da falha
+     */
+    private void onSendFailed(String message, IOException cause) {
+        LOGGER.log(Level.WARNING, "Erro ao enviar mensagem", cause);
+        SwingUtilities.invokeLater(() -> appendSystemMessage(
+                "Mensagem não enviada (" + cause.getMessage() + "): " + message));
+    }
+    
+    /**
+     * Busca no histórico persistente da sala e exibe os resultados.
+     */
+    private void searchHistory() {
+        ChatLog log = chatLog;
+        if (log == null) {
+            showError("Histórico da sala indisponível.");
+            return;
+        }
+        
+        String query = JOptionPane.showInputDialog(
+                this,
+                "Palavras a buscar (use @nome para filtrar o remetente):",
+                "Buscar no Histórico",
+                JOptionPane.QUESTION_MESSAGE
+        );
+        if (query == null || query.trim().isEmpty()) {
+            return;
+        }
+        
+        try {
+            long start = System.nanoTime();
+            List<ChatLog.Entry> results = log.search(query, SEARCH_LIMIT);
+            double millis = (System.nanoTime() - start) / 1e6;
+            
+            JList<ChatLog.Entry> resultList = new JList<>(results.toArray(new ChatLog.Entry[0]));
+            JScrollPane resultPane = new JScrollPane(resultList);
+            resultPane.setPreferredSize(new Dimension(520, 300));
+            JOptionPane.showMessageDialog(
+                    this,
+                    resultPane,
+                    String.format("%d resultado(s) em %.2f ms", results.size(), millis),
+                    JOptionPane.PLAIN_MESSAGE
+            );
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Erro ao buscar no histórico", e);
+            showError("Erro ao buscar no histórico: " + e.getMessage());
+        }
+    }
+    
     /**
      * Fecha o chat e libera recursos.
      */
@@ -200,6 +360,14 @@ public class ChatClient extends JFrame implements MulticastManager.MessageListen
             if (multicastManager != null) {
                 multicastManager.stop();
             }
+            chatView.getHistory().close();
+            if (chatLog != null) {
+                try {
+                    chatLog.close();
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Erro ao fechar histórico da sala", e);
+                }
+            }
             
             dispose();
             System.exit(0);
@@ -212,9 +380,8 @@ public class ChatClient extends JFrame implements MulticastManager.MessageListen
      * @param message Mensagem de sistema
      */
     private void appendSystemMessage(String message) {
-        chatArea.append("[" + MulticastManager.getCurrentTimestamp() + "] " + 
-                message + "\n");
-        chatArea.setCaretPosition(chatArea.getDocument().getLength());
+        chatAppender.append(message);
+        chatAppender.flush();
     }
     
     /**
@@ -223,21 +390,9 @@ public class ChatClient extends JFrame implements MulticastManager.MessageListen
      * @param message Mensagem enviada pelo usuário
      */
     private void appendMyMessage(String message) {
-        chatArea.append("[" + MulticastManager.getCurrentTimestamp() + "] " + 
-                "Você diz: " + message + "\n");
-        chatArea.setCaretPosition(chatArea.getDocument().getLength());
-    }
-    
-    /**
-     * Adiciona uma mensagem recebida à área de chat.
-     * 
-     * @param sender Remetente da mensagem
-     * @param message Mensagem recebida
-     */
-    private void appendReceivedMessage(String sender, String message) {
-        chatArea.append("[" + MulticastManager.getCurrentTimestamp() + "] " + 
-                message + "\n");
-        chatArea.setCaretPosition(chatArea.getDocument().getLength());
+        chatAppender.append("Você diz: " + message);
+        chatAppender.flush();
+        logMessage(username, username + " diz: " + message);
     }
     
     /**
@@ -256,16 +411,88 @@ public class ChatClient extends JFrame implements MulticastManager.MessageListen
     
     /**
      * Método chamado quando uma mensagem é recebida.
-     * Implementação da interface MessageListener.
+     * Implementação da interface MessageListener. A mensagem é acumulada e
+     * escrita na área junto com as outras que chegarem no mesmo quadro de tela,
+     * e gravada no histórico da sala.
      * 
      * @param message Mensagem recebida
      * @param sender Remetente da mensagem
      */
     @Override
     public void onMessageReceived(String message, String sender) {
-        SwingUtilities.invokeLater(() -> {
-            appendReceivedMessage(sender, message);
-        });
+        chatAppender.append(message);
+        logMessage(sender, message);
+    }
+    
+    /**
+     * Chamado com as mensagens enviadas na sala antes da entrada. As que já
+     * estavam no histórico persistente e as que chegaram depois da entrada,
+     * já exibidas, não são repetidas.
+     * 
+     * @param messages Mensagens da mais antiga para a mais recente
+     */
+    private void onStateReceived(List<StateTransfer.Message> messages) {
+        List<StateTransfer.Message> missed = new ArrayList<>();
+        for (StateTransfer.Message message : messages) {
+            if (message.getTimestamp() > lastLoggedAt && message.getTimestamp() < joinedAt) {
+                missed.add(message);
+            }
+        }
+        if (missed.isEmpty()) {
+            return;
+        }
+        chatAppender.append("Mensagens anteriores à sua entrada:");
+        for (StateTransfer.Message message : missed) {
+            chatAppender.append(message.toString());
+            logMessage(message.getTimestamp(), message.getSender(), message.toString());
+        }
+    }
+    
+    /**
+     * Chamado quando alguém entra ou sai da sala, segundo os batimentos.
+     * Entradas e saídas avisadas já aparecem pelas mensagens de sistema;
+     * aqui só é anunciado quem parou de responder.
+     * 
+     * @param member Participante
+     * @param change Tipo de mudança
+     */
+    private void onPresenceChanged(Presence.Member member, Presence.Change change) {
+        if (change == Presence.Change.TIMED_OUT) {
+            String message = member.getName() + " parou de responder e saiu da sala.";
+            chatAppender.append(message);
+            logMessage(null, message);
+        }
+        SwingUtilities.invokeLater(this::updateStatus);
+    }
+    
+    /**
+     * Chamado na thread do reator quando um participante é silenciado por
+     * mandar mensagens demais.
+     * 
+     * @param senderId Identificador do remetente
+     * @param source Endereço de origem
+     * @param muteMillis Duração do silêncio
+     */
+    private void onSenderMuted(long senderId, InetAddress source, long muteMillis) {
+        MulticastManager manager = multicastManager;
+        Presence.Member member = manager != null ? manager.getPresence().getMember(senderId) : null;
+        String name = member != null ? member.getName() : source.getHostAddress();
+        String message = name + " foi silenciado por " + (muteMillis / 1000) + " s por excesso de mensagens.";
+        chatAppender.append(message);
+        logMessage(null, message);
+    }
+    
+    /**
+     * Mostra o status da conexão com a quantidade de participantes online.
+     */
+    private void updateStatus() {
+        MulticastManager manager = multicastManager;
+        if (manager == null || !manager.isRunning()) {
+            statusLabel.setText(connectionStatus);
+            return;
+        }
+        // O próprio usuário não está na tabela
+        statusLabel.setText(connectionStatus + " - " + (manager.getPresence().getMemberCount() + 1) + " online");
     }
     
     /**
@@ -293,9 +520,9 @@ public class ChatClient extends JFrame implements MulticastManager.MessageListen
      */
     public static void main(String[] args) {
         // Verificar argumentos
-        if (args.length != 2) {
-            System.out.println("Uso: java ChatClient <endereco_multicast> <porta>");
-            System.out.println("Exemplo: java ChatClient 224.0.0.1 9000");
+        if (args.length < 2 || args.length > 3) {
+            System.out.println("Uso: java ChatClient <endereco_multicast> <porta> [sala]");
+            System.out.println("Exemplo: java ChatClient 224.0.0.1 9000 7");
             System.exit(1);
         }
         
@@ -303,6 +530,11 @@ public class ChatClient extends JFrame implements MulticastManager.MessageListen
             // Obter parâmetros
             final InetAddress groupAddress = InetAddress.getByName(args[0]);
             final int port = Integer.parseInt(args[1]);
+            final int room = args.length > 2 ? Integer.parseInt(args[2]) : MulticastFrame.DEFAULT_ROOM;
+            if (room < 0 || room > MulticastFrame.MAX_ROOM) {
+                System.err.println("Sala inválida: " + room + " (use 0 a " + MulticastFrame.MAX_ROOM + ")");
+                System.exit(1);
+            }
             
             // Verificar se é um endereço multicast válido
             if (!groupAddress.isMulticastAddress()) {
@@ -330,11 +562,11 @@ public class ChatClient extends JFrame implements MulticastManager.MessageListen
             
             // Iniciar interface
             SwingUtilities.invokeLater(() -> {
-                new ChatClient(groupAddress, port, username.trim()).setVisible(true);
+                new ChatClient(groupAddress, port, username.trim(), room).setVisible(true);
             });
             
         } catch (NumberFormatException e) {
-            System.err.println("Porta inválida: " + args[1]);
+            System.err.println("Porta ou sala inválida: " + e.getMessage());
             System.exit(1);
         } catch (IOException e) {
             System.err.println("Erro ao conectar: " + e.getMessage());
@@ -0,0 +1,286 @@
+package local.redes.multicast;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.swing.AbstractListModel;
+
+/**
+ * Histórico do chat com memória limitada: as linhas mais recentes ficam em
+ * um buffer circular de tamanho fixo e as que saem dele são gravadas em um
+ * arquivo, em ordem.
+ *
+ * É o modelo da {@link ChatHistoryView}. Acrescentar linhas custa o mesmo com
+ * o chat aberto há um minuto ou há uma semana: não há cópia do conteúdo
+ * anterior e a lista só é avisada do trecho que entrou e do que saiu. A
+ * gravação em disco acontece em uma thread própria, fora da thread de eventos.
+ *
+ * Deve ser alterado apenas na thread de eventos, como qualquer modelo Swing.
+ *
+ * @author Igor Rozalem
+ */
+public final class ChatHistory extends AbstractListModel<String> implements Closeable {
+
+    private static final long serialVersionUID = 1L;
+
+    private static final Logger LOGGER = Logger.getLogger(ChatHistory.class.getName());
+
+    /** Propriedade de sistema com a quantidade de linhas mantidas em memória. */
+    public static final String CAPACITY_PROPERTY = "chat.history.capacity";
+
+    /** Quantidade padrão de linhas mantidas em memória. */
+    public static final int DEFAULT_CAPACITY = 10000;
+
+    // Grava o histórico antigo de todas as janelas, em ordem
+    private static final ExecutorService SPILLER = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "chat-history-spill");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final String[] ring;
+    private int head;
+    private int size;
+    private long spilled;
+
+    // Acessados apenas pela thread de gravação
+    private volatile Path spillFile;
+    private BufferedWriter writer;
+    private boolean failed;
+    private volatile boolean temporary;
+
+    /**
+     * Cria um histórico com a capacidade da propriedade
+     * {@value #CAPACITY_PROPERTY}, ou {@value #DEFAULT_CAPACITY} linhas, e
+     * arquivo temporário criado na primeira linha descartada e apagado no
+     * {@link #close()}.
+     */
+    public ChatHistory() {
+        this(Integer.getInteger(CAPACITY_PROPERTY, DEFAULT_CAPACITY), null);
+    }
+
+    /**
+     * Cria um histórico.
+     *
+     * @param capacity Quantidade de linhas mantidas em memória
+     * @param spillFile Arquivo que recebe as linhas antigas, ou null para um
+     *                  arquivo temporário, apagado no {@link #close()}
+     */
+    public ChatHistory(int capacity, Path spillFile) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacidade inválida: " + capacity);
+        }
+        this.ring = new String[capacity];
+        this.spillFile = spillFile;
+    }
+
+    /**
+     * Acrescenta uma linha ao final do histórico.
+     *
+     * @param line Linha a acrescentar
+     */
+    public void add(String line) {
+        addAll(Collections.singletonList(line));
+    }
+
+    /**
+     * Acrescenta várias linhas ao final do histórico, com um único aviso à lista.
+     *
+     * @param lines Linhas a acrescentar, em ordem
+     */
+    public void addAll(List<String> lines) {
+        int count = lines.size();
+        if (count == 0) {
+            return;
+        }
+        // Linhas que já chegam além da capacidade vão direto para o disco
+        int skip = Math.max(0, count - ring.length);
+        int incoming = count - skip;
+
+        int overflow = Math.max(0, size + incoming - ring.length);
+        if (overflow > 0 || skip > 0) {
+            String[] old = new String[overflow + skip];
+            for (int i = 0; i < overflow; i++) {
+                int index = (head + i) % ring.length;
+                old[i] = ring[index];
+                ring[index] = null;
+            }
+            for (int i = 0; i < skip; i++) {
+                old[overflow + i] = lines.get(i);
+            }
+            spill(old);
+        }
+        if (overflow > 0) {
+            head = (head + overflow) % ring.length;
+            size -= overflow;
+            fireIntervalRemoved(this, 0, overflow - 1);
+        }
+
+        for (int i = skip; i < count; i++) {
+            ring[(head + size) % ring.length] = lines.get(i);
+            size++;
+        }
+        fireIntervalAdded(this, size - incoming, size - 1);
+    }
+
+    /**
+     * Esvazia a parte em memória. As linhas removidas também vão para o
+     * arquivo, que continua com a sequência completa do que saiu da tela.
+     */
+    public void clear() {
+        if (size == 0) {
+            return;
+        }
+        String[] old = new String[size];
+        for (int i = 0; i < size; i++) {
+            int index = (head + i) % ring.length;
+            old[i] = ring[index];
+            ring[index] = null;
+        }
+        spill(old);
+        int removed = size;
+        head = 0;
+        size = 0;
+        fireIntervalRemoved(this, 0, removed - 1);
+    }
+
+    /**
+     * Entrega as linhas à thread de gravação.
+     */
+    private void spill(String[] lines) {
+        spilled += lines.length;
+        SPILLER.execute(() -> write(lines));
+    }
+
+    /**
+     * Grava as linhas no arquivo. Executado na thread de gravação.
+     */
+    private void write(String[] lines) {
+        if (failed) {
+            return;
+        }
+        try {
+            if (writer == null) {
+                if (spillFile == null) {
+                    spillFile = Files.createTempFile("chat-historico-", ".log");
+                    // Rede de segurança para quem sai sem fechar a janela
+                    spillFile.toFile().deleteOnExit();
+                    temporary = true;
+                }
+                writer = Files.newBufferedWriter(spillFile, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                LOGGER.info("Histórico antigo do chat em " + spillFile);
+            }
+            for (String line : lines) {
+                writer.write(line);
+                writer.newLine();
+            }
+            // O gravador é daemon: não deixar nada só no buffer
+            writer.flush();
+        } catch (IOException e) {
+            failed = true;
+            LOGGER.log(Level.WARNING, "Erro ao gravar histórico do chat; linhas antigas serão descartadas", e);
+        }
+    }
+
+    /**
+     * Aguarda a gravação das linhas já descartadas.
+     */
+    void awaitSpill() throws InterruptedException {
+        try {
+            SPILLER.submit(() -> { }).get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Fecha o arquivo do histórico e, se for temporário, o apaga. Linhas
+     * descartadas depois disso abrem o arquivo informado de novo, ou um novo
+     * arquivo temporário.
+     */
+    @Override
+    public void close() {
+        SPILLER.execute(() -> {
+            if (writer != null) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Erro ao fechar histórico do chat", e);
+                }
+                writer = null;
+            }
+            if (temporary) {
+                try {
+                    Files.deleteIfExists(spillFile);
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Erro ao apagar histórico temporário do chat", e);
+                }
+                spillFile = null;
+                temporary = false;
+            }
+        });
+    }
+
+    /**
+     * Retorna a quantidade de linhas em memória.
+     *
+     * @return Linhas visíveis na lista
+     */
+    @Override
+    public int getSize() {
+        return size;
+    }
+
+    /**
+     * Retorna a linha na posição informada, contando da mais antiga em memória.
+     *
+     * @param index Posição da linha
+     * @return Linha
+     */
+    @Override
+    public String getElementAt(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Linha " + index + " de " + size);
+        }
+        return ring[(head + index) % ring.length];
+    }
+
+    /**
+     * Retorna a quantidade máxima de linhas em memória.
+     *
+     * @return Capacidade
+     */
+    public int getCapacity() {
+        return ring.length;
+    }
+
+    /**
+     * Retorna quantas linhas já saíram da memória para o arquivo.
+     *
+     * @return Linhas enviadas ao disco
+     */
+    public long getSpilled() {
+        return spilled;
+    }
+
+    /**
+     * Retorna o arquivo do histórico antigo, ou null se nenhuma linha foi gravada ainda.
+     *
+     * @return Caminho do arquivo
+     */
+    public Path getSpillFile() {
+        return spillFile;
+    }
+}
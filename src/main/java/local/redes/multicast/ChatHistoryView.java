@@ -0,0 +1,94 @@
+package local.redes.multicast;
+
+import java.awt.Font;
+import java.awt.event.MouseEvent;
+import javax.swing.JList;
+
+/**
+ * Lista que exibe um {@link ChatHistory}, uma linha por mensagem.
+ *
+ * Todas as linhas têm a mesma altura e ocupam a largura visível, então a
+ * lista calcula seu tamanho sem medir cada mensagem e só desenha as linhas
+ * que aparecem na tela. Mensagens mais largas que a janela são cortadas e
+ * aparecem inteiras na dica ao passar o mouse.
+ *
+ * @author Igor Rozalem
+ */
+public class ChatHistoryView extends JList<String> {
+
+    private static final long serialVersionUID = 1L;
+
+    // Mede a altura da linha com o formato usado no chat
+    private static final String PROTOTYPE = "[2000-01-01 00:00:00] Xg";
+
+    private final ChatHistory history;
+
+    /**
+     * Cria a lista para o histórico informado.
+     *
+     * @param history Histórico exibido
+     */
+    public ChatHistoryView(ChatHistory history) {
+        super(history);
+        this.history = history;
+        updateCellSize();
+    }
+
+    /**
+     * Define a fonte e recalcula a altura das linhas.
+     *
+     * @param font Nova fonte
+     */
+    @Override
+    public void setFont(Font font) {
+        super.setFont(font);
+        updateCellSize();
+    }
+
+    /**
+     * Fixa altura e largura das células: a altura pela fonte e a largura
+     * mínima, para a lista acompanhar a largura da janela.
+     */
+    private void updateCellSize() {
+        if (getCellRenderer() == null) {
+            // Chamado pelo construtor de JList antes da instalação do visual
+            return;
+        }
+        setPrototypeCellValue(PROTOTYPE);
+        setFixedCellWidth(1);
+    }
+
+    /**
+     * Rola a lista até a última linha.
+     */
+    public void scrollToEnd() {
+        int last = history.getSize() - 1;
+        if (last >= 0) {
+            ensureIndexIsVisible(last);
+        }
+    }
+
+    /**
+     * Retorna o texto completo da linha sob o mouse.
+     *
+     * @param event Evento do mouse
+     * @return Linha sob o mouse, ou null
+     */
+    @Override
+    public String getToolTipText(MouseEvent event) {
+        int index = locationToIndex(event.getPoint());
+        if (index < 0 || !getCellBounds(index, index).contains(event.getPoint())) {
+            return null;
+        }
+        return history.getElementAt(index);
+    }
+
+    /**
+     * Retorna o histórico exibido.
+     *
+     * @return Histórico
+     */
+    public ChatHistory getHistory() {
+        return history;
+    }
+}
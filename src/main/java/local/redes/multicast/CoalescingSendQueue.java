@@ -0,0 +1,404 @@
+package local.redes.multicast;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import local.redes.estatisticas.HistogramaLatencia;
+
+/**
+ * Fila de envio assíncrona do {@link MulticastManager}, para publicadores que
+ * enviam muitas mensagens pequenas por segundo e para interfaces que não
+ * podem esperar pelo socket ({@link MulticastManager#publishAsync}).
+ *
+ * As mensagens entram em uma fila limitada e são enviadas por uma thread
+ * dedicada. Ao tirar uma mensagem da fila, a thread espera até o fim da janela
+ * de espera (linger) por outras e as agrupa em um quadro
+ * {@link MulticastFrame#TYPE_BATCH} de até {@value #MAX_BATCH_SIZE} bytes,
+ * trocando várias chamadas de sistema por uma. Quando só uma mensagem cabe na
+ * janela, ela sai como um quadro comum. Os receptores desmontam os lotes sem
+ * que os ouvintes percebam.
+ *
+ * Cada mensagem guarda o instante em que entrou na fila; o tempo até sair no
+ * socket vai para um {@link HistogramaLatencia}. Mensagens que não puderem ser
+ * enviadas são informadas ao {@link MulticastManager.SendFailureListener}
+ * passado na publicação, na thread de envio.
+ *
+ * @author Igor Rozalem
+ */
+public final class CoalescingSendQueue {
+    private static final Logger LOGGER = Logger.getLogger(CoalescingSendQueue.class.getName());
+
+    public static final long DEFAULT_LINGER_MICROS = 2000;
+    public static final int DEFAULT_CAPACITY = 8192;
+
+    /** Maior lote enviado, abaixo do MTU Ethernet descontados os cabeçalhos IPv6 e UDP. */
+    public static final int MAX_BATCH_SIZE = 1400;
+
+    private static final long POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    // Acorda a thread no fechamento; interromper fecharia o canal no meio de um envio
+    private static final Object WAKEUP = new Object();
+
+    private final MulticastManager manager;
+    private final byte[] usernameBytes;
+    private final long lingerNanos;
+    private final BlockingQueue<Object> queue;
+    private final Thread thread;
+    private final HistogramaLatencia latency = new HistogramaLatencia();
+
+    // Acessados apenas pela thread de envio
+    private final ByteBuffer batch = ByteBuffer.allocateDirect(MulticastReactor.MAX_DATAGRAM_SIZE);
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final List<Entry> entries = new ArrayList<>();
+    private Entry carried;
+    private byte firstType;
+
+    // Escritos apenas pela thread de envio
+    private volatile long messagesSent;
+    private volatile long framesSent;
+    private volatile long messagesDropped;
+
+    private volatile boolean closed;
+
+    /**
+     * Mensagem aguardando envio.
+     */
+    private static final class Entry {
+        // String para chat ou byte[] para dados
+        final Object payload;
+        final MulticastManager.SendFailureListener listener;
+        final long enqueuedNanos;
+
+        Entry(Object payload, MulticastManager.SendFailureListener listener) {
+            this.payload = payload;
+            this.listener = listener;
+            this.enqueuedNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * Cria a fila e inicia a thread de envio.
+     *
+     * @param manager Gerenciador que transmite os quadros
+     * @param usernameBytes Nome do usuário em UTF-8
+     * @param lingerMicros Janela de espera por mais mensagens, em microssegundos
+     * @param capacity Quantidade máxima de mensagens aguardando envio
+     */
+    CoalescingSendQueue(MulticastManager manager, byte[] usernameBytes, long lingerMicros, int capacity) {
+        if (lingerMicros < 0) {
+            throw new IllegalArgumentException("Janela de espera inválida: " + lingerMicros);
+        }
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacidade inválida: " + capacity);
+        }
+        this.manager = manager;
+        this.usernameBytes = usernameBytes;
+        this.lingerNanos = TimeUnit.MICROSECONDS.toNanos(lingerMicros);
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.thread = new Thread(this::run, "multicast-send-" + new String(usernameBytes, StandardCharsets.UTF_8));
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Enfileira uma mensagem de chat ou uma carga binária.
+     *
+     * @param item {@link String} para chat ou {@code byte[]} para dados
+     * @return false se a fila estiver cheia ou fechada
+     */
+    boolean offer(Object item) {
+        return offer(item, null);
+    }
+
+    /**
+     * Enfileira uma mensagem, avisando o ouvinte se ela não puder ser enviada.
+     *
+     * @param item {@link String} para chat ou {@code byte[]} para dados
+     * @param listener Ouvinte de falhas, ou null
+     * @return false se a fila estiver cheia ou fechada; nesse caso o ouvinte não é chamado
+     */
+    boolean offer(Object item, MulticastManager.SendFailureListener listener) {
+        return !closed && queue.offer(new Entry(item, listener));
+    }
+
+    /**
+     * Indica se a fila foi fechada.
+     *
+     * @return true depois de {@link #close(long)}
+     */
+    boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Fecha a fila e espera a thread enviar o que restou.
+     *
+     * @param timeoutMillis Tempo máximo de espera
+     */
+    void close(long timeoutMillis) {
+        closed = true;
+        queue.offer(WAKEUP);
+        try {
+            thread.join(timeoutMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Laço da thread de envio: monta um lote por volta e o transmite.
+     */
+    private void run() {
+        while (true) {
+            Entry first = carried;
+            carried = null;
+            if (first == null) {
+                first = closed ? next() : take();
+                if (first == null) {
+                    if (closed) {
+                        return;
+                    }
+                    continue;
+                }
+            }
+
+            batch.clear();
+            entries.clear();
+            if (!append(first)) {
+                continue;
+            }
+
+            // Com o rastreamento ligado, o quadro leva também o bloco de rastreio
+            int budget = MAX_BATCH_SIZE - MulticastFrame.HEADER_SIZE
+                    - (manager.isTracing() ? MulticastFrame.TRACE_SIZE : 0);
+            long deadline = System.nanoTime() + lingerNanos;
+            while (batch.position() < budget) {
+                Entry next = closed ? next() : poll(deadline - System.nanoTime());
+                if (next == null) {
+                    break;
+                }
+                int mark = batch.position();
+                if (!append(next)) {
+                    carried = next;
+                    break;
+                }
+                if (batch.position() > budget) {
+                    // Não coube: abre o próximo lote
+                    batch.position(mark);
+                    entries.remove(entries.size() - 1);
+                    carried = next;
+                    break;
+                }
+            }
+            flush();
+        }
+    }
+
+    /**
+     * Espera a próxima mensagem, acordando de tempos em tempos para ver se a fila fechou.
+     */
+    private Entry take() {
+        return poll(POLL_NANOS);
+    }
+
+    /**
+     * Espera por outra mensagem até o fim da janela.
+     */
+    private Entry poll(long nanos) {
+        if (nanos <= 0) {
+            return next();
+        }
+        try {
+            Object item = queue.poll(nanos, TimeUnit.NANOSECONDS);
+            return item == WAKEUP ? next() : (Entry) item;
+        } catch (InterruptedException e) {
+            return next();
+        }
+    }
+
+    /**
+     * Retira a próxima mensagem sem esperar.
+     */
+    private Entry next() {
+        Object item = queue.poll();
+        if (item == WAKEUP) {
+            item = queue.poll();
+        }
+        return (Entry) item;
+    }
+
+    /**
+     * Escreve a mensagem como entrada do lote.
+     *
+     * @return false se a mensagem não couber no espaço restante do buffer
+     */
+    private boolean append(Entry entry) {
+        Object item = entry.payload;
+        int start = batch.position();
+        batch.position(start + MulticastFrame.BATCH_ENTRY_HEADER_SIZE);
+        byte type;
+        if (item instanceof String) {
+            type = MulticastFrame.TYPE_CHAT;
+            batch.put((byte) usernameBytes.length).put(usernameBytes);
+            encoder.reset();
+            CoderResult result = encoder.encode(CharBuffer.wrap((String) item), batch, true);
+            if (result.isOverflow() || encoder.flush(batch).isOverflow()) {
+                return reject(entry, start, "Mensagem excede o tamanho máximo do datagrama");
+            }
+        } else {
+            type = MulticastFrame.TYPE_DATA;
+            byte[] data = (byte[]) item;
+            if (data.length > batch.remaining()) {
+                return reject(entry, start, "Pacote excede o tamanho máximo do datagrama");
+            }
+            batch.put(data);
+        }
+
+        // Entradas maiores que o lote só podem sair sozinhas
+        int length = batch.position() - start - MulticastFrame.BATCH_ENTRY_HEADER_SIZE;
+        if (length > MulticastReactor.MAX_DATAGRAM_SIZE - MulticastFrame.HEADER_SIZE - MulticastFrame.TRACE_SIZE) {
+            return reject(entry, start, "Mensagem excede o tamanho máximo do datagrama");
+        }
+        batch.put(start, type).putShort(start + 1, (short) length);
+        if (entries.isEmpty()) {
+            firstType = type;
+        }
+        entries.add(entry);
+        return true;
+    }
+
+    /**
+     * Descarta uma mensagem que não cabe em nenhum datagrama.
+     */
+    private boolean reject(Entry entry, int start, String reason) {
+        batch.position(start);
+        if (start > 0) {
+            // Num lote em andamento, a mensagem tenta de novo sozinha
+            return false;
+        }
+        messagesDropped++;
+        LOGGER.log(Level.WARNING, reason);
+        fail(entry, new IOException(reason));
+        return false;
+    }
+
+    /**
+     * Avisa o ouvinte da mensagem que ela não foi enviada.
+     */
+    private void fail(Entry entry, IOException cause) {
+        if (entry.listener == null || !(entry.payload instanceof String)) {
+            return;
+        }
+        try {
+            entry.listener.onSendFailed((String) entry.payload, cause);
+        } catch (RuntimeException e) {
+            // Um ouvinte com erro não pode derrubar a thread de envio
+            LOGGER.log(Level.WARNING, "Erro no ouvinte de falhas de envio", e);
+        }
+    }
+
+    /**
+     * Transmite o lote montado. O gerenciador já espera por espaço no buffer
+     * do sistema; se o envio falhar mesmo assim, o lote é descartado.
+     */
+    private void flush() {
+        if (entries.isEmpty()) {
+            return;
+        }
+        batch.flip();
+        byte type = MulticastFrame.TYPE_BATCH;
+        if (entries.size() == 1) {
+            type = firstType;
+            batch.position(MulticastFrame.BATCH_ENTRY_HEADER_SIZE);
+        }
+
+        try {
+            manager.sendFrame(type, batch);
+        } catch (IOException e) {
+            messagesDropped += entries.size();
+            LOGGER.log(Level.WARNING, "Lote descartado após falha de envio", e);
+            for (Entry entry : entries) {
+                fail(entry, e);
+            }
+            return;
+        }
+        long now = System.nanoTime();
+        for (Entry entry : entries) {
+            latency.registrar(now - entry.enqueuedNanos);
+            if (entry.payload instanceof String) {
+                manager.recordSent((String) entry.payload);
+            }
+        }
+        messagesSent += entries.size();
+        framesSent++;
+    }
+
+    /**
+     * Retorna a janela de espera por mais mensagens.
+     *
+     * @return Janela em microssegundos
+     */
+    public long getLingerMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(lingerNanos);
+    }
+
+    /**
+     * Retorna a quantidade de mensagens aguardando envio.
+     *
+     * @return Tamanho atual da fila
+     */
+    public int getPending() {
+        return queue.size();
+    }
+
+    /**
+     * Retorna a quantidade de mensagens enviadas.
+     *
+     * @return Mensagens enviadas
+     */
+    public long getMessagesSent() {
+        return messagesSent;
+    }
+
+    /**
+     * Retorna a quantidade de datagramas enviados, cada um com uma ou mais mensagens.
+     *
+     * @return Datagramas enviados
+     */
+    public long getFramesSent() {
+        return framesSent;
+    }
+
+    /**
+     * Retorna o histograma do tempo entre a entrada na fila e o envio ao
+     * socket, em nanossegundos, de cada mensagem enviada.
+     *
+     * @return Histograma de latência de envio
+     */
+    public HistogramaLatencia getLatency() {
+        return latency;
+    }
+
+    /**
+     * Retorna a quantidade de mensagens descartadas por tamanho ou falha de envio.
+     *
+     * @return Mensagens descartadas
+     */
+    public long getMessagesDropped() {
+        return messagesDropped;
+    }
+}
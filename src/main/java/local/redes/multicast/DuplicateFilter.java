@@ -0,0 +1,281 @@
+package local.redes.multicast;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Descarta cópias repetidas de quadros com sequência, que aparecem com
+ * retransmissões, várias interfaces na mesma rede e retransmissores.
+ *
+ * Para cada remetente é guardada uma janela de {@value #WINDOW} bits sobre
+ * as sequências mais recentes: uma sequência dentro da janela é repetida se
+ * o bit dela já estiver ligado. Sequências mais antigas que a janela são
+ * conferidas em um filtro de Bloom com duas gerações: a atual recebe todo
+ * quadro aceito e vira a anterior a cada {@value #BUCKET_SECONDS} s ou
+ * quando enche.
+ *
+ * A tabela guarda no máximo {@value #MAX_SENDERS} remetentes; os menos
+ * recentes saem primeiro e seus identificadores vão para uma lista de até
+ * {@value #MAX_EVICTED} removidos. Quando um deles volta, o filtro de Bloom
+ * decide sobre os quadros que a nova janela ainda não viu. O filtro pode dar
+ * falso positivo, mas só é consultado para quadros muito atrasados e para
+ * remetentes removidos da tabela: o primeiro quadro de um remetente nunca
+ * visto é sempre aceito.
+ *
+ * Tudo tem tamanho fixo e cada quadro custa uma busca na tabela, algumas
+ * operações de bits e três posições no filtro.
+ *
+ * Os quadros do modo confiável não passam por aqui: o
+ * {@link ReliableMulticast} já descarta as duplicatas deles.
+ *
+ * @author Igor Rozalem
+ */
+public final class DuplicateFilter {
+
+    /** Sequências acompanhadas por remetente, em bits. */
+    public static final int WINDOW = 1024;
+
+    /** Remetentes com janela própria. */
+    public static final int MAX_SENDERS = 1024;
+
+    /** Remetentes removidos da tabela que ainda são conferidos no filtro de Bloom. */
+    public static final int MAX_EVICTED = 4 * MAX_SENDERS;
+
+    /** Duração de cada geração do filtro de Bloom. */
+    public static final long BUCKET_SECONDS = 30;
+
+    // 128 Kbit por geração; com 3 funções e até 1/10 de ocupação, ~1,7% de falso positivo
+    private static final int BLOOM_BITS = 1 << 17;
+    private static final int BLOOM_CAPACITY = BLOOM_BITS / 10;
+    private static final long BUCKET_NANOS = TimeUnit.SECONDS.toNanos(BUCKET_SECONDS);
+
+    /**
+     * Janela de sequências de um remetente.
+     */
+    private static final class Window {
+        private final long[] bits = new long[WINDOW / 64];
+        private final boolean restored;
+        private long highest;
+        private long duplicates;
+
+        Window(long sequence, boolean restored) {
+            this.restored = restored;
+            this.highest = sequence;
+            set(sequence);
+        }
+
+        private boolean isSet(long sequence) {
+            int bit = (int) (sequence & (WINDOW - 1));
+            return (bits[bit >>> 6] & (1L << bit)) != 0;
+        }
+
+        private void set(long sequence) {
+            int bit = (int) (sequence & (WINDOW - 1));
+            bits[bit >>> 6] |= 1L << bit;
+        }
+
+        private void clear(long sequence) {
+            int bit = (int) (sequence & (WINDOW - 1));
+            bits[bit >>> 6] &= ~(1L << bit);
+        }
+
+        /**
+         * Avança a janela até a sequência, limpando as posições reaproveitadas.
+         */
+        private void advance(long sequence) {
+            if (sequence - highest >= WINDOW) {
+                Arrays.fill(bits, 0);
+            } else {
+                for (long s = highest + 1; s <= sequence; s++) {
+                    clear(s);
+                }
+            }
+            highest = sequence;
+        }
+    }
+
+    // Remetentes que saíram da tabela, em ordem de saída
+    private final Map<Long, Boolean> evicted = new LinkedHashMap<Long, Boolean>(64, 0.75f, false) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Boolean> eldest) {
+            return size() > MAX_EVICTED;
+        }
+    };
+
+    // Remetentes em ordem de acesso: o menos recente sai quando a tabela enche
+    private final Map<Long, Window> senders = new LinkedHashMap<Long, Window>(64, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, Window> eldest) {
+            if (size() > MAX_SENDERS) {
+                evicted.put(eldest.getKey(), Boolean.TRUE);
+                return true;
+            }
+            return false;
+        }
+    };
+
+    // Gerações do filtro de Bloom, criadas no primeiro quadro
+    private long[] bloomCurrent;
+    private long[] bloomPrevious;
+    private int bloomCount;
+    private long bloomStart;
+
+    private volatile long accepted;
+    private volatile long windowDuplicates;
+    private volatile long bloomDuplicates;
+
+    /**
+     * Decide se o quadro é novo, registrando-o.
+     *
+     * @param sender Identificador do remetente
+     * @param sequence Sequência do quadro, maior que zero
+     * @param now Instante atual, de {@link System#nanoTime()}
+     * @return false se o quadro já foi recebido
+     */
+    synchronized boolean accept(long sender, long sequence, long now) {
+        rotate(now);
+        long hash = hash(sender, sequence);
+        Window window = senders.get(sender);
+        if (window == null) {
+            boolean restored = evicted.containsKey(sender);
+            if (restored && bloomContains(hash)) {
+                // Remetente que saiu da tabela e reenviou algo já visto
+                bloomDuplicates++;
+                return false;
+            }
+            evicted.remove(sender);
+            senders.put(sender, new Window(sequence, restored));
+        } else if (sequence > window.highest) {
+            window.advance(sequence);
+            window.set(sequence);
+        } else if (window.highest - sequence < WINDOW) {
+            if (window.isSet(sequence)) {
+                window.duplicates++;
+                windowDuplicates++;
+                return false;
+            }
+            if (window.restored && bloomContains(hash)) {
+                // Anterior à volta do remetente, visto antes de ele sair da tabela
+                window.duplicates++;
+                bloomDuplicates++;
+                return false;
+            }
+            window.set(sequence);
+        } else if (bloomContains(hash)) {
+            window.duplicates++;
+            bloomDuplicates++;
+            return false;
+        }
+        bloomAdd(hash);
+        accepted++;
+        return true;
+    }
+
+    /**
+     * Troca a geração atual do filtro quando o período acaba ou ela enche.
+     */
+    private void rotate(long now) {
+        if (bloomCurrent == null) {
+            bloomCurrent = new long[BLOOM_BITS / 64];
+            bloomPrevious = new long[BLOOM_BITS / 64];
+            bloomStart = now;
+            return;
+        }
+        if (now - bloomStart >= BUCKET_NANOS || bloomCount >= BLOOM_CAPACITY) {
+            long[] recycled = bloomPrevious;
+            Arrays.fill(recycled, 0);
+            bloomPrevious = bloomCurrent;
+            bloomCurrent = recycled;
+            bloomCount = 0;
+            bloomStart = now;
+        }
+    }
+
+    private static long hash(long sender, long sequence) {
+        long h = sender ^ (sequence * 0x9E3779B97F4A7C15L);
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        return h ^ (h >>> 33);
+    }
+
+    private void bloomAdd(long hash) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < 3; i++) {
+            int bit = (h1 + i * h2) & (BLOOM_BITS - 1);
+            bloomCurrent[bit >>> 6] |= 1L << bit;
+        }
+        bloomCount++;
+    }
+
+    private boolean bloomContains(long hash) {
+        return contains(bloomCurrent, hash) || contains(bloomPrevious, hash);
+    }
+
+    private static boolean contains(long[] bloom, long hash) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        for (int i = 0; i < 3; i++) {
+            int bit = (h1 + i * h2) & (BLOOM_BITS - 1);
+            if ((bloom[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Retorna a quantidade de quadros aceitos.
+     *
+     * @return Quadros aceitos
+     */
+    public long getAccepted() {
+        return accepted;
+    }
+
+    /**
+     * Retorna o total de duplicatas descartadas.
+     *
+     * @return Duplicatas descartadas
+     */
+    public long getDuplicates() {
+        return windowDuplicates + bloomDuplicates;
+    }
+
+    /**
+     * Retorna as duplicatas achadas pelo filtro de Bloom, fora da janela.
+     *
+     * @return Duplicatas atrasadas descartadas
+     */
+    public long getLateDuplicates() {
+        return bloomDuplicates;
+    }
+
+    /**
+     * Retorna as duplicatas descartadas de um remetente com janela na tabela.
+     *
+     * @param sender Identificador do remetente
+     * @return Duplicatas descartadas, ou 0 se o remetente não estiver na tabela
+     */
+    public synchronized long getDuplicates(long sender) {
+        Window window = senders.get(sender);
+        return window != null ? window.duplicates : 0;
+    }
+
+    /**
+     * Retorna a quantidade de remetentes com janela própria.
+     *
+     * @return Remetentes na tabela
+     */
+    public synchronized int getSenderCount() {
+        return senders.size();
+    }
+}
@@ -0,0 +1,393 @@
+package local.redes.multicast;
+
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Limite de quadros por remetente, aplicado na thread do reator antes de
+ * qualquer decodificação.
+ *
+ * Cada remetente tem um balde de fichas: o saldo cresce {@code rate} quadros
+ * por segundo até {@code burst} e cada quadro aceito gasta uma ficha. Quem
+ * continua enviando com o balde vazio acumula descartes; se passarem de
+ * {@code rate} em um segundo, ou seja, se o remetente mandar pelo menos o
+ * dobro do limite, ele é silenciado e tudo o que enviar é descartado até o
+ * fim do período. Quadros são identificados pelo senderId do cabeçalho;
+ * datagramas sem cabeçalho, pelo endereço de origem.
+ *
+ * Os baldes ficam em uma tabela de endereçamento aberto indexada pelo
+ * identificador, sem objetos por quadro: o custo por datagrama é uma leitura
+ * do relógio, uma busca na tabela e algumas contas. A tabela guarda no
+ * máximo {@value #MAX_SENDERS} remetentes; os inativos são removidos antes
+ * de ela crescer e, cheia, os remetentes novos dividem um balde comum, o que
+ * limita também quem troca de identificador a cada pacote.
+ *
+ * @author Igor Rozalem
+ */
+public final class FloodGuard {
+    private static final Logger LOGGER = Logger.getLogger(FloodGuard.class.getName());
+
+    /** Quadros por segundo aceitos de cada remetente, por padrão. */
+    public static final int DEFAULT_RATE = 200;
+
+    /** Rajada máxima aceita de um remetente, por padrão. */
+    public static final int DEFAULT_BURST = 400;
+
+    /** Duração padrão do silêncio aplicado a quem inunda o grupo. */
+    public static final long DEFAULT_MUTE_MILLIS = 10000;
+
+    /** Remetentes acompanhados individualmente. */
+    public static final int MAX_SENDERS = 4096;
+
+    private static final int INITIAL_CAPACITY = 64;
+    private static final long IDLE_NANOS = TimeUnit.SECONDS.toNanos(60);
+    private static final long SECOND_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    // Identificador do balde comum dos remetentes que não cabem na tabela
+    static final long OVERFLOW_KEY = 0;
+
+    /**
+     * Interface para saber quando um remetente é silenciado.
+     */
+    public interface FloodListener {
+        /**
+         * Chamado na thread do reator quando um remetente é silenciado.
+         *
+         * @param senderId Identificador do remetente (ou da origem, sem cabeçalho)
+         * @param source Endereço de origem do último datagrama
+         * @param muteMillis Duração do silêncio em milissegundos
+         */
+        void onSenderMuted(long senderId, InetAddress source, long muteMillis);
+    }
+
+    /**
+     * Estado de um remetente; também é o retrato devolvido por {@link #getSenders()}.
+     */
+    public static final class SenderStats {
+        private final long senderId;
+        private InetAddress source;
+        private long credit;
+        private long lastNanos;
+        private long windowStart;
+        private long windowDrops;
+        private long mutedUntil;
+        private long accepted;
+        private long dropped;
+        private long mutes;
+
+        SenderStats(long senderId, long now, long capacity) {
+            this.senderId = senderId;
+            this.credit = capacity;
+            this.lastNanos = now;
+            this.windowStart = now;
+        }
+
+        private SenderStats(SenderStats other) {
+            this.senderId = other.senderId;
+            this.source = other.source;
+            this.mutedUntil = other.mutedUntil;
+            this.accepted = other.accepted;
+            this.dropped = other.dropped;
+            this.mutes = other.mutes;
+        }
+
+        /**
+         * Retorna o identificador do remetente, ou da origem para datagramas sem cabeçalho.
+         *
+         * @return Identificador
+         */
+        public long getSenderId() {
+            return senderId;
+        }
+
+        /**
+         * Retorna o endereço de origem do último datagrama.
+         *
+         * @return Endereço
+         */
+        public InetAddress getSource() {
+            return source;
+        }
+
+        /**
+         * Retorna os quadros aceitos.
+         *
+         * @return Quadros aceitos
+         */
+        public long getAccepted() {
+            return accepted;
+        }
+
+        /**
+         * Retorna os quadros descartados, acima do limite ou durante o silêncio.
+         *
+         * @return Quadros descartados
+         */
+        public long getDropped() {
+            return dropped;
+        }
+
+        /**
+         * Retorna quantas vezes o remetente foi silenciado.
+         *
+         * @return Silêncios aplicados
+         */
+        public long getMutes() {
+            return mutes;
+        }
+
+        /**
+         * Indica se o remetente estava silenciado quando o retrato foi tirado.
+         *
+         * @return true se silenciado
+         */
+        public boolean isMuted() {
+            return mutedUntil - System.nanoTime() > 0;
+        }
+    }
+
+    private final long costNanos;
+    private final long capacityNanos;
+    private final int rate;
+    private final long muteNanos;
+    private final List<FloodListener> listeners = new CopyOnWriteArrayList<>();
+
+    // Tabela de endereçamento aberto, protegida pela instância
+    private long[] keys = new long[INITIAL_CAPACITY];
+    private SenderStats[] values = new SenderStats[INITIAL_CAPACITY];
+    private int size;
+    private SenderStats overflow;
+    private long lastSweepNanos = System.nanoTime() - SECOND_NANOS;
+
+    private volatile long accepted;
+    private volatile long dropped;
+    private volatile long mutes;
+
+    /**
+     * Cria o limite com os valores padrão.
+     */
+    public FloodGuard() {
+        this(DEFAULT_RATE, DEFAULT_BURST, DEFAULT_MUTE_MILLIS);
+    }
+
+    /**
+     * Cria o limite.
+     *
+     * @param rate Quadros por segundo aceitos de cada remetente
+     * @param burst Rajada máxima aceita de um remetente
+     * @param muteMillis Duração do silêncio de quem manda o dobro do limite
+     */
+    public FloodGuard(int rate, int burst, long muteMillis) {
+        if (rate <= 0 || burst <= 0 || muteMillis < 0) {
+            throw new IllegalArgumentException("Limite inválido: " + rate + "/s, rajada " + burst
+                    + ", silêncio " + muteMillis + " ms");
+        }
+        this.rate = rate;
+        this.costNanos = Math.max(1, SECOND_NANOS / rate);
+        this.capacityNanos = costNanos * burst;
+        this.muteNanos = TimeUnit.MILLISECONDS.toNanos(muteMillis);
+    }
+
+    /**
+     * Identificador de um datagrama sem cabeçalho, derivado da origem.
+     *
+     * @param source Endereço de origem
+     * @return Identificador para {@link #allow}
+     */
+    static long sourceKey(InetAddress source) {
+        // O hashCode de um endereço IPv4 é o próprio endereço, e não aloca
+        long tag = source instanceof Inet4Address ? 0x4000_0000_0000_0000L : 0x6000_0000_0000_0000L;
+        return tag | (source.hashCode() & 0xFFFF_FFFFL);
+    }
+
+    /**
+     * Decide se um quadro do remetente pode seguir.
+     *
+     * @param senderId Identificador do remetente, diferente de zero
+     * @param source Endereço de origem
+     * @param now Instante atual, de {@link System#nanoTime()}
+     * @return false se o quadro deve ser descartado
+     */
+    boolean allow(long senderId, InetAddress source, long now) {
+        SenderStats stats;
+        boolean muted = false;
+        synchronized (this) {
+            stats = find(senderId, now);
+            stats.source = source;
+            if (stats.mutedUntil - now > 0) {
+                stats.dropped++;
+                dropped++;
+                return false;
+            }
+
+            stats.credit = Math.min(capacityNanos, stats.credit + (now - stats.lastNanos));
+            stats.lastNanos = now;
+            if (stats.credit >= costNanos) {
+                stats.credit -= costNanos;
+                stats.accepted++;
+                accepted++;
+                return true;
+            }
+
+            stats.dropped++;
+            dropped++;
+            if (now - stats.windowStart >= SECOND_NANOS) {
+                stats.windowStart = now;
+                stats.windowDrops = 0;
+            }
+            if (++stats.windowDrops > rate && muteNanos > 0) {
+                stats.mutedUntil = now + muteNanos;
+                stats.windowDrops = 0;
+                stats.mutes++;
+                mutes++;
+                muted = true;
+            }
+        }
+        if (muted) {
+            LOGGER.log(Level.WARNING, "Remetente {0} ({1}) silenciado por excesso de mensagens",
+                    new Object[]{Long.toHexString(senderId), source});
+            for (FloodListener listener : listeners) {
+                try {
+                    listener.onSenderMuted(senderId, source, TimeUnit.NANOSECONDS.toMillis(muteNanos));
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.WARNING, "Erro no ouvinte de inundação", e);
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Acha ou cria o estado do remetente. Chamado com o lock da instância.
+     */
+    private SenderStats find(long key, long now) {
+        int mask = keys.length - 1;
+        int slot = slot(key, mask);
+        while (values[slot] != null) {
+            if (keys[slot] == key) {
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (size >= MAX_SENDERS || (size + 1) * 4 > keys.length * 3) {
+            // Remover os inativos antes de crescer, no máximo uma vez por segundo
+            if (now - lastSweepNanos >= SECOND_NANOS) {
+                lastSweepNanos = now;
+                rebuild(keys.length, now);
+            }
+            if (size >= MAX_SENDERS) {
+                if (overflow == null) {
+                    overflow = new SenderStats(OVERFLOW_KEY, now, capacityNanos);
+                }
+                return overflow;
+            }
+            if ((size + 1) * 4 > keys.length * 3) {
+                rebuild(keys.length * 2, now);
+            }
+            return find(key, now);
+        }
+        SenderStats stats = new SenderStats(key, now, capacityNanos);
+        keys[slot] = key;
+        values[slot] = stats;
+        size++;
+        return stats;
+    }
+
+    private void rebuild(int capacity, long now) {
+        long[] oldKeys = keys;
+        SenderStats[] oldValues = values;
+        keys = new long[capacity];
+        values = new SenderStats[capacity];
+        size = 0;
+        int mask = capacity - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            SenderStats stats = oldValues[i];
+            if (stats == null || (now - stats.lastNanos > IDLE_NANOS && stats.mutedUntil - now <= 0)) {
+                continue;
+            }
+            int slot = slot(oldKeys[i], mask);
+            while (values[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            keys[slot] = oldKeys[i];
+            values[slot] = stats;
+            size++;
+        }
+    }
+
+    private static int slot(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    /**
+     * Registra um ouvinte de remetentes silenciados.
+     *
+     * @param listener Ouvinte
+     */
+    public void addListener(FloodListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Remove um ouvinte de remetentes silenciados.
+     *
+     * @param listener Ouvinte
+     */
+    public void removeListener(FloodListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Retorna um retrato dos remetentes acompanhados, incluindo o balde
+     * comum (identificador 0) se a tabela tiver enchido.
+     *
+     * @return Estatísticas por remetente
+     */
+    public synchronized List<SenderStats> getSenders() {
+        List<SenderStats> result = new ArrayList<>(size + 1);
+        for (SenderStats stats : values) {
+            if (stats != null) {
+                result.add(new SenderStats(stats));
+            }
+        }
+        if (overflow != null) {
+            result.add(new SenderStats(overflow));
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * Retorna o total de quadros aceitos.
+     *
+     * @return Quadros aceitos
+     */
+    public long getAccepted() {
+        return accepted;
+    }
+
+    /**
+     * Retorna o total de quadros descartados.
+     *
+     * @return Quadros descartados
+     */
+    public long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * Retorna quantas vezes algum remetente foi silenciado.
+     *
+     * @return Silêncios aplicados
+     */
+    public long getMutes() {
+        return mutes;
+    }
+}
@@ -0,0 +1,63 @@
+package local.redes.multicast;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * Participação de um {@link MulticastManager} em uma sala: por onde os
+ * quadros saem e chegam. Pode ser o canal multicast compartilhado do
+ * {@link MulticastEngine} ou, em redes sem multicast, um {@link UnicastHub}.
+ *
+ * @author Igor Rozalem
+ */
+interface GroupEndpoint {
+
+    /**
+     * Passa a receber os datagramas da sala.
+     *
+     * @param handler Destino dos datagramas, chamado na thread do reator
+     * @throws IllegalStateException Se a participação já tiver sido encerrada
+     */
+    void start(MulticastReactor.DatagramHandler handler);
+
+    /**
+     * Envia um quadro pronto.
+     *
+     * @param frame Buffer posicionado sobre o quadro
+     * @param target Destino: o grupo ou um participante
+     * @return Bytes enviados, ou 0 se o buffer do sistema estiver cheio
+     * @throws IOException Se o envio falhar
+     */
+    int send(ByteBuffer frame, InetSocketAddress target) throws IOException;
+
+    /**
+     * Restringe a recepção à fonte informada.
+     *
+     * @param source Remetente permitido
+     * @throws IOException Se a inscrição por fonte não for suportada
+     */
+    void joinSource(InetAddress source) throws IOException;
+
+    /**
+     * Remove uma fonte permitida; sem fontes, volta a aceitar qualquer remetente.
+     *
+     * @param source Remetente a remover
+     * @throws IOException Se a inscrição geral não puder ser refeita
+     */
+    void leaveSource(InetAddress source) throws IOException;
+
+    /**
+     * Ajusta o buffer de recepção do canal, sem nunca reduzi-lo.
+     *
+     * @param bytes Tamanho desejado
+     * @throws IOException Se a opção não puder ser aplicada
+     */
+    void setReceiveBufferSize(int bytes) throws IOException;
+
+    /**
+     * Sai da sala e libera os recursos.
+     */
+    void close();
+}
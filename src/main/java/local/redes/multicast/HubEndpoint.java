@@ -0,0 +1,192 @@
+package local.redes.multicast;
+
+import java.io.IOException;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Participação em uma sala por meio de um {@link UnicastHub}, usada pelo
+ * {@link MulticastManager} quando o multicast não está disponível. Todos os
+ * quadros vão ao hub, inclusive os que seriam unicast para um participante,
+ * e os que chegam dele são desempacotados e entregues um a um, como se
+ * tivessem vindo do grupo.
+ *
+ * A inscrição é renovada a cada {@value UnicastHub#RENEW_MILLIS} ms com a
+ * quantidade de datagramas recebidos, que o hub usa para despejar quem não
+ * dá conta do fluxo; depois do despejo, as renovações voltam a inscrever o
+ * participante assim que o hub permitir.
+ *
+ * @author Igor Rozalem
+ */
+final class HubEndpoint implements GroupEndpoint {
+    private static final Logger LOGGER = Logger.getLogger(HubEndpoint.class.getName());
+
+    private final InetSocketAddress hub;
+    private final int room;
+    private final long senderId;
+    private final DatagramChannel channel;
+    private final MulticastReactor reactor;
+    private final ByteBuffer controlBuffer = ByteBuffer.allocate(MulticastFrame.HEADER_SIZE);
+    private MulticastReactor.DatagramHandler handler;
+    private ScheduledFuture<?> renewal;
+    private int receiveBufferSize;
+    private boolean receiving;
+    private boolean closed;
+
+    // Escrito só pela thread do reator
+    private volatile long received;
+
+    /**
+     * Abre o canal para falar com o hub.
+     *
+     * @param hub Endereço do hub
+     * @param room Sala, de 0 a {@value MulticastFrame#MAX_ROOM}
+     * @param senderId Identificador do remetente dono da participação
+     * @throws IOException Se o canal não puder ser aberto
+     */
+    HubEndpoint(InetSocketAddress hub, int room, long senderId) throws IOException {
+        if (room < 0 || room > MulticastFrame.MAX_ROOM) {
+            throw new IllegalArgumentException("Sala inválida: " + room);
+        }
+        if (hub.isUnresolved()) {
+            throw new IOException("Endereço do hub não resolvido: " + hub.getHostString());
+        }
+        this.hub = hub;
+        this.room = room;
+        this.senderId = senderId;
+        this.reactor = MulticastReactor.getInstance();
+        this.channel = DatagramChannel.open(hub.getAddress() instanceof Inet6Address
+                ? StandardProtocolFamily.INET6 : StandardProtocolFamily.INET);
+        try {
+            channel.bind(null);
+            channel.configureBlocking(false);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public synchronized void start(MulticastReactor.DatagramHandler datagramHandler) {
+        if (closed) {
+            throw new IllegalStateException("Participação já encerrada");
+        }
+        if (receiving) {
+            return;
+        }
+        handler = datagramHandler;
+        receiving = true;
+        reactor.register(channel, this::onDatagram);
+        subscribe((short) 0);
+        renewal = UnicastHub.TIMER.scheduleAtFixedRate(() -> subscribe((short) 0),
+                UnicastHub.RENEW_MILLIS, UnicastHub.RENEW_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Envia a inscrição, a renovação ou, com {@link MulticastFrame#FLAG_LEAVE}, a saída.
+     */
+    private void subscribe(short flags) {
+        synchronized (controlBuffer) {
+            controlBuffer.clear();
+            MulticastFrame.writeHeader(controlBuffer, MulticastFrame.TYPE_SUBSCRIBE, flags, room, senderId,
+                    received, System.currentTimeMillis());
+            controlBuffer.flip();
+            try {
+                channel.send(controlBuffer, hub);
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Inscrição no hub não enviada", e);
+            }
+        }
+    }
+
+    /**
+     * Desempacota os datagramas do hub, na thread do reator.
+     */
+    private void onDatagram(ByteBuffer data, InetSocketAddress source) {
+        if (!hub.equals(source)) {
+            return;
+        }
+        received++;
+        if (!MulticastFrame.isFrame(data)) {
+            handler.onDatagram(data, source);
+            return;
+        }
+        byte type = MulticastFrame.type(data);
+        if (type == MulticastFrame.TYPE_RELAY) {
+            int limit = data.limit();
+            int position = data.position() + MulticastFrame.HEADER_SIZE;
+            while (position + MulticastFrame.RELAY_ENTRY_HEADER_SIZE <= limit) {
+                int start = position + MulticastFrame.RELAY_ENTRY_HEADER_SIZE;
+                int end = start + (data.getShort(position) & 0xFFFF);
+                if (end > limit) {
+                    LOGGER.log(Level.FINE, "Leva do hub truncada descartada");
+                    return;
+                }
+                data.limit(end).position(start);
+                handler.onDatagram(data, source);
+                data.limit(limit);
+                position = end;
+            }
+        } else if (type == MulticastFrame.TYPE_SUBSCRIBE) {
+            if ((MulticastFrame.flags(data) & MulticastFrame.FLAG_LEAVE) != 0) {
+                LOGGER.log(Level.WARNING, "Despejado da sala {0} pelo hub {1} por perder mensagens demais",
+                        new Object[]{room, hub});
+            }
+        } else {
+            handler.onDatagram(data, source);
+        }
+    }
+
+    @Override
+    public int send(ByteBuffer frame, InetSocketAddress target) throws IOException {
+        // Sem multicast, até as respostas individuais passam pelo hub
+        return channel.send(frame, hub);
+    }
+
+    @Override
+    public void joinSource(InetAddress source) throws IOException {
+        throw new IOException("Inscrição por fonte indisponível pelo hub unicast");
+    }
+
+    @Override
+    public void leaveSource(InetAddress source) {
+        // Nenhuma fonte pode ter sido adicionada
+    }
+
+    @Override
+    public synchronized void setReceiveBufferSize(int bytes) throws IOException {
+        if (bytes > receiveBufferSize) {
+            channel.setOption(StandardSocketOptions.SO_RCVBUF, bytes);
+            receiveBufferSize = bytes;
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (receiving) {
+            renewal.cancel(false);
+            subscribe(MulticastFrame.FLAG_LEAVE);
+            reactor.unregister(channel);
+            receiving = false;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Erro ao fechar o canal do hub", e);
+        }
+        reactor.wakeup();
+    }
+}
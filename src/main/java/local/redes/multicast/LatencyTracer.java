@@ -0,0 +1,236 @@
+package local.redes.multicast;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import local.redes.estatisticas.HistogramaLatencia;
+
+/**
+ * Latência de ponta a ponta dos quadros rastreados, por remetente.
+ *
+ * Remetentes com o rastreamento ativo ({@link MulticastManager#enableTracing()})
+ * gravam em cada quadro um id e o instante do envio em nanossegundos desde a
+ * época, lido de {@link #epochNanos()}. Cada receptor subtrai esse instante
+ * do próprio relógio ao receber e registra o resultado no histograma do
+ * remetente. A medida só vale no mesmo host ou entre hosts com relógios
+ * sincronizados (PTP, ou NTP para latências bem maiores que o erro do
+ * relógio); amostras negativas indicam relógios fora de sincronia e são
+ * contadas à parte.
+ *
+ * Os ouvintes recebem cada amostra na thread do reator; {@link #dump()}
+ * resume os histogramas em uma tabela.
+ *
+ * @author Igor Rozalem
+ */
+public final class LatencyTracer {
+    private static final Logger LOGGER = Logger.getLogger(LatencyTracer.class.getName());
+
+    /** Remetentes acompanhados; os excedentes entram só no total. */
+    public static final int MAX_SENDERS = 4096;
+
+    // Relógio de época com resolução de nanossegundos: a época é lida uma
+    // vez e o tempo decorrido vem do relógio monotônico
+    private static final long EPOCH_ORIGIN_NANOS;
+    private static final long MONOTONIC_ORIGIN_NANOS;
+
+    static {
+        Instant now = Instant.now();
+        MONOTONIC_ORIGIN_NANOS = System.nanoTime();
+        EPOCH_ORIGIN_NANOS = now.getEpochSecond() * 1_000_000_000L + now.getNano();
+    }
+
+    /**
+     * Interface para receber cada amostra de latência.
+     */
+    public interface TraceListener {
+        /**
+         * Chamado na thread do reator para cada quadro rastreado recebido.
+         *
+         * @param senderId Identificador do remetente
+         * @param traceId Id do rastreamento
+         * @param latencyNanos Latência de ida, em nanossegundos; negativa com relógios fora de sincronia
+         */
+        void onTrace(long senderId, long traceId, long latencyNanos);
+    }
+
+    /**
+     * Latências de um remetente.
+     */
+    public static final class SenderLatency {
+        private final long senderId;
+        private final HistogramaLatencia histogram = new HistogramaLatencia();
+        private final AtomicLong negative = new AtomicLong();
+        private volatile long lastTraceId;
+
+        SenderLatency(long senderId) {
+            this.senderId = senderId;
+        }
+
+        /**
+         * Retorna o identificador do remetente.
+         *
+         * @return Identificador do remetente
+         */
+        public long getSenderId() {
+            return senderId;
+        }
+
+        /**
+         * Retorna o histograma das latências do remetente.
+         *
+         * @return Histograma em nanossegundos
+         */
+        public HistogramaLatencia getHistogram() {
+            return histogram;
+        }
+
+        /**
+         * Retorna quantas amostras deram negativas.
+         *
+         * @return Amostras com relógios fora de sincronia
+         */
+        public long getNegativeSamples() {
+            return negative.get();
+        }
+
+        /**
+         * Retorna o id do último rastreamento recebido do remetente.
+         *
+         * @return Id do rastreamento
+         */
+        public long getLastTraceId() {
+            return lastTraceId;
+        }
+    }
+
+    private final Map<Long, SenderLatency> senders = new ConcurrentHashMap<>();
+    private final HistogramaLatencia total = new HistogramaLatencia();
+    private final List<TraceListener> listeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Retorna o instante atual em nanossegundos desde a época, usado no
+     * envio e na recepção dos quadros rastreados.
+     *
+     * @return Nanossegundos desde a época
+     */
+    public static long epochNanos() {
+        return EPOCH_ORIGIN_NANOS + (System.nanoTime() - MONOTONIC_ORIGIN_NANOS);
+    }
+
+    /**
+     * Registra a latência de um quadro rastreado recebido.
+     *
+     * @param senderId Identificador do remetente
+     * @param traceId Id do rastreamento
+     * @param sentNanos Instante do envio em nanossegundos desde a época
+     */
+    void record(long senderId, long traceId, long sentNanos) {
+        long latency = epochNanos() - sentNanos;
+        SenderLatency sender = senders.get(senderId);
+        if (sender == null && senders.size() < MAX_SENDERS) {
+            sender = senders.computeIfAbsent(senderId, SenderLatency::new);
+        }
+        if (latency >= 0) {
+            total.registrar(latency);
+        }
+        if (sender != null) {
+            sender.lastTraceId = traceId;
+            if (latency >= 0) {
+                sender.histogram.registrar(latency);
+            } else {
+                sender.negative.incrementAndGet();
+            }
+        }
+        for (TraceListener listener : listeners) {
+            try {
+                listener.onTrace(senderId, traceId, latency);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Erro no ouvinte de rastreamento", e);
+            }
+        }
+    }
+
+    /**
+     * Registra um ouvinte das amostras de latência.
+     *
+     * @param listener Ouvinte
+     */
+    public void addListener(TraceListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Remove um ouvinte das amostras de latência.
+     *
+     * @param listener Ouvinte
+     */
+    public void removeListener(TraceListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Retorna as latências de um remetente.
+     *
+     * @param senderId Identificador do remetente
+     * @return Latências, ou null se nenhum quadro rastreado dele foi recebido
+     */
+    public SenderLatency getSender(long senderId) {
+        return senders.get(senderId);
+    }
+
+    /**
+     * Retorna as latências de todos os remetentes acompanhados.
+     *
+     * @return Cópia da lista de remetentes
+     */
+    public List<SenderLatency> getSenders() {
+        return Collections.unmodifiableList(new ArrayList<>(senders.values()));
+    }
+
+    /**
+     * Retorna o histograma com as latências de todos os remetentes.
+     *
+     * @return Histograma em nanossegundos
+     */
+    public HistogramaLatencia getTotal() {
+        return total;
+    }
+
+    /**
+     * Resume as latências em uma tabela, um remetente por linha e o total
+     * no fim, com os percentis em microssegundos.
+     *
+     * @return Tabela em texto
+     */
+    public String dump() {
+        StringBuilder out = new StringBuilder();
+        out.append(String.format(Locale.ROOT, "%-18s %10s %10s %10s %10s %10s %9s%n",
+                "remetente", "amostras", "p50 µs", "p99 µs", "p99.9 µs", "máx µs", "negativas"));
+        List<SenderLatency> list = new ArrayList<>(senders.values());
+        list.sort((a, b) -> Long.compareUnsigned(a.senderId, b.senderId));
+        for (SenderLatency sender : list) {
+            appendRow(out, String.format("%016x", sender.senderId), sender.histogram.retrato(), sender.getNegativeSamples());
+        }
+        long negative = 0;
+        for (SenderLatency sender : list) {
+            negative += sender.getNegativeSamples();
+        }
+        appendRow(out, "total", total.retrato(), negative);
+        return out.toString();
+    }
+
+    private static void appendRow(StringBuilder out, String name, HistogramaLatencia.Retrato snapshot, long negative) {
+        out.append(String.format(Locale.ROOT, "%-18s %10d %10.1f %10.1f %10.1f %10.1f %9d%n", name,
+                snapshot.getContagem(), snapshot.percentil(50) / 1e3, snapshot.percentil(99) / 1e3,
+                snapshot.percentil(99.9) / 1e3, snapshot.getMaximo() / 1e3, negative));
+    }
+}
@@ -0,0 +1,561 @@
+package local.redes.multicast;
+
+import java.io.IOException;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.ProtocolFamily;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.MembershipKey;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Motor multicast do processo: compartilha um único canal por porta, família
+ * e interface entre todos os {@link MulticastManager}s, e conta referências
+ * das inscrições em grupos, de modo que cada grupo custa uma inscrição no
+ * sistema, não importa quantas salas o usem.
+ *
+ * Como o receptor não vê o endereço de destino de um datagrama, a entrega é
+ * decidida pela sala gravada no {@link MulticastFrame}: o canal lê o
+ * datagrama uma vez, na thread do {@link MulticastReactor}, e o repassa apenas
+ * aos participantes da sala. Por isso cada sala de um canal pertence a um
+ * único grupo: abrir a mesma sala em outro grupo da mesma porta é recusado,
+ * em vez de misturar as conversas dos dois grupos.
+ *
+ * @author Igor Rozalem
+ */
+public final class MulticastEngine {
+    private static final Logger LOGGER = Logger.getLogger(MulticastEngine.class.getName());
+
+    private static MulticastEngine instance;
+
+    private final MulticastReactor reactor;
+    private final Map<ChannelKey, SharedChannel> channels = new HashMap<>();
+
+    private MulticastEngine(MulticastReactor reactor) {
+        this.reactor = reactor;
+    }
+
+    /**
+     * Retorna o motor do processo, criando-o na primeira chamada.
+     *
+     * @return Motor compartilhado
+     * @throws IOException Se não for possível iniciar o reator
+     */
+    public static synchronized MulticastEngine getInstance() throws IOException {
+        if (instance == null) {
+            instance = new MulticastEngine(MulticastReactor.getInstance());
+        }
+        return instance;
+    }
+
+    /**
+     * Abre um ponto de acesso a uma sala de um grupo, entrando no grupo se
+     * for o primeiro participante dele no canal.
+     *
+     * @param group Endereço do grupo multicast
+     * @param port Porta do grupo
+     * @param networkInterface Interface de rede
+     * @param room Sala, de 0 a {@value MulticastFrame#MAX_ROOM}
+     * @return Ponto de acesso, que deve ser fechado ao final
+     * @throws IOException Se o canal não puder ser criado, a inscrição falhar
+     *         ou a sala já for usada por outro grupo na mesma porta
+     */
+    synchronized Endpoint open(InetAddress group, int port, NetworkInterface networkInterface, int room)
+            throws IOException {
+        if (room < 0 || room > MulticastFrame.MAX_ROOM) {
+            throw new IllegalArgumentException("Sala inválida: " + room);
+        }
+        ChannelKey key = new ChannelKey(port, group instanceof Inet6Address, networkInterface);
+        SharedChannel shared = channels.get(key);
+        if (shared != null) {
+            RoomOwner owner = shared.owners.get(room);
+            if (owner != null && !owner.group.equals(group)) {
+                throw new IOException("Sala " + room + " da porta " + port + " já usada pelo grupo "
+                        + owner.group.getHostAddress() + "; grupos na mesma porta precisam de salas diferentes");
+            }
+        } else {
+            shared = new SharedChannel(key);
+            channels.put(key, shared);
+        }
+        Endpoint endpoint = new Endpoint(shared, group, room);
+        try {
+            shared.acquireAnySource(group);
+        } catch (IOException | RuntimeException e) {
+            shared.releaseIfUnused();
+            throw e;
+        }
+        shared.endpoints++;
+        shared.claimRoom(room, group);
+        return endpoint;
+    }
+
+    /**
+     * Retorna a quantidade de canais abertos pelo motor.
+     *
+     * @return Canais abertos
+     */
+    public synchronized int getChannelCount() {
+        return channels.size();
+    }
+
+    /**
+     * Retorna a quantidade de inscrições em grupos mantidas no sistema.
+     *
+     * @return Inscrições ativas
+     */
+    public synchronized int getMembershipCount() {
+        int count = 0;
+        for (SharedChannel shared : channels.values()) {
+            for (Membership membership : shared.memberships.values()) {
+                count += membership.anySourceKey != null ? 1 : membership.sourceKeys.size();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Retorna a quantidade de salas com ao menos um participante recebendo.
+     *
+     * @return Salas ativas
+     */
+    public synchronized int getRoomCount() {
+        int count = 0;
+        for (SharedChannel shared : channels.values()) {
+            count += shared.rooms.size();
+        }
+        return count;
+    }
+
+    /**
+     * Identifica um canal compartilhado.
+     */
+    private static final class ChannelKey {
+        private final int port;
+        private final boolean ipv6;
+        private final NetworkInterface networkInterface;
+
+        private ChannelKey(int port, boolean ipv6, NetworkInterface networkInterface) {
+            this.port = port;
+            this.ipv6 = ipv6;
+            this.networkInterface = networkInterface;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof ChannelKey)) {
+                return false;
+            }
+            ChannelKey key = (ChannelKey) other;
+            return port == key.port && ipv6 == key.ipv6 && networkInterface.equals(key.networkInterface);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(port, ipv6, networkInterface);
+        }
+    }
+
+    /**
+     * Inscrições de um grupo no canal, com as referências de quem as usa.
+     * Enquanto algum participante aceitar qualquer fonte, só a inscrição
+     * geral existe; as por fonte são refeitas quando ela sai.
+     */
+    private static final class Membership {
+        private MembershipKey anySourceKey;
+        private int anySourceRefs;
+        private final Map<InetAddress, Integer> sourceRefs = new HashMap<>();
+        private final Map<InetAddress, MembershipKey> sourceKeys = new HashMap<>();
+
+        private boolean isUnused() {
+            return anySourceRefs == 0 && sourceRefs.isEmpty();
+        }
+    }
+
+    /**
+     * Grupo dono de uma sala do canal, com os participantes abertos nela.
+     */
+    private static final class RoomOwner {
+        private final InetAddress group;
+        private int endpoints;
+
+        private RoomOwner(InetAddress group) {
+            this.group = group;
+        }
+    }
+
+    /**
+     * Canal de uma porta, com as inscrições e as salas que o usam.
+     */
+    private final class SharedChannel {
+        private final ChannelKey key;
+        private final DatagramChannel channel;
+        private final Map<InetAddress, Membership> memberships = new HashMap<>();
+        // Lida pela thread do reator sem lock; os arrays são substituídos, nunca alterados
+        private final Map<Integer, Endpoint[]> rooms = new ConcurrentHashMap<>();
+        // Inclui os participantes abertos que ainda não recebem
+        private final Map<Integer, RoomOwner> owners = new HashMap<>();
+        private int endpoints;
+        private int receiveBufferSize;
+
+        private SharedChannel(ChannelKey key) throws IOException {
+            this.key = key;
+            ProtocolFamily family = key.ipv6 ? StandardProtocolFamily.INET6 : StandardProtocolFamily.INET;
+            channel = DatagramChannel.open(family);
+            try {
+                channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+                channel.bind(new InetSocketAddress(key.port));
+                channel.setOption(StandardSocketOptions.IP_MULTICAST_IF, key.networkInterface);
+                channel.setOption(StandardSocketOptions.IP_MULTICAST_LOOP, true);
+                channel.configureBlocking(false);
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+            reactor.register(channel, this::onDatagram);
+
+            LOGGER.log(Level.INFO, "Canal multicast aberto na porta {0} da interface {1}",
+                    new Object[]{key.port, key.networkInterface.getName()});
+        }
+
+        /**
+         * Repassa o datagrama aos participantes da sala, na thread do reator.
+         * Datagramas sem cabeçalho vão a todos os participantes do canal.
+         */
+        private void onDatagram(ByteBuffer data, InetSocketAddress source) {
+            int position = data.position();
+            int limit = data.limit();
+            if (MulticastFrame.isFrame(data)) {
+                Endpoint[] targets = rooms.get(MulticastFrame.room(data));
+                if (targets != null) {
+                    dispatch(targets, data, source, position, limit);
+                }
+            } else {
+                for (Endpoint[] targets : rooms.values()) {
+                    dispatch(targets, data, source, position, limit);
+                }
+            }
+        }
+
+        private void dispatch(Endpoint[] targets, ByteBuffer data, InetSocketAddress source,
+                int position, int limit) {
+            for (Endpoint endpoint : targets) {
+                if (!endpoint.accepts(source.getAddress())) {
+                    continue;
+                }
+                try {
+                    endpoint.handler.onDatagram(data, source);
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.WARNING, "Erro ao processar datagrama da sala " + endpoint.room, e);
+                }
+                // Cada participante recebe o datagrama inteiro
+                data.limit(limit).position(position);
+            }
+        }
+
+        private Membership membership(InetAddress group) {
+            Membership membership = memberships.get(group);
+            if (membership == null) {
+                membership = new Membership();
+                memberships.put(group, membership);
+            }
+            return membership;
+        }
+
+        private void acquireAnySource(InetAddress group) throws IOException {
+            Membership membership = membership(group);
+            if (membership.anySourceRefs == 0) {
+                // A inscrição geral já recebe todas as fontes
+                for (MembershipKey sourceKey : membership.sourceKeys.values()) {
+                    sourceKey.drop();
+                }
+                membership.sourceKeys.clear();
+                try {
+                    membership.anySourceKey = channel.join(group, key.networkInterface);
+                } catch (IOException | RuntimeException e) {
+                    rejoinSources(group, membership);
+                    forgetIfUnused(group, membership);
+                    throw e;
+                }
+            }
+            membership.anySourceRefs++;
+        }
+
+        private void releaseAnySource(InetAddress group) throws IOException {
+            Membership membership = memberships.get(group);
+            if (membership == null || membership.anySourceRefs == 0) {
+                return;
+            }
+            if (--membership.anySourceRefs == 0) {
+                membership.anySourceKey.drop();
+                membership.anySourceKey = null;
+                try {
+                    rejoinSources(group, membership);
+                } finally {
+                    forgetIfUnused(group, membership);
+                }
+            }
+        }
+
+        private void acquireSource(InetAddress group, InetAddress source) throws IOException {
+            Membership membership = membership(group);
+            if (membership.anySourceRefs == 0 && !membership.sourceKeys.containsKey(source)) {
+                try {
+                    membership.sourceKeys.put(source, channel.join(group, key.networkInterface, source));
+                } catch (IOException | RuntimeException e) {
+                    forgetIfUnused(group, membership);
+                    throw e;
+                }
+            }
+            membership.sourceRefs.merge(source, 1, Integer::sum);
+        }
+
+        private void releaseSource(InetAddress group, InetAddress source) {
+            Membership membership = memberships.get(group);
+            if (membership == null) {
+                return;
+            }
+            Integer refs = membership.sourceRefs.get(source);
+            if (refs == null) {
+                return;
+            }
+            if (refs > 1) {
+                membership.sourceRefs.put(source, refs - 1);
+                return;
+            }
+            membership.sourceRefs.remove(source);
+            MembershipKey sourceKey = membership.sourceKeys.remove(source);
+            if (sourceKey != null) {
+                sourceKey.drop();
+            }
+            forgetIfUnused(group, membership);
+        }
+
+        private void rejoinSources(InetAddress group, Membership membership) throws IOException {
+            for (InetAddress source : membership.sourceRefs.keySet()) {
+                membership.sourceKeys.put(source, channel.join(group, key.networkInterface, source));
+            }
+        }
+
+        private void forgetIfUnused(InetAddress group, Membership membership) {
+            if (membership.isUnused()) {
+                memberships.remove(group);
+            }
+        }
+
+        private void claimRoom(int room, InetAddress group) {
+            RoomOwner owner = owners.get(room);
+            if (owner == null) {
+                owner = new RoomOwner(group);
+                owners.put(room, owner);
+            }
+            owner.endpoints++;
+        }
+
+        private void releaseRoom(int room) {
+            RoomOwner owner = owners.get(room);
+            if (owner != null && --owner.endpoints == 0) {
+                owners.remove(room);
+            }
+        }
+
+        private void addToRoom(Endpoint endpoint) {
+            Endpoint[] current = rooms.get(endpoint.room);
+            Endpoint[] updated = current == null ? new Endpoint[1] : Arrays.copyOf(current, current.length + 1);
+            updated[updated.length - 1] = endpoint;
+            rooms.put(endpoint.room, updated);
+        }
+
+        private void removeFromRoom(Endpoint endpoint) {
+            Endpoint[] current = rooms.get(endpoint.room);
+            if (current == null) {
+                return;
+            }
+            int kept = 0;
+            Endpoint[] updated = new Endpoint[current.length];
+            for (Endpoint other : current) {
+                if (other != endpoint) {
+                    updated[kept++] = other;
+                }
+            }
+            if (kept == 0) {
+                rooms.remove(endpoint.room);
+            } else if (kept < current.length) {
+                rooms.put(endpoint.room, Arrays.copyOf(updated, kept));
+            }
+        }
+
+        /**
+         * Fecha o canal se nenhum participante o usa mais.
+         */
+        private void releaseIfUnused() {
+            if (endpoints > 0 || !memberships.isEmpty()) {
+                return;
+            }
+            channels.remove(key);
+            reactor.unregister(channel);
+            try {
+                channel.close();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Erro ao fechar canal multicast", e);
+            }
+            reactor.wakeup();
+
+            LOGGER.log(Level.INFO, "Canal multicast da porta {0} fechado", key.port);
+        }
+    }
+
+    /**
+     * Participação de um gerenciador em uma sala de um grupo.
+     */
+    final class Endpoint implements GroupEndpoint {
+        private final SharedChannel shared;
+        private final InetAddress group;
+        private final int room;
+        // Fontes permitidas; vazio aceita qualquer uma. Substituído, nunca alterado
+        private volatile Set<InetAddress> sources = new HashSet<>();
+        private MulticastReactor.DatagramHandler handler;
+        private boolean receiving;
+        private boolean closed;
+
+        private Endpoint(SharedChannel shared, InetAddress group, int room) {
+            this.shared = shared;
+            this.group = group;
+            this.room = room;
+        }
+
+        @Override
+        public int send(ByteBuffer frame, InetSocketAddress target) throws IOException {
+            return shared.channel.send(frame, target);
+        }
+
+        private boolean accepts(InetAddress source) {
+            Set<InetAddress> allowed = sources;
+            return allowed.isEmpty() || allowed.contains(source);
+        }
+
+        /**
+         * Passa a receber os datagramas da sala.
+         *
+         * @param datagramHandler Destino dos datagramas, chamado na thread do reator
+         */
+        @Override
+        public void start(MulticastReactor.DatagramHandler datagramHandler) {
+            synchronized (MulticastEngine.this) {
+                if (closed) {
+                    throw new IllegalStateException("Participação já encerrada");
+                }
+                if (receiving) {
+                    return;
+                }
+                handler = datagramHandler;
+                receiving = true;
+                shared.addToRoom(this);
+            }
+        }
+
+        /**
+         * Restringe a recepção à fonte informada, trocando a inscrição geral
+         * deste participante por uma específica de fonte.
+         *
+         * @param source Remetente permitido
+         * @throws IOException Se o sistema não suportar inscrição por fonte
+         */
+        @Override
+        public void joinSource(InetAddress source) throws IOException {
+            synchronized (MulticastEngine.this) {
+                if (closed || sources.contains(source)) {
+                    return;
+                }
+                shared.acquireSource(group, source);
+                if (sources.isEmpty()) {
+                    shared.releaseAnySource(group);
+                }
+                Set<InetAddress> updated = new HashSet<>(sources);
+                updated.add(source);
+                sources = updated;
+            }
+        }
+
+        /**
+         * Remove uma fonte permitida; sem fontes, volta a aceitar qualquer remetente.
+         *
+         * @param source Remetente a remover
+         * @throws IOException Se a inscrição geral não puder ser refeita
+         */
+        @Override
+        public void leaveSource(InetAddress source) throws IOException {
+            synchronized (MulticastEngine.this) {
+                if (closed || !sources.contains(source)) {
+                    return;
+                }
+                if (sources.size() == 1) {
+                    shared.acquireAnySource(group);
+                }
+                Set<InetAddress> updated = new HashSet<>(sources);
+                updated.remove(source);
+                sources = updated;
+                shared.releaseSource(group, source);
+            }
+        }
+
+        /**
+         * Ajusta o buffer de recepção do canal, sem nunca reduzi-lo, pois ele é compartilhado.
+         *
+         * @param bytes Tamanho desejado
+         * @throws IOException Se a opção não puder ser aplicada
+         */
+        @Override
+        public void setReceiveBufferSize(int bytes) throws IOException {
+            synchronized (MulticastEngine.this) {
+                if (bytes > shared.receiveBufferSize) {
+                    shared.channel.setOption(StandardSocketOptions.SO_RCVBUF, bytes);
+                    shared.receiveBufferSize = bytes;
+                }
+            }
+        }
+
+        /**
+         * Sai da sala e libera as inscrições; o canal fecha com o último participante.
+         */
+        @Override
+        public void close() {
+            synchronized (MulticastEngine.this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                if (receiving) {
+                    shared.removeFromRoom(this);
+                    receiving = false;
+                }
+                try {
+                    if (sources.isEmpty()) {
+                        shared.releaseAnySource(group);
+                    } else {
+                        for (InetAddress source : sources) {
+                            shared.releaseSource(group, source);
+                        }
+                    }
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Erro ao sair do grupo " + group.getHostAddress(), e);
+                }
+                shared.endpoints--;
+                shared.releaseRoom(room);
+                shared.releaseIfUnused();
+            }
+        }
+    }
+}
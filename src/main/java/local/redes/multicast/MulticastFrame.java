@@ -0,0 +1,274 @@
+package local.redes.multicast;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Cabeçalho binário dos datagramas trocados pelo {@link MulticastManager}.
+ * Formato fixo de {@value #HEADER_SIZE} bytes, big-endian, seguido do corpo:
+ *
+ * <pre>
+ * magia 'M' 'C' (2) | versão (1) | tipo (1) | flags (2) | sala (2)
+ * senderId (8) | sequência (8) | timestamp em epoch millis (8)
+ * </pre>
+ *
+ * Nos tipos {@link #TYPE_CHAT} e {@link #TYPE_SYSTEM} o corpo é o tamanho do
+ * nome (1 byte), o nome em UTF-8 e o texto em UTF-8. Em {@link #TYPE_DATA} o
+ * corpo é entregue sem interpretação. Os quadros de controle do modo
+ * confiável usam sequência 0: {@link #TYPE_NACK} leva o remetente alvo (8),
+ * a quantidade de faixas (1) e cada faixa como primeira sequência (8) e
+ * comprimento (2); {@link #TYPE_SESSION} leva a maior sequência enviada (8).
+ * Em {@link #TYPE_BATCH} o corpo é uma sequência de entradas, cada uma com
+ * tipo (1), comprimento (2) e o corpo de um quadro daquele tipo.
+ * {@link #TYPE_HEARTBEAT} também usa sequência 0 e leva o intervalo entre
+ * batimentos em milissegundos (4), o tamanho do nome (1) e o nome.
+ * A transferência de estado também usa sequência 0: {@link #TYPE_STATE_REQUEST}
+ * leva o id do pedido (4) e a quantidade de mensagens (2);
+ * {@link #TYPE_STATE_ANSWER} leva o remetente do pedido (8) e o id (4);
+ * {@link #TYPE_STATE}, enviado por unicast, leva o remetente do pedido (8),
+ * o id (4), a quantidade de mensagens (2), o tamanho descomprimido (4) e as
+ * mensagens comprimidas com Deflate.
+ * Com o {@link UnicastHub}, {@link #TYPE_SUBSCRIBE} inscreve o remetente na
+ * sala e leva na sequência a quantidade de datagramas já recebidos do hub;
+ * com {@link #FLAG_LEAVE}, cancela a inscrição. {@link #TYPE_RELAY}, enviado
+ * pelo hub, leva quadros inteiros, cada um precedido do comprimento (2).
+ *
+ * Com {@link #FLAG_TRACE}, o cabeçalho é seguido de {@value #TRACE_SIZE}
+ * bytes de rastreamento antes do corpo: o id do rastreamento (8) e o instante
+ * do envio em nanossegundos desde a época (8). Use {@link #bodyStart} para
+ * achar o corpo.
+ *
+ * Com {@link #FLAG_COMPRESSED}, o corpo de um {@link #TYPE_CHAT},
+ * {@link #TYPE_SYSTEM}, {@link #TYPE_DATA} ou {@link #TYPE_BATCH} foi
+ * comprimido pelo {@link PayloadCompressor#CHAT} e precisa ser descomprimido
+ * antes de interpretado; o cabeçalho e o rastreamento não são comprimidos.
+ *
+ * A sala separa as conversas que dividem o mesmo canal do
+ * {@link MulticastEngine}: o endereço de destino não é visível ao receptor,
+ * então é ela que decide a quem entregar o datagrama.
+ *
+ * Os métodos de leitura usam índices absolutos a partir da posição do buffer
+ * e não a alteram, de modo que a triagem de um datagrama não exige cópias.
+ *
+ * @author Igor Rozalem
+ */
+public final class MulticastFrame {
+
+    public static final byte MAGIC_0 = 'M';
+    public static final byte MAGIC_1 = 'C';
+    public static final byte VERSION = 1;
+    public static final int HEADER_SIZE = 32;
+
+    /** Mensagem de chat de um usuário. */
+    public static final byte TYPE_CHAT = 1;
+    /** Notificação de sistema (entrada e saída do grupo). */
+    public static final byte TYPE_SYSTEM = 2;
+    /** Carga binária entregue ao ouvinte bruto. */
+    public static final byte TYPE_DATA = 3;
+    /** Pedido de retransmissão de sequências perdidas (modo confiável). */
+    public static final byte TYPE_NACK = 4;
+    /** Anúncio da maior sequência enviada, para detectar perdas no fim do fluxo. */
+    public static final byte TYPE_SESSION = 5;
+    /** Várias mensagens pequenas agrupadas em um único datagrama. */
+    public static final byte TYPE_BATCH = 6;
+    /** Batimento periódico que mantém o remetente na tabela de presença. */
+    public static final byte TYPE_HEARTBEAT = 7;
+    /** Pedido das últimas mensagens da sala, enviado por quem acabou de entrar. */
+    public static final byte TYPE_STATE_REQUEST = 8;
+    /** Aviso de que um participante já está respondendo a um pedido de estado. */
+    public static final byte TYPE_STATE_ANSWER = 9;
+    /** Últimas mensagens da sala, comprimidas e enviadas por unicast. */
+    public static final byte TYPE_STATE = 10;
+    /** Inscrição, renovação ou saída de uma sala do {@link UnicastHub}. */
+    public static final byte TYPE_SUBSCRIBE = 11;
+    /** Quadros de uma sala repassados juntos pelo {@link UnicastHub}. */
+    public static final byte TYPE_RELAY = 12;
+
+    /** Tamanho do cabeçalho de cada entrada de um {@link #TYPE_BATCH}. */
+    public static final int BATCH_ENTRY_HEADER_SIZE = 3;
+
+    /** Tamanho do comprimento que precede cada quadro de um {@link #TYPE_RELAY}. */
+    public static final int RELAY_ENTRY_HEADER_SIZE = 2;
+
+    /** O remetente guarda o quadro e atende NACKs para ele. */
+    public static final short FLAG_RELIABLE = 0x0001;
+    /** O quadro é uma retransmissão pedida por NACK. */
+    public static final short FLAG_RETRANSMIT = 0x0002;
+    /** Último batimento: o remetente está saindo da sala. */
+    public static final short FLAG_LEAVE = 0x0004;
+    /** O quadro leva id de rastreamento e instante do envio em nanossegundos. */
+    public static final short FLAG_TRACE = 0x0008;
+    /** O corpo está comprimido com o dicionário do {@link PayloadCompressor#CHAT}. */
+    public static final short FLAG_COMPRESSED = 0x0010;
+
+    /** Tamanho do bloco de rastreamento dos quadros com {@link #FLAG_TRACE}. */
+    public static final int TRACE_SIZE = 16;
+
+    /** Sala usada quando nenhuma é informada. */
+    public static final int DEFAULT_ROOM = 0;
+    /** Maior identificador de sala representável no cabeçalho. */
+    public static final int MAX_ROOM = 0xFFFF;
+
+    /** Maior nome de remetente representável no corpo, em bytes UTF-8. */
+    public static final int MAX_NAME_LENGTH = 255;
+
+    private static final int OFFSET_VERSION = 2;
+    private static final int OFFSET_TYPE = 3;
+    private static final int OFFSET_FLAGS = 4;
+    private static final int OFFSET_ROOM = 6;
+    private static final int OFFSET_SENDER = 8;
+    private static final int OFFSET_SEQUENCE = 16;
+    private static final int OFFSET_TIMESTAMP = 24;
+
+    private MulticastFrame() {
+        // Classe utilitária
+    }
+
+    /**
+     * Escreve o cabeçalho da sala padrão na posição atual do buffer, avançando-a.
+     *
+     * @param buffer Buffer de destino
+     * @param type Tipo do quadro
+     * @param flags Flags do quadro
+     * @param senderId Identificador do remetente
+     * @param sequence Número de sequência do remetente
+     * @param timestamp Instante do envio em epoch millis
+     */
+    public static void writeHeader(ByteBuffer buffer, byte type, short flags, long senderId,
+            long sequence, long timestamp) {
+        writeHeader(buffer, type, flags, DEFAULT_ROOM, senderId, sequence, timestamp);
+    }
+
+    /**
+     * Escreve o cabeçalho na posição atual do buffer, avançando-a.
+     *
+     * @param buffer Buffer de destino
+     * @param type Tipo do quadro
+     * @param flags Flags do quadro
+     * @param room Sala de destino (0 a {@value #MAX_ROOM})
+     * @param senderId Identificador do remetente
+     * @param sequence Número de sequência do remetente
+     * @param timestamp Instante do envio em epoch millis
+     */
+    public static void writeHeader(ByteBuffer buffer, byte type, short flags, int room, long senderId,
+            long sequence, long timestamp) {
+        buffer.put(MAGIC_0).put(MAGIC_1).put(VERSION).put(type)
+                .putShort(flags).putShort((short) room)
+                .putLong(senderId).putLong(sequence).putLong(timestamp);
+    }
+
+    /**
+     * Verifica se os bytes restantes do buffer começam com um cabeçalho válido.
+     *
+     * @param buffer Buffer posicionado no início do datagrama
+     * @return true se a magia e a versão conferem
+     */
+    public static boolean isFrame(ByteBuffer buffer) {
+        int start = buffer.position();
+        return buffer.remaining() >= HEADER_SIZE
+                && buffer.get(start) == MAGIC_0
+                && buffer.get(start + 1) == MAGIC_1
+                && buffer.get(start + OFFSET_VERSION) == VERSION;
+    }
+
+    /**
+     * Retorna a posição absoluta do corpo, depois do bloco de rastreamento, se houver.
+     *
+     * @param buffer Buffer posicionado no início do quadro
+     * @return Posição do primeiro byte do corpo
+     */
+    public static int bodyStart(ByteBuffer buffer) {
+        int start = buffer.position() + HEADER_SIZE;
+        return (flags(buffer) & FLAG_TRACE) != 0 ? start + TRACE_SIZE : start;
+    }
+
+    /**
+     * Lê o id de rastreamento de um quadro com {@link #FLAG_TRACE}.
+     *
+     * @param buffer Buffer posicionado no início do quadro
+     * @return Id do rastreamento
+     */
+    public static long traceId(ByteBuffer buffer) {
+        return buffer.getLong(buffer.position() + HEADER_SIZE);
+    }
+
+    /**
+     * Lê o instante do envio de um quadro com {@link #FLAG_TRACE}.
+     *
+     * @param buffer Buffer posicionado no início do quadro
+     * @return Nanossegundos desde a época
+     */
+    public static long traceNanos(ByteBuffer buffer) {
+        return buffer.getLong(buffer.position() + HEADER_SIZE + 8);
+    }
+
+    /**
+     * Lê o tipo do quadro.
+     *
+     * @param buffer Buffer posicionado no início do quadro
+     * @return Tipo do quadro
+     */
+    public static byte type(ByteBuffer buffer) {
+        return buffer.get(buffer.position() + OFFSET_TYPE);
+    }
+
+    /**
+     * Lê as flags do quadro.
+     *
+     * @param buffer Buffer posicionado no início do quadro
+     * @return Flags do quadro
+     */
+    public static short flags(ByteBuffer buffer) {
+        return buffer.getShort(buffer.position() + OFFSET_FLAGS);
+    }
+
+    /**
+     * Lê a sala do quadro.
+     *
+     * @param buffer Buffer posicionado no início do quadro
+     * @return Sala, de 0 a {@value #MAX_ROOM}
+     */
+    public static int room(ByteBuffer buffer) {
+        return buffer.getShort(buffer.position() + OFFSET_ROOM) & 0xFFFF;
+    }
+
+    /**
+     * Liga flags em um quadro já escrito, sem alterar a posição do buffer.
+     *
+     * @param buffer Buffer posicionado no início do quadro
+     * @param flags Flags a ligar
+     */
+    public static void addFlags(ByteBuffer buffer, short flags) {
+        int index = buffer.position() + OFFSET_FLAGS;
+        buffer.putShort(index, (short) (buffer.getShort(index) | flags));
+    }
+
+    /**
+     * Lê o identificador do remetente.
+     *
+     * @param buffer Buffer posicionado no início do quadro
+     * @return Identificador do remetente
+     */
+    public static long senderId(ByteBuffer buffer) {
+        return buffer.getLong(buffer.position() + OFFSET_SENDER);
+    }
+
+    /**
+     * Lê o número de sequência do remetente.
+     *
+     * @param buffer Buffer posicionado no início do quadro
+     * @return Número de sequência
+     */
+    public static long sequence(ByteBuffer buffer) {
+        return buffer.getLong(buffer.position() + OFFSET_SEQUENCE);
+    }
+
+    /**
+     * Lê o instante do envio.
+     *
+     * @param buffer Buffer posicionado no início do quadro
+     * @return Instante do envio em epoch millis
+     */
+    public static long timestamp(ByteBuffer buffer) {
+        return buffer.getLong(buffer.position() + OFFSET_TIMESTAMP);
+    }
+}
@@ -0,0 +1,485 @@
+package local.redes.multicast;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Ponte entre uma sala multicast e participantes remotos por unicast. O
+ * gateway entra no grupo por um {@link MulticastManager} e repassa os
+ * quadros da sala aos clientes remotos e aos gateways parceiros; o que
+ * chega deles vai ao grupo e aos outros enlaces. Os clientes remotos são
+ * gerenciadores com a propriedade {@value MulticastManager#HUB_PROPERTY}
+ * apontando para o gateway, que fala o mesmo protocolo de inscrição do
+ * {@link UnicastHub}; os parceiros são fixos, um por sub-rede a ligar.
+ *
+ * Os quadros são repassados como chegam, do buffer direto do
+ * {@link MulticastReactor} para o envio, sem cópia nem decodificação.
+ *
+ * Para evitar laços, o gateway age como uma ponte que aprende: cada
+ * senderId fica associado ao enlace (o grupo ou um endereço unicast) por
+ * onde chegou primeiro, e cópias do mesmo remetente vindas de outro enlace
+ * são descartadas. Isso corta tanto o eco do próprio gateway no grupo quanto
+ * os caminhos repetidos entre vários gateways. A associação vale enquanto o
+ * remetente estiver ativo e é refeita depois de {@value #ORIGIN_TIMEOUT_MILLIS}
+ * ms de silêncio. Datagramas sem cabeçalho não têm remetente e não são
+ * repassados.
+ *
+ * @author Igor Rozalem
+ */
+public final class MulticastGateway {
+    private static final Logger LOGGER = Logger.getLogger(MulticastGateway.class.getName());
+
+    /** Silêncio depois do qual a origem de um remetente é aprendida de novo. */
+    public static final long ORIGIN_TIMEOUT_MILLIS = 30000;
+
+    /** Remetentes com origem conhecida; os de fora da tabela são descartados. */
+    public static final int MAX_SENDERS = 4096;
+
+    // Enlace do grupo multicast e dos remetentes unicast sem inscrição
+    static final int GROUP_LINK = 0;
+    static final int ANONYMOUS_LINK = -1;
+
+    private static final int ORIGIN_CAPACITY = 2 * MAX_SENDERS;
+    private static final long SECOND_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    /**
+     * Cliente remoto ou gateway parceiro.
+     */
+    private static final class Link {
+        private final int id;
+        private final InetSocketAddress address;
+        private final boolean peer;
+        private long lastSeenNanos;
+
+        Link(int id, InetSocketAddress address, boolean peer, long now) {
+            this.id = id;
+            this.address = address;
+            this.peer = peer;
+            this.lastSeenNanos = now;
+        }
+    }
+
+    private final MulticastManager manager;
+    private final DatagramChannel channel;
+    private final MulticastReactor reactor;
+    private final int room;
+    private final long originTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(ORIGIN_TIMEOUT_MILLIS);
+
+    // Estado protegido pela instância; alterado pelo reator e pela varredura
+    private final Map<InetSocketAddress, Link> linksByAddress = new HashMap<>();
+    // Substituído, nunca alterado, para percorrer durante o envio
+    private Link[] links = new Link[0];
+    private int nextLinkId = 1;
+    private ScheduledFuture<?> sweep;
+    private boolean started;
+    private boolean closed;
+
+    // Origem de cada remetente, em endereçamento aberto; senderId 0 marca posição livre
+    private long[] originKeys = new long[ORIGIN_CAPACITY];
+    private int[] originLinks = new int[ORIGIN_CAPACITY];
+    private long[] originSeen = new long[ORIGIN_CAPACITY];
+    private int originCount;
+    private long lastOriginSweep;
+
+    private volatile long framesToGroup;
+    private volatile long framesToUnicast;
+    private volatile long loopsDropped;
+    private volatile long unknownDropped;
+    private volatile long sendFailures;
+
+    /**
+     * Cria o gateway, entrando no grupo e abrindo a porta unicast.
+     *
+     * @param group Endereço do grupo multicast
+     * @param port Porta do grupo
+     * @param room Sala ligada pelo gateway
+     * @param unicastPort Porta para clientes e parceiros, ou 0 para uma porta livre
+     * @throws IOException Se o grupo ou a porta não puderem ser abertos
+     */
+    public MulticastGateway(InetAddress group, int port, int room, int unicastPort) throws IOException {
+        this.room = room;
+        this.reactor = MulticastReactor.getInstance();
+        this.manager = new MulticastManager(group, port, "gateway-" + unicastPort, room);
+        try {
+            channel = DatagramChannel.open();
+            try {
+                channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+                channel.bind(new InetSocketAddress(unicastPort));
+                channel.configureBlocking(false);
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+        } catch (IOException | RuntimeException e) {
+            manager.stop();
+            throw e;
+        }
+        this.lastOriginSweep = System.nanoTime() - SECOND_NANOS;
+    }
+
+    /**
+     * Adiciona um gateway parceiro, que recebe tudo o que chega do grupo
+     * e dos clientes deste gateway. Parceiros não expiram.
+     *
+     * @param address Endereço unicast do parceiro
+     */
+    public synchronized void addPeer(InetSocketAddress address) {
+        if (closed || linksByAddress.containsKey(address)) {
+            return;
+        }
+        addLink(new Link(nextLinkId++, address, true, System.nanoTime()));
+        LOGGER.log(Level.INFO, "Gateway parceiro {0} adicionado", address);
+    }
+
+    /**
+     * Passa a repassar os quadros nos dois sentidos.
+     */
+    public synchronized void start() {
+        if (started || closed) {
+            return;
+        }
+        started = true;
+        manager.startBridge(this::onGroupDatagram);
+        reactor.register(channel, this::onUnicastDatagram);
+        sweep = UnicastHub.TIMER.scheduleWithFixedDelay(() -> expire(System.nanoTime()),
+                UnicastHub.RENEW_MILLIS, UnicastHub.RENEW_MILLIS, TimeUnit.MILLISECONDS);
+
+        LOGGER.log(Level.INFO, "Gateway da sala {0} ativo na porta unicast {1}", new Object[]{room, getUnicastPort()});
+    }
+
+    /**
+     * Para o gateway, saindo do grupo e fechando a porta unicast.
+     */
+    public synchronized void stop() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (sweep != null) {
+            sweep.cancel(false);
+        }
+        manager.stop();
+        reactor.unregister(channel);
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Erro ao fechar o canal do gateway", e);
+        }
+        reactor.wakeup();
+        linksByAddress.clear();
+        links = new Link[0];
+
+        LOGGER.log(Level.INFO, "Gateway parado");
+    }
+
+    /**
+     * Repassa um quadro do grupo aos enlaces unicast, na thread do reator.
+     */
+    synchronized void onGroupDatagram(ByteBuffer data, InetSocketAddress source) {
+        if (closed || !MulticastFrame.isFrame(data)) {
+            return;
+        }
+        long sender = MulticastFrame.senderId(data);
+        if (sender == manager.getSenderId() || !route(sender, GROUP_LINK, System.nanoTime())) {
+            return;
+        }
+        sendToLinks(data, GROUP_LINK);
+    }
+
+    /**
+     * Trata um datagrama de um cliente ou parceiro, na thread do reator.
+     */
+    synchronized void onUnicastDatagram(ByteBuffer data, InetSocketAddress source) {
+        if (closed || !MulticastFrame.isFrame(data) || MulticastFrame.room(data) != room) {
+            return;
+        }
+        long now = System.nanoTime();
+        byte type = MulticastFrame.type(data);
+        if (type == MulticastFrame.TYPE_SUBSCRIBE) {
+            onSubscribe(data, source, now);
+            return;
+        }
+        if (type == MulticastFrame.TYPE_RELAY) {
+            return;
+        }
+
+        Link link = linksByAddress.get(source);
+        int linkId = ANONYMOUS_LINK;
+        if (link != null) {
+            link.lastSeenNanos = now;
+            linkId = link.id;
+        }
+        if (!route(MulticastFrame.senderId(data), linkId, now)) {
+            return;
+        }
+
+        int position = data.position();
+        try {
+            manager.transmit(data);
+            framesToGroup++;
+        } catch (IOException e) {
+            sendFailures++;
+            LOGGER.log(Level.FINE, "Quadro não repassado ao grupo", e);
+        }
+        data.position(position);
+        sendToLinks(data, linkId);
+    }
+
+    /**
+     * Inscreve, renova ou remove um cliente remoto.
+     */
+    private void onSubscribe(ByteBuffer data, InetSocketAddress source, long now) {
+        Link link = linksByAddress.get(source);
+        if ((MulticastFrame.flags(data) & MulticastFrame.FLAG_LEAVE) != 0) {
+            if (link != null && !link.peer) {
+                removeLink(link);
+            }
+            return;
+        }
+        if (link != null) {
+            link.lastSeenNanos = now;
+            return;
+        }
+        if (links.length >= UnicastHub.MAX_SUBSCRIBERS) {
+            LOGGER.log(Level.WARNING, "Gateway cheio, inscrição de {0} recusada", source);
+            return;
+        }
+        addLink(new Link(nextLinkId++, source, false, now));
+        LOGGER.log(Level.FINE, "Cliente {0} inscrito no gateway", source);
+    }
+
+    private void addLink(Link link) {
+        linksByAddress.put(link.address, link);
+        links = Arrays.copyOf(links, links.length + 1);
+        links[links.length - 1] = link;
+    }
+
+    private void removeLink(Link link) {
+        linksByAddress.remove(link.address);
+        List<Link> kept = new ArrayList<>(links.length);
+        for (Link other : links) {
+            if (other != link) {
+                kept.add(other);
+            }
+        }
+        links = kept.toArray(new Link[0]);
+    }
+
+    /**
+     * Envia o quadro a todos os enlaces unicast, menos o de origem.
+     */
+    private void sendToLinks(ByteBuffer data, int originLink) {
+        int position = data.position();
+        for (Link link : links) {
+            if (link.id == originLink) {
+                continue;
+            }
+            data.position(position);
+            try {
+                if (channel.send(data, link.address) == 0) {
+                    sendFailures++;
+                } else {
+                    framesToUnicast++;
+                }
+            } catch (IOException e) {
+                sendFailures++;
+                LOGGER.log(Level.FINE, "Erro ao repassar para " + link.address, e);
+            }
+        }
+    }
+
+    /**
+     * Decide se o quadro do remetente, chegado pelo enlace, deve ser
+     * repassado, aprendendo a origem de remetentes novos ou silenciosos.
+     *
+     * @param sender Identificador do remetente
+     * @param link Enlace de chegada
+     * @param now Instante atual, de {@link System#nanoTime()}
+     * @return false se o quadro veio por um caminho que não o de origem
+     */
+    synchronized boolean route(long sender, int link, long now) {
+        int mask = ORIGIN_CAPACITY - 1;
+        int slot = slot(sender, mask);
+        while (originKeys[slot] != 0) {
+            if (originKeys[slot] == sender) {
+                if (originLinks[slot] != link && now - originSeen[slot] <= originTimeoutNanos) {
+                    loopsDropped++;
+                    return false;
+                }
+                originLinks[slot] = link;
+                originSeen[slot] = now;
+                return true;
+            }
+            slot = (slot + 1) & mask;
+        }
+        if (originCount >= MAX_SENDERS) {
+            // Remover os silenciosos, no máximo uma vez por segundo
+            if (now - lastOriginSweep >= SECOND_NANOS) {
+                lastOriginSweep = now;
+                sweepOrigins(now);
+            }
+            if (originCount >= MAX_SENDERS) {
+                // Sem origem aprendida não há como evitar laços: descartar
+                unknownDropped++;
+                return false;
+            }
+            return route(sender, link, now);
+        }
+        originKeys[slot] = sender;
+        originLinks[slot] = link;
+        originSeen[slot] = now;
+        originCount++;
+        return true;
+    }
+
+    private void sweepOrigins(long now) {
+        long[] oldKeys = originKeys;
+        int[] oldLinks = originLinks;
+        long[] oldSeen = originSeen;
+        originKeys = new long[ORIGIN_CAPACITY];
+        originLinks = new int[ORIGIN_CAPACITY];
+        originSeen = new long[ORIGIN_CAPACITY];
+        originCount = 0;
+        int mask = ORIGIN_CAPACITY - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] == 0 || now - oldSeen[i] > originTimeoutNanos) {
+                continue;
+            }
+            int slot = slot(oldKeys[i], mask);
+            while (originKeys[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            originKeys[slot] = oldKeys[i];
+            originLinks[slot] = oldLinks[i];
+            originSeen[slot] = oldSeen[i];
+            originCount++;
+        }
+    }
+
+    private static int slot(long key, int mask) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    /**
+     * Remove os clientes que pararam de renovar a inscrição.
+     */
+    synchronized void expire(long now) {
+        long expiry = TimeUnit.MILLISECONDS.toNanos(UnicastHub.EXPIRY_MILLIS);
+        for (Link link : links) {
+            if (!link.peer && now - link.lastSeenNanos > expiry) {
+                removeLink(link);
+            }
+        }
+    }
+
+    /**
+     * Retorna a porta unicast do gateway.
+     *
+     * @return Porta local
+     */
+    public int getUnicastPort() {
+        return channel.socket().getLocalPort();
+    }
+
+    /**
+     * Retorna a quantidade de clientes remotos inscritos, sem os parceiros.
+     *
+     * @return Clientes inscritos
+     */
+    public synchronized int getClientCount() {
+        int count = 0;
+        for (Link link : links) {
+            if (!link.peer) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Retorna os quadros repassados ao grupo multicast.
+     *
+     * @return Quadros enviados ao grupo
+     */
+    public long getFramesToGroup() {
+        return framesToGroup;
+    }
+
+    /**
+     * Retorna os datagramas repassados a clientes e parceiros.
+     *
+     * @return Datagramas unicast enviados
+     */
+    public long getFramesToUnicast() {
+        return framesToUnicast;
+    }
+
+    /**
+     * Retorna os quadros descartados por chegarem por um enlace que não o
+     * de origem do remetente, como o eco do grupo e caminhos entre gateways.
+     *
+     * @return Quadros descartados
+     */
+    public long getLoopsDropped() {
+        return loopsDropped;
+    }
+
+    /**
+     * Retorna os quadros descartados com a tabela de origens cheia.
+     *
+     * @return Quadros descartados
+     */
+    public long getUnknownDropped() {
+        return unknownDropped;
+    }
+
+    /**
+     * Retorna os envios que falharam, com o buffer do sistema cheio ou por erro.
+     *
+     * @return Envios perdidos
+     */
+    public long getSendFailures() {
+        return sendFailures;
+    }
+
+    /**
+     * Método principal para executar o gateway.
+     *
+     * @param args grupo, porta do grupo, sala, porta unicast e, opcionalmente,
+     *             os parceiros como host:porta separados por vírgula
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 4) {
+            System.err.println("Uso: MulticastGateway <grupo> <porta> <sala> <porta-unicast> [parceiro:porta,...]");
+            System.exit(1);
+        }
+        MulticastGateway gateway = new MulticastGateway(InetAddress.getByName(args[0]),
+                Integer.parseInt(args[1]), Integer.parseInt(args[2]), Integer.parseInt(args[3]));
+        if (args.length > 4) {
+            for (String peer : args[4].split(",")) {
+                if (!peer.trim().isEmpty()) {
+                    gateway.addPeer(MulticastManager.parseHubAddress(peer.trim()));
+                }
+            }
+        }
+        gateway.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(gateway::stop));
+        System.out.println("Gateway da sala " + args[2] + " de " + args[0] + ":" + args[1]
+                + " na porta unicast " + gateway.getUnicastPort());
+        Thread.currentThread().join();
+    }
+}
@@ -1,43 +1,121 @@
 package local.redes.multicast;
 
 import java.io.IOException;
-import java.net.DatagramPacket;
+import java.net.Inet4Address;
+import java.net.Inet6Address;
 import java.net.InetAddress;
-import java.net.MulticastSocket;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
 import java.net.SocketException;
-import java.time.LocalDateTime;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
 import java.time.format.DateTimeFormatter;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.DataFormatException;
 
 /**
  * Gerenciador para comunicação multicast.
  * Esta classe fornece métodos para enviar e receber mensagens em um grupo multicast.
  * 
+ * Cada participante é uma sala de um grupo no {@link MulticastEngine} do
+ * processo: gerenciadores na mesma porta dividem um único canal não
+ * bloqueante, tanto para enviar quanto para receber, e a leitura é feita pelo
+ * {@link MulticastReactor} compartilhado, sem uma thread por gerenciador.
+ * Todo datagrama começa com um {@link MulticastFrame}, que identifica o
+ * remetente e o tipo sem nenhuma conversão para texto. As mensagens de texto
+ * são entregues aos ouvintes inscritos por meio de {@link Subscription}s, fora
+ * da thread de recepção.
+ * 
  * @author Igor Rozalem
  */
 public class MulticastManager {
     private static final Logger LOGGER = Logger.getLogger(MulticastManager.class.getName());
     private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
-    private static final int BUFFER_SIZE = 1024;
+    
+    /** Propriedade de sistema com o nome da interface de rede a usar (ex.: eth0). */
+    public static final String INTERFACE_PROPERTY = "multicast.interface";
+    
+    /**
+     * Propriedade de sistema com o endereço de um {@link UnicastHub}
+     * (host ou host:porta). Definida, os gerenciadores trocam o multicast
+     * pelo hub, sem outra mudança para quem os usa.
+     */
+    public static final String HUB_PROPERTY = "multicast.hub";
+    
+    /**
+     * Tempo máximo que uma publicação da aplicação espera por espaço no
+     * buffer de envio do sistema. O canal é não bloqueante e compartilhado,
+     * então um buffer cheio por um instante é esperado aqui, uma vez, e não
+     * em cada chamador. Os envios feitos pelo reator e pelo temporizador de
+     * presença nunca esperam.
+     */
+    static final long SEND_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long SEND_RETRY_NANOS = 50_000;
     
     private final InetAddress groupAddress;
     private final int port;
     private final String username;
-    private MulticastSocket receiveSocket;
-    private MulticastSocket sendSocket;
-    private boolean running;
-    private MessageListener listener;
-    private final ExecutorService executorService;
+    private final InetSocketAddress groupSocketAddress;
+    private final NetworkInterface networkInterface;
+    private final long senderId;
+    private final byte[] usernameBytes;
+    private final int room;
+    private final GroupEndpoint endpoint;
+    private volatile boolean running;
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private Subscription defaultSubscription;
+    private volatile RawMessageListener rawListener;
+    private volatile ReliableMulticast reliability;
+    private volatile CoalescingSendQueue sendQueue;
+    private volatile double simulatedLossRate;
+    private final Presence presence;
+    private final StateTransfer stateTransfer;
+    private final LatencyTracer tracer = new LatencyTracer();
+    private volatile boolean tracing;
+    private volatile FloodGuard floodGuard;
+    private final DuplicateFilter duplicates = new DuplicateFilter();
+    private volatile boolean compressing;
+    
+    // Protegidos pelo lock do buffer de envio, alocados ao ativar a compressão
+    private byte[] compressInput;
+    private byte[] compressOutput;
+    private volatile long compressedFrames;
+    private volatile long compressionSavedBytes;
+    
+    // Quadros descartados com o buffer do sistema cheio, de qualquer thread
+    private final AtomicLong sendDrops = new AtomicLong();
+    
+    // Usados só pela thread do reator, alocados no primeiro quadro comprimido
+    private byte[] inflateInput;
+    private ByteBuffer inflated;
+    
+    // Buffer direto de envio, codificador e sequência, protegidos pelo próprio buffer
+    private final ByteBuffer sendBuffer = ByteBuffer.allocateDirect(MulticastReactor.MAX_DATAGRAM_SIZE);
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private long sequence;
     
     /**
      * Interface para recebimento de mensagens multicast.
      */
     public interface MessageListener {
         /**
-         * Chamado quando uma mensagem é recebida.
+         * Chamado quando uma mensagem é recebida, em uma thread de entrega
+         * da {@link Subscription}, nunca na thread de recepção.
          * 
          * @param message Mensagem recebida
          * @param sender Remetente da mensagem (pode ser null)
@@ -46,126 +124,863 @@ public class MulticastManager {
     }
     
     /**
-     * Cria um novo gerenciador multicast.
+     * Interface para recebimento de pacotes multicast binários, sem decodificação.
+     */
+    public interface RawMessageListener {
+        /**
+         * Chamado quando um pacote é recebido.
+         * Recebe o corpo dos quadros {@link MulticastFrame#TYPE_DATA} e os
+         * datagramas sem cabeçalho. O buffer é reutilizado pelo receptor e só
+         * é válido durante a chamada.
+         * 
+         * @param data Buffer posicionado sobre os dados recebidos
+         * @param source Endereço de origem do pacote
+         */
+        void onPacketReceived(ByteBuffer data, InetAddress source);
+    }
+    
+    /**
+     * Interface para ser avisado das mensagens publicadas com
+     * {@link MulticastManager#publishAsync(String, SendFailureListener)} que
+     * não puderam ser enviadas.
+     */
+    public interface SendFailureListener {
+        /**
+         * Chamado quando uma mensagem publicada não pôde ser enviada. Pode ser
+         * chamado na thread de envio: interfaces gráficas devem repassar o
+         * aviso para a thread de eventos.
+         * 
+         * @param message Mensagem que não foi enviada
+         * @param cause Motivo da falha
+         */
+        void onSendFailed(String message, IOException cause);
+    }
+    
+    /**
+     * Cria um novo gerenciador multicast na interface de rede padrão.
      * 
      * @param groupAddress Endereço do grupo multicast (224.0.0.0 a 239.255.255.255)
      * @param port Porta do grupo multicast
      * @param username Nome do usuário para identificação
-     * @throws IOException Se ocorrer erro ao inicializar os sockets
+     * @throws IOException Se ocorrer erro ao inicializar o canal
      */
     public MulticastManager(InetAddress groupAddress, int port, String username) throws IOException {
+        this(groupAddress, port, username, defaultInterface(groupAddress), MulticastFrame.DEFAULT_ROOM);
+    }
+    
+    /**
+     * Cria um novo gerenciador multicast para uma sala, na interface de rede padrão.
+     * 
+     * @param groupAddress Endereço do grupo multicast
+     * @param port Porta do grupo multicast
+     * @param username Nome do usuário para identificação
+     * @param room Sala, de 0 a {@value MulticastFrame#MAX_ROOM}
+     * @throws IOException Se ocorrer erro ao entrar no grupo ou a sala já for usada por outro grupo na mesma porta
+     */
+    public MulticastManager(InetAddress groupAddress, int port, String username, int room) throws IOException {
+        this(groupAddress, port, username, defaultInterface(groupAddress), room);
+    }
+    
+    /**
+     * Cria um novo gerenciador multicast em uma interface de rede específica.
+     * 
+     * @param groupAddress Endereço do grupo multicast
+     * @param port Porta do grupo multicast
+     * @param username Nome do usuário para identificação
+     * @param networkInterface Interface usada para entrar no grupo e enviar
+     * @throws IOException Se ocorrer erro ao inicializar o canal
+     * @throws IllegalArgumentException Se o nome exceder 255 bytes em UTF-8
+     */
+    public MulticastManager(InetAddress groupAddress, int port, String username,
+            NetworkInterface networkInterface) throws IOException {
+        this(groupAddress, port, username, networkInterface, MulticastFrame.DEFAULT_ROOM);
+    }
+    
+    /**
+     * Cria um novo gerenciador multicast para uma sala, em uma interface de rede específica.
+     * 
+     * @param groupAddress Endereço do grupo multicast
+     * @param port Porta do grupo multicast
+     * @param username Nome do usuário para identificação
+     * @param networkInterface Interface usada para entrar no grupo e enviar
+     * @param room Sala, de 0 a {@value MulticastFrame#MAX_ROOM}
+     * @throws IOException Se ocorrer erro ao entrar no grupo ou a sala já for usada por outro grupo na mesma porta
+     * @throws IllegalArgumentException Se o nome exceder 255 bytes em UTF-8 ou a sala for inválida
+     */
+    public MulticastManager(InetAddress groupAddress, int port, String username,
+            NetworkInterface networkInterface, int room) throws IOException {
         this.groupAddress = groupAddress;
         this.port = port;
         this.username = username;
-        this.executorService = Executors.newCachedThreadPool();
+        this.usernameBytes = username.getBytes(StandardCharsets.UTF_8);
+        if (usernameBytes.length > MulticastFrame.MAX_NAME_LENGTH) {
+            throw new IllegalArgumentException("Nome de usuário muito longo: " + usernameBytes.length + " bytes");
+        }
+        this.senderId = newSenderId();
+        this.groupSocketAddress = new InetSocketAddress(groupAddress, port);
+        this.networkInterface = networkInterface;
+        this.room = room;
         this.running = false;
+        this.presence = new Presence(this, senderId, usernameBytes);
+        this.stateTransfer = new StateTransfer(this, senderId);
         
-        initializeSockets();
+        InetSocketAddress hub = configuredHub();
+        if (hub != null) {
+            this.endpoint = new HubEndpoint(hub, room, senderId);
+            LOGGER.log(Level.INFO, "Inicializado gerenciador para a sala {0} pelo hub unicast {1}",
+                    new Object[]{room, hub});
+            return;
+        }
+        this.endpoint = MulticastEngine.getInstance().open(groupAddress, port, networkInterface, room);
+        
+        LOGGER.log(Level.INFO, "Inicializado gerenciador multicast para grupo {0}:{1}, sala {2}, na interface {3}", 
+                new Object[]{groupAddress.getHostAddress(), port, room, networkInterface.getName()});
+    }
+    
+    /**
+     * Lê o endereço do hub da propriedade {@value #HUB_PROPERTY}.
+     * 
+     * @return Endereço do hub, ou null para usar multicast
+     */
+    private static InetSocketAddress configuredHub() {
+        String value = System.getProperty(HUB_PROPERTY);
+        if (value == null || value.trim().isEmpty()) {
+            return null;
+        }
+        return parseHubAddress(value.trim());
     }
     
     /**
-     * Inicializa os sockets para comunicação multicast.
+     * Interpreta um endereço de hub no formato host, host:porta ou [ipv6]:porta.
      * 
-     * @throws IOException Se ocorrer erro ao criar os sockets
+     * @param value Endereço
+     * @return Endereço do hub, na porta {@value UnicastHub#DEFAULT_PORT} se nenhuma for informada
+     * @throws IllegalArgumentException Se a porta for inválida
      */
-    private void initializeSockets() throws IOException {
-        // Socket para receber mensagens
-        receiveSocket = new MulticastSocket(port);
-        receiveSocket.joinGroup(groupAddress);
+    static InetSocketAddress parseHubAddress(String value) {
+        String host = value;
+        int port = UnicastHub.DEFAULT_PORT;
+        if (value.startsWith("[")) {
+            int end = value.indexOf(']');
+            if (end < 0) {
+                throw new IllegalArgumentException("Endereço de hub inválido: " + value);
+            }
+            host = value.substring(1, end);
+            if (value.startsWith(":", end + 1)) {
+                port = Integer.parseInt(value.substring(end + 2));
+            }
+        } else {
+            int colon = value.lastIndexOf(':');
+            if (colon > 0 && value.indexOf(':') == colon) {
+                host = value.substring(0, colon);
+                port = Integer.parseInt(value.substring(colon + 1));
+            }
+        }
+        return new InetSocketAddress(host, port);
+    }
+    
+    /**
+     * Gera um identificador aleatório de remetente, diferente de zero.
+     * 
+     * @return Identificador do remetente
+     */
+    private static long newSenderId() {
+        long id;
+        do {
+            id = ThreadLocalRandom.current().nextLong();
+        } while (id == 0);
+        return id;
+    }
+    
+    /**
+     * Escolhe a interface de rede usada quando nenhuma é informada.
+     * Usa a propriedade {@value #INTERFACE_PROPERTY}, se definida; senão a primeira
+     * interface ativa com multicast e endereço da mesma família do grupo; e,
+     * por último, a interface de loopback.
+     * 
+     * @param groupAddress Endereço do grupo multicast
+     * @return Interface de rede escolhida
+     * @throws IOException Se nenhuma interface adequada for encontrada
+     */
+    public static NetworkInterface defaultInterface(InetAddress groupAddress) throws IOException {
+        String name = System.getProperty(INTERFACE_PROPERTY);
+        if (name != null && !name.trim().isEmpty()) {
+            NetworkInterface configured = NetworkInterface.getByName(name.trim());
+            if (configured == null) {
+                throw new SocketException("Interface de rede não encontrada: " + name);
+            }
+            return configured;
+        }
         
-        // Socket para enviar mensagens
-        sendSocket = new MulticastSocket();
+        boolean ipv6 = groupAddress instanceof Inet6Address;
+        NetworkInterface loopback = null;
+        Enumeration<NetworkInterface> interfaces = NetworkInterface.getNetworkInterfaces();
+        for (NetworkInterface candidate : Collections.list(interfaces)) {
+            if (!candidate.isUp() || !hasAddress(candidate, ipv6)) {
+                continue;
+            }
+            if (candidate.isLoopback()) {
+                loopback = candidate;
+            } else if (candidate.supportsMulticast() && !candidate.isVirtual()) {
+                return candidate;
+            }
+        }
+        
+        if (loopback == null) {
+            throw new SocketException("Nenhuma interface de rede com suporte a multicast");
+        }
+        return loopback;
+    }
+    
+    private static boolean hasAddress(NetworkInterface networkInterface, boolean ipv6) {
+        for (InetAddress address : Collections.list(networkInterface.getInetAddresses())) {
+            if (ipv6 ? address instanceof Inet6Address : address instanceof Inet4Address) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Passa a aceitar mensagens do grupo apenas da fonte informada
+     * (multicast específico de fonte). A primeira fonte adicionada substitui a
+     * inscrição que aceitava qualquer remetente.
+     * 
+     * @param source Endereço do remetente permitido
+     * @throws IOException Se o sistema não suportar inscrição por fonte
+     */
+    public void joinSource(InetAddress source) throws IOException {
+        endpoint.joinSource(source);
         
-        LOGGER.log(Level.INFO, "Inicializado gerenciador multicast para grupo {0}:{1}", 
-                new Object[]{groupAddress.getHostAddress(), port});
+        LOGGER.log(Level.INFO, "Inscrito no grupo {0} para a fonte {1}", 
+                new Object[]{groupAddress.getHostAddress(), source.getHostAddress()});
+    }
+    
+    /**
+     * Remove uma fonte permitida. Ao remover a última, volta a aceitar
+     * mensagens de qualquer remetente.
+     * 
+     * @param source Endereço do remetente a remover
+     * @throws IOException Se ocorrer erro ao refazer a inscrição no grupo
+     */
+    public void leaveSource(InetAddress source) throws IOException {
+        endpoint.leaveSource(source);
+    }
+    
+    /**
+     * Ativa o modo confiável com o histórico padrão de retransmissão.
+     * 
+     * @see #enableReliableMode(int)
+     */
+    public void enableReliableMode() {
+        enableReliableMode(ReliableMulticast.DEFAULT_HISTORY_SIZE);
+    }
+    
+    /**
+     * Ativa o modo confiável baseado em NACK. Os quadros enviados passam a ser
+     * guardados para retransmissão e as lacunas na sequência de outros
+     * remetentes confiáveis são pedidas de volta. Deve ser chamado antes de
+     * {@link #startReceiving()}.
+     * 
+     * @param historySize Quantidade de quadros guardados para retransmissão
+     * @throws IllegalStateException Se o recebimento já tiver sido iniciado
+     */
+    public void enableReliableMode(int historySize) {
+        if (running) {
+            throw new IllegalStateException("O modo confiável deve ser ativado antes de iniciar o recebimento");
+        }
+        synchronized (sendBuffer) {
+            reliability = new ReliableMulticast(this, senderId, historySize);
+        }
+    }
+    
+    /**
+     * Retorna o estado do modo confiável, com seus contadores.
+     * 
+     * @return Modo confiável, ou null se não estiver ativo
+     */
+    public ReliableMulticast getReliability() {
+        return reliability;
+    }
+    
+    /**
+     * Retorna a tabela de presença da sala, mantida pelos batimentos que
+     * os gerenciadores enviam enquanto recebem.
+     * 
+     * @return Tabela de presença
+     */
+    public Presence getPresence() {
+        return presence;
+    }
+    
+    /**
+     * Ativa o limite de quadros por remetente com os valores padrão.
+     * 
+     * @return Limite ativo
+     * @see #enableFloodGuard(int, int, long)
+     */
+    public FloodGuard enableFloodGuard() {
+        return enableFloodGuard(FloodGuard.DEFAULT_RATE, FloodGuard.DEFAULT_BURST, FloodGuard.DEFAULT_MUTE_MILLIS);
+    }
+    
+    /**
+     * Ativa o limite de quadros recebidos por remetente. Acima do limite os
+     * quadros são descartados antes de decodificar o texto, e quem mandar o
+     * dobro do limite é silenciado por um tempo. Pode ser ativado a qualquer
+     * momento; uma nova chamada substitui o limite anterior.
+     * 
+     * @param rate Quadros por segundo aceitos de cada remetente
+     * @param burst Rajada máxima aceita de um remetente
+     * @param muteMillis Duração do silêncio, ou 0 para só limitar
+     * @return Limite ativo, para registrar ouvintes e ler as estatísticas
+     */
+    public FloodGuard enableFloodGuard(int rate, int burst, long muteMillis) {
+        FloodGuard guard = new FloodGuard(rate, burst, muteMillis);
+        floodGuard = guard;
+        return guard;
+    }
+    
+    /**
+     * Retorna o limite de quadros por remetente.
+     * 
+     * @return Limite ativo, ou null se não estiver ativo
+     */
+    public FloodGuard getFloodGuard() {
+        return floodGuard;
+    }
+    
+    /**
+     * Retorna o filtro de quadros repetidos, sempre ativo, com a contagem
+     * de duplicatas descartadas.
+     * 
+     * @return Filtro de duplicatas
+     */
+    public DuplicateFilter getDuplicateFilter() {
+        return duplicates;
+    }
+    
+    /**
+     * Ativa o rastreamento: os quadros de chat, de sistema, binários e os
+     * lotes enviados passam a levar um id e o instante do envio em
+     * nanossegundos, e os receptores registram a latência de ida no
+     * {@link LatencyTracer}. Pode ser ativado a qualquer momento.
+     */
+    public void enableTracing() {
+        tracing = true;
     }
     
     /**
-     * Define o ouvinte de mensagens.
+     * Desativa o rastreamento dos quadros enviados.
+     */
+    public void disableTracing() {
+        tracing = false;
+    }
+    
+    /**
+     * Indica se os quadros enviados levam rastreamento.
+     * 
+     * @return true se o rastreamento estiver ativo
+     */
+    public boolean isTracing() {
+        return tracing;
+    }
+    
+    /**
+     * Ativa a compressão dos corpos dos quadros de chat, de sistema, binários
+     * e dos lotes enviados, com o dicionário do {@link PayloadCompressor#CHAT}.
+     * Corpos pequenos, ou que não encolheriam, continuam indo sem compressão.
+     * Os receptores descomprimem os quadros com
+     * {@link MulticastFrame#FLAG_COMPRESSED} mesmo sem a compressão ativa.
+     */
+    public void enableCompression() {
+        synchronized (sendBuffer) {
+            if (compressInput == null) {
+                compressInput = new byte[MulticastReactor.MAX_DATAGRAM_SIZE];
+                compressOutput = new byte[MulticastReactor.MAX_DATAGRAM_SIZE];
+            }
+            compressing = true;
+        }
+    }
+    
+    /**
+     * Desativa a compressão dos quadros enviados.
+     */
+    public void disableCompression() {
+        compressing = false;
+    }
+    
+    /**
+     * Indica se os quadros enviados são comprimidos.
+     * 
+     * @return true se a compressão estiver ativa
+     */
+    public boolean isCompressing() {
+        return compressing;
+    }
+    
+    /**
+     * Retorna quantos quadros enviados foram comprimidos.
+     * 
+     * @return Quantidade de quadros comprimidos
+     */
+    public long getCompressedFrames() {
+        return compressedFrames;
+    }
+    
+    /**
+     * Retorna quantos bytes a compressão economizou nos quadros enviados.
+     * 
+     * @return Bytes economizados
+     */
+    public long getCompressionSavedBytes() {
+        return compressionSavedBytes;
+    }
+    
+    /**
+     * Retorna quantos quadros foram descartados porque o buffer de envio do
+     * sistema estava cheio: publicações que esperaram
+     * {@link #SEND_TIMEOUT_NANOS} sem espaço e envios do reator, como
+     * retransmissões e respostas de histórico, que não esperam.
+     * 
+     * @return Quadros descartados no envio
+     */
+    public long getSendDrops() {
+        return sendDrops.get();
+    }
+    
+    /**
+     * Retorna as latências dos quadros rastreados recebidos, por remetente.
+     * Os quadros rastreados são medidos mesmo sem o rastreamento ativo
+     * neste gerenciador.
+     * 
+     * @return Rastreador de latência
+     */
+    public LatencyTracer getLatencyTracer() {
+        return tracer;
+    }
+    
+    /**
+     * Ativa a fila de envio assíncrona com a janela e a capacidade padrão.
+     * 
+     * @see #enableSendQueue(long, int)
+     */
+    public void enableSendQueue() {
+        enableSendQueue(CoalescingSendQueue.DEFAULT_LINGER_MICROS, CoalescingSendQueue.DEFAULT_CAPACITY);
+    }
+    
+    /**
+     * Ativa a fila de envio assíncrona. A partir daqui {@link #sendMessage(String)}
+     * e {@link #sendBytes(ByteBuffer)} só enfileiram a mensagem e retornam; uma
+     * thread dedicada agrupa as mensagens que chegam dentro da janela de espera
+     * em datagramas do tamanho do MTU.
+     * 
+     * @param lingerMicros Janela de espera por mais mensagens, em microssegundos (1000 a 5000 é o usual)
+     * @param capacity Quantidade máxima de mensagens aguardando envio
+     * @throws IllegalStateException Se a fila já estiver ativa
+     */
+    public synchronized void enableSendQueue(long lingerMicros, int capacity) {
+        if (sendQueue != null) {
+            throw new IllegalStateException("A fila de envio já está ativa");
+        }
+        sendQueue = new CoalescingSendQueue(this, usernameBytes, lingerMicros, capacity);
+    }
+    
+    /**
+     * Retorna a fila de envio, ativando-a sem janela de espera se ainda não
+     * estiver ativa: mensagens interativas saem assim que a thread de envio
+     * as retira, agrupadas apenas com as que já estavam esperando.
+     * 
+     * @return Fila de envio ativa
+     */
+    private synchronized CoalescingSendQueue ensureSendQueue() {
+        if (sendQueue == null) {
+            sendQueue = new CoalescingSendQueue(this, usernameBytes, 0, CoalescingSendQueue.DEFAULT_CAPACITY);
+        }
+        return sendQueue;
+    }
+    
+    /**
+     * Retorna a fila de envio assíncrona, com seus contadores.
+     * 
+     * @return Fila de envio, ou null se não estiver ativa
+     */
+    public CoalescingSendQueue getSendQueue() {
+        return sendQueue;
+    }
+    
+    /**
+     * Ajusta o buffer de recepção do sistema para o canal. Receptores de
+     * rajadas (transferências em massa, benchmarks) precisam de mais espaço
+     * que o padrão do sistema para não perder datagramas enquanto processam.
+     * 
+     * O canal é compartilhado com os outros gerenciadores da mesma porta, e
+     * por isso o buffer só cresce.
+     * 
+     * @param bytes Tamanho desejado; o sistema pode limitar o valor
+     * @throws IOException Se a opção não puder ser aplicada
+     */
+    public void setReceiveBufferSize(int bytes) throws IOException {
+        endpoint.setReceiveBufferSize(bytes);
+    }
+    
+    /**
+     * Descarta aleatoriamente a fração informada dos datagramas recebidos,
+     * para testes e benchmarks sob perda.
+     * 
+     * @param lossRate Fração entre 0 (sem perda) e 1
+     */
+    public void setSimulatedLossRate(double lossRate) {
+        if (lossRate < 0 || lossRate > 1) {
+            throw new IllegalArgumentException("Taxa de perda deve estar entre 0 e 1");
+        }
+        this.simulatedLossRate = lossRate;
+    }
+    
+    /**
+     * Define o ouvinte de mensagens, substituindo o anterior definido por este
+     * método. Equivale a uma inscrição com a capacidade padrão e a política
+     * {@link Subscription.OverflowPolicy#DROP_OLDEST}.
+     * 
+     * @param listener Ouvinte para receber mensagens (null remove o atual)
+     */
+    public synchronized void setMessageListener(MessageListener listener) {
+        if (defaultSubscription != null) {
+            unsubscribe(defaultSubscription);
+            defaultSubscription = null;
+        }
+        if (listener != null) {
+            defaultSubscription = subscribe(listener, Subscription.DEFAULT_CAPACITY,
+                    Subscription.OverflowPolicy.DROP_OLDEST);
+        }
+    }
+    
+    /**
+     * Inscreve um ouvinte com a capacidade padrão, descartando as mensagens
+     * mais antigas se ele ficar para trás.
+     * 
+     * @param listener Ouvinte para receber mensagens
+     * @return Inscrição criada
+     */
+    public Subscription subscribe(MessageListener listener) {
+        return subscribe(listener, Subscription.DEFAULT_CAPACITY, Subscription.OverflowPolicy.DROP_OLDEST);
+    }
+    
+    /**
+     * Inscreve um ouvinte com fila e entrega próprias. Cada mensagem recebida
+     * é entregue a todos os ouvintes inscritos, cada um em seu ritmo.
      * 
      * @param listener Ouvinte para receber mensagens
+     * @param capacity Mensagens que podem aguardar entrega ao ouvinte
+     * @param policy O que fazer quando a fila estiver cheia
+     * @return Inscrição criada
+     */
+    public Subscription subscribe(MessageListener listener, int capacity, Subscription.OverflowPolicy policy) {
+        Subscription subscription = new Subscription(listener, capacity, policy);
+        subscriptions.add(subscription);
+        return subscription;
+    }
+    
+    /**
+     * Cancela uma inscrição. Mensagens ainda na fila dela não são entregues.
+     * 
+     * @param subscription Inscrição a cancelar
+     */
+    public void unsubscribe(Subscription subscription) {
+        subscription.cancel();
+        subscriptions.remove(subscription);
+    }
+    
+    /**
+     * Retorna as inscrições ativas, com seus contadores de atraso e descarte.
+     * 
+     * @return Lista somente leitura das inscrições
      */
-    public void setMessageListener(MessageListener listener) {
-        this.listener = listener;
+    public List<Subscription> getSubscriptions() {
+        return Collections.unmodifiableList(subscriptions);
     }
     
     /**
-     * Inicia o recebimento de mensagens em uma thread separada.
+     * Define o ouvinte de pacotes binários.
+     * Recebe os pacotes enviados com {@link #sendBytes(byte[])} e datagramas
+     * sem cabeçalho; mensagens de chat continuam indo ao ouvinte de mensagens.
+     * 
+     * @param rawListener Ouvinte para receber pacotes binários
+     */
+    public void setRawMessageListener(RawMessageListener rawListener) {
+        this.rawListener = rawListener;
+    }
+    
+    /**
+     * Inicia o recebimento de mensagens pelo reator compartilhado.
      */
     public void startReceiving() {
         if (running) {
             return;
         }
         
+        try {
+            endpoint.start(this::onDatagram);
+        } catch (IllegalStateException e) {
+            LOGGER.log(Level.SEVERE, "Gerenciador multicast já foi parado", e);
+            return;
+        }
+        
         running = true;
+        if (reliability != null) {
+            reliability.start();
+        }
+        presence.start();
         
-        executorService.submit(() -> {
-            try {
-                receiveMessages();
-            } catch (IOException e) {
-                LOGGER.log(Level.SEVERE, "Erro ao receber mensagens multicast", e);
-            }
-        });
+        LOGGER.log(Level.INFO, "Iniciando recebimento de mensagens multicast");
         
         // Enviar mensagem de entrada no grupo
         try {
-            sendSystemMessage(username + " entrou no chat.");
+            sendSystemMessage("entrou no chat.");
         } catch (IOException e) {
             LOGGER.log(Level.WARNING, "Não foi possível enviar mensagem de entrada", e);
         }
     }
     
     /**
-     * Método executado em thread separada para receber mensagens.
+     * Entrega os datagramas da sala ao destino informado, como chegam, sem
+     * anunciar presença nem entrada. Usado pelo {@link MulticastGateway},
+     * que repassa os quadros sem decodificá-los; o envio é feito com
+     * {@link #transmit(ByteBuffer)}.
      * 
-     * @throws IOException Se ocorrer erro ao receber mensagens
+     * @param handler Destino dos datagramas, chamado na thread do reator
      */
-    private void receiveMessages() throws IOException {
-        LOGGER.log(Level.INFO, "Iniciando recebimento de mensagens multicast");
+    void startBridge(MulticastReactor.DatagramHandler handler) {
+        endpoint.start(handler);
+    }
+    
+    /**
+     * Processa um datagrama recebido, chamado na thread do reator.
+     * 
+     * @param data Buffer posicionado sobre os dados recebidos
+     * @param source Endereço de origem do datagrama
+     */
+    private void onDatagram(ByteBuffer data, InetSocketAddress source) {
+        double lossRate = simulatedLossRate;
+        if (lossRate > 0 && ThreadLocalRandom.current().nextDouble() < lossRate) {
+            return;
+        }
         
-        byte[] buffer = new byte[BUFFER_SIZE];
-        
-        while (running) {
-            try {
-                // Preparar pacote para receber dados
-                DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
-                
-                // Receber pacote (bloqueante)
-                receiveSocket.receive(packet);
-                
-                // Converter dados para string
-                String message = new String(packet.getData(), 0, packet.getLength());
-                
-                // Processar apenas mensagens que não tenham sido enviadas por este usuário
-                if (!message.startsWith(username + " diz:") && !message.startsWith(username + " ")) {
-                    // Extrair nome do remetente, se presente
-                    String sender = null;
-                    if (message.contains(" diz: ")) {
-                        sender = message.substring(0, message.indexOf(" diz:"));
-                    }
-                    
-                    // Notificar ouvinte, se registrado
-                    if (listener != null) {
-                        final String finalSender = sender;
-                        listener.onMessageReceived(message, finalSender);
-                    }
-                    
-                    LOGGER.log(Level.FINE, "Mensagem recebida: {0}", message);
-                }
-                
-                // Limpar buffer para próxima mensagem
-                buffer = new byte[BUFFER_SIZE];
-                
-            } catch (SocketException e) {
-                if (!running) {
-                    // Socket fechado porque o gerenciador foi parado
-                    break;
+        FloodGuard guard = floodGuard;
+        if (!MulticastFrame.isFrame(data)) {
+            // Datagramas sem cabeçalho só interessam ao ouvinte bruto
+            RawMessageListener raw = rawListener;
+            if (raw != null && (guard == null
+                    || guard.allow(FloodGuard.sourceKey(source.getAddress()), source.getAddress(), System.nanoTime()))) {
+                raw.onPacketReceived(data, source.getAddress());
+            }
+            return;
+        }
+        
+        // Ignorar o eco das mensagens enviadas por este gerenciador
+        if (MulticastFrame.senderId(data) == senderId) {
+            return;
+        }
+        
+        // Quem inunda o grupo é descartado antes de qualquer decodificação
+        if (guard != null && !guard.allow(MulticastFrame.senderId(data), source.getAddress(), System.nanoTime())) {
+            return;
+        }
+        
+        byte type = MulticastFrame.type(data);
+        if (type == MulticastFrame.TYPE_HEARTBEAT) {
+            presence.onHeartbeat(data, source.getAddress());
+            return;
+        }
+        if (type == MulticastFrame.TYPE_STATE_REQUEST || type == MulticastFrame.TYPE_STATE_ANSWER
+                || type == MulticastFrame.TYPE_STATE) {
+            stateTransfer.onFrame(type, data, source);
+            return;
+        }
+        
+        short flags = MulticastFrame.flags(data);
+        ReliableMulticast reliable = reliability;
+        if (reliable == null) {
+            // Retransmissões só interessam a receptores no modo confiável
+            if ((flags & MulticastFrame.FLAG_RETRANSMIT) != 0) {
+                return;
+            }
+        } else if (type == MulticastFrame.TYPE_NACK) {
+            reliable.onNack(data);
+            return;
+        } else if (type == MulticastFrame.TYPE_SESSION) {
+            reliable.onSession(data);
+            return;
+        } else if ((flags & MulticastFrame.FLAG_RELIABLE) != 0
+                && !reliable.accept(MulticastFrame.senderId(data), MulticastFrame.sequence(data))) {
+            return;
+        }
+        
+        // Cópias de um quadro já entregue, vindas de outra interface ou de um retransmissor
+        long frameSequence = MulticastFrame.sequence(data);
+        if (frameSequence != 0 && (reliable == null || (flags & MulticastFrame.FLAG_RELIABLE) == 0)
+                && !duplicates.accept(MulticastFrame.senderId(data), frameSequence, System.nanoTime())) {
+            return;
+        }
+        
+        if ((flags & MulticastFrame.FLAG_TRACE) != 0) {
+            if (data.remaining() < MulticastFrame.HEADER_SIZE + MulticastFrame.TRACE_SIZE) {
+                LOGGER.log(Level.FINE, "Quadro rastreado truncado descartado");
+                return;
+            }
+            // Retransmissões medem a recuperação da perda, não a entrega
+            if ((flags & MulticastFrame.FLAG_RETRANSMIT) == 0) {
+                tracer.record(MulticastFrame.senderId(data), MulticastFrame.traceId(data),
+                        MulticastFrame.traceNanos(data));
+            }
+        }
+        
+        int bodyStart = MulticastFrame.bodyStart(data);
+        if ((flags & MulticastFrame.FLAG_COMPRESSED) != 0) {
+            data = inflateBody(data, bodyStart);
+            if (data == null) {
+                return;
+            }
+            bodyStart = 0;
+        }
+        if (type == MulticastFrame.TYPE_BATCH) {
+            deliverBatch(data, bodyStart, source);
+        } else {
+            deliverBody(type, data, bodyStart, data.limit(), source);
+        }
+    }
+    
+    /**
+     * Descomprime o corpo de um quadro com {@link MulticastFrame#FLAG_COMPRESSED}
+     * para o buffer de descompressão da thread do reator.
+     * 
+     * @param data Buffer com o quadro
+     * @param bodyStart Início do corpo comprimido
+     * @return Buffer com o corpo descomprimido, ou null se ele for inválido
+     */
+    private ByteBuffer inflateBody(ByteBuffer data, int bodyStart) {
+        if (inflated == null) {
+            inflateInput = new byte[MulticastReactor.MAX_DATAGRAM_SIZE];
+            inflated = ByteBuffer.allocate(MulticastReactor.MAX_DATAGRAM_SIZE);
+        }
+        int length = data.limit() - bodyStart;
+        data.position(bodyStart);
+        data.get(inflateInput, 0, length);
+        try {
+            int size = PayloadCompressor.CHAT.decompress(inflateInput, 0, length, inflated.array(), 0);
+            inflated.clear();
+            inflated.limit(size);
+            return inflated;
+        } catch (DataFormatException e) {
+            LOGGER.log(Level.FINE, "Quadro comprimido inválido descartado", e);
+            return null;
+        }
+    }
+    
+    /**
+     * Desmonta um lote e entrega cada entrada como se fosse um quadro próprio.
+     * 
+     * @param data Buffer com o lote
+     * @param start Início da primeira entrada
+     * @param source Endereço de origem do datagrama
+     */
+    private void deliverBatch(ByteBuffer data, int start, InetSocketAddress source) {
+        int end = data.limit();
+        int position = start;
+        while (position + MulticastFrame.BATCH_ENTRY_HEADER_SIZE <= end) {
+            byte type = data.get(position);
+            int bodyStart = position + MulticastFrame.BATCH_ENTRY_HEADER_SIZE;
+            int bodyEnd = bodyStart + (data.getShort(position + 1) & 0xFFFF);
+            if (bodyEnd > end) {
+                LOGGER.log(Level.FINE, "Entrada de lote truncada descartada");
+                return;
+            }
+            deliverBody(type, data, bodyStart, bodyEnd, source);
+            data.limit(end);
+            position = bodyEnd;
+        }
+    }
+    
+    /**
+     * Entrega o corpo de um quadro conforme o tipo.
+     * 
+     * @param type Tipo do quadro
+     * @param data Buffer com o corpo
+     * @param start Início do corpo
+     * @param end Fim do corpo
+     * @param source Endereço de origem do datagrama
+     */
+    private void deliverBody(byte type, ByteBuffer data, int start, int end, InetSocketAddress source) {
+        switch (type) {
+            case MulticastFrame.TYPE_CHAT:
+            case MulticastFrame.TYPE_SYSTEM:
+                deliverText(data, start, end, type);
+                break;
+            case MulticastFrame.TYPE_DATA:
+                RawMessageListener raw = rawListener;
+                if (raw != null) {
+                    data.limit(end).position(start);
+                    raw.onPacketReceived(data, source.getAddress());
                 }
-                LOGGER.log(Level.SEVERE, "Erro no socket ao receber mensagem", e);
-            } catch (IOException e) {
-                LOGGER.log(Level.SEVERE, "Erro ao receber mensagem", e);
+                break;
+            case MulticastFrame.TYPE_NACK:
+            case MulticastFrame.TYPE_SESSION:
+                // Controle do modo confiável, ignorado fora dele
+                break;
+            default:
+                LOGGER.log(Level.FINE, "Tipo de quadro desconhecido: {0}", type);
+        }
+    }
+    
+    /**
+     * Decodifica o corpo de uma mensagem de chat ou de sistema e notifica o ouvinte.
+     * 
+     * @param data Buffer com o corpo
+     * @param start Início do corpo
+     * @param end Fim do corpo
+     * @param type Tipo do quadro
+     */
+    private void deliverText(ByteBuffer data, int start, int end, byte type) {
+        // O chat entra no histórico da sala mesmo sem ouvintes, para que
+        // este participante possa responder a quem entrar depois
+        if (type != MulticastFrame.TYPE_CHAT && subscriptions.isEmpty()) {
+            return;
+        }
+        
+        int nameStart = start + 1;
+        if (nameStart > end) {
+            LOGGER.log(Level.FINE, "Quadro de texto truncado descartado");
+            return;
+        }
+        int textStart = nameStart + (data.get(start) & 0xFF);
+        if (textStart > end) {
+            LOGGER.log(Level.FINE, "Quadro de texto truncado descartado");
+            return;
+        }
+        
+        data.position(nameStart);
+        data.limit(textStart);
+        String sender = StandardCharsets.UTF_8.decode(data).toString();
+        data.limit(end);
+        String text = StandardCharsets.UTF_8.decode(data).toString();
+        
+        if (type == MulticastFrame.TYPE_CHAT) {
+            stateTransfer.record(System.currentTimeMillis(), sender, text);
+            if (subscriptions.isEmpty()) {
+                return;
             }
         }
+        
+        Subscription.Message message;
+        if (type == MulticastFrame.TYPE_CHAT) {
+            message = new Subscription.Message(sender + " diz: " + text, sender);
+        } else {
+            message = new Subscription.Message(sender + " " + text, null);
+        }
+        for (Subscription subscription : subscriptions) {
+            subscription.offer(message);
+        }
+        
+        LOGGER.log(Level.FINE, "Mensagem recebida de {0}: {1}", new Object[]{sender, text});
     }
     
     /**
@@ -179,22 +994,122 @@ public class MulticastManager {
             return;
         }
         
-        // Formatar mensagem com nome do usuário
-        String formattedMessage = username + " diz: " + message;
-        byte[] data = formattedMessage.getBytes();
+        CoalescingSendQueue queue = sendQueue;
+        if (queue != null) {
+            if (!queue.offer(message)) {
+                throw new IOException("Fila de envio cheia, mensagem descartada");
+            }
+            return;
+        }
+        
+        sendText(MulticastFrame.TYPE_CHAT, message);
+        recordSent(message);
+        
+        LOGGER.log(Level.FINE, "Mensagem enviada: {0}", message);
+    }
+    
+    /**
+     * Publica uma mensagem de chat sem esperar pelo socket.
+     * 
+     * @param message Mensagem a ser enviada
+     * @return false se a mensagem foi recusada (fila cheia ou gerenciador parado)
+     * @see #publishAsync(String, SendFailureListener)
+     */
+    public boolean publishAsync(String message) {
+        return publishAsync(message, null);
+    }
+    
+    /**
+     * Publica uma mensagem de chat e retorna imediatamente, para ser chamado
+     * da thread de eventos sem risco de travar a interface. A mensagem entra
+     * na fila de envio, que é ativada sem janela de espera na primeira
+     * publicação, e é enviada pela thread da fila. O tempo de cada mensagem
+     * na fila fica em {@link CoalescingSendQueue#getLatency()}.
+     * 
+     * Se a mensagem for recusada na entrada, o ouvinte é chamado na própria
+     * thread de quem publicou; se o envio falhar depois, na thread de envio.
+     * 
+     * @param message Mensagem a ser enviada
+     * @param listener Ouvinte de falhas, ou null
+     * @return false se a mensagem foi recusada (fila cheia ou gerenciador parado)
+     */
+    public boolean publishAsync(String message, SendFailureListener listener) {
+        if (message == null || message.trim().isEmpty()) {
+            return false;
+        }
+        
+        CoalescingSendQueue queue = ensureSendQueue();
+        if (queue.offer(message, listener)) {
+            return true;
+        }
+        if (listener != null) {
+            listener.onSendFailed(message, new IOException(queue.isClosed()
+                    ? "Gerenciador parado, mensagem descartada"
+                    : "Fila de envio cheia, mensagem descartada"));
+        }
+        return false;
+    }
+    
+    /**
+     * Envia um pacote binário para o grupo multicast, sem formatação.
+     * 
+     * @param data Dados a serem enviados
+     * @throws IOException Se ocorrer erro ao enviar o pacote
+     */
+    public void sendBytes(byte[] data) throws IOException {
+        if (data == null) {
+            return;
+        }
+        sendBytes(ByteBuffer.wrap(data));
+    }
+    
+    /**
+     * Envia os bytes restantes do buffer para o grupo multicast, sem formatação.
+     * A posição do buffer avança até o limite.
+     * 
+     * @param data Buffer posicionado sobre os dados a enviar
+     * @throws IOException Se ocorrer erro ao enviar o pacote
+     */
+    public void sendBytes(ByteBuffer data) throws IOException {
+        int length = data.remaining();
+        if (length == 0) {
+            return;
+        }
+        if (length > MulticastReactor.MAX_DATAGRAM_SIZE - MulticastFrame.HEADER_SIZE - MulticastFrame.TRACE_SIZE) {
+            throw new IOException("Pacote excede o tamanho máximo do datagrama: " + length);
+        }
         
-        // Criar pacote para envio
-        DatagramPacket packet = new DatagramPacket(
-                data,
-                data.length,
-                groupAddress,
-                port
-        );
+        CoalescingSendQueue queue = sendQueue;
+        if (queue != null) {
+            // A fila guarda uma cópia, pois o chamador pode reutilizar o buffer
+            byte[] copy = new byte[length];
+            data.get(copy);
+            if (!queue.offer(copy)) {
+                throw new IOException("Fila de envio cheia, pacote descartado");
+            }
+            return;
+        }
         
-        // Enviar pacote
-        sendSocket.send(packet);
+        sendFrame(MulticastFrame.TYPE_DATA, data);
         
-        LOGGER.log(Level.FINE, "Mensagem enviada: {0}", formattedMessage);
+        LOGGER.log(Level.FINE, "Pacote binário enviado: {0} bytes", length);
+    }
+    
+    /**
+     * Envia um quadro cujo corpo já está montado, com a próxima sequência.
+     * 
+     * @param type Tipo do quadro
+     * @param body Buffer posicionado sobre o corpo; a posição avança até o limite
+     * @throws IOException Se o envio falhar ou o buffer do sistema continuar cheio
+     */
+    void sendFrame(byte type, ByteBuffer body) throws IOException {
+        synchronized (sendBuffer) {
+            sendBuffer.clear();
+            writeHeader(type);
+            sendBuffer.put(body);
+            sendBuffer.flip();
+            sendBuffer();
+        }
     }
     
     /**
@@ -208,29 +1123,206 @@ public class MulticastManager {
             return;
         }
         
-        // Formatar mensagem como notificação de sistema
-        String formattedMessage = username + " " + message;
-        byte[] data = formattedMessage.getBytes();
+        sendText(MulticastFrame.TYPE_SYSTEM, message);
         
-        // Criar pacote para envio
-        DatagramPacket packet = new DatagramPacket(
-                data,
-                data.length,
-                groupAddress,
-                port
-        );
-        
-        // Enviar pacote
-        sendSocket.send(packet);
+        LOGGER.log(Level.FINE, "Mensagem de sistema enviada: {0}", message);
+    }
+    
+    /**
+     * Monta o quadro de texto direto no buffer de envio (cabeçalho, nome e
+     * texto em UTF-8) e o envia, sem montar strings intermediárias.
+     * 
+     * @param type Tipo do quadro
+     * @param text Texto da mensagem
+     * @throws IOException Se o texto não couber em um datagrama ou o envio falhar
+     */
+    private void sendText(byte type, String text) throws IOException {
+        synchronized (sendBuffer) {
+            sendBuffer.clear();
+            writeHeader(type);
+            sendBuffer.put((byte) usernameBytes.length).put(usernameBytes);
+            
+            encoder.reset();
+            CoderResult result = encoder.encode(CharBuffer.wrap(text), sendBuffer, true);
+            if (result.isOverflow() || encoder.flush(sendBuffer).isOverflow()) {
+                throw new IOException("Mensagem excede o tamanho máximo do datagrama");
+            }
+            
+            sendBuffer.flip();
+            sendBuffer();
+        }
+    }
+    
+    /**
+     * Escreve o cabeçalho do próximo quadro no buffer de envio.
+     * Chamado com o lock do buffer.
+     * 
+     * @param type Tipo do quadro
+     */
+    private void writeHeader(byte type) {
+        short flags = reliability != null ? MulticastFrame.FLAG_RELIABLE : 0;
+        boolean traced = tracing;
+        if (traced) {
+            flags |= MulticastFrame.FLAG_TRACE;
+        }
+        MulticastFrame.writeHeader(sendBuffer, type, flags, room, senderId, sequence + 1,
+                System.currentTimeMillis());
+        if (traced) {
+            sendBuffer.putLong(ThreadLocalRandom.current().nextLong()).putLong(LatencyTracer.epochNanos());
+        }
+    }
+    
+    /**
+     * Envia o conteúdo do buffer de envio ao grupo e avança a sequência.
+     * No modo confiável o quadro enviado é guardado para retransmissão.
+     * Chamado com o lock do buffer.
+     * 
+     * @throws IOException Se o envio falhar ou o buffer do sistema continuar cheio
+     */
+    private void sendBuffer() throws IOException {
+        if (compressing) {
+            compressBody();
+        }
+        transmitWaiting(sendBuffer);
+        sequence++;
         
-        LOGGER.log(Level.FINE, "Mensagem de sistema enviada: {0}", formattedMessage);
+        ReliableMulticast reliable = reliability;
+        if (reliable != null) {
+            sendBuffer.rewind();
+            reliable.store(sequence, sendBuffer);
+        }
     }
     
     /**
-     * Para o recebimento de mensagens e libera recursos.
+     * Troca o corpo do quadro no buffer de envio pela versão comprimida, se
+     * ela for menor, e liga {@link MulticastFrame#FLAG_COMPRESSED}.
+     * Chamado com o lock do buffer.
+     */
+    private void compressBody() {
+        int bodyStart = MulticastFrame.bodyStart(sendBuffer);
+        int length = sendBuffer.limit() - bodyStart;
+        if (length < PayloadCompressor.DEFAULT_MIN_SIZE) {
+            return;
+        }
+        sendBuffer.position(bodyStart);
+        sendBuffer.get(compressInput, 0, length);
+        sendBuffer.position(0);
+        int compressed = PayloadCompressor.CHAT.compress(compressInput, 0, length, compressOutput, 0);
+        if (compressed < 0) {
+            return;
+        }
+        sendBuffer.limit(bodyStart + compressed);
+        sendBuffer.position(bodyStart);
+        sendBuffer.put(compressOutput, 0, compressed);
+        sendBuffer.position(0);
+        MulticastFrame.addFlags(sendBuffer, MulticastFrame.FLAG_COMPRESSED);
+        compressedFrames++;
+        compressionSavedBytes += length - compressed;
+    }
+    
+    /**
+     * Envia um quadro pronto ao grupo, sem tocar na sequência.
+     * Não usa o lock do buffer de envio, para ser chamado pelo modo confiável.
+     * 
+     * @param frame Buffer posicionado sobre o quadro
+     * @throws IOException Se o envio falhar ou o buffer do sistema estiver cheio
+     */
+    void transmit(ByteBuffer frame) throws IOException {
+        transmit(frame, groupSocketAddress);
+    }
+    
+    /**
+     * Envia um quadro pronto a um único destino, sem tocar na sequência.
+     * Usado nas respostas da transferência de estado.
+     * 
+     * Nunca espera: é chamado na thread do reator, compartilhada por todos
+     * os canais, e no temporizador de presença. Com o buffer do sistema
+     * cheio o quadro é descartado e contado em {@link #getSendDrops()}; o
+     * modo confiável e o pedido de histórico se recuperam da perda.
+     * 
+     * @param frame Buffer posicionado sobre o quadro
+     * @param target Destino
+     * @throws IOException Se o envio falhar ou o buffer do sistema estiver cheio
+     */
+    void transmit(ByteBuffer frame, InetSocketAddress target) throws IOException {
+        if (endpoint.send(frame, target) == 0) {
+            sendDrops.incrementAndGet();
+            throw new IOException("Buffer de envio do sistema cheio, pacote descartado");
+        }
+    }
+    
+    /**
+     * Envia ao grupo um quadro publicado pela aplicação, esperando até
+     * {@link #SEND_TIMEOUT_NANOS} por espaço no buffer do sistema.
+     * 
+     * @param frame Buffer posicionado sobre o quadro
+     * @throws IOException Se o envio falhar ou o buffer do sistema continuar
+     *         cheio até o fim da espera
+     */
+    private void transmitWaiting(ByteBuffer frame) throws IOException {
+        // Um envio recusado não avança o buffer, então basta repetir até haver espaço
+        long deadline = System.nanoTime() + SEND_TIMEOUT_NANOS;
+        while (endpoint.send(frame, groupSocketAddress) == 0) {
+            if (System.nanoTime() - deadline >= 0) {
+                sendDrops.incrementAndGet();
+                throw new IOException("Buffer de envio do sistema cheio, pacote descartado");
+            }
+            LockSupport.parkNanos(SEND_RETRY_NANOS);
+        }
+    }
+    
+    /**
+     * Guarda uma mensagem de chat enviada por este gerenciador no histórico
+     * oferecido a quem entrar depois.
+     * 
+     * @param message Texto da mensagem
+     */
+    void recordSent(String message) {
+        stateTransfer.record(System.currentTimeMillis(), username, message);
+    }
+    
+    /**
+     * Pede aos participantes da sala as últimas mensagens enviadas antes
+     * da entrada deste gerenciador. Um único participante responde, por
+     * unicast, e o ouvinte é chamado uma vez com a resposta; se ninguém
+     * tiver histórico, não é chamado. Deve ser chamado depois de
+     * {@link #startReceiving()}.
+     * 
+     * @param max Quantidade máxima de mensagens, até {@value StateTransfer#HISTORY_SIZE}
+     * @param listener Ouvinte da resposta
+     * @throws IOException Se o pedido não puder ser enviado
+     * @throws IllegalStateException Se o recebimento não tiver sido iniciado
+     */
+    public void requestState(int max, StateTransfer.StateListener listener) throws IOException {
+        if (!running) {
+            throw new IllegalStateException("O recebimento deve ser iniciado antes de pedir o histórico");
+        }
+        stateTransfer.request(max, listener);
+    }
+    
+    /**
+     * Retorna a transferência de estado, com seus contadores.
+     * 
+     * @return Transferência de estado
+     */
+    public StateTransfer getStateTransfer() {
+        return stateTransfer;
+    }
+    
+    /**
+     * Para o recebimento de mensagens e libera recursos. Também libera a
+     * inscrição no grupo de um gerenciador que só enviava; depois de parado,
+     * o gerenciador não pode ser reiniciado.
      */
     public void stop() {
+        CoalescingSendQueue queue = sendQueue;
+        if (queue != null) {
+            // Esvaziar a fila antes de anunciar a saída
+            queue.close(1000);
+        }
+        
         if (!running) {
+            endpoint.close();
             return;
         }
         
@@ -243,24 +1335,45 @@ public class MulticastManager {
             LOGGER.log(Level.WARNING, "Não foi possível enviar mensagem de saída", e);
         }
         
-        try {
-            if (receiveSocket != null) {
-                receiveSocket.leaveGroup(groupAddress);
-                receiveSocket.close();
-            }
-            
-            if (sendSocket != null) {
-                sendSocket.close();
-            }
-        } catch (IOException e) {
-            LOGGER.log(Level.WARNING, "Erro ao fechar recursos", e);
+        if (reliability != null) {
+            reliability.stop();
         }
+        presence.stop();
+        stateTransfer.stop();
         
-        executorService.shutdown();
+        endpoint.close();
         
         LOGGER.log(Level.INFO, "Gerenciador multicast parado");
     }
     
+    /**
+     * Retorna o identificador aleatório deste remetente, presente no
+     * cabeçalho de todos os quadros enviados.
+     * 
+     * @return Identificador do remetente
+     */
+    public long getSenderId() {
+        return senderId;
+    }
+    
+    /**
+     * Retorna a sala deste gerenciador, gravada em todos os quadros enviados.
+     * 
+     * @return Sala, de 0 a {@value MulticastFrame#MAX_ROOM}
+     */
+    public int getRoom() {
+        return room;
+    }
+    
+    /**
+     * Retorna a interface de rede usada pelo gerenciador.
+     * 
+     * @return Interface de rede
+     */
+    public NetworkInterface getNetworkInterface() {
+        return networkInterface;
+    }
+    
     /**
      * Retorna o nome do usuário atual.
      * 
@@ -0,0 +1,189 @@
+package local.redes.multicast;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Laço de eventos compartilhado por todos os gerenciadores multicast do processo.
+ * Uma única thread aguarda em um {@link Selector} os canais não bloqueantes
+ * registrados e lê os datagramas para um buffer direto reutilizado, de modo
+ * que hospedar várias salas não custa uma thread de leitura por sala.
+ *
+ * @author Igor Rozalem
+ */
+final class MulticastReactor implements Runnable {
+    private static final Logger LOGGER = Logger.getLogger(MulticastReactor.class.getName());
+
+    // Maior carga útil possível de um datagrama UDP
+    static final int MAX_DATAGRAM_SIZE = 65507;
+
+    // Limite de leituras por canal a cada despertar, para não monopolizar o laço
+    private static final int MAX_DATAGRAMS_PER_WAKEUP = 64;
+
+    private static MulticastReactor instance;
+
+    private final Selector selector;
+    private final Queue<Runnable> pendingTasks = new ConcurrentLinkedQueue<>();
+    private final ByteBuffer receiveBuffer = ByteBuffer.allocateDirect(MAX_DATAGRAM_SIZE);
+
+    /**
+     * Destino dos datagramas lidos de um canal registrado.
+     */
+    interface DatagramHandler {
+        /**
+         * Chamado na thread do reator para cada datagrama recebido.
+         * O buffer é reutilizado e só é válido durante a chamada.
+         *
+         * @param data Buffer posicionado sobre os dados recebidos
+         * @param source Endereço de origem do datagrama
+         */
+        void onDatagram(ByteBuffer data, InetSocketAddress source);
+
+        /**
+         * Chamado na thread do reator depois de cada leva de datagramas do
+         * canal, para quem acumula trabalho entre os datagramas de uma leva.
+         */
+        default void onDrained() {
+        }
+    }
+
+    private MulticastReactor(Selector selector) {
+        this.selector = selector;
+    }
+
+    /**
+     * Retorna o reator do processo, iniciando sua thread na primeira chamada.
+     *
+     * @return Reator compartilhado
+     * @throws IOException Se não for possível abrir o seletor
+     */
+    static synchronized MulticastReactor getInstance() throws IOException {
+        if (instance == null) {
+            MulticastReactor reactor = new MulticastReactor(Selector.open());
+            Thread thread = new Thread(reactor, "multicast-reactor");
+            thread.setDaemon(true);
+            thread.start();
+            instance = reactor;
+        }
+        return instance;
+    }
+
+    /**
+     * Registra um canal não bloqueante para leitura.
+     * O registro é feito pela própria thread do reator.
+     *
+     * @param channel Canal já configurado como não bloqueante
+     * @param handler Destino dos datagramas do canal
+     */
+    void register(DatagramChannel channel, DatagramHandler handler) {
+        submit(() -> {
+            try {
+                channel.register(selector, SelectionKey.OP_READ, handler);
+            } catch (ClosedChannelException e) {
+                LOGGER.log(Level.FINE, "Canal fechado antes do registro", e);
+            }
+        });
+    }
+
+    /**
+     * Cancela o registro de um canal.
+     *
+     * @param channel Canal a remover do seletor
+     */
+    void unregister(DatagramChannel channel) {
+        submit(() -> {
+            SelectionKey key = channel.keyFor(selector);
+            if (key != null) {
+                key.cancel();
+            }
+        });
+    }
+
+    /**
+     * Acorda o seletor, por exemplo após o fechamento de um canal registrado.
+     */
+    void wakeup() {
+        selector.wakeup();
+    }
+
+    private void submit(Runnable task) {
+        pendingTasks.add(task);
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            try {
+                selector.select();
+
+                Runnable task;
+                while ((task = pendingTasks.poll()) != null) {
+                    task.run();
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (key.isValid() && key.isReadable()) {
+                        drain(key);
+                    }
+                }
+            } catch (IOException e) {
+                LOGGER.log(Level.SEVERE, "Erro no laço do reator multicast", e);
+            }
+        }
+    }
+
+    /**
+     * Lê os datagramas disponíveis em um canal e os entrega ao destino.
+     *
+     * @param key Chave do canal pronto para leitura
+     */
+    private void drain(SelectionKey key) {
+        DatagramChannel channel = (DatagramChannel) key.channel();
+        DatagramHandler handler = (DatagramHandler) key.attachment();
+
+        for (int i = 0; i < MAX_DATAGRAMS_PER_WAKEUP; i++) {
+            receiveBuffer.clear();
+            SocketAddress source;
+            try {
+                source = channel.receive(receiveBuffer);
+            } catch (IOException e) {
+                if (channel.isOpen()) {
+                    LOGGER.log(Level.SEVERE, "Erro ao receber datagrama", e);
+                }
+                key.cancel();
+                break;
+            }
+
+            if (source == null) {
+                break;
+            }
+
+            receiveBuffer.flip();
+            try {
+                handler.onDatagram(receiveBuffer, (InetSocketAddress) source);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Erro ao processar datagrama", e);
+            }
+        }
+        try {
+            handler.onDrained();
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Erro ao concluir leva de datagramas", e);
+        }
+    }
+}
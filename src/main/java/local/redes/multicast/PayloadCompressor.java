@@ -0,0 +1,170 @@
+package local.redes.multicast;
+
+import java.nio.charset.StandardCharsets;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Compressão Deflate de cargas pequenas com dicionário pré-definido.
+ *
+ * Mensagens de chat e lotes de objetos têm poucas centenas de bytes, pouco
+ * para o Deflate achar repetições dentro da própria carga; o dicionário,
+ * conhecido dos dois lados, faz as palavras e estruturas mais comuns
+ * virarem referências desde o primeiro byte. O dicionário faz parte do
+ * protocolo: quem comprime e quem descomprime precisam usar o mesmo.
+ *
+ * A carga comprimida é o tamanho original (2) seguido do Deflate cru, sem o
+ * cabeçalho e a soma de verificação do zlib, que custariam mais 6 bytes em
+ * cada mensagem:
+ *
+ * <pre>
+ * tamanho descomprimido (2) | Deflate com o dicionário
+ * </pre>
+ *
+ * Cargas menores que o tamanho mínimo, ou que não encolheriam, não são
+ * comprimidas e o chamador as envia como estão. Os {@link Deflater} e
+ * {@link Inflater} são reaproveitados por thread, sem alocação por
+ * mensagem; a memória nativa de cada um é liberada quando a thread termina
+ * e o objeto é coletado.
+ *
+ * @author Igor Rozalem
+ */
+public final class PayloadCompressor {
+
+    /** Cargas menores que isto não compensam o custo da compressão. */
+    public static final int DEFAULT_MIN_SIZE = 64;
+    /** Tamanho do prefixo com o tamanho descomprimido. */
+    public static final int LENGTH_SIZE = 2;
+    /** Maior carga representável no prefixo. */
+    public static final int MAX_SIZE = 0xFFFF;
+
+    /**
+     * Texto típico do chat, com as sequências mais frequentes no fim, onde
+     * o Deflate as alcança com as menores distâncias.
+     */
+    private static final String CHAT_TEXT =
+            "http://www. https://www. .com.br/ .com/ .gov.br .org "
+            + "kkkkkkkk hahaha rsrs :) :( ;) :D ok blz vlw valeu obrigado obrigada de nada "
+            + "por favor desculpa desculpe sem problemas tranquilo beleza combinado "
+            + "bom dia a todos boa tarde pessoal boa noite galera olá oi tudo bem? tudo bem sim e você? "
+            + "alguém sabe como alguém pode me ajudar com isso? "
+            + "acho que não sei se eu também não consegui ainda não funcionou "
+            + "vou verificar e te aviso daqui a pouco agora mesmo amanhã hoje ontem "
+            + "o servidor está fora do ar a rede está lenta a mensagem não chegou "
+            + "reunião às horas minutos segundos arquivo enviado recebido pronto "
+            + "então porque porquê quando onde quem qual quanto muito pouco mais menos "
+            + "mas para pela pelo com uma um uns umas dos das nos nas que não está estou "
+            + "entrou no chat. saiu do chat. diz: ";
+
+    /** Compressor compartilhado dos corpos de quadros do chat. */
+    public static final PayloadCompressor CHAT =
+            new PayloadCompressor(CHAT_TEXT.getBytes(StandardCharsets.UTF_8), DEFAULT_MIN_SIZE);
+
+    private final byte[] dictionary;
+    private final int minSize;
+    private final ThreadLocal<Deflater> deflaters =
+            ThreadLocal.withInitial(() -> new Deflater(Deflater.BEST_SPEED, true));
+    private final ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(() -> new Inflater(true));
+
+    /**
+     * Cria um compressor.
+     *
+     * @param dictionary Dicionário pré-definido, ou null para nenhum
+     * @param minSize Tamanho mínimo, em bytes, de uma carga comprimida
+     */
+    public PayloadCompressor(byte[] dictionary, int minSize) {
+        if (minSize < 0) {
+            throw new IllegalArgumentException("Tamanho mínimo inválido: " + minSize);
+        }
+        this.dictionary = dictionary != null ? dictionary.clone() : null;
+        this.minSize = minSize;
+    }
+
+    /**
+     * Comprime uma carga, se compensar.
+     *
+     * @param input Array com a carga
+     * @param offset Início da carga
+     * @param length Tamanho da carga
+     * @param output Array de destino
+     * @param outputOffset Início do destino
+     * @return Tamanho da carga comprimida, sempre menor que {@code length},
+     *         ou -1 se ela deve ir sem compressão
+     */
+    public int compress(byte[] input, int offset, int length, byte[] output, int outputOffset) {
+        if (length < minSize || length > MAX_SIZE) {
+            return -1;
+        }
+        // Só vale se economizar ao menos um byte
+        int room = Math.min(length - 1, output.length - outputOffset) - LENGTH_SIZE;
+        if (room <= 0) {
+            return -1;
+        }
+
+        Deflater deflater = deflaters.get();
+        deflater.reset();
+        if (dictionary != null) {
+            deflater.setDictionary(dictionary);
+        }
+        deflater.setInput(input, offset, length);
+        deflater.finish();
+        int written = deflater.deflate(output, outputOffset + LENGTH_SIZE, room);
+        if (!deflater.finished()) {
+            return -1;
+        }
+
+        output[outputOffset] = (byte) (length >>> 8);
+        output[outputOffset + 1] = (byte) length;
+        return LENGTH_SIZE + written;
+    }
+
+    /**
+     * Lê o tamanho descomprimido de uma carga comprimida.
+     *
+     * @param input Array com a carga comprimida
+     * @param offset Início da carga
+     * @return Tamanho descomprimido
+     */
+    public static int uncompressedLength(byte[] input, int offset) {
+        return (input[offset] & 0xFF) << 8 | input[offset + 1] & 0xFF;
+    }
+
+    /**
+     * Descomprime uma carga produzida por {@link #compress}.
+     *
+     * @param input Array com a carga comprimida
+     * @param offset Início da carga
+     * @param length Tamanho da carga comprimida
+     * @param output Array de destino
+     * @param outputOffset Início do destino
+     * @return Tamanho da carga descomprimida
+     * @throws DataFormatException Se a carga estiver truncada, corrompida,
+     *         não couber no destino ou não tiver o tamanho anunciado
+     */
+    public int decompress(byte[] input, int offset, int length, byte[] output, int outputOffset)
+            throws DataFormatException {
+        if (length < LENGTH_SIZE) {
+            throw new DataFormatException("Carga comprimida truncada");
+        }
+        int expected = uncompressedLength(input, offset);
+        if (expected > output.length - outputOffset) {
+            throw new DataFormatException("Carga descomprimida excede o destino: " + expected + " bytes");
+        }
+
+        Inflater inflater = inflaters.get();
+        inflater.reset();
+        if (dictionary != null) {
+            inflater.setDictionary(dictionary);
+        }
+        inflater.setInput(input, offset + LENGTH_SIZE, length - LENGTH_SIZE);
+        int read = 0;
+        while (read < expected && !inflater.finished() && !inflater.needsInput()) {
+            read += inflater.inflate(output, outputOffset + read, expected - read);
+        }
+        if (read != expected || !inflater.finished()) {
+            throw new DataFormatException("Carga comprimida inválida");
+        }
+        return read;
+    }
+}
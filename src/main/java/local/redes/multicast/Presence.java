@@ -0,0 +1,567 @@
+package local.redes.multicast;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Tabela de presença de uma sala, mantida por batimentos periódicos.
+ *
+ * Cada gerenciador envia um quadro {@link MulticastFrame#TYPE_HEARTBEAT} a
+ * cada intervalo (com variação de 10% para os participantes não
+ * sincronizarem) e um último, com {@link MulticastFrame#FLAG_LEAVE}, ao sair.
+ * Quem recebe mantém os participantes por identificador de remetente e os
+ * remove se ficarem {@value #MISSED_HEARTBEATS} intervalos sem batimento,
+ * o que cobre clientes que caíram sem avisar.
+ *
+ * Os prazos ficam em uma roda de tempo com {@value #WHEEL_SIZE} posições de
+ * {@value #TICK_MILLIS} ms. Um batimento só atualiza o prazo do participante,
+ * sem mexer na roda; quando a posição dele é visitada, ele expira ou é
+ * recolocado na posição do prazo novo. Assim cada batimento custa uma busca
+ * na tabela e cada participante ativo é visitado uma vez por prazo, com
+ * milhares de participantes por grupo.
+ *
+ * Os ouvintes recebem apenas as mudanças: entradas na thread do reator,
+ * saídas por tempo esgotado na thread da roda.
+ *
+ * @author Igor Rozalem
+ */
+public final class Presence {
+    private static final Logger LOGGER = Logger.getLogger(Presence.class.getName());
+
+    /** Intervalo padrão entre batimentos. */
+    public static final long DEFAULT_INTERVAL_MILLIS = 2000;
+
+    /** Batimentos perdidos seguidos para considerar o participante fora. */
+    public static final int MISSED_HEARTBEATS = 3;
+
+    /** Duração de cada posição da roda de tempo. */
+    static final long TICK_MILLIS = 100;
+
+    /** Posições da roda; prazos mais longos dão mais de uma volta. */
+    static final int WHEEL_SIZE = 512;
+
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(TICK_MILLIS);
+    private static final int BODY_SIZE = 5;
+
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "multicast-presence");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Tipo de mudança na presença de um participante.
+     */
+    public enum Change {
+        /** Primeiro batimento recebido do participante. */
+        JOINED,
+        /** O participante avisou que saiu. */
+        LEFT,
+        /** O participante ficou sem enviar batimentos. */
+        TIMED_OUT
+    }
+
+    /**
+     * Interface para acompanhar as mudanças na presença da sala.
+     */
+    public interface PresenceListener {
+        /**
+         * Chamado quando um participante entra ou sai da sala.
+         *
+         * @param member Participante
+         * @param change Tipo de mudança
+         */
+        void onPresenceChanged(Member member, Change change);
+    }
+
+    /**
+     * Participante da sala, visto pelos batimentos.
+     */
+    public static final class Member {
+        private final long senderId;
+        private final String name;
+        private final InetAddress address;
+        private final long joinedAt;
+        private volatile long lastHeartbeatAt;
+
+        // Roda de tempo, protegidos pela tabela
+        private long deadlineTick;
+        private int slot = -1;
+        private Member prev;
+        private Member next;
+
+        Member(long senderId, String name, InetAddress address, long now) {
+            this.senderId = senderId;
+            this.name = name;
+            this.address = address;
+            this.joinedAt = now;
+            this.lastHeartbeatAt = now;
+        }
+
+        /**
+         * Retorna o identificador de remetente do participante.
+         *
+         * @return Identificador do remetente
+         */
+        public long getSenderId() {
+            return senderId;
+        }
+
+        /**
+         * Retorna o nome do participante.
+         *
+         * @return Nome do usuário
+         */
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Retorna o endereço de origem do primeiro batimento.
+         *
+         * @return Endereço do participante
+         */
+        public InetAddress getAddress() {
+            return address;
+        }
+
+        /**
+         * Retorna quando o participante foi visto pela primeira vez.
+         *
+         * @return Instante em epoch millis
+         */
+        public long getJoinedAt() {
+            return joinedAt;
+        }
+
+        /**
+         * Retorna quando chegou o último batimento do participante.
+         *
+         * @return Instante em epoch millis
+         */
+        public long getLastHeartbeatAt() {
+            return lastHeartbeatAt;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    private final MulticastManager manager;
+    private final long senderId;
+    private final byte[] usernameBytes;
+    private final List<PresenceListener> listeners = new CopyOnWriteArrayList<>();
+    private final ByteBuffer heartbeatBuffer;
+
+    // Tabela e roda, protegidas pela própria instância
+    private final Map<Long, Member> members = new HashMap<>();
+    private final Member[] wheel = new Member[WHEEL_SIZE];
+    private final long originNanos = System.nanoTime();
+    private long currentTick;
+
+    private volatile long intervalMillis = DEFAULT_INTERVAL_MILLIS;
+    private long nextHeartbeatNanos;
+    private ScheduledFuture<?> tickTask;
+
+    private volatile long heartbeatsSent;
+    private volatile long heartbeatsReceived;
+    private volatile long timeouts;
+
+    /**
+     * Cria a tabela de presença de um gerenciador.
+     *
+     * @param manager Gerenciador que transmite os batimentos
+     * @param senderId Identificador do gerenciador
+     * @param usernameBytes Nome do usuário em UTF-8
+     */
+    Presence(MulticastManager manager, long senderId, byte[] usernameBytes) {
+        this.manager = manager;
+        this.senderId = senderId;
+        this.usernameBytes = usernameBytes;
+        this.heartbeatBuffer = ByteBuffer.allocateDirect(MulticastFrame.HEADER_SIZE + BODY_SIZE + usernameBytes.length);
+    }
+
+    /**
+     * Envia o primeiro batimento e inicia a roda de tempo.
+     */
+    synchronized void start() {
+        if (tickTask == null) {
+            sendHeartbeat(false);
+            nextHeartbeatNanos = System.nanoTime() + jitteredInterval();
+            tickTask = TIMER.scheduleAtFixedRate(this::tick, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Para a roda de tempo e avisa a sala da saída.
+     */
+    void stop() {
+        synchronized (this) {
+            if (tickTask == null) {
+                return;
+            }
+            tickTask.cancel(false);
+            tickTask = null;
+        }
+        sendHeartbeat(true);
+    }
+
+    /**
+     * Executado pela roda: envia o batimento quando for a hora e expira os
+     * participantes cujo prazo passou.
+     */
+    private void tick() {
+        try {
+            long now = System.nanoTime();
+            boolean due;
+            synchronized (this) {
+                due = now - nextHeartbeatNanos >= 0;
+                if (due) {
+                    nextHeartbeatNanos = now + jitteredInterval();
+                }
+            }
+            if (due) {
+                sendHeartbeat(false);
+            }
+            advance(now);
+        } catch (RuntimeException e) {
+            // Uma exceção cancelaria a tarefa periódica
+            LOGGER.log(Level.WARNING, "Erro na roda de presença", e);
+        }
+    }
+
+    private long jitteredInterval() {
+        long interval = TimeUnit.MILLISECONDS.toNanos(intervalMillis);
+        return interval - interval / 10 + ThreadLocalRandom.current().nextLong(interval / 5 + 1);
+    }
+
+    /**
+     * Envia um batimento: intervalo em milissegundos (4), tamanho do nome (1) e nome.
+     *
+     * @param leave true para o aviso de saída
+     */
+    private void sendHeartbeat(boolean leave) {
+        synchronized (heartbeatBuffer) {
+            heartbeatBuffer.clear();
+            MulticastFrame.writeHeader(heartbeatBuffer, MulticastFrame.TYPE_HEARTBEAT,
+                    leave ? MulticastFrame.FLAG_LEAVE : 0, manager.getRoom(), senderId, 0,
+                    System.currentTimeMillis());
+            heartbeatBuffer.putInt((int) Math.min(Integer.MAX_VALUE, intervalMillis));
+            heartbeatBuffer.put((byte) usernameBytes.length).put(usernameBytes);
+            heartbeatBuffer.flip();
+            try {
+                manager.transmit(heartbeatBuffer);
+                heartbeatsSent++;
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Falha ao enviar batimento", e);
+            }
+        }
+    }
+
+    /**
+     * Processa um batimento recebido, chamado na thread do reator.
+     *
+     * @param frame Buffer posicionado no início do quadro
+     * @param source Endereço de origem
+     */
+    void onHeartbeat(ByteBuffer frame, InetAddress source) {
+        int body = frame.position() + MulticastFrame.HEADER_SIZE;
+        if (frame.limit() - body < BODY_SIZE) {
+            LOGGER.log(Level.FINE, "Batimento truncado descartado");
+            return;
+        }
+        long sender = MulticastFrame.senderId(frame);
+        if ((MulticastFrame.flags(frame) & MulticastFrame.FLAG_LEAVE) != 0) {
+            leave(sender);
+            return;
+        }
+        long interval = frame.getInt(body);
+        int nameLength = frame.get(body + 4) & 0xFF;
+        if (interval <= 0 || body + BODY_SIZE + nameLength > frame.limit()) {
+            LOGGER.log(Level.FINE, "Batimento inválido descartado");
+            return;
+        }
+        heartbeatsReceived++;
+
+        // O nome só é decodificado na entrada do participante
+        if (renew(sender, interval, System.nanoTime())) {
+            return;
+        }
+        byte[] name = new byte[nameLength];
+        for (int i = 0; i < nameLength; i++) {
+            name[i] = frame.get(body + BODY_SIZE + i);
+        }
+        join(new Member(sender, new String(name, StandardCharsets.UTF_8), source, System.currentTimeMillis()),
+                interval, System.nanoTime());
+    }
+
+    /**
+     * Renova o prazo de um participante conhecido.
+     *
+     * @param sender Identificador do remetente
+     * @param interval Intervalo de batimentos anunciado por ele, em milissegundos
+     * @param now Instante atual em nanossegundos
+     * @return false se o participante ainda não estiver na tabela
+     */
+    synchronized boolean renew(long sender, long interval, long now) {
+        Member member = members.get(sender);
+        if (member == null) {
+            return false;
+        }
+        // Só o prazo muda; a roda recoloca o participante quando visitar a posição dele
+        member.deadlineTick = deadline(interval, now);
+        member.lastHeartbeatAt = System.currentTimeMillis();
+        return true;
+    }
+
+    /**
+     * Acrescenta um participante novo e avisa os ouvintes.
+     *
+     * @param member Participante
+     * @param interval Intervalo de batimentos anunciado, em milissegundos
+     * @param now Instante atual em nanossegundos
+     */
+    void join(Member member, long interval, long now) {
+        synchronized (this) {
+            if (members.containsKey(member.senderId)) {
+                return;
+            }
+            members.put(member.senderId, member);
+            member.deadlineTick = deadline(interval, now);
+            link(member);
+        }
+        notifyListeners(member, Change.JOINED);
+    }
+
+    /**
+     * Remove um participante que avisou a saída.
+     *
+     * @param sender Identificador do remetente
+     */
+    void leave(long sender) {
+        Member member;
+        synchronized (this) {
+            member = members.remove(sender);
+            if (member == null) {
+                return;
+            }
+            unlink(member);
+        }
+        notifyListeners(member, Change.LEFT);
+    }
+
+    /**
+     * Avança a roda até o instante informado, expirando os participantes
+     * cujo prazo passou.
+     *
+     * @param now Instante atual em nanossegundos
+     */
+    void advance(long now) {
+        List<Member> expired = null;
+        synchronized (this) {
+            long target = tick(now);
+            if (target - currentTick > WHEEL_SIZE) {
+                // Depois de uma pausa longa basta visitar cada posição uma vez
+                currentTick = target - WHEEL_SIZE;
+            }
+            while (currentTick < target) {
+                currentTick++;
+                int slot = (int) (currentTick & (WHEEL_SIZE - 1));
+                Member member = wheel[slot];
+                wheel[slot] = null;
+                while (member != null) {
+                    Member next = member.next;
+                    member.prev = null;
+                    member.next = null;
+                    member.slot = -1;
+                    if (member.deadlineTick <= currentTick) {
+                        members.remove(member.senderId);
+                        if (expired == null) {
+                            expired = new ArrayList<>();
+                        }
+                        expired.add(member);
+                    } else {
+                        link(member);
+                    }
+                    member = next;
+                }
+            }
+        }
+        if (expired != null) {
+            for (Member member : expired) {
+                timeouts++;
+                notifyListeners(member, Change.TIMED_OUT);
+            }
+        }
+    }
+
+    private long tick(long now) {
+        return (now - originNanos) / TICK_NANOS;
+    }
+
+    /**
+     * Calcula a posição da roda em que o participante expira.
+     */
+    private long deadline(long interval, long now) {
+        long timeout = TimeUnit.MILLISECONDS.toNanos(interval) * MISSED_HEARTBEATS;
+        // Uma posição a mais porque a posição atual já pode estar pela metade
+        return Math.max(tick(now), currentTick) + (timeout + TICK_NANOS - 1) / TICK_NANOS + 1;
+    }
+
+    /**
+     * Coloca o participante na posição do seu prazo. Prazos a mais de uma
+     * volta caem na mesma posição e são recolocados a cada visita.
+     */
+    private void link(Member member) {
+        int slot = (int) (member.deadlineTick & (WHEEL_SIZE - 1));
+        member.slot = slot;
+        member.prev = null;
+        member.next = wheel[slot];
+        if (member.next != null) {
+            member.next.prev = member;
+        }
+        wheel[slot] = member;
+    }
+
+    private void unlink(Member member) {
+        if (member.slot < 0) {
+            return;
+        }
+        if (member.prev != null) {
+            member.prev.next = member.next;
+        } else {
+            wheel[member.slot] = member.next;
+        }
+        if (member.next != null) {
+            member.next.prev = member.prev;
+        }
+        member.prev = null;
+        member.next = null;
+        member.slot = -1;
+    }
+
+    private void notifyListeners(Member member, Change change) {
+        for (PresenceListener listener : listeners) {
+            try {
+                listener.onPresenceChanged(member, change);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Erro no ouvinte de presença", e);
+            }
+        }
+    }
+
+    /**
+     * Registra um ouvinte de mudanças na presença.
+     *
+     * @param listener Ouvinte
+     */
+    public void addListener(PresenceListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Remove um ouvinte de mudanças na presença.
+     *
+     * @param listener Ouvinte
+     */
+    public void removeListener(PresenceListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Define o intervalo entre batimentos, anunciado em cada um deles para
+     * que os outros calculem o prazo deste participante.
+     *
+     * @param millis Intervalo em milissegundos
+     */
+    public void setInterval(long millis) {
+        if (millis < TICK_MILLIS) {
+            throw new IllegalArgumentException("Intervalo menor que " + TICK_MILLIS + " ms: " + millis);
+        }
+        this.intervalMillis = millis;
+        synchronized (this) {
+            nextHeartbeatNanos = Math.min(nextHeartbeatNanos, System.nanoTime() + jitteredInterval());
+        }
+    }
+
+    /**
+     * Retorna o intervalo entre batimentos.
+     *
+     * @return Intervalo em milissegundos
+     */
+    public long getInterval() {
+        return intervalMillis;
+    }
+
+    /**
+     * Retorna os participantes presentes, sem incluir este gerenciador.
+     *
+     * @return Cópia da tabela
+     */
+    public synchronized List<Member> getMembers() {
+        return Collections.unmodifiableList(new ArrayList<>(members.values()));
+    }
+
+    /**
+     * Procura um participante pelo identificador de remetente.
+     *
+     * @param senderId Identificador do remetente
+     * @return Participante, ou null se não estiver na tabela
+     */
+    public synchronized Member getMember(long senderId) {
+        return members.get(senderId);
+    }
+
+    /**
+     * Retorna a quantidade de participantes presentes, sem incluir este gerenciador.
+     *
+     * @return Participantes na tabela
+     */
+    public synchronized int getMemberCount() {
+        return members.size();
+    }
+
+    /**
+     * Retorna a quantidade de batimentos enviados.
+     *
+     * @return Batimentos enviados
+     */
+    public long getHeartbeatsSent() {
+        return heartbeatsSent;
+    }
+
+    /**
+     * Retorna a quantidade de batimentos recebidos.
+     *
+     * @return Batimentos recebidos
+     */
+    public long getHeartbeatsReceived() {
+        return heartbeatsReceived;
+    }
+
+    /**
+     * Retorna quantos participantes saíram por falta de batimentos.
+     *
+     * @return Saídas por tempo esgotado
+     */
+    public long getTimeouts() {
+        return timeouts;
+    }
+}
@@ -0,0 +1,535 @@
+package local.redes.multicast;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Modo confiável do {@link MulticastManager}, baseado em NACK.
+ *
+ * Como remetente, guarda os últimos quadros enviados em um anel e os
+ * retransmite quando algum receptor pede. Como receptor, acompanha a sequência
+ * de cada remetente confiável em uma janela de bits, descarta duplicatas e,
+ * ao detectar uma lacuna, agenda um NACK após um atraso aleatório. Se outro
+ * receptor pedir as mesmas sequências antes, o próprio NACK é adiado
+ * (supressão), de modo que uma perda comum a centenas de receptores gera
+ * poucos pedidos em vez de uma implosão de confirmações.
+ *
+ * A entrega não é ordenada: quadros recuperados chegam depois dos seguintes.
+ *
+ * @author Igor Rozalem
+ */
+public final class ReliableMulticast {
+    private static final Logger LOGGER = Logger.getLogger(ReliableMulticast.class.getName());
+
+    /** Quantidade padrão de quadros guardados para retransmissão. */
+    public static final int DEFAULT_HISTORY_SIZE = 4096;
+
+    // Janela de sequências acompanhada por remetente, em bits
+    private static final int WINDOW = 8192;
+
+    private static final long TICK_MILLIS = 5;
+    private static final long NACK_DELAY_MAX_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long NACK_RETRY_NANOS = TimeUnit.MILLISECONDS.toNanos(40);
+    private static final int MAX_NACK_ATTEMPTS = 8;
+    private static final int MAX_NACK_RANGES = 32;
+    private static final long RETRANSMIT_HOLDOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SESSION_IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+    private static final long SESSION_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long SENDER_IDLE_NANOS = TimeUnit.SECONDS.toNanos(60);
+
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "multicast-reliability");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final MulticastManager manager;
+    private final long senderId;
+
+    // Anel de retransmissão, indexado por sequência
+    private final int historySize;
+    private final long[] historySequences;
+    private final byte[][] historyFrames;
+    private final int[] historyLengths;
+    private final long[] historyLastSent;
+
+    private final Map<Long, SenderState> senders = new HashMap<>();
+    private final ByteBuffer controlBuffer = ByteBuffer.allocateDirect(
+            MulticastFrame.HEADER_SIZE + 9 + MAX_NACK_RANGES * 10);
+    private final ByteBuffer retransmitBuffer = ByteBuffer.allocateDirect(MulticastReactor.MAX_DATAGRAM_SIZE);
+
+    private long highestSent;
+    private long lastSentNanos;
+    private long lastAdvertised;
+    private long lastAdvertisedNanos;
+    private ScheduledFuture<?> tickTask;
+
+    private long nacksSent;
+    private long nacksSuppressed;
+    private long retransmissions;
+    private long recoveredFrames;
+    private long lostFrames;
+    private long duplicateFrames;
+
+    /**
+     * Estado de recepção de um remetente confiável.
+     */
+    private static final class SenderState {
+        // Menor sequência ainda não recebida e maior sequência conhecida
+        private long base = -1;
+        private long highest = -1;
+        private final long[] received = new long[WINDOW / 64];
+        private long nackDeadline;
+        private int nackAttempts;
+        private long lastHeardNanos = System.nanoTime();
+
+        private boolean isReceived(long seq) {
+            int bit = (int) (seq & (WINDOW - 1));
+            return (received[bit >>> 6] & (1L << bit)) != 0;
+        }
+
+        private void setReceived(long seq, boolean value) {
+            int bit = (int) (seq & (WINDOW - 1));
+            if (value) {
+                received[bit >>> 6] |= 1L << bit;
+            } else {
+                received[bit >>> 6] &= ~(1L << bit);
+            }
+        }
+
+        private boolean hasGap() {
+            return base >= 0 && base <= highest;
+        }
+    }
+
+    /**
+     * Cria o modo confiável de um gerenciador.
+     *
+     * @param manager Gerenciador que envia os quadros de controle
+     * @param senderId Identificador do gerenciador
+     * @param historySize Quantidade de quadros guardados para retransmissão
+     */
+    ReliableMulticast(MulticastManager manager, long senderId, int historySize) {
+        if (historySize <= 0) {
+            throw new IllegalArgumentException("Histórico deve ser positivo");
+        }
+        this.manager = manager;
+        this.senderId = senderId;
+        this.historySize = historySize;
+        this.historySequences = new long[historySize];
+        this.historyFrames = new byte[historySize][];
+        this.historyLengths = new int[historySize];
+        this.historyLastSent = new long[historySize];
+    }
+
+    /**
+     * Inicia a verificação periódica de NACKs e anúncios de sessão.
+     */
+    synchronized void start() {
+        if (tickTask == null) {
+            tickTask = TIMER.scheduleAtFixedRate(this::tick, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Interrompe a verificação periódica.
+     */
+    synchronized void stop() {
+        if (tickTask != null) {
+            tickTask.cancel(false);
+            tickTask = null;
+        }
+    }
+
+    /**
+     * Guarda um quadro enviado para eventual retransmissão.
+     *
+     * @param sequence Sequência do quadro
+     * @param frame Buffer posicionado sobre o quadro completo (a posição não muda)
+     */
+    synchronized void store(long sequence, ByteBuffer frame) {
+        int slot = (int) (sequence % historySize);
+        int length = frame.remaining();
+        byte[] copy = historyFrames[slot];
+        if (copy == null || copy.length < length) {
+            copy = new byte[length];
+            historyFrames[slot] = copy;
+        }
+        frame.duplicate().get(copy, 0, length);
+        historyLengths[slot] = length;
+        historySequences[slot] = sequence;
+        long now = System.nanoTime();
+        // A carência só vale entre retransmissões, não após o envio original
+        historyLastSent[slot] = now - RETRANSMIT_HOLDOFF_NANOS;
+        highestSent = sequence;
+        lastSentNanos = now;
+    }
+
+    /**
+     * Registra a chegada de um quadro confiável e indica se deve ser entregue.
+     *
+     * @param sender Remetente do quadro
+     * @param sequence Sequência do quadro
+     * @return false se o quadro for duplicado
+     */
+    synchronized boolean accept(long sender, long sequence) {
+        SenderState state = senders.get(sender);
+        if (state == null) {
+            // Quem entra no meio do fluxo não pede o histórico anterior
+            state = new SenderState();
+            state.base = sequence;
+            state.highest = sequence - 1;
+            senders.put(sender, state);
+        }
+        state.lastHeardNanos = System.nanoTime();
+
+        if (sequence < state.base || (sequence <= state.highest && state.isReceived(sequence))) {
+            duplicateFrames++;
+            return false;
+        }
+        if (sequence >= state.base + WINDOW) {
+            slideWindow(state, sequence - WINDOW + 1);
+        }
+
+        if (sequence < state.highest) {
+            recoveredFrames++;
+        }
+        state.setReceived(sequence, true);
+        if (sequence > state.highest) {
+            state.highest = sequence;
+        }
+        advanceBase(state);
+        scheduleNack(state);
+        return true;
+    }
+
+    /**
+     * Processa um anúncio de sessão, que revela perdas no fim do fluxo.
+     *
+     * @param frame Buffer posicionado no início do quadro
+     */
+    synchronized void onSession(ByteBuffer frame) {
+        long sender = MulticastFrame.senderId(frame);
+        long advertised = frame.getLong(frame.position() + MulticastFrame.HEADER_SIZE);
+        SenderState state = senders.get(sender);
+        if (state == null) {
+            state = new SenderState();
+            state.base = advertised + 1;
+            state.highest = advertised;
+            senders.put(sender, state);
+            return;
+        }
+        state.lastHeardNanos = System.nanoTime();
+        if (advertised > state.highest) {
+            if (advertised >= state.base + WINDOW) {
+                slideWindow(state, advertised - WINDOW + 1);
+            }
+            state.highest = advertised;
+            scheduleNack(state);
+        }
+    }
+
+    /**
+     * Processa um NACK: retransmite se o alvo for este remetente, ou adia o
+     * próprio NACK se outro receptor já pediu as mesmas sequências.
+     *
+     * @param frame Buffer posicionado no início do quadro
+     */
+    synchronized void onNack(ByteBuffer frame) {
+        int body = frame.position() + MulticastFrame.HEADER_SIZE;
+        if (frame.limit() < body + 9) {
+            return;
+        }
+        long target = frame.getLong(body);
+        int ranges = Math.min(frame.get(body + 8) & 0xFF, (frame.limit() - body - 9) / 10);
+
+        if (target == senderId) {
+            for (int i = 0; i < ranges; i++) {
+                int offset = body + 9 + i * 10;
+                long first = frame.getLong(offset);
+                int length = frame.getShort(offset + 8) & 0xFFFF;
+                for (long seq = first; seq < first + length; seq++) {
+                    retransmit(seq);
+                }
+            }
+            return;
+        }
+
+        SenderState state = senders.get(target);
+        if (state == null || state.nackDeadline == 0) {
+            return;
+        }
+        for (int i = 0; i < ranges; i++) {
+            int offset = body + 9 + i * 10;
+            long first = frame.getLong(offset);
+            int length = frame.getShort(offset + 8) & 0xFFFF;
+            if (state.base >= first && state.base < first + length) {
+                // Outro receptor já pediu nossa lacuna mais antiga; esperamos o reparo
+                state.nackDeadline = System.nanoTime() + NACK_RETRY_NANOS;
+                nacksSuppressed++;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Retransmite um quadro do anel, se ainda estiver guardado e não tiver
+     * sido reenviado há pouco em resposta a outro NACK.
+     *
+     * @param sequence Sequência pedida
+     */
+    private void retransmit(long sequence) {
+        int slot = (int) (sequence % historySize);
+        if (historySequences[slot] != sequence || historyFrames[slot] == null) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (now - historyLastSent[slot] < RETRANSMIT_HOLDOFF_NANOS) {
+            return;
+        }
+        historyLastSent[slot] = now;
+
+        retransmitBuffer.clear();
+        retransmitBuffer.put(historyFrames[slot], 0, historyLengths[slot]);
+        retransmitBuffer.flip();
+        MulticastFrame.addFlags(retransmitBuffer, MulticastFrame.FLAG_RETRANSMIT);
+        try {
+            manager.transmit(retransmitBuffer);
+            retransmissions++;
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Falha ao retransmitir sequência " + sequence, e);
+        }
+    }
+
+    /**
+     * Verificação periódica: envia NACKs vencidos e anúncios de sessão.
+     */
+    private synchronized void tick() {
+        long now = System.nanoTime();
+        Iterator<Map.Entry<Long, SenderState>> entries = senders.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<Long, SenderState> entry = entries.next();
+            SenderState state = entry.getValue();
+            if (now - state.lastHeardNanos >= SENDER_IDLE_NANOS) {
+                // Remetente que saiu sem avisar (sem anúncios de sessão há um minuto)
+                entries.remove();
+                continue;
+            }
+            if (state.nackDeadline != 0 && now - state.nackDeadline >= 0) {
+                if (state.nackAttempts >= MAX_NACK_ATTEMPTS) {
+                    // Desistir da lacuna mais antiga, que o remetente não conseguiu reparar
+                    long next = state.base;
+                    while (next <= state.highest && !state.isReceived(next)) {
+                        next++;
+                    }
+                    state.nackDeadline = 0;
+                    slideWindow(state, next);
+                    scheduleNack(state);
+                } else {
+                    sendNack(entry.getKey(), state);
+                    state.nackAttempts++;
+                    state.nackDeadline = now + NACK_RETRY_NANOS;
+                }
+            }
+        }
+
+        if (highestSent > 0 && ((highestSent != lastAdvertised && now - lastSentNanos >= SESSION_IDLE_NANOS)
+                || now - lastAdvertisedNanos >= SESSION_INTERVAL_NANOS)) {
+            sendSession(now);
+        }
+    }
+
+    /**
+     * Agenda um NACK com atraso aleatório se houver lacuna e nenhum pendente.
+     *
+     * @param state Estado do remetente
+     */
+    private void scheduleNack(SenderState state) {
+        if (!state.hasGap()) {
+            state.nackDeadline = 0;
+            state.nackAttempts = 0;
+        } else if (state.nackDeadline == 0) {
+            long delay = 1 + ThreadLocalRandom.current().nextLong(NACK_DELAY_MAX_NANOS);
+            state.nackDeadline = System.nanoTime() + delay;
+        }
+    }
+
+    /**
+     * Avança a base enquanto as sequências seguintes já tiverem chegado.
+     * As tentativas de NACK contam por lacuna, então são zeradas ao avançar.
+     *
+     * @param state Estado do remetente
+     */
+    private static void advanceBase(SenderState state) {
+        long start = state.base;
+        while (state.base <= state.highest && state.isReceived(state.base)) {
+            state.setReceived(state.base, false);
+            state.base++;
+        }
+        if (state.base != start) {
+            // Houve progresso: as tentativas passam a contar para a próxima lacuna
+            state.nackAttempts = 0;
+        }
+    }
+
+    /**
+     * Move a base até a sequência informada, contando como perdidas as
+     * sequências que ficaram para trás sem chegar.
+     *
+     * @param state Estado do remetente
+     * @param newBase Nova base
+     */
+    private void slideWindow(SenderState state, long newBase) {
+        long gap = newBase - state.base;
+        long span = Math.min(gap, WINDOW);
+        for (long i = 0; i < span; i++) {
+            long seq = state.base + i;
+            if (state.isReceived(seq)) {
+                state.setReceived(seq, false);
+            } else {
+                lostFrames++;
+            }
+        }
+        // Além da janela nada foi marcado, então tudo conta como perdido
+        lostFrames += gap - span;
+        state.base = newBase;
+        state.highest = Math.max(state.highest, newBase - 1);
+        advanceBase(state);
+        if (!state.hasGap()) {
+            state.nackDeadline = 0;
+            state.nackAttempts = 0;
+        }
+    }
+
+    /**
+     * Envia um NACK com as faixas de sequências ausentes de um remetente.
+     *
+     * @param target Remetente alvo
+     * @param state Estado do remetente
+     */
+    private void sendNack(long target, SenderState state) {
+        controlBuffer.clear();
+        MulticastFrame.writeHeader(controlBuffer, MulticastFrame.TYPE_NACK, (short) 0, manager.getRoom(),
+                senderId, 0, System.currentTimeMillis());
+        controlBuffer.putLong(target);
+        int countIndex = controlBuffer.position();
+        controlBuffer.put((byte) 0);
+
+        int ranges = 0;
+        long seq = state.base;
+        while (seq <= state.highest && ranges < MAX_NACK_RANGES) {
+            if (state.isReceived(seq)) {
+                seq++;
+                continue;
+            }
+            long first = seq;
+            while (seq <= state.highest && !state.isReceived(seq) && seq - first < 0xFFFF) {
+                seq++;
+            }
+            controlBuffer.putLong(first).putShort((short) (seq - first));
+            ranges++;
+        }
+        controlBuffer.put(countIndex, (byte) ranges);
+        controlBuffer.flip();
+
+        try {
+            manager.transmit(controlBuffer);
+            nacksSent++;
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Falha ao enviar NACK", e);
+        }
+    }
+
+    /**
+     * Anuncia a maior sequência enviada.
+     *
+     * @param now Instante atual em nanossegundos
+     */
+    private void sendSession(long now) {
+        controlBuffer.clear();
+        MulticastFrame.writeHeader(controlBuffer, MulticastFrame.TYPE_SESSION, (short) 0, manager.getRoom(),
+                senderId, 0, System.currentTimeMillis());
+        controlBuffer.putLong(highestSent);
+        controlBuffer.flip();
+        try {
+            manager.transmit(controlBuffer);
+            lastAdvertised = highestSent;
+            lastAdvertisedNanos = now;
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Falha ao enviar anúncio de sessão", e);
+        }
+    }
+
+    /**
+     * Retorna o tamanho do anel de retransmissão.
+     *
+     * @return Quantidade de quadros guardados
+     */
+    public int getHistorySize() {
+        return historySize;
+    }
+
+    /**
+     * Retorna a quantidade de NACKs enviados.
+     *
+     * @return NACKs enviados
+     */
+    public synchronized long getNacksSent() {
+        return nacksSent;
+    }
+
+    /**
+     * Retorna quantas vezes um NACK foi adiado por outro receptor já ter pedido.
+     *
+     * @return NACKs suprimidos
+     */
+    public synchronized long getNacksSuppressed() {
+        return nacksSuppressed;
+    }
+
+    /**
+     * Retorna a quantidade de quadros retransmitidos por este remetente.
+     *
+     * @return Retransmissões
+     */
+    public synchronized long getRetransmissions() {
+        return retransmissions;
+    }
+
+    /**
+     * Retorna a quantidade de quadros recebidos que preencheram lacunas.
+     *
+     * @return Quadros recuperados
+     */
+    public synchronized long getRecoveredFrames() {
+        return recoveredFrames;
+    }
+
+    /**
+     * Retorna a quantidade de quadros dados como perdidos.
+     *
+     * @return Quadros perdidos
+     */
+    public synchronized long getLostFrames() {
+        return lostFrames;
+    }
+
+    /**
+     * Retorna a quantidade de quadros duplicados descartados.
+     *
+     * @return Duplicatas descartadas
+     */
+    public synchronized long getDuplicateFrames() {
+        return duplicateFrames;
+    }
+}
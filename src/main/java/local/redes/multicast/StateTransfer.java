@@ -0,0 +1,491 @@
+package local.redes.multicast;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Transferência das últimas mensagens da sala para quem acabou de entrar.
+ *
+ * Cada gerenciador guarda as últimas {@value #HISTORY_SIZE} mensagens de chat
+ * que viu ou enviou. Quem entra envia um {@link MulticastFrame#TYPE_STATE_REQUEST}
+ * ao grupo; cada participante agenda a resposta após um atraso aleatório de
+ * até {@value #MAX_REPLY_DELAY_MILLIS} ms. O primeiro a responder anuncia no
+ * grupo um {@link MulticastFrame#TYPE_STATE_ANSWER}, que cancela as respostas
+ * agendadas pelos outros, e envia o histórico comprimido com Deflate direto
+ * ao endereço de quem pediu, em um único {@link MulticastFrame#TYPE_STATE}.
+ * Assim uma sala cheia responde a uma entrada com um datagrama, e não com
+ * um por participante.
+ *
+ * A resposta chega pelo mesmo canal compartilhado do {@link MulticastEngine},
+ * que também recebe datagramas unicast na porta do grupo.
+ *
+ * @author Igor Rozalem
+ */
+public final class StateTransfer {
+    private static final Logger LOGGER = Logger.getLogger(StateTransfer.class.getName());
+
+    /** Mensagens de chat guardadas para quem entrar depois. */
+    public static final int HISTORY_SIZE = 100;
+
+    /** Maior atraso aleatório antes de responder a um pedido. */
+    public static final long MAX_REPLY_DELAY_MILLIS = 150;
+
+    // Limite do histórico descomprimido, contra respostas malformadas
+    private static final int MAX_STATE_BYTES = 1 << 20;
+
+    // Corpos: pedido (id 4, máximo 2), anúncio (alvo 8, id 4),
+    // resposta (alvo 8, id 4, mensagens 2, tamanho descomprimido 4, dados)
+    private static final int REQUEST_BODY = 6;
+    private static final int ANSWER_BODY = 12;
+    private static final int STATE_HEADER = 18;
+
+    private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "multicast-state-transfer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Interface para receber o histórico pedido com {@link MulticastManager#requestState}.
+     */
+    public interface StateListener {
+        /**
+         * Chamado uma vez, na thread do reator, com a primeira resposta recebida.
+         *
+         * @param messages Mensagens da mais antiga para a mais recente
+         */
+        void onStateReceived(List<Message> messages);
+    }
+
+    /**
+     * Mensagem de chat do histórico da sala.
+     */
+    public static final class Message {
+        private final long timestamp;
+        private final String sender;
+        private final String text;
+
+        Message(long timestamp, String sender, String text) {
+            this.timestamp = timestamp;
+            this.sender = sender;
+            this.text = text;
+        }
+
+        /**
+         * Retorna quando a mensagem foi vista pelo participante que respondeu.
+         *
+         * @return Instante em epoch millis
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        /**
+         * Retorna o remetente.
+         *
+         * @return Nome do usuário
+         */
+        public String getSender() {
+            return sender;
+        }
+
+        /**
+         * Retorna o texto, sem o nome do remetente.
+         *
+         * @return Texto da mensagem
+         */
+        public String getText() {
+            return text;
+        }
+
+        @Override
+        public String toString() {
+            return sender + " diz: " + text;
+        }
+    }
+
+    /**
+     * Resposta agendada para um pedido.
+     */
+    private static final class PendingReply {
+        private final InetSocketAddress target;
+        private final int max;
+        private ScheduledFuture<?> task;
+
+        PendingReply(InetSocketAddress target, int max) {
+            this.target = target;
+            this.max = max;
+        }
+    }
+
+    private final MulticastManager manager;
+    private final long senderId;
+
+    // Anel com as últimas mensagens, protegido pela instância
+    private final Message[] history = new Message[HISTORY_SIZE];
+    private int historyHead;
+    private int historyCount;
+
+    // Respostas agendadas, por remetente e id do pedido
+    private final Map<Long, PendingReply> pending = new HashMap<>();
+
+    private final ByteBuffer controlBuffer = ByteBuffer.allocateDirect(MulticastFrame.HEADER_SIZE + ANSWER_BODY);
+    private final ByteBuffer stateBuffer = ByteBuffer.allocateDirect(MulticastReactor.MAX_DATAGRAM_SIZE);
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private final Inflater inflater = new Inflater();
+
+    private volatile int requestId;
+    private volatile StateListener stateListener;
+
+    private volatile long repliesSent;
+    private volatile long repliesSuppressed;
+    private volatile long bytesSent;
+
+    /**
+     * Cria a transferência de estado de um gerenciador.
+     *
+     * @param manager Gerenciador que envia os quadros
+     * @param senderId Identificador do gerenciador
+     */
+    StateTransfer(MulticastManager manager, long senderId) {
+        this.manager = manager;
+        this.senderId = senderId;
+    }
+
+    /**
+     * Guarda uma mensagem de chat vista ou enviada.
+     *
+     * @param timestamp Instante em epoch millis
+     * @param sender Remetente
+     * @param text Texto da mensagem
+     */
+    synchronized void record(long timestamp, String sender, String text) {
+        history[(historyHead + historyCount) % HISTORY_SIZE] = new Message(timestamp, sender, text);
+        if (historyCount < HISTORY_SIZE) {
+            historyCount++;
+        } else {
+            historyHead = (historyHead + 1) % HISTORY_SIZE;
+        }
+    }
+
+    /**
+     * Retorna as últimas mensagens guardadas.
+     *
+     * @param max Quantidade máxima de mensagens
+     * @return Mensagens da mais antiga para a mais recente
+     */
+    synchronized List<Message> recent(int max) {
+        int count = Math.min(max, historyCount);
+        List<Message> result = new ArrayList<>(count);
+        for (int i = historyCount - count; i < historyCount; i++) {
+            result.add(history[(historyHead + i) % HISTORY_SIZE]);
+        }
+        return result;
+    }
+
+    /**
+     * Pede ao grupo as últimas mensagens da sala. Só a primeira resposta a
+     * este pedido é entregue; um pedido novo substitui o anterior.
+     *
+     * @param max Quantidade máxima de mensagens, até {@value #HISTORY_SIZE}
+     * @param listener Ouvinte da resposta
+     * @throws IOException Se o pedido não puder ser enviado
+     */
+    void request(int max, StateListener listener) throws IOException {
+        if (max <= 0 || max > HISTORY_SIZE) {
+            throw new IllegalArgumentException("Quantidade inválida: " + max);
+        }
+        synchronized (controlBuffer) {
+            int id = requestId + 1;
+            requestId = id;
+            stateListener = listener;
+            controlBuffer.clear();
+            MulticastFrame.writeHeader(controlBuffer, MulticastFrame.TYPE_STATE_REQUEST, (short) 0,
+                    manager.getRoom(), senderId, 0, System.currentTimeMillis());
+            controlBuffer.putInt(id).putShort((short) max);
+            controlBuffer.flip();
+            manager.transmit(controlBuffer);
+        }
+    }
+
+    /**
+     * Processa um quadro da transferência, chamado na thread do reator.
+     *
+     * @param type Tipo do quadro
+     * @param frame Buffer posicionado no início do quadro
+     * @param source Endereço de origem
+     */
+    void onFrame(byte type, ByteBuffer frame, InetSocketAddress source) {
+        int body = frame.position() + MulticastFrame.HEADER_SIZE;
+        int length = frame.limit() - body;
+        long sender = MulticastFrame.senderId(frame);
+        switch (type) {
+            case MulticastFrame.TYPE_STATE_REQUEST:
+                if (length >= REQUEST_BODY) {
+                    onRequest(sender, frame.getInt(body), frame.getShort(body + 4) & 0xFFFF, source);
+                }
+                break;
+            case MulticastFrame.TYPE_STATE_ANSWER:
+                if (length >= ANSWER_BODY) {
+                    suppress(frame.getLong(body), frame.getInt(body + 8));
+                }
+                break;
+            case MulticastFrame.TYPE_STATE:
+                if (length >= STATE_HEADER && frame.getLong(body) == senderId) {
+                    onState(frame, body, length);
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    /**
+     * Agenda a resposta a um pedido, se houver o que mandar.
+     */
+    private void onRequest(long requester, int id, int max, InetSocketAddress source) {
+        synchronized (this) {
+            if (historyCount == 0 || max == 0) {
+                return;
+            }
+            long key = key(requester, id);
+            if (pending.containsKey(key)) {
+                return;
+            }
+            PendingReply reply = new PendingReply(source, Math.min(max, HISTORY_SIZE));
+            pending.put(key, reply);
+            long delay = ThreadLocalRandom.current().nextLong(TimeUnit.MILLISECONDS.toNanos(MAX_REPLY_DELAY_MILLIS));
+            reply.task = TIMER.schedule(() -> reply(requester, id), delay, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Cancela a resposta agendada quando outro participante já respondeu.
+     */
+    private void suppress(long requester, int id) {
+        PendingReply reply;
+        synchronized (this) {
+            reply = pending.remove(key(requester, id));
+        }
+        if (reply != null) {
+            reply.task.cancel(false);
+            repliesSuppressed++;
+        }
+    }
+
+    private static long key(long requester, int id) {
+        return requester * 31 + id;
+    }
+
+    /**
+     * Anuncia a resposta ao grupo e envia o histórico a quem pediu.
+     */
+    private void reply(long requester, int id) {
+        PendingReply reply;
+        synchronized (this) {
+            reply = pending.remove(key(requester, id));
+        }
+        if (reply == null) {
+            return;
+        }
+        try {
+            synchronized (controlBuffer) {
+                controlBuffer.clear();
+                MulticastFrame.writeHeader(controlBuffer, MulticastFrame.TYPE_STATE_ANSWER, (short) 0,
+                        manager.getRoom(), senderId, 0, System.currentTimeMillis());
+                controlBuffer.putLong(requester).putInt(id);
+                controlBuffer.flip();
+                manager.transmit(controlBuffer);
+            }
+
+            List<Message> messages = recent(reply.max);
+            stateBuffer.clear();
+            MulticastFrame.writeHeader(stateBuffer, MulticastFrame.TYPE_STATE, (short) 0,
+                    manager.getRoom(), senderId, 0, System.currentTimeMillis());
+            while (!encode(messages, requester, id, stateBuffer)) {
+                // Sem caber em um datagrama, vão só as mais recentes
+                messages = messages.subList(messages.size() / 2, messages.size());
+            }
+            stateBuffer.flip();
+            int size = stateBuffer.remaining();
+            manager.transmit(stateBuffer, reply.target);
+            repliesSent++;
+            bytesSent += size;
+        } catch (IOException | RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Falha ao responder pedido de histórico", e);
+        }
+    }
+
+    /**
+     * Escreve o corpo da resposta: cabeçalho e as mensagens comprimidas,
+     * cada uma com horário (8), tamanho do nome (1), nome, tamanho do texto (2) e texto.
+     *
+     * @return false se as mensagens comprimidas não couberem no buffer
+     */
+    boolean encode(List<Message> messages, long requester, int id, ByteBuffer buffer) {
+        ByteBuffer raw = ByteBuffer.allocate(messages.size() * 11 + 4 * 1024);
+        for (Message message : messages) {
+            byte[] sender = truncate(message.sender.getBytes(StandardCharsets.UTF_8), 0xFF);
+            byte[] text = truncate(message.text.getBytes(StandardCharsets.UTF_8), 0xFFFF);
+            if (raw.remaining() < 11 + sender.length + text.length) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(raw.capacity() * 2,
+                        raw.position() + 11 + sender.length + text.length));
+                raw.flip();
+                raw = larger.put(raw);
+            }
+            raw.putLong(message.timestamp);
+            raw.put((byte) sender.length).put(sender);
+            raw.putShort((short) text.length).put(text);
+        }
+        if (raw.position() > MAX_STATE_BYTES) {
+            return false;
+        }
+
+        int start = buffer.position();
+        buffer.putLong(requester).putInt(id).putShort((short) messages.size()).putInt(raw.position());
+        byte[] out = new byte[buffer.remaining()];
+        deflater.reset();
+        deflater.setInput(raw.array(), 0, raw.position());
+        deflater.finish();
+        int compressed = deflater.deflate(out);
+        if (!deflater.finished()) {
+            buffer.position(start);
+            return false;
+        }
+        buffer.put(out, 0, compressed);
+        return true;
+    }
+
+    private static byte[] truncate(byte[] bytes, int max) {
+        if (bytes.length <= max) {
+            return bytes;
+        }
+        byte[] result = new byte[max];
+        System.arraycopy(bytes, 0, result, 0, max);
+        return result;
+    }
+
+    /**
+     * Descomprime a resposta e a entrega, se for a do pedido em aberto.
+     */
+    private void onState(ByteBuffer frame, int body, int length) {
+        StateListener listener = stateListener;
+        if (listener == null || frame.getInt(body + 8) != requestId) {
+            return;
+        }
+        List<Message> messages;
+        try {
+            messages = decode(frame, body, length);
+        } catch (DataFormatException | RuntimeException e) {
+            LOGGER.log(Level.FINE, "Resposta de histórico inválida descartada", e);
+            return;
+        }
+        synchronized (controlBuffer) {
+            // Só a primeira resposta é entregue
+            if (stateListener != listener) {
+                return;
+            }
+            stateListener = null;
+        }
+        try {
+            listener.onStateReceived(messages);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Erro no ouvinte de histórico", e);
+        }
+    }
+
+    /**
+     * Lê as mensagens de uma resposta.
+     *
+     * @param frame Buffer com o quadro
+     * @param body Início do corpo
+     * @param length Tamanho do corpo
+     * @return Mensagens da mais antiga para a mais recente
+     * @throws DataFormatException Se os dados comprimidos forem inválidos
+     */
+    List<Message> decode(ByteBuffer frame, int body, int length) throws DataFormatException {
+        int count = frame.getShort(body + 12) & 0xFFFF;
+        int rawLength = frame.getInt(body + 14);
+        if (rawLength < 0 || rawLength > MAX_STATE_BYTES) {
+            throw new DataFormatException("Tamanho descomprimido inválido: " + rawLength);
+        }
+        byte[] compressed = new byte[length - STATE_HEADER];
+        for (int i = 0; i < compressed.length; i++) {
+            compressed[i] = frame.get(body + STATE_HEADER + i);
+        }
+        byte[] raw = new byte[rawLength];
+        inflater.reset();
+        inflater.setInput(compressed);
+        int inflated = inflater.inflate(raw);
+        if (inflated != rawLength || !inflater.finished()) {
+            throw new DataFormatException("Histórico truncado");
+        }
+
+        ByteBuffer data = ByteBuffer.wrap(raw);
+        List<Message> messages = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            long timestamp = data.getLong();
+            byte[] sender = new byte[data.get() & 0xFF];
+            data.get(sender);
+            byte[] text = new byte[data.getShort() & 0xFFFF];
+            data.get(text);
+            messages.add(new Message(timestamp, new String(sender, StandardCharsets.UTF_8),
+                    new String(text, StandardCharsets.UTF_8)));
+        }
+        return messages;
+    }
+
+    /**
+     * Cancela as respostas agendadas.
+     */
+    synchronized void stop() {
+        for (PendingReply reply : pending.values()) {
+            reply.task.cancel(false);
+        }
+        pending.clear();
+        stateListener = null;
+    }
+
+    /**
+     * Retorna quantas vezes este gerenciador respondeu a um pedido.
+     *
+     * @return Respostas enviadas
+     */
+    public long getRepliesSent() {
+        return repliesSent;
+    }
+
+    /**
+     * Retorna quantas respostas foram canceladas porque outro participante respondeu antes.
+     *
+     * @return Respostas suprimidas
+     */
+    public long getRepliesSuppressed() {
+        return repliesSuppressed;
+    }
+
+    /**
+     * Retorna o total de bytes enviados nas respostas, já comprimidos.
+     *
+     * @return Bytes enviados
+     */
+    public long getBytesSent() {
+        return bytesSent;
+    }
+}
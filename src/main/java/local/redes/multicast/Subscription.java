@@ -0,0 +1,272 @@
+package local.redes.multicast;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Inscrição de um {@link MulticastManager.MessageListener} nas mensagens de
+ * um {@link MulticastManager}.
+ *
+ * A thread de recepção só decodifica a mensagem e a coloca na fila circular
+ * limitada da inscrição, sem locks; a entrega ao ouvinte acontece em um
+ * executor compartilhado, uma tarefa de cada vez por inscrição, preservando a
+ * ordem. Assim um ouvinte lento atrasa apenas a própria fila, e o atraso
+ * fica visível em {@link #getLag()}. Quando a fila enche, a
+ * {@link OverflowPolicy} da inscrição decide o que perder.
+ *
+ * @author Igor Rozalem
+ */
+public final class Subscription {
+    private static final Logger LOGGER = Logger.getLogger(Subscription.class.getName());
+
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    // Mensagens entregues por tarefa antes de devolver a thread ao executor
+    private static final int DRAIN_BATCH = 256;
+    private static final long BLOCK_PARK_NANOS = 50_000;
+
+    /**
+     * O que fazer com uma mensagem que chega com a fila cheia.
+     */
+    public enum OverflowPolicy {
+        /** Descarta a mensagem que chegou. */
+        DROP_NEWEST,
+        /** Descarta a mensagem mais antiga da fila para abrir espaço. */
+        DROP_OLDEST,
+        /**
+         * Faz a thread de recepção esperar por espaço. Nada se perde na fila,
+         * mas a recepção de todos os gerenciadores do processo para enquanto
+         * o ouvinte não consome, e o sistema pode descartar datagramas.
+         */
+        BLOCK
+    }
+
+    /**
+     * Mensagem decodificada, compartilhada entre as inscrições.
+     */
+    static final class Message {
+        final String text;
+        final String sender;
+
+        Message(String text, String sender) {
+            this.text = text;
+            this.sender = sender;
+        }
+    }
+
+    private final MulticastManager.MessageListener listener;
+    private final OverflowPolicy policy;
+    private final int mask;
+    private final AtomicReferenceArray<Message> slots;
+
+    // head é avançado pelo consumidor e, em DROP_OLDEST, também pelo produtor
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private volatile boolean cancelled;
+
+    // Escritos por uma única thread cada (produtor ou consumidor)
+    private volatile long delivered;
+    private volatile long dropped;
+    private volatile long maxLag;
+
+    /**
+     * Cria uma inscrição.
+     *
+     * @param listener Ouvinte das mensagens
+     * @param capacity Capacidade da fila, arredondada para a próxima potência de 2
+     * @param policy Política para fila cheia
+     */
+    Subscription(MulticastManager.MessageListener listener, int capacity, OverflowPolicy policy) {
+        if (listener == null || policy == null) {
+            throw new IllegalArgumentException("Ouvinte e política são obrigatórios");
+        }
+        if (capacity <= 0 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Capacidade inválida: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        this.listener = listener;
+        this.policy = policy;
+        this.mask = size - 1;
+        this.slots = new AtomicReferenceArray<>(size);
+    }
+
+    /**
+     * Enfileira uma mensagem e agenda a entrega. Chamado apenas pela thread de recepção.
+     *
+     * @param message Mensagem decodificada
+     */
+    void offer(Message message) {
+        if (cancelled) {
+            return;
+        }
+        long t = tail.get();
+        while (t - head.get() > mask) {
+            if (policy == OverflowPolicy.DROP_NEWEST) {
+                dropped++;
+                return;
+            }
+            if (policy == OverflowPolicy.DROP_OLDEST) {
+                long h = head.get();
+                if (t - h > mask && head.compareAndSet(h, h + 1)) {
+                    dropped++;
+                }
+            } else {
+                LockSupport.parkNanos(BLOCK_PARK_NANOS);
+                if (cancelled) {
+                    return;
+                }
+            }
+        }
+        slots.lazySet((int) t & mask, message);
+        tail.lazySet(t + 1);
+
+        long lag = t + 1 - head.get();
+        if (lag > maxLag) {
+            maxLag = lag;
+        }
+        if (scheduled.compareAndSet(false, true)) {
+            Dispatcher.EXECUTOR.execute(this::drain);
+        }
+    }
+
+    /**
+     * Retira a próxima mensagem. Chamado apenas pela tarefa de entrega.
+     */
+    private Message poll() {
+        while (true) {
+            long h = head.get();
+            if (h >= tail.get()) {
+                return null;
+            }
+            Message message = slots.get((int) h & mask);
+            // Se o produtor descartou esta posição, a leitura é refeita
+            if (head.compareAndSet(h, h + 1)) {
+                return message;
+            }
+        }
+    }
+
+    /**
+     * Entrega um lote de mensagens ao ouvinte e se reagenda se ainda houver fila.
+     */
+    private void drain() {
+        for (int i = 0; i < DRAIN_BATCH && !cancelled; i++) {
+            Message message = poll();
+            if (message == null) {
+                break;
+            }
+            try {
+                listener.onMessageReceived(message.text, message.sender);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Erro no ouvinte de mensagens", e);
+            }
+            delivered++;
+        }
+        scheduled.set(false);
+        if (!cancelled && head.get() < tail.get() && scheduled.compareAndSet(false, true)) {
+            Dispatcher.EXECUTOR.execute(this::drain);
+        }
+    }
+
+    /**
+     * Cancela a inscrição. Mensagens ainda na fila não são entregues.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Indica se a inscrição foi cancelada.
+     *
+     * @return true se cancelada
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Retorna o ouvinte inscrito.
+     *
+     * @return Ouvinte de mensagens
+     */
+    public MulticastManager.MessageListener getListener() {
+        return listener;
+    }
+
+    /**
+     * Retorna a política para fila cheia.
+     *
+     * @return Política de transbordo
+     */
+    public OverflowPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Retorna a capacidade efetiva da fila.
+     *
+     * @return Capacidade em mensagens
+     */
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    /**
+     * Retorna quantas mensagens aguardam entrega ao ouvinte.
+     *
+     * @return Atraso atual em mensagens
+     */
+    public long getLag() {
+        return Math.max(0, tail.get() - head.get());
+    }
+
+    /**
+     * Retorna o maior atraso observado desde a criação.
+     *
+     * @return Maior atraso em mensagens
+     */
+    public long getMaxLag() {
+        return maxLag;
+    }
+
+    /**
+     * Retorna a quantidade de mensagens entregues ao ouvinte.
+     *
+     * @return Mensagens entregues
+     */
+    public long getDelivered() {
+        return delivered;
+    }
+
+    /**
+     * Retorna a quantidade de mensagens descartadas por fila cheia.
+     *
+     * @return Mensagens descartadas
+     */
+    public long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * Executor compartilhado das entregas, criado no primeiro uso.
+     */
+    private static final class Dispatcher {
+        private static final AtomicInteger COUNTER = new AtomicInteger();
+        private static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "multicast-dispatch-" + COUNTER.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
@@ -0,0 +1,481 @@
+package local.redes.multicast;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Repetidor unicast para redes em que o multicast não passa. Os clientes se
+ * inscrevem em uma sala com {@link MulticastFrame#TYPE_SUBSCRIBE} e enviam
+ * os quadros ao hub, que os repassa a todos os inscritos da sala, inclusive
+ * ao remetente, como faria o multicast com loop; o {@link MulticastManager}
+ * descarta o próprio eco pelo senderId. Com a propriedade
+ * {@value MulticastManager#HUB_PROPERTY}, o gerenciador passa a usar o hub
+ * sem nenhuma mudança para quem o usa.
+ *
+ * Tudo roda na thread do {@link MulticastReactor}, em um único canal não
+ * bloqueante. Os quadros não são decodificados nem recodificados: cada um é
+ * copiado uma vez para a leva da sala, e a leva, montada como um
+ * {@link MulticastFrame#TYPE_RELAY} de até {@value #MAX_RELAY_SIZE} bytes, é
+ * enviada igual a todos os inscritos quando o reator termina de ler o canal
+ * ou quando enche. Uma leva com um único quadro sai como o próprio quadro.
+ *
+ * As inscrições expiram sem renovação em {@value #EXPIRY_MILLIS} ms. Cada
+ * renovação informa quantos datagramas o cliente recebeu do hub; quem perde
+ * mais de {@code MAX_LOSS} do que foi enviado entre duas renovações não
+ * está dando conta do fluxo, é avisado e fica
+ * {@value #EVICTION_MILLIS} ms fora da sala, para não gastar o buffer de
+ * envio que os outros inscritos dividem.
+ *
+ * @author Igor Rozalem
+ */
+public final class UnicastHub {
+    private static final Logger LOGGER = Logger.getLogger(UnicastHub.class.getName());
+
+    /** Porta padrão do hub. */
+    public static final int DEFAULT_PORT = 50010;
+
+    /** Intervalo em que os clientes renovam a inscrição. */
+    public static final long RENEW_MILLIS = 2000;
+
+    /** Inscrições sem renovação nem quadros por esse tempo expiram. */
+    public static final long EXPIRY_MILLIS = 3 * RENEW_MILLIS;
+
+    /** Tempo fora da sala de um inscrito despejado por não dar conta do fluxo. */
+    public static final long EVICTION_MILLIS = 10000;
+
+    /** Maior datagrama de repasse, para caber no MTU sem fragmentar. */
+    public static final int MAX_RELAY_SIZE = 1400;
+
+    /** Inscritos aceitos pelo hub. */
+    public static final int MAX_SUBSCRIBERS = 4096;
+
+    // Fração máxima de perda entre duas renovações e amostra mínima para julgar
+    static final double MAX_LOSS = 0.2;
+    static final int MIN_LOSS_SAMPLE = 100;
+
+    private static final int MAX_BATCHED_FRAME = MAX_RELAY_SIZE - MulticastFrame.HEADER_SIZE
+            - MulticastFrame.RELAY_ENTRY_HEADER_SIZE;
+
+    // Renovações dos clientes e varredura das inscrições expiradas
+    static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "multicast-hub");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Inscrito em uma sala.
+     */
+    private static final class Subscriber {
+        private final InetSocketAddress address;
+        private final Room room;
+        private long lastSeenNanos;
+        private long sent;
+        private long sentAtReport;
+        private long receivedAtReport;
+
+        Subscriber(InetSocketAddress address, Room room, long received, long now) {
+            this.address = address;
+            this.room = room;
+            this.receivedAtReport = received;
+            this.lastSeenNanos = now;
+        }
+    }
+
+    /**
+     * Sala com os inscritos e a leva de quadros em montagem.
+     */
+    private final class Room {
+        private final int id;
+        // Substituído, nunca alterado, para percorrer durante o envio
+        private Subscriber[] subscribers = new Subscriber[0];
+        private final ByteBuffer batch = ByteBuffer.allocateDirect(MAX_RELAY_SIZE);
+        private int frames;
+
+        Room(int id) {
+            this.id = id;
+        }
+    }
+
+    private final DatagramChannel channel;
+    private final MulticastReactor reactor;
+    private final long hubId;
+    private final ByteBuffer controlBuffer = ByteBuffer.allocate(MulticastFrame.HEADER_SIZE);
+
+    // Estado protegido pela instância; alterado pelo reator e pela varredura
+    private final Map<Integer, Room> rooms = new HashMap<>();
+    private final Map<InetSocketAddress, Subscriber> subscribers = new HashMap<>();
+    private final Map<InetSocketAddress, Long> evictedUntil = new HashMap<>();
+    private final List<Room> pending = new ArrayList<>();
+    private ScheduledFuture<?> sweep;
+    private boolean started;
+    private boolean closed;
+
+    private volatile long framesRelayed;
+    private volatile long datagramsSent;
+    private volatile long sendFailures;
+    private volatile long evictions;
+    private volatile long expirations;
+
+    /**
+     * Cria o hub, abrindo o canal na porta informada.
+     *
+     * @param port Porta do hub, ou 0 para uma porta livre
+     * @throws IOException Se o canal não puder ser aberto
+     */
+    public UnicastHub(int port) throws IOException {
+        this.reactor = MulticastReactor.getInstance();
+        this.hubId = ThreadLocalRandom.current().nextLong() | 1;
+        this.channel = DatagramChannel.open();
+        try {
+            channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            channel.bind(new InetSocketAddress(port));
+            channel.configureBlocking(false);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Passa a receber inscrições e a repassar quadros.
+     */
+    public synchronized void start() {
+        if (started || closed) {
+            return;
+        }
+        started = true;
+        reactor.register(channel, new MulticastReactor.DatagramHandler() {
+            @Override
+            public void onDatagram(ByteBuffer data, InetSocketAddress source) {
+                UnicastHub.this.onDatagram(data, source, System.nanoTime());
+            }
+
+            @Override
+            public void onDrained() {
+                flushPending();
+            }
+        });
+        sweep = TIMER.scheduleWithFixedDelay(() -> expire(System.nanoTime()),
+                RENEW_MILLIS, RENEW_MILLIS, TimeUnit.MILLISECONDS);
+
+        LOGGER.log(Level.INFO, "Hub unicast ativo na porta {0}", getPort());
+    }
+
+    /**
+     * Para o hub e fecha o canal.
+     */
+    public synchronized void stop() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (sweep != null) {
+            sweep.cancel(false);
+        }
+        reactor.unregister(channel);
+        try {
+            channel.close();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Erro ao fechar o canal do hub", e);
+        }
+        reactor.wakeup();
+        subscribers.clear();
+        rooms.clear();
+        pending.clear();
+
+        LOGGER.log(Level.INFO, "Hub unicast parado");
+    }
+
+    /**
+     * Trata um datagrama recebido, na thread do reator.
+     */
+    synchronized void onDatagram(ByteBuffer data, InetSocketAddress source, long now) {
+        if (closed || !MulticastFrame.isFrame(data)) {
+            return;
+        }
+        byte type = MulticastFrame.type(data);
+        if (type == MulticastFrame.TYPE_SUBSCRIBE) {
+            onSubscribe(data, source, now);
+            return;
+        }
+        if (type == MulticastFrame.TYPE_RELAY) {
+            // Levas só saem do hub; repassar uma criaria um laço entre hubs
+            return;
+        }
+
+        Subscriber subscriber = subscribers.get(source);
+        if (subscriber != null) {
+            subscriber.lastSeenNanos = now;
+        }
+        Room room = rooms.get(MulticastFrame.room(data));
+        if (room == null) {
+            return;
+        }
+        framesRelayed++;
+        int length = data.remaining();
+        if (length > MAX_BATCHED_FRAME) {
+            flush(room);
+            sendToRoom(room, data);
+            return;
+        }
+        if (room.frames > 0 && room.batch.remaining() < MulticastFrame.RELAY_ENTRY_HEADER_SIZE + length) {
+            flush(room);
+        }
+        if (room.frames == 0) {
+            MulticastFrame.writeHeader(room.batch, MulticastFrame.TYPE_RELAY, (short) 0, room.id, hubId, 0,
+                    System.currentTimeMillis());
+            pending.add(room);
+        }
+        room.batch.putShort((short) length).put(data);
+        room.frames++;
+    }
+
+    /**
+     * Inscreve, renova ou remove o remetente.
+     */
+    private void onSubscribe(ByteBuffer data, InetSocketAddress source, long now) {
+        Subscriber current = subscribers.get(source);
+        if ((MulticastFrame.flags(data) & MulticastFrame.FLAG_LEAVE) != 0) {
+            if (current != null) {
+                remove(current);
+            }
+            return;
+        }
+        Long until = evictedUntil.get(source);
+        if (until != null) {
+            if (until - now > 0) {
+                return;
+            }
+            evictedUntil.remove(source);
+        }
+
+        int roomId = MulticastFrame.room(data);
+        long received = MulticastFrame.sequence(data);
+        if (current != null && current.room.id == roomId) {
+            current.lastSeenNanos = now;
+            long sentDelta = current.sent - current.sentAtReport;
+            long receivedDelta = received - current.receivedAtReport;
+            current.sentAtReport = current.sent;
+            current.receivedAtReport = received;
+            if (sentDelta >= MIN_LOSS_SAMPLE && receivedDelta < sentDelta * (1 - MAX_LOSS)) {
+                evict(current, sentDelta, receivedDelta, now);
+            }
+            return;
+        }
+        if (current != null) {
+            remove(current);
+        }
+        if (subscribers.size() >= MAX_SUBSCRIBERS) {
+            LOGGER.log(Level.WARNING, "Hub cheio, inscrição de {0} recusada", source);
+            return;
+        }
+
+        Room room = rooms.get(roomId);
+        if (room == null) {
+            room = new Room(roomId);
+            rooms.put(roomId, room);
+        }
+        Subscriber subscriber = new Subscriber(source, room, received, now);
+        subscribers.put(source, subscriber);
+        room.subscribers = Arrays.copyOf(room.subscribers, room.subscribers.length + 1);
+        room.subscribers[room.subscribers.length - 1] = subscriber;
+
+        LOGGER.log(Level.FINE, "{0} inscrito na sala {1}", new Object[]{source, roomId});
+    }
+
+    /**
+     * Remove o inscrito da tabela e da sala.
+     */
+    private void remove(Subscriber subscriber) {
+        subscribers.remove(subscriber.address);
+        Room room = subscriber.room;
+        Subscriber[] current = room.subscribers;
+        Subscriber[] updated = new Subscriber[current.length - 1];
+        int kept = 0;
+        for (Subscriber other : current) {
+            if (other != subscriber && kept < updated.length) {
+                updated[kept++] = other;
+            }
+        }
+        room.subscribers = updated;
+        if (updated.length == 0 && room.frames == 0) {
+            rooms.remove(room.id);
+        }
+    }
+
+    /**
+     * Tira da sala um inscrito que não dá conta do fluxo e o avisa.
+     */
+    private void evict(Subscriber subscriber, long sent, long received, long now) {
+        remove(subscriber);
+        evictedUntil.put(subscriber.address, now + TimeUnit.MILLISECONDS.toNanos(EVICTION_MILLIS));
+        evictions++;
+        LOGGER.log(Level.WARNING, "{0} despejado da sala {1}: recebeu {2} de {3} datagramas",
+                new Object[]{subscriber.address, subscriber.room.id, received, sent});
+
+        controlBuffer.clear();
+        MulticastFrame.writeHeader(controlBuffer, MulticastFrame.TYPE_SUBSCRIBE, MulticastFrame.FLAG_LEAVE,
+                subscriber.room.id, hubId, 0, System.currentTimeMillis());
+        controlBuffer.flip();
+        try {
+            channel.send(controlBuffer, subscriber.address);
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Aviso de despejo não enviado", e);
+        }
+    }
+
+    /**
+     * Remove as inscrições expiradas e os despejos vencidos.
+     */
+    synchronized void expire(long now) {
+        long expiry = TimeUnit.MILLISECONDS.toNanos(EXPIRY_MILLIS);
+        List<Subscriber> expired = new ArrayList<>();
+        for (Subscriber subscriber : subscribers.values()) {
+            if (now - subscriber.lastSeenNanos > expiry) {
+                expired.add(subscriber);
+            }
+        }
+        for (Subscriber subscriber : expired) {
+            remove(subscriber);
+            expirations++;
+        }
+        Iterator<Long> until = evictedUntil.values().iterator();
+        while (until.hasNext()) {
+            if (until.next() - now <= 0) {
+                until.remove();
+            }
+        }
+    }
+
+    /**
+     * Envia as levas montadas durante a leitura do canal.
+     */
+    synchronized void flushPending() {
+        for (int i = 0; i < pending.size(); i++) {
+            flush(pending.get(i));
+        }
+        pending.clear();
+    }
+
+    /**
+     * Envia a leva da sala a todos os inscritos e a esvazia.
+     */
+    private void flush(Room room) {
+        if (room.frames == 0) {
+            return;
+        }
+        ByteBuffer batch = room.batch;
+        batch.flip();
+        if (room.frames == 1) {
+            // Um quadro sozinho sai sem o envelope
+            batch.position(MulticastFrame.HEADER_SIZE + MulticastFrame.RELAY_ENTRY_HEADER_SIZE);
+        }
+        sendToRoom(room, batch);
+        batch.clear();
+        room.frames = 0;
+        if (room.subscribers.length == 0) {
+            rooms.remove(room.id);
+        }
+    }
+
+    /**
+     * Envia o mesmo datagrama a todos os inscritos da sala.
+     */
+    private void sendToRoom(Room room, ByteBuffer datagram) {
+        int position = datagram.position();
+        for (Subscriber subscriber : room.subscribers) {
+            datagram.position(position);
+            try {
+                if (channel.send(datagram, subscriber.address) == 0) {
+                    sendFailures++;
+                } else {
+                    subscriber.sent++;
+                    datagramsSent++;
+                }
+            } catch (IOException e) {
+                sendFailures++;
+                LOGGER.log(Level.FINE, "Erro ao repassar para " + subscriber.address, e);
+            }
+        }
+    }
+
+    /**
+     * Retorna a porta em que o hub recebe.
+     *
+     * @return Porta local
+     */
+    public int getPort() {
+        return channel.socket().getLocalPort();
+    }
+
+    /**
+     * Retorna a quantidade de inscritos, em todas as salas.
+     *
+     * @return Inscritos
+     */
+    public synchronized int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    /**
+     * Retorna a quantidade de quadros recebidos e repassados.
+     *
+     * @return Quadros repassados
+     */
+    public long getFramesRelayed() {
+        return framesRelayed;
+    }
+
+    /**
+     * Retorna a quantidade de datagramas enviados aos inscritos.
+     *
+     * @return Datagramas enviados
+     */
+    public long getDatagramsSent() {
+        return datagramsSent;
+    }
+
+    /**
+     * Retorna os envios que falharam, com o buffer do sistema cheio ou por erro.
+     *
+     * @return Envios perdidos
+     */
+    public long getSendFailures() {
+        return sendFailures;
+    }
+
+    /**
+     * Retorna quantos inscritos foram despejados por não darem conta do fluxo.
+     *
+     * @return Despejos
+     */
+    public long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * Retorna quantas inscrições expiraram sem renovação.
+     *
+     * @return Inscrições expiradas
+     */
+    public long getExpirations() {
+        return expirations;
+    }
+}
@@ -0,0 +1,103 @@
+package local.redes.multicast.bench;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import local.redes.multicast.CoalescingSendQueue;
+import local.redes.multicast.MulticastManager;
+
+/**
+ * Compara o envio direto, um datagrama por mensagem, com a fila de envio
+ * assíncrona do {@link MulticastManager}, que agrupa as mensagens pequenas
+ * em datagramas do tamanho do MTU.
+ *
+ * Um publicador envia mensagens de chat curtas o mais rápido possível para um
+ * receptor no mesmo processo. Para cada modo são medidos o tempo gasto pela
+ * thread que publica, os datagramas enviados e a vazão de entrega.
+ *
+ * @author Igor Rozalem
+ */
+public class BatchingBenchmark {
+
+    private static final long IDLE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(2);
+    private static final int RECEIVE_BUFFER_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * Executa uma rodada e imprime uma linha de resultado.
+     *
+     * @param lingerMicros Janela da fila, ou -1 para envio direto
+     */
+    private static void run(InetAddress group, int port, int messages, long lingerMicros)
+            throws IOException, InterruptedException {
+        MulticastManager receiver = new MulticastManager(group, port, "bench-rx");
+        receiver.setReceiveBufferSize(RECEIVE_BUFFER_SIZE);
+        LongAdder delivered = new LongAdder();
+        receiver.setMessageListener((message, sender) -> {
+            if (sender != null) {
+                delivered.increment();
+            }
+        });
+        receiver.startReceiving();
+
+        MulticastManager sender = new MulticastManager(group, port, "bench-tx");
+        if (lingerMicros >= 0) {
+            sender.enableSendQueue(lingerMicros, messages);
+        }
+        sender.startReceiving();
+        Thread.sleep(300);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < messages; i++) {
+            sender.sendMessage("cotação " + i + " 12.34");
+        }
+        long publishNanos = System.nanoTime() - start;
+
+        long lastCount = -1;
+        long lastProgress = System.nanoTime();
+        while (delivered.sum() < messages && System.nanoTime() - lastProgress < IDLE_TIMEOUT_NANOS) {
+            long count = delivered.sum();
+            if (count != lastCount) {
+                lastCount = count;
+                lastProgress = System.nanoTime();
+            }
+            Thread.sleep(5);
+        }
+        long end = delivered.sum() >= messages ? System.nanoTime() : lastProgress;
+
+        CoalescingSendQueue queue = sender.getSendQueue();
+        long frames = queue != null ? queue.getFramesSent() : messages;
+        double seconds = (end - start) / 1e9;
+        System.out.printf("%-14s %12.1f %12.2f %10d %10.1f %10.2f %12.0f%n",
+                lingerMicros >= 0 ? "fila " + lingerMicros + "us" : "direto",
+                publishNanos / 1e6, publishNanos / 1e3 / messages, frames,
+                (double) messages / frames, 100.0 * delivered.sum() / messages,
+                delivered.sum() / seconds);
+
+        sender.stop();
+        receiver.stop();
+    }
+
+    /**
+     * Método principal para executar o benchmark.
+     *
+     * @param args grupo, porta e mensagens por rodada, todos opcionais
+     */
+    public static void main(String[] args) throws Exception {
+        InetAddress group = InetAddress.getByName(args.length > 0 ? args[0] : "239.255.42.43");
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 50700;
+        int messages = args.length > 2 ? Integer.parseInt(args[2]) : 100000;
+
+        System.out.printf("Grupo %s:%d, %d mensagens de chat curtas por rodada%n",
+                group.getHostAddress(), port, messages);
+        System.out.printf("%-14s %12s %12s %10s %10s %10s %12s%n",
+                "modo", "publicar(ms)", "us/msg", "datagramas", "msg/dgram", "entrega%", "msg/s");
+
+        run(group, port, messages, -1);
+        long[] lingers = {1000, 2000, 5000};
+        for (int i = 0; i < lingers.length; i++) {
+            run(group, port + 1 + i, messages, lingers[i]);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package local.redes.multicast.bench;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Random;
+
+import local.redes.multicast.log.ChatLog;
+
+/**
+ * Mede o histórico persistente das salas: gravação de milhões de mensagens,
+ * tempo para reabrir e exibir as últimas, e latência das buscas.
+ *
+ * @author Igor Rozalem
+ */
+public class ChatLogBenchmark {
+
+    private static final String[] USERS = {"ana", "bruno", "carla", "davi", "eva", "fabio", "gabi", "hugo"};
+
+    /**
+     * Método principal para executar a medição.
+     *
+     * @param args quantidade de mensagens e diretório, opcionais
+     */
+    public static void main(String[] args) throws IOException {
+        int messages = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+        Path dir = args.length > 1 ? Paths.get(args[1]) : Files.createTempDirectory("chat-log-bench");
+
+        System.out.println("Diretório: " + dir);
+
+        Random random = new Random(7);
+        long start = System.nanoTime();
+        try (ChatLog log = ChatLog.open(dir)) {
+            for (int i = 0; i < messages; i++) {
+                String user = USERS[i % USERS.length];
+                log.append(System.currentTimeMillis(), user, user + " diz: assunto" + random.nextInt(100000)
+                        + " projeto" + random.nextInt(500) + " status " + (i % 3 == 0 ? "ok" : "pendente"));
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            System.out.printf("Gravação: %d mensagens em %.2f s (%.0f msg/s), %d termos%n",
+                    messages, seconds, messages / seconds, log.getTermCount());
+        }
+
+        start = System.nanoTime();
+        try (ChatLog log = ChatLog.open(dir)) {
+            int shown = log.tail(1000).size();
+            System.out.printf("Reabrir e ler as últimas %d: %.2f ms%n", shown, (System.nanoTime() - start) / 1e6);
+
+            measure(log, "termo raro", i -> "assunto" + (i % 100000));
+            measure(log, "remetente + termo", i -> "@" + USERS[i % USERS.length] + " projeto" + (i % 500));
+            measure(log, "dois termos comuns", i -> "pendente @" + USERS[i % USERS.length]);
+        }
+    }
+
+    private interface QueryFactory {
+        String query(int i);
+    }
+
+    /**
+     * Executa buscas de um tipo e imprime a latência.
+     */
+    private static void measure(ChatLog log, String name, QueryFactory queries) throws IOException {
+        final int runs = 5000;
+        for (int i = 0; i < runs; i++) {
+            log.search(queries.query(i), 20);
+        }
+        long[] samples = new long[runs];
+        for (int i = 0; i < runs; i++) {
+            long start = System.nanoTime();
+            log.search(queries.query(i + 1), 20);
+            samples[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(samples);
+        System.out.printf("Busca (%s): p50 %.1f µs, p99 %.1f µs%n", name,
+                samples[runs / 2] / 1e3, samples[runs * 99 / 100] / 1e3);
+    }
+}
@@ -0,0 +1,174 @@
+package local.redes.multicast.bench;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.zip.DataFormatException;
+
+import local.redes.Pessoa;
+import local.redes.ProtocoloBinario;
+import local.redes.multicast.PayloadCompressor;
+
+/**
+ * Mede o custo de CPU e os bytes economizados pelo {@link PayloadCompressor}.
+ *
+ * Para cada tipo de carga (mensagens curtas e longas de chat, no formato do
+ * corpo do quadro, e lotes de pessoas serializados) a mesma amostra é
+ * comprimida com e sem o dicionário pré-definido, sem rede. As cargas que
+ * não compensam vão como estão e entram no total enviado pelo tamanho
+ * original, como no {@code MulticastManager}. O CPU é o da thread que
+ * comprime e descomprime, dividido pelas cargas.
+ *
+ * @author Igor Rozalem
+ */
+public class CompressionBenchmark {
+
+    private static final int SAMPLES = 2000;
+    private static final int BATCH_SIZE = 20;
+
+    private static final String[] WORDS = {
+        "oi", "pessoal", "bom", "dia", "alguém", "sabe", "se", "o", "servidor", "está", "fora", "do", "ar",
+        "não", "consegui", "enviar", "a", "mensagem", "vou", "verificar", "e", "te", "aviso", "daqui", "pouco",
+        "obrigado", "reunião", "às", "horas", "amanhã", "tudo", "bem", "com", "você", "arquivo", "recebido",
+        "acho", "que", "rede", "lenta", "hoje", "mais", "tarde", "valeu", "combinado", "para", "uma", "rota"
+    };
+    private static final String[] NAMES = {
+        "Maria", "José", "Ana", "João", "Francisca", "Antônio", "Luiza", "Carlos", "Paula", "Pedro"
+    };
+    private static final String[] SURNAMES = {
+        "Silva", "Santos", "Oliveira", "Souza", "Rodrigues", "Ferreira", "Alves", "Pereira", "Lima", "Gomes"
+    };
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    /**
+     * Monta o corpo de um quadro de chat: tamanho do nome, nome e texto.
+     */
+    private static byte[] chatBody(Random random, int minWords, int maxWords) {
+        StringBuilder text = new StringBuilder();
+        int words = minWords + random.nextInt(maxWords - minWords + 1);
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                text.append(' ');
+            }
+            text.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        byte[] name = NAMES[random.nextInt(NAMES.length)].toLowerCase().getBytes(StandardCharsets.UTF_8);
+        byte[] bytes = text.toString().getBytes(StandardCharsets.UTF_8);
+        byte[] body = new byte[1 + name.length + bytes.length];
+        body[0] = (byte) name.length;
+        System.arraycopy(name, 0, body, 1, name.length);
+        System.arraycopy(bytes, 0, body, 1 + name.length, bytes.length);
+        return body;
+    }
+
+    /**
+     * Serializa um lote de pessoas como o cliente faria.
+     */
+    private static byte[] personBatch(Random random) throws IOException {
+        Pessoa[] batch = new Pessoa[BATCH_SIZE];
+        for (int i = 0; i < batch.length; i++) {
+            batch[i] = new Pessoa(NAMES[random.nextInt(NAMES.length)] + " "
+                    + SURNAMES[random.nextInt(SURNAMES.length)], 18 + random.nextInt(60));
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream output = new ObjectOutputStream(bytes)) {
+            output.writeObject(batch);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Comprime e descomprime a amostra e imprime uma linha da tabela, ou
+     * nada se {@code label} for null (aquecimento).
+     */
+    private static void run(String label, byte[][] payloads, PayloadCompressor compressor, String dictionary)
+            throws DataFormatException {
+        byte[][] compressed = new byte[payloads.length][];
+        int[] lengths = new int[payloads.length];
+        long original = 0;
+        long sent = 0;
+        int compressedCount = 0;
+
+        long start = THREADS.getCurrentThreadCpuTime();
+        for (int i = 0; i < payloads.length; i++) {
+            compressed[i] = new byte[payloads[i].length];
+            lengths[i] = compressor.compress(payloads[i], 0, payloads[i].length, compressed[i], 0);
+        }
+        long compressNanos = THREADS.getCurrentThreadCpuTime() - start;
+
+        byte[] output = new byte[PayloadCompressor.MAX_SIZE];
+        start = THREADS.getCurrentThreadCpuTime();
+        for (int i = 0; i < payloads.length; i++) {
+            if (lengths[i] >= 0) {
+                compressor.decompress(compressed[i], 0, lengths[i], output, 0);
+            }
+        }
+        long decompressNanos = THREADS.getCurrentThreadCpuTime() - start;
+
+        if (label == null) {
+            return;
+        }
+        for (int i = 0; i < payloads.length; i++) {
+            original += payloads[i].length;
+            if (lengths[i] >= 0) {
+                sent += lengths[i];
+                compressedCount++;
+            } else {
+                sent += payloads[i].length;
+            }
+        }
+        System.out.printf("%-12s %-10s %10.1f %10.1f %10.1f%% %12.1f%% %13.2f %15.2f%n",
+                label, dictionary, (double) original / payloads.length, (double) sent / payloads.length,
+                100.0 * (original - sent) / original, 100.0 * compressedCount / payloads.length,
+                compressNanos / 1e3 / payloads.length, decompressNanos / 1e3 / payloads.length);
+    }
+
+    /**
+     * Método principal para executar o benchmark.
+     *
+     * @param args quantidade de cargas de cada tipo (opcional, padrão 2000)
+     */
+    public static void main(String[] args) throws Exception {
+        int samples = args.length > 0 ? Integer.parseInt(args[0]) : SAMPLES;
+        Random random = new Random(42);
+        byte[][] shortChat = new byte[samples][];
+        byte[][] longChat = new byte[samples][];
+        byte[][] batches = new byte[samples][];
+        for (int i = 0; i < samples; i++) {
+            shortChat[i] = chatBody(random, 4, 16);
+            longChat[i] = chatBody(random, 30, 80);
+            batches[i] = personBatch(random);
+        }
+
+        PayloadCompressor plain = new PayloadCompressor(null, PayloadCompressor.DEFAULT_MIN_SIZE);
+        Object[][] cases = {
+            {"chat curto", shortChat, PayloadCompressor.CHAT},
+            {"chat longo", longChat, PayloadCompressor.CHAT},
+            {"lote " + BATCH_SIZE, batches, ProtocoloBinario.COMPRESSOR}
+        };
+
+        // Aquecer o JIT e os compressores da thread antes de medir
+        System.err.println("Aquecendo...");
+        for (int i = 0; i < 3; i++) {
+            for (Object[] c : cases) {
+                run(null, (byte[][]) c[1], plain, null);
+                run(null, (byte[][]) c[1], (PayloadCompressor) c[2], null);
+            }
+        }
+
+        System.out.println("Compressão de " + samples + " cargas por tipo, mínimo de "
+                + PayloadCompressor.DEFAULT_MIN_SIZE + " bytes");
+        System.out.printf("%-12s %-10s %10s %10s %11s %13s %13s %15s%n", "carga", "dicionário",
+                "bytes/msg", "enviados", "economia", "comprimidas", "comprime us", "descomprime us");
+        for (Object[] c : cases) {
+            byte[][] payloads = (byte[][]) c[1];
+            run((String) c[0], payloads, plain, "nenhum");
+            run((String) c[0], payloads, (PayloadCompressor) c[2], "padrão");
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package local.redes.multicast.bench;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.Stream;
+
+import local.redes.multicast.bulk.BulkReceiver;
+import local.redes.multicast.bulk.BulkSender;
+import local.redes.multicast.bulk.ReedSolomon;
+
+/**
+ * Mede o custo e a capacidade de recuperação da transferência em massa com FEC.
+ *
+ * A primeira tabela mostra a vazão de codificação e de decodificação do
+ * Reed-Solomon para alguns pares (k, m). A segunda passa um conteúdo pelo
+ * {@link BulkSender} e pelo {@link BulkReceiver} com perda aleatória simulada
+ * entre os dois, sem rede, e mostra quantos blocos foram reconstruídos.
+ *
+ * @author Igor Rozalem
+ */
+public class FecBenchmark {
+
+    private static final int SYMBOL_SIZE = 1024;
+    private static final int[][] CODES = {{16, 1}, {16, 2}, {16, 4}, {32, 8}};
+    private static final double[] LOSS_RATES = {0.01, 0.02, 0.05, 0.10, 0.20};
+
+    /**
+     * Mede a vazão do codec para um par (k, m).
+     */
+    private static void codecThroughput(int k, int m, int megabytes) {
+        ReedSolomon codec = new ReedSolomon(k, m);
+        Random random = new Random(42);
+        byte[][] shards = new byte[k + m][SYMBOL_SIZE];
+        for (int i = 0; i < k; i++) {
+            random.nextBytes(shards[i]);
+        }
+        long blocks = (long) megabytes * 1024 * 1024 / ((long) k * SYMBOL_SIZE);
+
+        long start = System.nanoTime();
+        for (long b = 0; b < blocks; b++) {
+            codec.encode(shards, SYMBOL_SIZE);
+        }
+        double encodeSeconds = (System.nanoTime() - start) / 1e9;
+
+        // Pior caso: perder m símbolos de dados por bloco
+        boolean[] present = new boolean[k + m];
+        byte[][] copy = new byte[k + m][];
+        start = System.nanoTime();
+        for (long b = 0; b < blocks; b++) {
+            Arrays.fill(present, true);
+            System.arraycopy(shards, 0, copy, 0, k + m);
+            for (int i = 0; i < m; i++) {
+                present[i] = false;
+                copy[i] = null;
+            }
+            codec.decode(copy, present, SYMBOL_SIZE);
+        }
+        double decodeSeconds = (System.nanoTime() - start) / 1e9;
+
+        double dataMegabytes = blocks * k * SYMBOL_SIZE / 1e6;
+        System.out.printf("%4d %4d %10.0f%% %14.1f %14.1f%n", k, m, 100.0 * m / k,
+                dataMegabytes / encodeSeconds, dataMegabytes / decodeSeconds);
+    }
+
+    /**
+     * Transfere o conteúdo com perda simulada e imprime o resultado.
+     */
+    private static void recovery(byte[] content, int k, int m, double loss, Path directory) throws IOException {
+        BulkReceiver receiver = new BulkReceiver(directory, null);
+        Random random = new Random(7);
+        long[] dropped = new long[1];
+        BulkSender sender = new BulkSender(packet -> {
+            if (random.nextDouble() < loss) {
+                dropped[0]++;
+                packet.position(packet.limit());
+                return;
+            }
+            receiver.onPacket(packet);
+            packet.position(packet.limit());
+        }, SYMBOL_SIZE, k, m, 0);
+
+        long start = System.nanoTime();
+        sender.send(new ByteArrayInputStream(content), content.length);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        long blocks = receiver.getCompletedBlocks() + receiver.getPendingBlocks();
+        System.out.printf("%4d %4d %7.0f%% %9.1f%% %10d %12.2f%% %10d %12.1f%n",
+                k, m, loss * 100, 100.0 * dropped[0] / sender.getPacketsSent(),
+                receiver.getRecoveredShards(), 100.0 * receiver.getCompletedBlocks() / blocks,
+                receiver.getPendingBlocks(), content.length / seconds / 1e6);
+        receiver.close();
+    }
+
+    /**
+     * Método principal para executar o benchmark.
+     *
+     * @param args tamanho do conteúdo em MB (opcional, padrão 16)
+     */
+    public static void main(String[] args) throws Exception {
+        int megabytes = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+
+        System.out.println("Vazão do codec Reed-Solomon, símbolos de " + SYMBOL_SIZE + " bytes, " + megabytes + " MB");
+        System.out.printf("%4s %4s %11s %14s %14s%n", "k", "m", "redundância", "codifica MB/s", "decodifica MB/s");
+        for (int[] code : CODES) {
+            codecThroughput(code[0], code[1], megabytes);
+        }
+
+        byte[] content = new byte[megabytes * 1024 * 1024];
+        new Random(1).nextBytes(content);
+        Path directory = Files.createTempDirectory("fec-bench");
+        try {
+            System.out.println();
+            System.out.println("Recuperação com perda aleatória simulada, " + megabytes + " MB");
+            System.out.printf("%4s %4s %8s %10s %10s %13s %10s %12s%n",
+                    "k", "m", "perda", "perdidos", "recuperad.", "blocos ok", "pendentes", "MB/s");
+            for (int[] code : CODES) {
+                for (double loss : LOSS_RATES) {
+                    recovery(content, code[0], code[1], loss, directory);
+                }
+            }
+        } finally {
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(directory);
+        }
+    }
+}
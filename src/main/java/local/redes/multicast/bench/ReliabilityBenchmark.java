@@ -0,0 +1,180 @@
+package local.redes.multicast.bench;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import local.redes.multicast.MulticastManager;
+import local.redes.multicast.ReliableMulticast;
+
+/**
+ * Compara o modo não confiável e o modo confiável (NACK) do
+ * {@link MulticastManager} sob perda simulada nos receptores.
+ *
+ * Um remetente e N receptores rodam no mesmo processo. Para cada modo são
+ * medidos a taxa de entrega, o tempo até a entrega completa, a vazão
+ * efetiva e o custo em NACKs e retransmissões.
+ *
+ * @author Igor Rozalem
+ */
+public class ReliabilityBenchmark {
+
+    private static final int PAYLOAD_SIZE = 200;
+    private static final long IDLE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(3);
+
+    private final InetAddress group;
+    private final int port;
+    private final int receivers;
+    private final int messages;
+    private final double lossRate;
+    private final int rate;
+
+    /**
+     * Cria o benchmark.
+     *
+     * @param group Grupo multicast
+     * @param port Porta base (o modo confiável usa a seguinte)
+     * @param receivers Quantidade de receptores
+     * @param messages Mensagens enviadas por rodada
+     * @param lossRate Perda simulada em cada receptor (0 a 1)
+     * @param rate Mensagens por segundo enviadas
+     */
+    public ReliabilityBenchmark(InetAddress group, int port, int receivers, int messages,
+            double lossRate, int rate) {
+        this.group = group;
+        this.port = port;
+        this.receivers = receivers;
+        this.messages = messages;
+        this.lossRate = lossRate;
+        this.rate = rate;
+    }
+
+    /**
+     * Executa uma rodada e imprime uma linha de resultado.
+     *
+     * @param reliable true para o modo confiável
+     * @throws IOException Se ocorrer erro de rede
+     * @throws InterruptedException Se a espera for interrompida
+     */
+    private void run(boolean reliable) throws IOException, InterruptedException {
+        int roundPort = reliable ? port + 1 : port;
+        List<MulticastManager> rx = new ArrayList<>();
+        List<LongAdder> delivered = new ArrayList<>();
+
+        for (int i = 0; i < receivers; i++) {
+            MulticastManager receiver = new MulticastManager(group, roundPort, "bench-rx-" + i);
+            if (reliable) {
+                receiver.enableReliableMode();
+            }
+            receiver.setSimulatedLossRate(lossRate);
+            LongAdder counter = new LongAdder();
+            receiver.setRawMessageListener((data, source) -> counter.increment());
+            receiver.startReceiving();
+            rx.add(receiver);
+            delivered.add(counter);
+        }
+
+        MulticastManager sender = new MulticastManager(group, roundPort, "bench-tx");
+        if (reliable) {
+            sender.enableReliableMode(Math.max(ReliableMulticast.DEFAULT_HISTORY_SIZE, rate));
+        }
+        sender.startReceiving();
+        Thread.sleep(300);
+
+        byte[] payload = new byte[PAYLOAD_SIZE];
+        ByteBuffer view = ByteBuffer.wrap(payload);
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+        long start = System.nanoTime();
+        for (int i = 0; i < messages; i++) {
+            long due = start + i * intervalNanos;
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            view.putLong(0, i);
+            sender.sendBytes(payload);
+        }
+        long sendEnd = System.nanoTime();
+
+        // Espera até todos receberem tudo ou o progresso parar
+        long expected = (long) messages * receivers;
+        long lastTotal = -1;
+        long lastProgress = System.nanoTime();
+        long total = 0;
+        while (true) {
+            total = 0;
+            for (LongAdder counter : delivered) {
+                total += counter.sum();
+            }
+            long now = System.nanoTime();
+            if (total >= expected || now - lastProgress > IDLE_TIMEOUT_NANOS) {
+                break;
+            }
+            if (total != lastTotal) {
+                lastTotal = total;
+                lastProgress = now;
+            }
+            Thread.sleep(5);
+        }
+        long end = total >= expected ? System.nanoTime() : lastProgress;
+
+        long minimum = Long.MAX_VALUE;
+        long nacks = 0;
+        long suppressed = 0;
+        long lost = 0;
+        for (int i = 0; i < receivers; i++) {
+            minimum = Math.min(minimum, delivered.get(i).sum());
+            ReliableMulticast state = rx.get(i).getReliability();
+            if (state != null) {
+                nacks += state.getNacksSent();
+                suppressed += state.getNacksSuppressed();
+                lost += state.getLostFrames();
+            }
+        }
+        long retransmissions = reliable ? sender.getReliability().getRetransmissions() : 0;
+
+        double completionMillis = (end - start) / 1e6;
+        System.out.printf("%-12s %10.1f %10.2f %10.2f %12.1f %12.0f %8d %10d %10d %9d%n",
+                reliable ? "confiavel" : "nao-conf.",
+                (sendEnd - start) / 1e6,
+                100.0 * total / expected,
+                100.0 * minimum / messages,
+                completionMillis,
+                total / receivers / (completionMillis / 1000.0),
+                nacks, suppressed, retransmissions, lost);
+
+        sender.stop();
+        for (MulticastManager receiver : rx) {
+            receiver.stop();
+        }
+    }
+
+    /**
+     * Método principal para executar o benchmark.
+     *
+     * @param args grupo, porta, receptores, mensagens, perda (0 a 1) e taxa (msg/s), todos opcionais
+     */
+    public static void main(String[] args) throws Exception {
+        InetAddress group = InetAddress.getByName(args.length > 0 ? args[0] : "239.255.42.42");
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 50600;
+        int receivers = args.length > 2 ? Integer.parseInt(args[2]) : 4;
+        int messages = args.length > 3 ? Integer.parseInt(args[3]) : 5000;
+        double loss = args.length > 4 ? Double.parseDouble(args[4]) : 0.05;
+        int rate = args.length > 5 ? Integer.parseInt(args[5]) : 10000;
+
+        System.out.printf("Grupo %s:%d, %d receptores, %d mensagens de %d bytes a %d msg/s, perda simulada %.1f%%%n",
+                group.getHostAddress(), port, receivers, messages, PAYLOAD_SIZE, rate, loss * 100);
+        System.out.printf("%-12s %10s %10s %10s %12s %12s %8s %10s %10s %9s%n",
+                "modo", "envio(ms)", "entrega%", "pior%", "completo(ms)", "msg/s/rx",
+                "nacks", "suprimidos", "retransm.", "perdidos");
+
+        ReliabilityBenchmark benchmark = new ReliabilityBenchmark(group, port, receivers, messages, loss, rate);
+        benchmark.run(false);
+        benchmark.run(true);
+    }
+}
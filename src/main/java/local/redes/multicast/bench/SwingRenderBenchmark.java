@@ -0,0 +1,142 @@
+package local.redes.multicast.bench;
+
+import java.awt.GraphicsEnvironment;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.IntSupplier;
+import javax.swing.JComponent;
+import javax.swing.JFrame;
+import javax.swing.JScrollPane;
+import javax.swing.JTextArea;
+import javax.swing.SwingUtilities;
+
+import local.redes.multicast.ChatAreaAppender;
+import local.redes.multicast.ChatHistory;
+import local.redes.multicast.ChatHistoryView;
+import local.redes.multicast.MulticastManager;
+
+/**
+ * Teste de carga da área de chat: compara a escrita de uma mensagem por
+ * {@code invokeLater} em um {@link JTextArea}, como os clientes faziam, com
+ * o {@link ChatAreaAppender} sobre a {@link ChatHistoryView}.
+ *
+ * Uma thread produz mensagens na taxa pedida enquanto outra mede quanto uma
+ * tarefa simples espera pela thread de eventos, que é o que o usuário sente
+ * como travamento. Com tela disponível a área é exibida em uma janela, para
+ * incluir o custo de layout e pintura.
+ *
+ * @author Igor Rozalem
+ */
+public class SwingRenderBenchmark {
+
+    private static final long PROBE_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+    /**
+     * Executa uma rodada e imprime uma linha de resultado.
+     *
+     * @param name Nome do modo
+     * @param rate Mensagens por segundo
+     * @param seconds Duração da carga
+     * @param sink Como cada mensagem chega à área, a partir da thread produtora
+     * @param component Componente exibido
+     * @param written Linhas já escritas, lido na thread de eventos
+     */
+    private static void run(String name, int rate, int seconds, Consumer<String> sink, JComponent component,
+            IntSupplier written) throws Exception {
+        JFrame frame = null;
+        if (!GraphicsEnvironment.isHeadless()) {
+            JFrame window = new JFrame(name);
+            SwingUtilities.invokeAndWait(() -> {
+                window.add(new JScrollPane(component));
+                window.setSize(600, 500);
+                window.setVisible(true);
+            });
+            frame = window;
+        }
+
+        final int total = rate * seconds;
+        final long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+        Thread producer = new Thread(() -> {
+            long start = System.nanoTime();
+            for (int i = 0; i < total; i++) {
+                long wait = start + i * interval - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                sink.accept("usuario-" + (i % 50) + " diz: mensagem de carga número " + i);
+            }
+        }, "produtor");
+
+        long[] samples = new long[(int) (TimeUnit.SECONDS.toNanos(seconds) / PROBE_INTERVAL_NANOS) * 4 + 16];
+        int count = 0;
+        long start = System.nanoTime();
+        producer.start();
+        while (producer.isAlive() && count < samples.length) {
+            long sent = System.nanoTime();
+            SwingUtilities.invokeAndWait(() -> { });
+            samples[count++] = System.nanoTime() - sent;
+            LockSupport.parkNanos(PROBE_INTERVAL_NANOS);
+        }
+        producer.join();
+
+        // Tempo até a última mensagem ser escrita
+        while (true) {
+            final int[] lines = new int[1];
+            SwingUtilities.invokeAndWait(() -> lines[0] = written.getAsInt());
+            if (lines[0] >= total) {
+                break;
+            }
+            Thread.sleep(5);
+        }
+        double drainSeconds = (System.nanoTime() - start) / 1e9;
+
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long heapMb = (runtime.totalMemory() - runtime.freeMemory()) >> 20;
+        System.out.printf("%-12s %10d %12.2f %12.2f %12.2f %12.2f %10d%n", name, total,
+                percentile(sorted, 0.50), percentile(sorted, 0.99), sorted[sorted.length - 1] / 1e6,
+                drainSeconds, heapMb);
+
+        if (frame != null) {
+            JFrame window = frame;
+            SwingUtilities.invokeAndWait(window::dispose);
+        }
+    }
+
+    private static double percentile(long[] sorted, double fraction) {
+        int index = (int) Math.min(sorted.length - 1, Math.round(fraction * (sorted.length - 1)));
+        return sorted[index] / 1e6;
+    }
+
+    /**
+     * Método principal para executar o teste de carga.
+     *
+     * @param args mensagens por segundo e duração em segundos, opcionais
+     */
+    public static void main(String[] args) throws Exception {
+        int rate = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        System.out.printf("%d mensagens/s por %d s, %s%n", rate, seconds,
+                GraphicsEnvironment.isHeadless() ? "sem tela" : "com janela visível");
+        System.out.printf("%-12s %10s %12s %12s %12s %12s %10s%n",
+                "modo", "mensagens", "EDT p50(ms)", "EDT p99(ms)", "EDT max(ms)", "completo(s)", "heap(MB)");
+
+        JTextArea direct = new JTextArea();
+        run("invokeLater", rate, seconds, message -> SwingUtilities.invokeLater(() -> {
+            direct.append("[" + MulticastManager.getCurrentTimestamp() + "] " + message + "\n");
+            direct.setCaretPosition(direct.getDocument().getLength());
+        }), direct, () -> direct.getLineCount() - 1);
+        SwingUtilities.invokeAndWait(() -> direct.setText(""));
+
+        ChatHistoryView view = new ChatHistoryView(new ChatHistory());
+        ChatAreaAppender appender = new ChatAreaAppender(view);
+        run("lotes", rate, seconds, appender::append, view,
+                () -> (int) (view.getHistory().getSize() + view.getHistory().getSpilled()));
+        System.exit(0);
+    }
+}
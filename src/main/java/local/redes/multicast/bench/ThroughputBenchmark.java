@@ -0,0 +1,331 @@
+package local.redes.multicast.bench;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.lang.management.ThreadMXBean;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import local.redes.estatisticas.HistogramaLatencia;
+import local.redes.multicast.LatencyTracer;
+import local.redes.multicast.MulticastManager;
+
+/**
+ * Mede a vazão e a perda do {@link MulticastManager} em loopback, varrendo
+ * tamanho da mensagem, taxa de envio e quantidade de receptores.
+ *
+ * Em cada rodada um remetente envia pacotes binários durante um tempo fixo
+ * para N receptores no mesmo processo, que dividem o canal do
+ * {@code MulticastEngine} como dividiriam em produção. O remetente usa o
+ * rastreamento, então o atraso dos receptores vem direto dos histogramas do
+ * {@link LatencyTracer}. O CPU é o do processo inteiro (remetente, reator e
+ * receptores) dividido pelas mensagens entregues.
+ *
+ * Os resultados saem em CSV ou JSON, uma linha ou objeto por rodada, para
+ * serem guardados e comparados entre versões; o progresso vai para a saída
+ * de erro.
+ *
+ * @author Igor Rozalem
+ */
+public class ThroughputBenchmark {
+
+    private static final long IDLE_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+    private static final int RECEIVE_BUFFER_SIZE = 8 * 1024 * 1024;
+
+    private static final String[] COLUMNS = {
+        "tamanho", "taxa", "receptores", "segundos", "enviadas", "falhas_envio", "entregues",
+        "entregues_por_s", "perda_pct", "atraso_p50_us", "atraso_p99_us", "atraso_max_us", "cpu_us_por_msg"
+    };
+
+    private final InetAddress group;
+    private final int basePort;
+    private final double seconds;
+    private int runs;
+
+    /**
+     * Cria o benchmark.
+     *
+     * @param group Grupo multicast
+     * @param basePort Porta da primeira rodada; cada rodada usa a seguinte
+     * @param seconds Duração do envio em cada rodada
+     */
+    public ThroughputBenchmark(InetAddress group, int basePort, double seconds) {
+        this.group = group;
+        this.basePort = basePort;
+        this.seconds = seconds;
+    }
+
+    /**
+     * Resultado de uma rodada, na ordem de {@link #COLUMNS}.
+     */
+    static final class Result {
+        final Object[] values;
+
+        Result(Object... values) {
+            this.values = values;
+        }
+    }
+
+    /**
+     * Executa uma rodada.
+     *
+     * @param size Tamanho do pacote em bytes
+     * @param rate Pacotes por segundo, ou 0 para enviar o mais rápido possível
+     * @param receiverCount Quantidade de receptores
+     * @return Resultado da rodada
+     */
+    Result run(int size, int rate, int receiverCount) throws IOException, InterruptedException {
+        if (size < 8 || receiverCount <= 0) {
+            throw new IllegalArgumentException("Tamanho mínimo de 8 bytes e ao menos um receptor");
+        }
+        int port = basePort + runs++;
+        List<MulticastManager> receivers = new ArrayList<>();
+        LongAdder delivered = new LongAdder();
+        MulticastManager sender = null;
+        try {
+            for (int i = 0; i < receiverCount; i++) {
+                MulticastManager receiver = new MulticastManager(group, port, "bench-rx-" + i);
+                receiver.setRawMessageListener((data, address) -> delivered.increment());
+                receiver.startReceiving();
+                receivers.add(receiver);
+            }
+            receivers.get(0).setReceiveBufferSize(RECEIVE_BUFFER_SIZE);
+            sender = new MulticastManager(group, port, "bench-tx");
+            sender.enableTracing();
+            Thread.sleep(300);
+
+            ByteBuffer payload = ByteBuffer.allocate(size);
+            long durationNanos = (long) (seconds * 1e9);
+            long interval = rate > 0 ? TimeUnit.SECONDS.toNanos(1) / rate : 0;
+            long sent = 0;
+            long failures = 0;
+
+            long cpuStart = processCpuNanos();
+            long start = System.nanoTime();
+            long next = start;
+            while (System.nanoTime() - start < durationNanos) {
+                if (interval > 0) {
+                    long wait = next - System.nanoTime();
+                    if (wait > 0) {
+                        LockSupport.parkNanos(wait);
+                    }
+                    next += interval;
+                }
+                payload.clear();
+                payload.putLong(0, sent);
+                if (send(sender, payload)) {
+                    sent++;
+                } else {
+                    failures++;
+                }
+            }
+            long sendEnd = System.nanoTime();
+
+            // Esperar os receptores esvaziarem as filas
+            long expected = sent * receiverCount;
+            long lastCount = -1;
+            long lastProgress = System.nanoTime();
+            while (delivered.sum() < expected && System.nanoTime() - lastProgress < IDLE_TIMEOUT_NANOS) {
+                long count = delivered.sum();
+                if (count != lastCount) {
+                    lastCount = count;
+                    lastProgress = System.nanoTime();
+                }
+                Thread.sleep(5);
+            }
+            long end = Math.max(sendEnd, delivered.sum() >= expected ? System.nanoTime() : lastProgress);
+            long cpu = processCpuNanos() - cpuStart;
+
+            long worstP99 = 0;
+            long worstMax = 0;
+            long p50Sum = 0;
+            for (MulticastManager receiver : receivers) {
+                LatencyTracer.SenderLatency latency = receiver.getLatencyTracer().getSender(sender.getSenderId());
+                if (latency == null) {
+                    continue;
+                }
+                HistogramaLatencia.Retrato snapshot = latency.getHistogram().retrato();
+                p50Sum += snapshot.percentil(50);
+                worstP99 = Math.max(worstP99, snapshot.percentil(99));
+                worstMax = Math.max(worstMax, snapshot.getMaximo());
+            }
+            long count = delivered.sum();
+            double elapsed = (end - start) / 1e9;
+            return new Result(size, rate, receiverCount, round(elapsed, 3), sent, failures, count,
+                    round(count / elapsed, 0),
+                    round(expected == 0 ? 0 : 100.0 * (expected - Math.min(count, expected)) / expected, 3),
+                    round(p50Sum / 1e3 / receiverCount, 1), round(worstP99 / 1e3, 1), round(worstMax / 1e3, 1),
+                    cpu < 0 || count == 0 ? -1 : round(cpu / 1e3 / count, 3));
+        } finally {
+            if (sender != null) {
+                sender.stop();
+            }
+            for (MulticastManager receiver : receivers) {
+                receiver.stop();
+            }
+        }
+    }
+
+    /**
+     * Envia um pacote; o gerenciador já espera por espaço no buffer do sistema.
+     *
+     * @return false se o pacote não pôde ser enviado
+     */
+    private static boolean send(MulticastManager sender, ByteBuffer payload) {
+        try {
+            sender.sendBytes(payload);
+            return true;
+        } catch (IOException e) {
+            payload.rewind();
+            return false;
+        }
+    }
+
+    /**
+     * Retorna o tempo de CPU do processo, ou a soma das threads vivas se a
+     * JVM não expuser o do processo.
+     *
+     * @return Nanossegundos de CPU, ou -1 se não houver como medir
+     */
+    private static long processCpuNanos() {
+        OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+        if (os instanceof com.sun.management.OperatingSystemMXBean) {
+            long cpu = ((com.sun.management.OperatingSystemMXBean) os).getProcessCpuTime();
+            if (cpu >= 0) {
+                return cpu;
+            }
+        }
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (!threads.isThreadCpuTimeSupported()) {
+            return -1;
+        }
+        long total = 0;
+        for (long id : threads.getAllThreadIds()) {
+            long cpu = threads.getThreadCpuTime(id);
+            if (cpu > 0) {
+                total += cpu;
+            }
+        }
+        return total;
+    }
+
+    private static double round(double value, int decimals) {
+        double scale = Math.pow(10, decimals);
+        return Math.round(value * scale) / scale;
+    }
+
+    /**
+     * Escreve os resultados em CSV, com cabeçalho.
+     */
+    static void writeCsv(List<Result> results, PrintWriter out) {
+        out.println(String.join(",", COLUMNS));
+        for (Result result : results) {
+            StringBuilder line = new StringBuilder();
+            for (int i = 0; i < result.values.length; i++) {
+                if (i > 0) {
+                    line.append(',');
+                }
+                line.append(format(result.values[i]));
+            }
+            out.println(line);
+        }
+        out.flush();
+    }
+
+    /**
+     * Escreve os resultados em JSON, um objeto por rodada.
+     */
+    static void writeJson(List<Result> results, PrintWriter out) {
+        out.println("[");
+        for (int r = 0; r < results.size(); r++) {
+            Object[] values = results.get(r).values;
+            StringBuilder line = new StringBuilder("  {");
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    line.append(", ");
+                }
+                line.append('"').append(COLUMNS[i]).append("\": ").append(format(values[i]));
+            }
+            line.append(r < results.size() - 1 ? "}," : "}");
+            out.println(line);
+        }
+        out.println("]");
+        out.flush();
+    }
+
+    private static String format(Object value) {
+        if (value instanceof Double) {
+            return String.format(Locale.ROOT, "%s", value);
+        }
+        return String.valueOf(value);
+    }
+
+    private static int[] parseList(String text) {
+        String[] parts = text.split(",");
+        int[] values = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            values[i] = Integer.parseInt(parts[i].trim());
+        }
+        return values;
+    }
+
+    /**
+     * Método principal para executar o benchmark.
+     *
+     * @param args grupo, porta base, tamanhos, taxas (0 = sem limite),
+     *             receptores, segundos por rodada, formato (csv ou json) e
+     *             arquivo de saída, todos opcionais; listas separadas por vírgula
+     */
+    public static void main(String[] args) throws Exception {
+        InetAddress group = InetAddress.getByName(args.length > 0 ? args[0] : "239.255.42.44");
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 50800;
+        int[] sizes = parseList(args.length > 2 ? args[2] : "64,512,1400");
+        int[] rates = parseList(args.length > 3 ? args[3] : "10000,50000,0");
+        int[] receiverCounts = parseList(args.length > 4 ? args[4] : "1,4,16");
+        double seconds = args.length > 5 ? Double.parseDouble(args[5]) : 2;
+        String format = args.length > 6 ? args[6].toLowerCase(Locale.ROOT) : "csv";
+        if (!format.equals("csv") && !format.equals("json")) {
+            throw new IllegalArgumentException("Formato deve ser csv ou json: " + format);
+        }
+
+        PrintStream log = System.err;
+        ThroughputBenchmark benchmark = new ThroughputBenchmark(group, port, seconds);
+        List<Result> results = new ArrayList<>();
+        for (int size : sizes) {
+            for (int rate : rates) {
+                for (int receivers : receiverCounts) {
+                    log.printf("tamanho %d, taxa %s, %d receptores...%n", size,
+                            rate > 0 ? rate + " msg/s" : "sem limite", receivers);
+                    Result result = benchmark.run(size, rate, receivers);
+                    log.printf("  %s msg/s entregues, perda %s%%, atraso p99 %s µs%n",
+                            format(result.values[7]), format(result.values[8]), format(result.values[10]));
+                    results.add(result);
+                }
+            }
+        }
+
+        PrintWriter out = args.length > 7
+                ? new PrintWriter(new OutputStreamWriter(new FileOutputStream(args[7]), StandardCharsets.UTF_8))
+                : new PrintWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+        if (format.equals("json")) {
+            writeJson(results, out);
+        } else {
+            writeCsv(results, out);
+        }
+        if (args.length > 7) {
+            out.close();
+        }
+    }
+}
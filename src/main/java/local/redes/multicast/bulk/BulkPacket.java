@@ -0,0 +1,82 @@
+package local.redes.multicast.bulk;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Cabeçalho dos pacotes de transferência em massa, transportados como carga
+ * de quadros DATA do {@link local.redes.multicast.MulticastManager}.
+ * Formato fixo de {@value #HEADER_SIZE} bytes, big-endian, seguido de um símbolo:
+ *
+ * <pre>
+ * magia 'B' 'K' (2) | versão (1) | reservado (1) | transferId (8) | tamanhoTotal (8)
+ * tamanhoSimbolo (2) | k (1) | m (1) | bloco (4) | símbolo (1) | reservado (3)
+ * </pre>
+ *
+ * Símbolos de índice menor que k são dados; os demais, paridade.
+ *
+ * @author Igor Rozalem
+ */
+final class BulkPacket {
+
+    static final byte MAGIC_0 = 'B';
+    static final byte MAGIC_1 = 'K';
+    static final byte VERSION = 1;
+    static final int HEADER_SIZE = 32;
+
+    private static final int OFFSET_TRANSFER = 4;
+    private static final int OFFSET_TOTAL_SIZE = 12;
+    private static final int OFFSET_SYMBOL_SIZE = 20;
+    private static final int OFFSET_DATA_SHARDS = 22;
+    private static final int OFFSET_PARITY_SHARDS = 23;
+    private static final int OFFSET_BLOCK = 24;
+    private static final int OFFSET_SHARD = 28;
+
+    private BulkPacket() {
+        // Classe utilitária
+    }
+
+    static void writeHeader(ByteBuffer buffer, long transferId, long totalSize, int symbolSize,
+            int dataShards, int parityShards, int block, int shard) {
+        buffer.put(MAGIC_0).put(MAGIC_1).put(VERSION).put((byte) 0)
+                .putLong(transferId).putLong(totalSize)
+                .putShort((short) symbolSize).put((byte) dataShards).put((byte) parityShards)
+                .putInt(block).put((byte) shard)
+                .put((byte) 0).put((byte) 0).put((byte) 0);
+    }
+
+    static boolean isPacket(ByteBuffer buffer) {
+        int start = buffer.position();
+        return buffer.remaining() >= HEADER_SIZE
+                && buffer.get(start) == MAGIC_0
+                && buffer.get(start + 1) == MAGIC_1
+                && buffer.get(start + 2) == VERSION;
+    }
+
+    static long transferId(ByteBuffer buffer) {
+        return buffer.getLong(buffer.position() + OFFSET_TRANSFER);
+    }
+
+    static long totalSize(ByteBuffer buffer) {
+        return buffer.getLong(buffer.position() + OFFSET_TOTAL_SIZE);
+    }
+
+    static int symbolSize(ByteBuffer buffer) {
+        return buffer.getShort(buffer.position() + OFFSET_SYMBOL_SIZE) & 0xFFFF;
+    }
+
+    static int dataShards(ByteBuffer buffer) {
+        return buffer.get(buffer.position() + OFFSET_DATA_SHARDS) & 0xFF;
+    }
+
+    static int parityShards(ByteBuffer buffer) {
+        return buffer.get(buffer.position() + OFFSET_PARITY_SHARDS) & 0xFF;
+    }
+
+    static int block(ByteBuffer buffer) {
+        return buffer.getInt(buffer.position() + OFFSET_BLOCK);
+    }
+
+    static int shard(ByteBuffer buffer) {
+        return buffer.get(buffer.position() + OFFSET_SHARD) & 0xFF;
+    }
+}
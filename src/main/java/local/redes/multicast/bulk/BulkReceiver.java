@@ -0,0 +1,339 @@
+package local.redes.multicast.bulk;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import local.redes.multicast.MulticastManager;
+
+/**
+ * Recebe transferências em massa enviadas por um {@link BulkSender}.
+ * Cada bloco é reconstruído assim que chegam k de seus k+m pacotes e escrito
+ * na posição correspondente do arquivo de saída; quando todos os blocos
+ * terminam, o arquivo parcial é renomeado e o ouvinte é avisado.
+ *
+ * @author Igor Rozalem
+ */
+public class BulkReceiver implements MulticastManager.RawMessageListener {
+    private static final Logger LOGGER = Logger.getLogger(BulkReceiver.class.getName());
+
+    // Buffer de recepção do sistema para absorver rajadas de pacotes
+    private static final int RECEIVE_BUFFER_SIZE = 4 * 1024 * 1024;
+
+    private final Path directory;
+    private final TransferListener listener;
+    private final Map<Long, Transfer> transfers = new HashMap<>();
+
+    private long packetsReceived;
+    private long recoveredShards;
+    private long completedBlocks;
+
+    /**
+     * Ouvinte de transferências concluídas.
+     */
+    public interface TransferListener {
+        /**
+         * Chamado quando todos os blocos de uma transferência foram gravados.
+         *
+         * @param transferId Identificador da transferência
+         * @param file Arquivo gravado
+         * @param size Tamanho do conteúdo
+         */
+        void onTransferComplete(long transferId, Path file, long size);
+    }
+
+    /**
+     * Bloco ainda incompleto.
+     */
+    private static final class Block {
+        private final byte[][] shards;
+        private final boolean[] present;
+        private int presentCount;
+
+        private Block(int totalShards) {
+            this.shards = new byte[totalShards][];
+            this.present = new boolean[totalShards];
+        }
+    }
+
+    /**
+     * Estado de uma transferência.
+     */
+    private static final class Transfer {
+        private final long id;
+        private final long totalSize;
+        private final int symbolSize;
+        private final int dataShards;
+        private final int parityShards;
+        private final int blockCount;
+        private final ReedSolomon codec;
+        private final BitSet done;
+        private final Map<Integer, Block> pending = new HashMap<>();
+        private final Path partial;
+        private final Path target;
+        private FileChannel output;
+        private boolean complete;
+
+        private Transfer(long id, long totalSize, int symbolSize, int dataShards, int parityShards,
+                Path directory) {
+            this.id = id;
+            this.totalSize = totalSize;
+            this.symbolSize = symbolSize;
+            this.dataShards = dataShards;
+            this.parityShards = parityShards;
+            long blockBytes = (long) dataShards * symbolSize;
+            this.blockCount = (int) Math.max(1, (totalSize + blockBytes - 1) / blockBytes);
+            this.codec = new ReedSolomon(dataShards, parityShards);
+            this.done = new BitSet(blockCount);
+            String name = String.format("transfer-%016x.bin", id);
+            this.target = directory.resolve(name);
+            this.partial = directory.resolve(name + ".part");
+        }
+
+        /**
+         * Quantidade de símbolos de dados com conteúdo real no bloco.
+         */
+        private int dataCount(int block) {
+            long blockBytes = (long) dataShards * symbolSize;
+            long remaining = totalSize - block * blockBytes;
+            return (int) ((Math.min(remaining, blockBytes) + symbolSize - 1) / symbolSize);
+        }
+    }
+
+    /**
+     * Cria um receptor que grava as transferências no diretório informado.
+     *
+     * @param directory Diretório de saída
+     * @param listener Ouvinte de transferências concluídas (pode ser null)
+     */
+    public BulkReceiver(Path directory, TransferListener listener) {
+        this.directory = directory;
+        this.listener = listener;
+    }
+
+    @Override
+    public void onPacketReceived(ByteBuffer data, InetAddress source) {
+        try {
+            onPacket(data);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Erro ao gravar transferência", e);
+        }
+    }
+
+    /**
+     * Processa um pacote de transferência. Pacotes de outros formatos são ignorados.
+     *
+     * @param data Buffer posicionado no início do pacote
+     * @throws IOException Se a gravação do arquivo falhar
+     */
+    public synchronized void onPacket(ByteBuffer data) throws IOException {
+        if (!BulkPacket.isPacket(data)) {
+            return;
+        }
+        int symbolSize = BulkPacket.symbolSize(data);
+        int dataShards = BulkPacket.dataShards(data);
+        int parityShards = BulkPacket.parityShards(data);
+        int shardIndex = BulkPacket.shard(data);
+        int blockIndex = BulkPacket.block(data);
+        if (data.remaining() < BulkPacket.HEADER_SIZE + symbolSize || dataShards == 0
+                || shardIndex >= dataShards + parityShards || blockIndex < 0) {
+            return;
+        }
+        packetsReceived++;
+
+        long id = BulkPacket.transferId(data);
+        Transfer transfer = transfers.get(id);
+        if (transfer == null) {
+            transfer = new Transfer(id, BulkPacket.totalSize(data), symbolSize, dataShards, parityShards, directory);
+            transfer.output = FileChannel.open(transfer.partial, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            transfers.put(id, transfer);
+        }
+        if (transfer.complete || blockIndex >= transfer.blockCount || transfer.done.get(blockIndex)) {
+            return;
+        }
+
+        Block block = transfer.pending.get(blockIndex);
+        if (block == null) {
+            block = new Block(dataShards + parityShards);
+            // Símbolos além do fim do conteúdo são zeros conhecidos
+            for (int i = transfer.dataCount(blockIndex); i < dataShards; i++) {
+                block.shards[i] = new byte[symbolSize];
+                block.present[i] = true;
+                block.presentCount++;
+            }
+            transfer.pending.put(blockIndex, block);
+        }
+        if (block.present[shardIndex]) {
+            return;
+        }
+
+        byte[] shard = new byte[symbolSize];
+        ByteBuffer payload = data.duplicate();
+        payload.position(data.position() + BulkPacket.HEADER_SIZE);
+        payload.get(shard);
+        block.shards[shardIndex] = shard;
+        block.present[shardIndex] = true;
+        block.presentCount++;
+
+        if (block.presentCount >= dataShards) {
+            completeBlock(transfer, blockIndex, block);
+        }
+    }
+
+    /**
+     * Reconstrói um bloco, grava seus dados e conclui a transferência se for o último.
+     */
+    private void completeBlock(Transfer transfer, int blockIndex, Block block) throws IOException {
+        int dataCount = transfer.dataCount(blockIndex);
+        for (int i = 0; i < dataCount; i++) {
+            if (!block.present[i]) {
+                recoveredShards++;
+            }
+        }
+        transfer.codec.decode(block.shards, block.present, transfer.symbolSize);
+
+        long blockStart = (long) blockIndex * transfer.dataShards * transfer.symbolSize;
+        for (int i = 0; i < dataCount; i++) {
+            long position = blockStart + (long) i * transfer.symbolSize;
+            int length = (int) Math.min(transfer.symbolSize, transfer.totalSize - position);
+            ByteBuffer source = ByteBuffer.wrap(block.shards[i], 0, length);
+            while (source.hasRemaining()) {
+                transfer.output.write(source, position + source.position());
+            }
+        }
+
+        transfer.pending.remove(blockIndex);
+        transfer.done.set(blockIndex);
+        completedBlocks++;
+
+        if (transfer.done.cardinality() == transfer.blockCount) {
+            transfer.complete = true;
+            transfer.output.close();
+            Files.move(transfer.partial, transfer.target, StandardCopyOption.REPLACE_EXISTING);
+            LOGGER.log(Level.INFO, "Transferência {0} concluída em {1}",
+                    new Object[]{String.format("%016x", transfer.id), transfer.target});
+            if (listener != null) {
+                listener.onTransferComplete(transfer.id, transfer.target, transfer.totalSize);
+            }
+        }
+    }
+
+    /**
+     * Retorna a quantidade de blocos ainda incompletos em todas as transferências.
+     *
+     * @return Blocos pendentes
+     */
+    public synchronized int getPendingBlocks() {
+        int pending = 0;
+        for (Transfer transfer : transfers.values()) {
+            if (!transfer.complete) {
+                pending += transfer.blockCount - transfer.done.cardinality();
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * Retorna a quantidade de pacotes válidos recebidos.
+     *
+     * @return Pacotes recebidos
+     */
+    public synchronized long getPacketsReceived() {
+        return packetsReceived;
+    }
+
+    /**
+     * Retorna a quantidade de símbolos de dados reconstruídos pela paridade.
+     *
+     * @return Símbolos recuperados
+     */
+    public synchronized long getRecoveredShards() {
+        return recoveredShards;
+    }
+
+    /**
+     * Retorna a quantidade de blocos concluídos.
+     *
+     * @return Blocos concluídos
+     */
+    public synchronized long getCompletedBlocks() {
+        return completedBlocks;
+    }
+
+    /**
+     * Fecha os arquivos das transferências incompletas, mantendo os parciais.
+     */
+    public synchronized void close() {
+        for (Transfer transfer : transfers.values()) {
+            if (!transfer.complete && transfer.output != null) {
+                try {
+                    transfer.output.close();
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Erro ao fechar arquivo parcial", e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Método principal para receber transferências de um grupo multicast.
+     *
+     * @param args grupo, porta, diretório de saída e perda simulada opcional (0 a 1)
+     */
+    public static void main(String[] args) {
+        if (args.length < 3) {
+            System.out.println("Uso: java BulkReceiver <endereco_multicast> <porta> <diretorio> [perda_simulada]");
+            System.out.println("Exemplo: java BulkReceiver 239.1.1.2 9200 recebidos 0.05");
+            System.exit(1);
+        }
+
+        try {
+            InetAddress group = InetAddress.getByName(args[0]);
+            int port = Integer.parseInt(args[1]);
+            Path directory = Paths.get(args[2]);
+            Files.createDirectories(directory);
+
+            BulkReceiver receiver = new BulkReceiver(directory, (id, file, size) ->
+                    System.out.printf("Transferência %016x concluída: %s (%d bytes)%n", id, file, size));
+            MulticastManager manager = new MulticastManager(group, port, "bulk-receiver");
+            manager.setReceiveBufferSize(RECEIVE_BUFFER_SIZE);
+            if (args.length > 3) {
+                manager.setSimulatedLossRate(Double.parseDouble(args[3]));
+            }
+            manager.setRawMessageListener(receiver);
+            manager.startReceiving();
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                manager.stop();
+                receiver.close();
+            }));
+
+            System.out.println("Aguardando transferências em " + group.getHostAddress() + ":" + port);
+            while (true) {
+                Thread.sleep(2000);
+                System.out.printf("pacotes=%d blocos=%d pendentes=%d recuperados=%d%n",
+                        receiver.getPacketsReceived(), receiver.getCompletedBlocks(),
+                        receiver.getPendingBlocks(), receiver.getRecoveredShards());
+            }
+        } catch (NumberFormatException e) {
+            System.err.println("Número inválido: " + e.getMessage());
+            System.exit(1);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Erro ao receber transferências", e);
+            System.exit(1);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,213 @@
+package local.redes.multicast.bulk;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import local.redes.multicast.MulticastManager;
+
+/**
+ * Envia arquivos e blobs para muitos receptores de uma vez, com correção
+ * antecipada de erros (FEC). O conteúdo é dividido em blocos de k símbolos;
+ * cada bloco ganha m símbolos de paridade Reed-Solomon e qualquer receptor
+ * que receba k dos k+m pacotes reconstrói o bloco, sem pedir retransmissão.
+ *
+ * @author Igor Rozalem
+ */
+public class BulkSender {
+    private static final Logger LOGGER = Logger.getLogger(BulkSender.class.getName());
+
+    public static final int DEFAULT_SYMBOL_SIZE = 1024;
+    public static final int DEFAULT_DATA_SHARDS = 16;
+    public static final int DEFAULT_PARITY_SHARDS = 4;
+
+    private final PacketSink sink;
+    private final int symbolSize;
+    private final ReedSolomon codec;
+    private final long bytesPerSecond;
+    private final ByteBuffer packet;
+    private long packetsSent;
+
+    /**
+     * Destino dos pacotes gerados pelo remetente.
+     */
+    public interface PacketSink {
+        /**
+         * Envia um pacote. O buffer é reutilizado após a chamada.
+         *
+         * @param packet Buffer posicionado sobre o pacote
+         * @throws IOException Se o envio falhar
+         */
+        void send(ByteBuffer packet) throws IOException;
+    }
+
+    /**
+     * Cria um remetente.
+     *
+     * @param sink Destino dos pacotes (ex.: {@code manager::sendBytes})
+     * @param symbolSize Bytes de conteúdo por pacote
+     * @param dataShards Símbolos de dados por bloco (k)
+     * @param parityShards Símbolos de paridade por bloco (m)
+     * @param bytesPerSecond Taxa máxima de envio, ou 0 para não limitar
+     */
+    public BulkSender(PacketSink sink, int symbolSize, int dataShards, int parityShards, long bytesPerSecond) {
+        if (symbolSize <= 0 || symbolSize > 0xFFFF) {
+            throw new IllegalArgumentException("Tamanho de símbolo inválido: " + symbolSize);
+        }
+        this.sink = sink;
+        this.symbolSize = symbolSize;
+        this.codec = new ReedSolomon(dataShards, parityShards);
+        this.bytesPerSecond = bytesPerSecond;
+        this.packet = ByteBuffer.allocate(BulkPacket.HEADER_SIZE + symbolSize);
+    }
+
+    /**
+     * Envia o conteúdo de um fluxo.
+     *
+     * @param in Fluxo com exatamente {@code size} bytes
+     * @param size Tamanho do conteúdo
+     * @return Identificador aleatório da transferência
+     * @throws IOException Se a leitura ou o envio falharem
+     */
+    public long send(InputStream in, long size) throws IOException {
+        long transferId = ThreadLocalRandom.current().nextLong();
+        int dataShards = codec.getDataShards();
+        int totalShards = dataShards + codec.getParityShards();
+        long blockBytes = (long) dataShards * symbolSize;
+        long blocks = Math.max(1, (size + blockBytes - 1) / blockBytes);
+        if (blocks > Integer.MAX_VALUE) {
+            throw new IOException("Conteúdo grande demais para os parâmetros escolhidos");
+        }
+
+        byte[][] shards = new byte[totalShards][symbolSize];
+        long nanosPerByte = bytesPerSecond > 0 ? TimeUnit.SECONDS.toNanos(1) / bytesPerSecond : 0;
+        long nextSend = System.nanoTime();
+
+        for (int block = 0; block < blocks; block++) {
+            long remaining = size - block * blockBytes;
+            int dataCount = (int) ((Math.min(remaining, blockBytes) + symbolSize - 1) / symbolSize);
+            for (int i = 0; i < dataShards; i++) {
+                int read = i < dataCount ? readFully(in, shards[i]) : 0;
+                if (i < dataCount && read == 0) {
+                    throw new IOException("Fluxo terminou antes do tamanho informado");
+                }
+                Arrays.fill(shards[i], read, symbolSize, (byte) 0);
+            }
+            codec.encode(shards, symbolSize);
+
+            // Símbolos de dados além do fim do conteúdo são zeros implícitos e não viajam
+            for (int shard = 0; shard < totalShards; shard++) {
+                if (shard >= dataCount && shard < dataShards) {
+                    continue;
+                }
+                if (nanosPerByte > 0) {
+                    long wait = nextSend - System.nanoTime();
+                    if (wait > 0) {
+                        LockSupport.parkNanos(wait);
+                    }
+                    nextSend += nanosPerByte * (BulkPacket.HEADER_SIZE + symbolSize);
+                }
+                packet.clear();
+                BulkPacket.writeHeader(packet, transferId, size, symbolSize, dataShards,
+                        codec.getParityShards(), block, shard);
+                packet.put(shards[shard], 0, symbolSize);
+                packet.flip();
+                sendPacket();
+            }
+        }
+        return transferId;
+    }
+
+    /**
+     * Envia um arquivo.
+     *
+     * @param file Arquivo a enviar
+     * @return Identificador aleatório da transferência
+     * @throws IOException Se a leitura ou o envio falharem
+     */
+    public long sendFile(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return send(in, Files.size(file));
+        }
+    }
+
+    /**
+     * Envia o pacote atual. A espera por espaço no buffer do sistema fica
+     * com o destino, como em {@code MulticastManager.sendBytes}.
+     */
+    private void sendPacket() throws IOException {
+        sink.send(packet);
+        packetsSent++;
+    }
+
+    private static int readFully(InputStream in, byte[] buffer) throws IOException {
+        int total = 0;
+        while (total < buffer.length) {
+            int read = in.read(buffer, total, buffer.length - total);
+            if (read < 0) {
+                break;
+            }
+            total += read;
+        }
+        return total;
+    }
+
+    /**
+     * Retorna a quantidade de pacotes enviados.
+     *
+     * @return Pacotes enviados
+     */
+    public long getPacketsSent() {
+        return packetsSent;
+    }
+
+    /**
+     * Método principal para enviar um arquivo a um grupo multicast.
+     *
+     * @param args grupo, porta, arquivo e, opcionalmente, k, m, tamanho do símbolo e taxa em KB/s
+     */
+    public static void main(String[] args) {
+        if (args.length < 3) {
+            System.out.println("Uso: java BulkSender <endereco_multicast> <porta> <arquivo> [k] [m] [simbolo] [taxa_KBps]");
+            System.out.println("Exemplo: java BulkSender 239.1.1.2 9200 dados.bin 16 4 1024 10240");
+            System.exit(1);
+        }
+
+        try {
+            InetAddress group = InetAddress.getByName(args[0]);
+            int port = Integer.parseInt(args[1]);
+            Path file = Paths.get(args[2]);
+            int k = args.length > 3 ? Integer.parseInt(args[3]) : DEFAULT_DATA_SHARDS;
+            int m = args.length > 4 ? Integer.parseInt(args[4]) : DEFAULT_PARITY_SHARDS;
+            int symbol = args.length > 5 ? Integer.parseInt(args[5]) : DEFAULT_SYMBOL_SIZE;
+            long rate = (args.length > 6 ? Long.parseLong(args[6]) : 10240) * 1024;
+
+            MulticastManager manager = new MulticastManager(group, port, "bulk-sender");
+            BulkSender sender = new BulkSender(manager::sendBytes, symbol, k, m, rate);
+
+            long start = System.nanoTime();
+            long transferId = sender.sendFile(file);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            long size = Files.size(file);
+
+            System.out.printf("Transferência %016x: %d bytes em %d pacotes, %.2f s (%.1f MB/s), redundância %.0f%%%n",
+                    transferId, size, sender.getPacketsSent(), seconds, size / seconds / 1e6, 100.0 * m / k);
+        } catch (NumberFormatException e) {
+            System.err.println("Número inválido: " + e.getMessage());
+            System.exit(1);
+        } catch (IOException e) {
+            LOGGER.log(Level.SEVERE, "Erro ao enviar arquivo", e);
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package local.redes.multicast.bulk;
+
+/**
+ * Aritmética no corpo finito GF(2^8) com o polinômio 0x11D.
+ * A multiplicação usa uma tabela completa de 64 KB, de modo que o laço
+ * interno de codificação é uma consulta e um XOR por byte.
+ *
+ * @author Igor Rozalem
+ */
+final class GaloisField {
+
+    private static final int POLYNOMIAL = 0x11D;
+
+    private static final int[] EXP = new int[512];
+    private static final int[] LOG = new int[256];
+
+    /** Tabela de produtos: MUL[a][b] = a * b. */
+    static final byte[][] MUL = new byte[256][256];
+
+    static {
+        int value = 1;
+        for (int i = 0; i < 255; i++) {
+            EXP[i] = value;
+            LOG[value] = i;
+            value <<= 1;
+            if (value >= 256) {
+                value ^= POLYNOMIAL;
+            }
+        }
+        for (int i = 255; i < EXP.length; i++) {
+            EXP[i] = EXP[i - 255];
+        }
+        for (int a = 0; a < 256; a++) {
+            for (int b = 0; b < 256; b++) {
+                MUL[a][b] = (byte) slowMultiply(a, b);
+            }
+        }
+    }
+
+    private GaloisField() {
+        // Classe utilitária
+    }
+
+    private static int slowMultiply(int a, int b) {
+        if (a == 0 || b == 0) {
+            return 0;
+        }
+        return EXP[LOG[a] + LOG[b]];
+    }
+
+    /**
+     * Multiplica dois elementos.
+     *
+     * @param a Primeiro fator (0 a 255)
+     * @param b Segundo fator (0 a 255)
+     * @return Produto
+     */
+    static int multiply(int a, int b) {
+        return MUL[a][b] & 0xFF;
+    }
+
+    /**
+     * Calcula o inverso multiplicativo.
+     *
+     * @param a Elemento diferente de zero
+     * @return Inverso de a
+     */
+    static int inverse(int a) {
+        if (a == 0) {
+            throw new ArithmeticException("Zero não tem inverso");
+        }
+        return EXP[255 - LOG[a]];
+    }
+
+    /**
+     * Soma ao destino o produto do coeficiente pela origem: dst ^= coef * src.
+     *
+     * @param coefficient Coeficiente
+     * @param source Vetor de origem
+     * @param target Vetor de destino
+     * @param length Quantidade de bytes
+     */
+    static void multiplyAdd(int coefficient, byte[] source, byte[] target, int length) {
+        if (coefficient == 0) {
+            return;
+        }
+        if (coefficient == 1) {
+            for (int i = 0; i < length; i++) {
+                target[i] ^= source[i];
+            }
+            return;
+        }
+        byte[] row = MUL[coefficient];
+        for (int i = 0; i < length; i++) {
+            target[i] ^= row[source[i] & 0xFF];
+        }
+    }
+}
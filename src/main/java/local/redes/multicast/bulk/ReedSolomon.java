@@ -0,0 +1,189 @@
+package local.redes.multicast.bulk;
+
+import java.util.Arrays;
+
+/**
+ * Código de apagamento Reed-Solomon sistemático sobre GF(2^8).
+ *
+ * Cada bloco tem k símbolos de dados e m de paridade; quaisquer k dos k+m
+ * símbolos recuperam os dados. A paridade usa uma matriz de Cauchy, cujas
+ * submatrizes quadradas são sempre inversíveis. Com m = 1 o custo equivale
+ * ao de uma paridade XOR, mas m maior tolera perdas proporcionalmente maiores.
+ *
+ * @author Igor Rozalem
+ */
+public final class ReedSolomon {
+
+    private final int dataShards;
+    private final int parityShards;
+    private final int[][] parityMatrix;
+
+    /**
+     * Cria o código.
+     *
+     * @param dataShards Símbolos de dados por bloco (k)
+     * @param parityShards Símbolos de paridade por bloco (m)
+     * @throws IllegalArgumentException Se k + m exceder 256 ou algum for inválido
+     */
+    public ReedSolomon(int dataShards, int parityShards) {
+        if (dataShards <= 0 || parityShards < 0 || dataShards + parityShards > 256) {
+            throw new IllegalArgumentException("Parâmetros inválidos: k=" + dataShards + ", m=" + parityShards);
+        }
+        this.dataShards = dataShards;
+        this.parityShards = parityShards;
+        this.parityMatrix = new int[parityShards][dataShards];
+        for (int j = 0; j < parityShards; j++) {
+            for (int i = 0; i < dataShards; i++) {
+                // Cauchy: 1 / (x_j + y_i) com x_j = k + j e y_i = i, todos distintos
+                parityMatrix[j][i] = GaloisField.inverse((dataShards + j) ^ i);
+            }
+        }
+    }
+
+    /**
+     * Calcula os símbolos de paridade.
+     *
+     * @param shards Vetor com k + m símbolos; os k primeiros são os dados e os
+     *        m seguintes recebem a paridade
+     * @param length Tamanho de cada símbolo em bytes
+     */
+    public void encode(byte[][] shards, int length) {
+        for (int j = 0; j < parityShards; j++) {
+            byte[] parity = shards[dataShards + j];
+            Arrays.fill(parity, 0, length, (byte) 0);
+            for (int i = 0; i < dataShards; i++) {
+                GaloisField.multiplyAdd(parityMatrix[j][i], shards[i], parity, length);
+            }
+        }
+    }
+
+    /**
+     * Reconstrói os símbolos de dados ausentes a partir de quaisquer k presentes.
+     * Símbolos de paridade ausentes não são reconstruídos.
+     *
+     * @param shards Vetor com k + m símbolos; ausentes podem ser null
+     * @param present Indica quais símbolos chegaram
+     * @param length Tamanho de cada símbolo em bytes
+     * @return true se os dados foram recuperados, false se houver menos de k símbolos
+     */
+    public boolean decode(byte[][] shards, boolean[] present, int length) {
+        int[] rows = new int[dataShards];
+        int count = 0;
+        boolean missingData = false;
+        for (int i = 0; i < dataShards; i++) {
+            if (present[i]) {
+                rows[count++] = i;
+            } else {
+                missingData = true;
+            }
+        }
+        if (!missingData) {
+            return true;
+        }
+        for (int j = 0; j < parityShards && count < dataShards; j++) {
+            if (present[dataShards + j]) {
+                rows[count++] = dataShards + j;
+            }
+        }
+        if (count < dataShards) {
+            return false;
+        }
+
+        int[][] inverse = invert(decodeMatrix(rows));
+        for (int i = 0; i < dataShards; i++) {
+            if (present[i]) {
+                continue;
+            }
+            byte[] target = shards[i];
+            if (target == null || target.length < length) {
+                target = new byte[length];
+                shards[i] = target;
+            } else {
+                Arrays.fill(target, 0, length, (byte) 0);
+            }
+            for (int r = 0; r < dataShards; r++) {
+                GaloisField.multiplyAdd(inverse[i][r], shards[rows[r]], target, length);
+            }
+        }
+        for (int i = 0; i < dataShards; i++) {
+            present[i] = true;
+        }
+        return true;
+    }
+
+    /**
+     * Monta a matriz que leva os dados aos símbolos escolhidos.
+     */
+    private int[][] decodeMatrix(int[] rows) {
+        int[][] matrix = new int[dataShards][];
+        for (int r = 0; r < dataShards; r++) {
+            if (rows[r] < dataShards) {
+                matrix[r] = new int[dataShards];
+                matrix[r][rows[r]] = 1;
+            } else {
+                matrix[r] = parityMatrix[rows[r] - dataShards].clone();
+            }
+        }
+        return matrix;
+    }
+
+    /**
+     * Inverte uma matriz quadrada por eliminação de Gauss-Jordan.
+     */
+    private static int[][] invert(int[][] matrix) {
+        int n = matrix.length;
+        int[][] inverse = new int[n][n];
+        for (int i = 0; i < n; i++) {
+            inverse[i][i] = 1;
+        }
+
+        for (int column = 0; column < n; column++) {
+            int pivot = column;
+            while (matrix[pivot][column] == 0) {
+                pivot++;
+            }
+            int[] swap = matrix[pivot];
+            matrix[pivot] = matrix[column];
+            matrix[column] = swap;
+            swap = inverse[pivot];
+            inverse[pivot] = inverse[column];
+            inverse[column] = swap;
+
+            int scale = GaloisField.inverse(matrix[column][column]);
+            for (int c = 0; c < n; c++) {
+                matrix[column][c] = GaloisField.multiply(matrix[column][c], scale);
+                inverse[column][c] = GaloisField.multiply(inverse[column][c], scale);
+            }
+
+            for (int row = 0; row < n; row++) {
+                int factor = matrix[row][column];
+                if (row == column || factor == 0) {
+                    continue;
+                }
+                for (int c = 0; c < n; c++) {
+                    matrix[row][c] ^= GaloisField.multiply(factor, matrix[column][c]);
+                    inverse[row][c] ^= GaloisField.multiply(factor, inverse[column][c]);
+                }
+            }
+        }
+        return inverse;
+    }
+
+    /**
+     * Retorna a quantidade de símbolos de dados por bloco.
+     *
+     * @return k
+     */
+    public int getDataShards() {
+        return dataShards;
+    }
+
+    /**
+     * Retorna a quantidade de símbolos de paridade por bloco.
+     *
+     * @return m
+     */
+    public int getParityShards() {
+        return parityShards;
+    }
+}
@@ -0,0 +1,433 @@
+package local.redes.multicast.log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Histórico persistente de uma sala de chat, gravado em arquivos mapeados em
+ * memória e indexado por palavra e por remetente.
+ *
+ * O diretório da sala tem três partes:
+ * <ul>
+ *   <li>{@code messages.dat}: registros de tamanho variável com horário,
+ *       remetente e texto, acrescentados em ordem;</li>
+ *   <li>{@code offsets.idx}: a posição de cada registro, para ler qualquer
+ *       mensagem pelo número sem percorrer as anteriores;</li>
+ *   <li>o índice invertido do {@link TermIndex}.</li>
+ * </ul>
+ * Reabrir o histórico só mapeia os arquivos: as últimas mensagens e os
+ * resultados de uma busca são lidos direto das páginas mapeadas, sem
+ * carregar o histórico no heap. Como as páginas pertencem ao sistema
+ * operacional, o que foi gravado sobrevive ao fim do processo.
+ *
+ * Os métodos são sincronizados: a thread de recebimento grava enquanto a
+ * interface lê e busca. A quantidade de mensagens e o fim dos dados ficam
+ * em memória enquanto o histórico está aberto, então um diretório só pode
+ * ser aberto por um histórico de cada vez: o arquivo {@code lock} fica
+ * travado até o {@link #close()}, e uma segunda abertura, no mesmo processo
+ * ou em outro, falha.
+ *
+ * @author Igor Rozalem
+ */
+public final class ChatLog implements Closeable {
+
+    /** Propriedade de sistema com o diretório dos históricos. */
+    public static final String DIRECTORY_PROPERTY = "chat.log.dir";
+
+    // Registro: tamanho total (int), horário em ms (long), tamanho do remetente (short), remetente, texto
+    private static final int RECORD_HEADER = 14;
+    static final int DATA_SEGMENT = 1 << 26;
+
+    // Posições: quantidade de mensagens (long) e fim dos dados (long), depois uma posição (long) por mensagem
+    private static final int OFFSETS_HEADER = 16;
+    private static final int OFFSETS_SEGMENT = 1 << 23;
+
+    private final Path dir;
+    private final int dataSegment;
+    private final MappedSegments data;
+    private final MappedSegments offsets;
+    private final TermIndex index;
+    private final FileChannel lockChannel;
+    private final FileLock lock;
+    private int count;
+    private long dataEnd;
+    private boolean closed;
+
+    /**
+     * Abre o histórico com o tamanho de segmento informado. Um mesmo histórico
+     * deve ser sempre aberto com o mesmo tamanho; outro valor só em testes.
+     */
+    ChatLog(Path dir, int dataSegment) throws IOException {
+        this.dir = dir;
+        this.dataSegment = dataSegment;
+        Files.createDirectories(dir);
+        this.lockChannel = FileChannel.open(dir.resolve("lock"), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        MappedSegments openedData = null;
+        MappedSegments openedOffsets = null;
+        try {
+            this.lock = tryLock(lockChannel);
+            if (lock == null) {
+                throw new IOException("Histórico já aberto por outra janela ou processo: " + dir);
+            }
+            openedData = new MappedSegments(dir.resolve("messages.dat"), dataSegment);
+            openedOffsets = new MappedSegments(dir.resolve("offsets.idx"), OFFSETS_SEGMENT);
+            this.index = new TermIndex(dir);
+        } catch (IOException | RuntimeException e) {
+            if (openedData != null) {
+                openedData.close();
+            }
+            if (openedOffsets != null) {
+                openedOffsets.close();
+            }
+            lockChannel.close();
+            throw e;
+        }
+        this.data = openedData;
+        this.offsets = openedOffsets;
+        this.count = (int) offsets.getLong(0);
+        this.dataEnd = offsets.getLong(8);
+    }
+
+    /**
+     * Trava o arquivo de trava sem esperar.
+     *
+     * @return Trava obtida, ou null se outro histórico já a tiver
+     */
+    private static FileLock tryLock(FileChannel channel) throws IOException {
+        try {
+            return channel.tryLock();
+        } catch (OverlappingFileLockException e) {
+            // Trava de outro histórico aberto neste mesmo processo
+            return null;
+        }
+    }
+
+    /**
+     * Abre ou cria o histórico em um diretório.
+     *
+     * @param dir Diretório do histórico
+     * @return Histórico aberto
+     * @throws IOException Se os arquivos não puderem ser abertos ou o
+     *         diretório já estiver aberto por outro histórico
+     */
+    public static ChatLog open(Path dir) throws IOException {
+        return new ChatLog(dir, DATA_SEGMENT);
+    }
+
+    /**
+     * Abre ou cria o histórico de uma sala, em um subdiretório do diretório
+     * da propriedade {@value #DIRECTORY_PROPERTY} ou, se ela não estiver
+     * definida, de {@code ~/.chat-multicast}.
+     *
+     * @param groupAddress Endereço do grupo
+     * @param port Porta do grupo
+     * @param room Sala
+     * @return Histórico aberto
+     * @throws IOException Se os arquivos não puderem ser abertos ou a sala
+     *         já estiver aberta por outra janela ou processo
+     */
+    public static ChatLog openRoom(InetAddress groupAddress, int port, int room) throws IOException {
+        String base = System.getProperty(DIRECTORY_PROPERTY);
+        Path root = base != null && !base.trim().isEmpty()
+                ? Paths.get(base.trim())
+                : Paths.get(System.getProperty("user.home"), ".chat-multicast");
+        String name = groupAddress.getHostAddress().replaceAll("[^A-Za-z0-9.]", "_") + "-" + port + "-" + room;
+        return new ChatLog(root.resolve(name), DATA_SEGMENT);
+    }
+
+    /**
+     * Acrescenta uma mensagem ao histórico e ao índice.
+     *
+     * @param timestamp Horário da mensagem, em milissegundos desde a época
+     * @param sender Remetente, ou null para mensagens de sistema
+     * @param text Texto exibido da mensagem
+     * @return Número da mensagem no histórico
+     * @throws IOException Se o histórico não puder ser gravado
+     */
+    public synchronized int append(long timestamp, String sender, String text) throws IOException {
+        ensureOpen();
+        byte[] senderBytes = sender == null ? new byte[0] : sender.getBytes(StandardCharsets.UTF_8);
+        byte[] textBytes = text.getBytes(StandardCharsets.UTF_8);
+        if (senderBytes.length > Short.MAX_VALUE) {
+            throw new IllegalArgumentException("Remetente muito longo");
+        }
+        int length = RECORD_HEADER + senderBytes.length + textBytes.length;
+        if (length > dataSegment) {
+            throw new IllegalArgumentException("Mensagem muito longa: " + length + " bytes");
+        }
+
+        long position = dataEnd;
+        if (data.remaining(position) < length) {
+            // Registros não atravessam segmentos
+            position = data.nextSegment(position);
+        }
+        data.putInt(position, length);
+        data.putLong(position + 4, timestamp);
+        data.putShort(position + 12, (short) senderBytes.length);
+        data.put(position + RECORD_HEADER, senderBytes);
+        data.put(position + RECORD_HEADER + senderBytes.length, textBytes);
+
+        int id = count;
+        offsets.putLong(OFFSETS_HEADER + (long) id * 8, position);
+        index.add(id, TermIndex.terms(sender, text));
+
+        // A quantidade é gravada por último: uma mensagem incompleta nunca é lida
+        dataEnd = position + length;
+        count = id + 1;
+        offsets.putLong(8, dataEnd);
+        offsets.putLong(0, count);
+        return id;
+    }
+
+    /**
+     * Lê uma mensagem pelo número.
+     *
+     * @param id Número da mensagem, de 0 a {@link #size()} - 1
+     * @return Mensagem
+     * @throws IOException Se o histórico não puder ser lido
+     */
+    public synchronized Entry get(int id) throws IOException {
+        ensureOpen();
+        if (id < 0 || id >= count) {
+            throw new IndexOutOfBoundsException("Mensagem " + id + " de " + count);
+        }
+        return read(id);
+    }
+
+    private Entry read(int id) throws IOException {
+        long position = offsets.getLong(OFFSETS_HEADER + (long) id * 8);
+        int length = data.getInt(position);
+        long timestamp = data.getLong(position + 4);
+        byte[] sender = new byte[data.getShort(position + 12)];
+        byte[] text = new byte[length - RECORD_HEADER - sender.length];
+        data.get(position + RECORD_HEADER, sender);
+        data.get(position + RECORD_HEADER + sender.length, text);
+        return new Entry(id, timestamp, sender.length == 0 ? null : new String(sender, StandardCharsets.UTF_8),
+                new String(text, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Lê as últimas mensagens do histórico.
+     *
+     * @param max Quantidade máxima de mensagens
+     * @return Mensagens da mais antiga para a mais recente
+     * @throws IOException Se o histórico não puder ser lido
+     */
+    public synchronized List<Entry> tail(int max) throws IOException {
+        ensureOpen();
+        int first = Math.max(0, count - max);
+        List<Entry> result = new ArrayList<>(count - first);
+        for (int id = first; id < count; id++) {
+            result.add(read(id));
+        }
+        return result;
+    }
+
+    /**
+     * Busca as mensagens que contêm todas as palavras da consulta. Palavras
+     * começando com {@code @} restringem o remetente (ex.: {@code "@ana
+     * reunião"}). Maiúsculas e acentos são ignorados.
+     *
+     * @param query Consulta
+     * @param limit Quantidade máxima de resultados
+     * @return Mensagens encontradas, da mais recente para a mais antiga
+     * @throws IOException Se o histórico não puder ser lido
+     */
+    public synchronized List<Entry> search(String query, int limit) throws IOException {
+        ensureOpen();
+        Set<String> queryTerms = new LinkedHashSet<>();
+        for (String token : query.trim().split("\\s+")) {
+            if (token.startsWith(TermIndex.SENDER_PREFIX) && token.length() > 1) {
+                queryTerms.add(TermIndex.SENDER_PREFIX + TermIndex.normalize(token.substring(1)));
+            } else {
+                TermIndex.addWords(token, queryTerms);
+            }
+        }
+        if (queryTerms.isEmpty() || limit <= 0) {
+            return Collections.emptyList();
+        }
+
+        List<TermIndex.Cursor> cursors = new ArrayList<>();
+        for (String term : queryTerms) {
+            TermIndex.Cursor cursor = index.cursor(term);
+            if (cursor == null) {
+                return Collections.emptyList();
+            }
+            cursors.add(cursor);
+        }
+        // O termo mais raro conduz a interseção
+        cursors.sort(Comparator.comparingInt(TermIndex.Cursor::total));
+
+        List<Entry> result = new ArrayList<>();
+        int target = count - 1;
+        while (result.size() < limit && target >= 0) {
+            boolean match = true;
+            for (TermIndex.Cursor cursor : cursors) {
+                int current = cursor.seek(target);
+                if (current < 0) {
+                    return result;
+                }
+                if (current < target) {
+                    target = current;
+                    match = false;
+                    break;
+                }
+            }
+            if (match) {
+                result.add(read(target));
+                target--;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Retorna a quantidade de mensagens no histórico.
+     *
+     * @return Mensagens gravadas
+     */
+    public synchronized int size() {
+        return count;
+    }
+
+    /**
+     * Retorna a quantidade de termos distintos no índice.
+     *
+     * @return Termos indexados
+     */
+    public synchronized int getTermCount() {
+        return index.getTermCount();
+    }
+
+    /**
+     * Retorna o diretório do histórico.
+     *
+     * @return Diretório
+     */
+    public Path getDirectory() {
+        return dir;
+    }
+
+    /**
+     * Grava no disco as páginas alteradas. Não é necessário para sobreviver
+     * ao fim do processo, apenas a uma queda do sistema.
+     */
+    public synchronized void force() {
+        ensureOpen();
+        data.force();
+        offsets.force();
+        index.force();
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("Histórico fechado");
+        }
+    }
+
+    /**
+     * Fecha os arquivos do histórico.
+     *
+     * @throws IOException Se ocorrer erro ao fechar
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            data.close();
+            offsets.close();
+            index.close();
+        } finally {
+            // Fechar o canal libera a trava
+            lockChannel.close();
+        }
+    }
+
+    /**
+     * Mensagem lida do histórico.
+     */
+    public static final class Entry {
+
+        private static final DateTimeFormatter FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")
+                .withZone(ZoneId.systemDefault());
+
+        private final int id;
+        private final long timestamp;
+        private final String sender;
+        private final String text;
+
+        Entry(int id, long timestamp, String sender, String text) {
+            this.id = id;
+            this.timestamp = timestamp;
+            this.sender = sender;
+            this.text = text;
+        }
+
+        /**
+         * Retorna o número da mensagem no histórico.
+         *
+         * @return Número da mensagem
+         */
+        public int getId() {
+            return id;
+        }
+
+        /**
+         * Retorna o horário da mensagem.
+         *
+         * @return Milissegundos desde a época
+         */
+        public long getTimestamp() {
+            return timestamp;
+        }
+
+        /**
+         * Retorna o remetente.
+         *
+         * @return Remetente, ou null para mensagens de sistema
+         */
+        public String getSender() {
+            return sender;
+        }
+
+        /**
+         * Retorna o texto exibido da mensagem.
+         *
+         * @return Texto
+         */
+        public String getText() {
+            return text;
+        }
+
+        /**
+         * Retorna a mensagem no formato da área de chat.
+         *
+         * @return Linha com horário e texto
+         */
+        @Override
+        public String toString() {
+            return "[" + FORMATTER.format(Instant.ofEpochMilli(timestamp)) + "] " + text;
+        }
+    }
+}
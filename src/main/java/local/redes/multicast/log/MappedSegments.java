@@ -0,0 +1,136 @@
+package local.redes.multicast.log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Arquivo mapeado em memória em segmentos de tamanho fixo, mapeados sob
+ * demanda. O arquivo cresce quando um segmento novo é mapeado.
+ *
+ * As leituras e escritas usam posições absolutas e não podem atravessar o
+ * limite de um segmento; quem grava registros de tamanho variável deve
+ * pular para o próximo segmento quando o registro não couber.
+ *
+ * @author Igor Rozalem
+ */
+final class MappedSegments implements Closeable {
+
+    private final FileChannel channel;
+    private final int segmentBits;
+    private final int segmentSize;
+    private final List<MappedByteBuffer> segments = new ArrayList<>();
+
+    /**
+     * Abre ou cria o arquivo.
+     *
+     * @param file Caminho do arquivo
+     * @param segmentSize Tamanho de cada segmento, potência de dois
+     * @throws IOException Se o arquivo não puder ser aberto
+     */
+    MappedSegments(Path file, int segmentSize) throws IOException {
+        if (Integer.bitCount(segmentSize) != 1) {
+            throw new IllegalArgumentException("Tamanho de segmento deve ser potência de dois: " + segmentSize);
+        }
+        this.segmentSize = segmentSize;
+        this.segmentBits = Integer.numberOfTrailingZeros(segmentSize);
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+    }
+
+    /**
+     * Retorna o segmento que contém a posição, mapeando-o se preciso.
+     */
+    private ByteBuffer segment(long position) throws IOException {
+        int index = (int) (position >>> segmentBits);
+        while (segments.size() <= index) {
+            long start = (long) segments.size() << segmentBits;
+            segments.add(channel.map(FileChannel.MapMode.READ_WRITE, start, segmentSize));
+        }
+        return segments.get(index);
+    }
+
+    private int offset(long position) {
+        return (int) (position & (segmentSize - 1));
+    }
+
+    /**
+     * Retorna o início do segmento seguinte ao da posição.
+     *
+     * @param position Posição no arquivo
+     * @return Início do próximo segmento
+     */
+    long nextSegment(long position) {
+        return ((position >>> segmentBits) + 1) << segmentBits;
+    }
+
+    /**
+     * Retorna quantos bytes cabem a partir da posição sem atravessar o segmento.
+     *
+     * @param position Posição no arquivo
+     * @return Bytes restantes no segmento
+     */
+    int remaining(long position) {
+        return segmentSize - offset(position);
+    }
+
+    int getInt(long position) throws IOException {
+        return segment(position).getInt(offset(position));
+    }
+
+    void putInt(long position, int value) throws IOException {
+        segment(position).putInt(offset(position), value);
+    }
+
+    long getLong(long position) throws IOException {
+        return segment(position).getLong(offset(position));
+    }
+
+    void putLong(long position, long value) throws IOException {
+        segment(position).putLong(offset(position), value);
+    }
+
+    short getShort(long position) throws IOException {
+        return segment(position).getShort(offset(position));
+    }
+
+    void putShort(long position, short value) throws IOException {
+        segment(position).putShort(offset(position), value);
+    }
+
+    void get(long position, byte[] target) throws IOException {
+        ByteBuffer view = segment(position).duplicate();
+        view.position(offset(position));
+        view.get(target);
+    }
+
+    void put(long position, byte[] source) throws IOException {
+        ByteBuffer view = segment(position).duplicate();
+        view.position(offset(position));
+        view.put(source);
+    }
+
+    /**
+     * Grava no disco as páginas alteradas.
+     */
+    void force() {
+        for (MappedByteBuffer segment : segments) {
+            segment.force();
+        }
+    }
+
+    /**
+     * Fecha o arquivo. Os mapeamentos são liberados pelo coletor de lixo.
+     */
+    @Override
+    public void close() throws IOException {
+        segments.clear();
+        channel.close();
+    }
+}
@@ -0,0 +1,381 @@
+package local.redes.multicast.log;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.text.Normalizer;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Índice invertido em disco: para cada termo, a lista das mensagens que o
+ * contêm, da mais recente para a mais antiga.
+ *
+ * Os termos ficam em uma tabela hash de endereçamento aberto mapeada em
+ * memória ({@code terms-N.idx}), identificados por um hash de 64 bits. Cada
+ * entrada aponta para o bloco mais novo da lista do termo em
+ * {@code postings.idx}; os blocos têm {@value #BLOCK_IDS} identificadores
+ * e apontam para o bloco anterior. Acrescentar uma mensagem custa um acesso à
+ * tabela e uma escrita por termo, e uma busca percorre só os blocos dos
+ * termos pedidos, sem carregar o índice no heap.
+ *
+ * Não é seguro para uso concorrente; o {@link ChatLog} sincroniza o acesso.
+ *
+ * @author Igor Rozalem
+ */
+final class TermIndex implements Closeable {
+
+    private static final Logger LOGGER = Logger.getLogger(TermIndex.class.getName());
+
+    /** Identificadores de mensagem por bloco de lista. */
+    static final int BLOCK_IDS = 14;
+
+    // Bloco: anterior (1 int, 0 = nenhum), quantidade (1 int) e identificadores
+    private static final int BLOCK_SIZE = 64;
+    private static final int POSTINGS_SEGMENT = 1 << 24;
+
+    // Tabela: cabeçalho com slots (int) e usados (int); slot com hash (long), bloco mais novo (int) e total (int)
+    private static final int TERMS_HEADER = 16;
+    private static final int SLOT_SIZE = 16;
+    private static final int INITIAL_SLOTS = 1 << 14;
+    private static final double MAX_LOAD = 0.7;
+
+    // Termos mais longos que isso são cortados
+    private static final int MAX_TERM_LENGTH = 64;
+
+    /** Prefixo dos termos de remetente. */
+    static final String SENDER_PREFIX = "@";
+
+    private final Path dir;
+    private final MappedSegments postings;
+    private int blocks;
+    private int generation;
+
+    private FileChannel termsChannel;
+    private MappedByteBuffer terms;
+    private int slots;
+    private int used;
+
+    /**
+     * Abre ou cria o índice no diretório.
+     *
+     * @param dir Diretório do histórico
+     * @throws IOException Se os arquivos não puderem ser abertos
+     */
+    TermIndex(Path dir) throws IOException {
+        this.dir = dir;
+        this.postings = new MappedSegments(dir.resolve("postings.idx"), POSTINGS_SEGMENT);
+        // O bloco 0 é o cabeçalho: blocos usados e geração da tabela de termos
+        this.blocks = postings.getInt(0);
+        this.generation = postings.getInt(4);
+        openTerms(generation, INITIAL_SLOTS);
+    }
+
+    private Path termsFile(int gen) {
+        return dir.resolve("terms-" + gen + ".idx");
+    }
+
+    /**
+     * Mapeia a tabela de termos da geração informada, criando-a se não existir.
+     */
+    private void openTerms(int gen, int initialSlots) throws IOException {
+        Path file = termsFile(gen);
+        boolean exists = Files.exists(file) && Files.size(file) > TERMS_HEADER;
+        termsChannel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        int count = initialSlots;
+        if (exists) {
+            MappedByteBuffer header = termsChannel.map(FileChannel.MapMode.READ_ONLY, 0, TERMS_HEADER);
+            count = header.getInt(0);
+        }
+        terms = termsChannel.map(FileChannel.MapMode.READ_WRITE, 0, TERMS_HEADER + (long) count * SLOT_SIZE);
+        if (!exists) {
+            terms.putInt(0, count);
+            terms.putInt(4, 0);
+        }
+        slots = terms.getInt(0);
+        used = terms.getInt(4);
+    }
+
+    /**
+     * Extrai os termos de uma mensagem: as palavras do texto, em minúsculas e
+     * sem acentos, e o remetente com o prefixo {@value #SENDER_PREFIX}.
+     *
+     * @param sender Remetente, ou null
+     * @param text Texto da mensagem
+     * @return Termos distintos, na ordem em que aparecem
+     */
+    static Set<String> terms(String sender, String text) {
+        Set<String> result = new LinkedHashSet<>();
+        if (sender != null && !sender.isEmpty()) {
+            result.add(SENDER_PREFIX + normalize(sender));
+        }
+        addWords(text, result);
+        return result;
+    }
+
+    /**
+     * Acrescenta ao conjunto as palavras do texto, normalizadas.
+     *
+     * @param text Texto
+     * @param result Conjunto de termos
+     */
+    static void addWords(String text, Collection<String> result) {
+        String normalized = normalize(text);
+        int start = -1;
+        for (int i = 0; i <= normalized.length(); i++) {
+            boolean word = i < normalized.length() && Character.isLetterOrDigit(normalized.charAt(i));
+            if (word && start < 0) {
+                start = i;
+            } else if (!word && start >= 0) {
+                result.add(normalized.substring(start, Math.min(i, start + MAX_TERM_LENGTH)));
+                start = -1;
+            }
+        }
+    }
+
+    /**
+     * Coloca em minúsculas e remove acentos, para "Não" e "nao" serem o mesmo termo.
+     *
+     * @param text Texto
+     * @return Texto normalizado
+     */
+    static String normalize(String text) {
+        String decomposed = Normalizer.normalize(text.toLowerCase(Locale.ROOT), Normalizer.Form.NFD);
+        StringBuilder result = new StringBuilder(decomposed.length());
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) != Character.NON_SPACING_MARK) {
+                result.append(c);
+            }
+        }
+        return result.toString();
+    }
+
+    /**
+     * Hash FNV-1a de 64 bits do termo, nunca zero (zero marca slot vazio).
+     */
+    private static long hash(String term) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : term.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xFF;
+            h *= 0x100000001b3L;
+        }
+        return h == 0 ? 1 : h;
+    }
+
+    private static int mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    /**
+     * Procura o slot do termo na tabela.
+     *
+     * @return Posição do slot com o hash, ou do slot vazio onde ele entraria
+     */
+    private int findSlot(long h) {
+        int mask = slots - 1;
+        int index = mix(h) & mask;
+        while (true) {
+            int position = TERMS_HEADER + index * SLOT_SIZE;
+            long current = terms.getLong(position);
+            if (current == h || current == 0) {
+                return position;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    /**
+     * Acrescenta a mensagem às listas dos seus termos. Os identificadores
+     * devem ser crescentes.
+     *
+     * @param messageId Identificador da mensagem
+     * @param messageTerms Termos distintos da mensagem
+     * @throws IOException Se o índice não puder ser gravado
+     */
+    void add(int messageId, Collection<String> messageTerms) throws IOException {
+        for (String term : messageTerms) {
+            long h = hash(term);
+            int slot = findSlot(h);
+            if (terms.getLong(slot) == 0) {
+                if (used + 1 > slots * MAX_LOAD) {
+                    grow();
+                    slot = findSlot(h);
+                }
+                terms.putLong(slot, h);
+                terms.putInt(slot + 8, 0);
+                terms.putInt(slot + 12, 0);
+                used++;
+                terms.putInt(4, used);
+            }
+
+            int block = terms.getInt(slot + 8);
+            int count = block == 0 ? BLOCK_IDS : postings.getInt(blockPosition(block) + 4);
+            if (count == BLOCK_IDS) {
+                // Bloco cheio: o novo aponta para ele e passa a ser o mais recente
+                int previous = block;
+                block = ++blocks;
+                postings.putInt(blockPosition(block), previous);
+                count = 0;
+                postings.putInt(0, blocks);
+                terms.putInt(slot + 8, block);
+            }
+            long position = blockPosition(block);
+            postings.putInt(position + 8 + count * 4L, messageId);
+            postings.putInt(position + 4, count + 1);
+            terms.putInt(slot + 12, terms.getInt(slot + 12) + 1);
+        }
+    }
+
+    private static long blockPosition(int block) {
+        return (long) block * BLOCK_SIZE;
+    }
+
+    /**
+     * Dobra a tabela de termos em um arquivo da geração seguinte.
+     */
+    private void grow() throws IOException {
+        MappedByteBuffer old = terms;
+        FileChannel oldChannel = termsChannel;
+        int oldSlots = slots;
+        int oldGeneration = generation;
+
+        Files.deleteIfExists(termsFile(oldGeneration + 1));
+        openTerms(oldGeneration + 1, oldSlots * 2);
+        for (int i = 0; i < oldSlots; i++) {
+            int position = TERMS_HEADER + i * SLOT_SIZE;
+            long h = old.getLong(position);
+            if (h != 0) {
+                int slot = findSlot(h);
+                terms.putLong(slot, h);
+                terms.putInt(slot + 8, old.getInt(position + 8));
+                terms.putInt(slot + 12, old.getInt(position + 12));
+                used++;
+            }
+        }
+        terms.putInt(4, used);
+        generation = oldGeneration + 1;
+        postings.putInt(4, generation);
+
+        oldChannel.close();
+        try {
+            Files.deleteIfExists(termsFile(oldGeneration));
+        } catch (IOException e) {
+            // Em alguns sistemas o arquivo mapeado só pode ser removido depois
+            LOGGER.log(Level.FINE, "Tabela de termos antiga não removida", e);
+        }
+        LOGGER.log(Level.FINE, "Tabela de termos ampliada para {0} posições", slots);
+    }
+
+    /**
+     * Retorna um cursor sobre as mensagens do termo, da mais recente para a
+     * mais antiga, ou null se o termo não aparece no índice.
+     *
+     * @param term Termo normalizado
+     * @return Cursor, ou null
+     */
+    Cursor cursor(String term) throws IOException {
+        int slot = findSlot(hash(term));
+        if (terms.getLong(slot) == 0) {
+            return null;
+        }
+        return new Cursor(terms.getInt(slot + 8), terms.getInt(slot + 12));
+    }
+
+    /**
+     * Retorna a quantidade de termos distintos.
+     *
+     * @return Termos no índice
+     */
+    int getTermCount() {
+        return used;
+    }
+
+    /**
+     * Grava no disco as páginas alteradas.
+     */
+    void force() {
+        postings.force();
+        terms.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        postings.close();
+        termsChannel.close();
+    }
+
+    /**
+     * Percorre a lista de um termo em ordem decrescente de identificador.
+     */
+    final class Cursor {
+
+        private final int total;
+        private int block;
+        private int index;
+        private int current = -1;
+
+        private Cursor(int newestBlock, int total) throws IOException {
+            this.total = total;
+            this.block = newestBlock;
+            this.index = postings.getInt(blockPosition(block) + 4) - 1;
+            load();
+        }
+
+        private void load() throws IOException {
+            while (block != 0 && index < 0) {
+                block = postings.getInt(blockPosition(block));
+                index = block == 0 ? -1 : postings.getInt(blockPosition(block) + 4) - 1;
+            }
+            current = block == 0 ? -1 : postings.getInt(blockPosition(block) + 8 + index * 4L);
+        }
+
+        /**
+         * Retorna o identificador atual, ou -1 se a lista acabou.
+         */
+        int current() {
+            return current;
+        }
+
+        /**
+         * Avança até o primeiro identificador menor ou igual ao alvo, pulando
+         * blocos inteiros quando o menor identificador do bloco ainda é maior.
+         *
+         * @param target Identificador alvo
+         * @return Identificador atual, ou -1 se a lista acabou
+         */
+        int seek(int target) throws IOException {
+            while (current > target) {
+                long position = blockPosition(block);
+                if (postings.getInt(position + 8) > target) {
+                    // O bloco todo é mais novo que o alvo
+                    index = -1;
+                } else {
+                    index--;
+                }
+                load();
+            }
+            return current;
+        }
+
+        /**
+         * Retorna quantas mensagens contêm o termo.
+         */
+        int total() {
+            return total;
+        }
+    }
+}
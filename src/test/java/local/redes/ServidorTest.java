@@ -8,12 +8,15 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.io.ObjectOutputStream;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
 import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.Arrays;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -144,4 +147,198 @@ public class ServidorTest {
         assertTrue(resposta.contains("Você tem 30 anos"));
         assertTrue(resposta.contains("Timestamp:"));
     }
+    
+    @Test
+    @DisplayName("Deve responder consulta de contagem por faixa de idade")
+    public void testConsultaContagemIdade() throws Exception {
+        InetAddress enderecoCliente = InetAddress.getLocalHost();
+        
+        // Registrar algumas pessoas antes da consulta
+        invocarProcessarRequisicao(serializar(new Pessoa("Idade Um", 121)), enderecoCliente);
+        invocarProcessarRequisicao(serializar(new Pessoa("Idade Dois", 122)), enderecoCliente);
+        
+        // Consultar a faixa registrada
+        invocarProcessarRequisicao(serializar(Consulta.contagemEntre(121, 122)), enderecoCliente);
+        
+        ArgumentCaptor<DatagramPacket> pacoteCaptor = ArgumentCaptor.forClass(DatagramPacket.class);
+        verify(mockSocket, times(3)).send(pacoteCaptor.capture());
+        
+        DatagramPacket pacoteConsulta = pacoteCaptor.getAllValues().get(2);
+        String resposta = new String(pacoteConsulta.getData(), 0, pacoteConsulta.getLength());
+        assertEquals("Pessoas com idade entre 121 e 122: 2", resposta);
+    }
+    
+    @Test
+    @DisplayName("Deve responder com confirmação binária quando solicitado")
+    public void testRespostaBinaria() throws Exception {
+        InetAddress enderecoCliente = InetAddress.getLocalHost();
+        byte[] requisicao = ProtocoloBinario.montarRequisicao(
+                ProtocoloBinario.FLAG_RESPOSTA_BINARIA, 77, serializar(new Pessoa("Cliente Binário", 40)));
+        
+        long antes = System.currentTimeMillis();
+        invocarProcessarRequisicao(requisicao, enderecoCliente);
+        
+        ArgumentCaptor<DatagramPacket> pacoteCaptor = ArgumentCaptor.forClass(DatagramPacket.class);
+        verify(mockSocket).send(pacoteCaptor.capture());
+        
+        DatagramPacket pacoteEnviado = pacoteCaptor.getValue();
+        assertEquals(ProtocoloBinario.TAMANHO_ACK, pacoteEnviado.getLength());
+        
+        ProtocoloBinario.Ack ack = ProtocoloBinario.decodificarAck(
+                pacoteEnviado.getData(), pacoteEnviado.getOffset(), pacoteEnviado.getLength());
+        assertEquals(ProtocoloBinario.STATUS_OK, ack.getStatus());
+        assertEquals(77, ack.getIdRequisicao());
+        assertTrue(ack.getEpochMillis() >= antes);
+        assertTrue(ack.getSequencia() > 0);
+    }
+    
+    @Test
+    @DisplayName("Deve manter resposta em texto quando o cabeçalho não pede binário")
+    public void testCabecalhoSemFlagBinaria() throws Exception {
+        InetAddress enderecoCliente = InetAddress.getLocalHost();
+        byte[] requisicao = ProtocoloBinario.montarRequisicao(
+                (byte) 0, 5, serializar(new Pessoa("Cliente Texto", 33)));
+        
+        invocarProcessarRequisicao(requisicao, enderecoCliente);
+        
+        ArgumentCaptor<DatagramPacket> pacoteCaptor = ArgumentCaptor.forClass(DatagramPacket.class);
+        verify(mockSocket).send(pacoteCaptor.capture());
+        
+        DatagramPacket pacoteEnviado = pacoteCaptor.getValue();
+        String resposta = new String(pacoteEnviado.getData(), 0, pacoteEnviado.getLength());
+        assertTrue(resposta.contains("Olá Cliente Texto"));
+    }
+    
+    @Test
+    @DisplayName("Deve registrar um lote comprimido de pessoas com uma só confirmação")
+    public void testLoteComprimido() throws Exception {
+        InetAddress enderecoCliente = InetAddress.getLocalHost();
+        Pessoa[] lote = new Pessoa[30];
+        for (int i = 0; i < lote.length; i++) {
+            lote[i] = new Pessoa("Pessoa do Lote " + i, 20 + i);
+        }
+        byte[] serializado = serializar(lote);
+        byte[] requisicao = ProtocoloBinario.montarRequisicaoComprimida(
+                ProtocoloBinario.FLAG_RESPOSTA_BINARIA, 91, serializado);
+        assertTrue((ProtocoloBinario.lerFlags(requisicao, 0) & ProtocoloBinario.FLAG_COMPRIMIDO) != 0);
+        assertTrue(requisicao.length < serializado.length / 2, "Comprimida: " + requisicao.length);
+        
+        invocarProcessarRequisicao(requisicao, enderecoCliente);
+        
+        ArgumentCaptor<DatagramPacket> pacoteCaptor = ArgumentCaptor.forClass(DatagramPacket.class);
+        verify(mockSocket).send(pacoteCaptor.capture());
+        
+        DatagramPacket pacoteEnviado = pacoteCaptor.getValue();
+        ProtocoloBinario.Ack ack = ProtocoloBinario.decodificarAck(
+                pacoteEnviado.getData(), pacoteEnviado.getOffset(), pacoteEnviado.getLength());
+        assertEquals(ProtocoloBinario.STATUS_OK, ack.getStatus());
+        assertEquals(91, ack.getIdRequisicao());
+        assertTrue(ack.getSequencia() >= lote.length);
+    }
+    
+    @Test
+    @DisplayName("Deve recusar requisição comprimida corrompida")
+    public void testComprimidaCorrompida() throws Exception {
+        InetAddress enderecoCliente = InetAddress.getLocalHost();
+        byte[] requisicao = ProtocoloBinario.montarRequisicaoComprimida(
+                ProtocoloBinario.FLAG_RESPOSTA_BINARIA, 92, serializar(new Pessoa[]{
+                    new Pessoa("Primeira Pessoa", 30), new Pessoa("Segunda Pessoa", 31)}));
+        assertTrue((ProtocoloBinario.lerFlags(requisicao, 0) & ProtocoloBinario.FLAG_COMPRIMIDO) != 0);
+        byte[] truncada = Arrays.copyOf(requisicao, requisicao.length - 4);
+        
+        InvocationTargetException erro = assertThrows(InvocationTargetException.class,
+                () -> invocarProcessarRequisicao(truncada, enderecoCliente));
+        assertTrue(erro.getCause() instanceof IOException);
+        
+        ArgumentCaptor<DatagramPacket> pacoteCaptor = ArgumentCaptor.forClass(DatagramPacket.class);
+        verify(mockSocket).send(pacoteCaptor.capture());
+        DatagramPacket pacoteEnviado = pacoteCaptor.getValue();
+        assertEquals(ProtocoloBinario.STATUS_ERRO, ProtocoloBinario.decodificarAck(
+                pacoteEnviado.getData(), pacoteEnviado.getOffset(), pacoteEnviado.getLength()).getStatus());
+    }
+    
+    @Test
+    @DisplayName("Deve responder consulta binária com a confirmação seguida do texto")
+    public void testConsultaBinaria() throws Exception {
+        InetAddress enderecoCliente = InetAddress.getLocalHost();
+        invocarProcessarRequisicao(serializar(new Pessoa("Idade Binária", 131)), enderecoCliente);
+        
+        byte[] requisicao = ProtocoloBinario.montarRequisicao(
+                ProtocoloBinario.FLAG_RESPOSTA_BINARIA, 93, serializar(Consulta.contagemEntre(131, 131)));
+        invocarProcessarRequisicao(requisicao, enderecoCliente);
+        
+        ArgumentCaptor<DatagramPacket> pacoteCaptor = ArgumentCaptor.forClass(DatagramPacket.class);
+        verify(mockSocket, times(2)).send(pacoteCaptor.capture());
+        
+        DatagramPacket pacoteConsulta = pacoteCaptor.getAllValues().get(1);
+        ProtocoloBinario.Ack ack = ProtocoloBinario.decodificarAck(
+                pacoteConsulta.getData(), pacoteConsulta.getOffset(), ProtocoloBinario.TAMANHO_ACK);
+        assertEquals(ProtocoloBinario.STATUS_OK, ack.getStatus());
+        assertEquals(93, ack.getIdRequisicao());
+        assertTrue(ack.getSequencia() > 0);
+        assertEquals("Pessoas com idade entre 131 e 131: 1", ProtocoloBinario.lerTextoResposta(
+                pacoteConsulta.getData(), pacoteConsulta.getOffset(), pacoteConsulta.getLength()));
+    }
+    
+    @Test
+    @DisplayName("Deve recusar com confirmação de erro um objeto que não é pessoa nem consulta")
+    public void testObjetoNaoSuportado() throws Exception {
+        InetAddress enderecoCliente = InetAddress.getLocalHost();
+        byte[] requisicao = ProtocoloBinario.montarRequisicao(
+                ProtocoloBinario.FLAG_RESPOSTA_BINARIA, 94, serializar("não sou uma pessoa"));
+        
+        InvocationTargetException erro = assertThrows(InvocationTargetException.class,
+                () -> invocarProcessarRequisicao(requisicao, enderecoCliente));
+        assertTrue(erro.getCause() instanceof IOException);
+        
+        // Um lote com posição vazia também é recusado, sem registrar ninguém
+        byte[] loteIncompleto = ProtocoloBinario.montarRequisicao(
+                ProtocoloBinario.FLAG_RESPOSTA_BINARIA, 95, serializar(new Pessoa[]{new Pessoa("Sozinha", 30), null}));
+        assertThrows(InvocationTargetException.class,
+                () -> invocarProcessarRequisicao(loteIncompleto, enderecoCliente));
+        
+        ArgumentCaptor<DatagramPacket> pacoteCaptor = ArgumentCaptor.forClass(DatagramPacket.class);
+        verify(mockSocket, times(2)).send(pacoteCaptor.capture());
+        for (int i = 0; i < 2; i++) {
+            DatagramPacket pacoteEnviado = pacoteCaptor.getAllValues().get(i);
+            ProtocoloBinario.Ack ack = ProtocoloBinario.decodificarAck(
+                    pacoteEnviado.getData(), pacoteEnviado.getOffset(), pacoteEnviado.getLength());
+            assertEquals(ProtocoloBinario.STATUS_ERRO, ack.getStatus());
+            assertEquals(94 + i, ack.getIdRequisicao());
+        }
+    }
+    
+    /**
+     * Serializa um objeto para envio ao tratador.
+     */
+    private byte[] serializar(Object objeto) throws Exception {
+        ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+        ObjectOutputStream objectStream = new ObjectOutputStream(byteStream);
+        objectStream.writeObject(objeto);
+        objectStream.flush();
+        return byteStream.toByteArray();
+    }
+    
+    /**
+     * Cria um TratadorRequisicao por reflexão e processa os dados informados.
+     */
+    private void invocarProcessarRequisicao(byte[] dados, InetAddress endereco) throws Exception {
+        Class<?> tratadorClass = null;
+        for (Class<?> innerClass : Servidor.class.getDeclaredClasses()) {
+            if (innerClass.getSimpleName().equals("TratadorRequisicao")) {
+                tratadorClass = innerClass;
+                break;
+            }
+        }
+        assertNotNull(tratadorClass, "A classe TratadorRequisicao deve existir");
+        
+        DatagramPacket pacote = new DatagramPacket(dados, dados.length, endereco, 12345);
+        Object tratador = tratadorClass.getDeclaredConstructor(
+                DatagramPacket.class, DatagramSocket.class)
+                .newInstance(pacote, mockSocket);
+        
+        Method processarRequisicao = tratadorClass.getDeclaredMethod("processarRequisicao");
+        processarRequisicao.setAccessible(true);
+        processarRequisicao.invoke(tratador);
+    }
 }
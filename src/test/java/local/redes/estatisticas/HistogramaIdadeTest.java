@@ -0,0 +1,93 @@
+package local.redes.estatisticas;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testes unitários para a classe HistogramaIdade.
+ */
+public class HistogramaIdadeTest {
+
+    @Test
+    @DisplayName("Deve contar pessoas por faixa de idade")
+    public void testContarEntre() {
+        HistogramaIdade histograma = new HistogramaIdade();
+        histograma.registrar(18);
+        histograma.registrar(25);
+        histograma.registrar(25);
+        histograma.registrar(60);
+
+        assertEquals(3, histograma.contarEntre(18, 30));
+        assertEquals(2, histograma.contarEntre(25, 25));
+        assertEquals(0, histograma.contarEntre(61, 150));
+        assertEquals(4, histograma.getTotal());
+    }
+
+    @Test
+    @DisplayName("Deve ajustar limites fora do intervalo suportado")
+    public void testLimitesAjustados() {
+        HistogramaIdade histograma = new HistogramaIdade();
+        histograma.registrar(0);
+        histograma.registrar(150);
+
+        assertEquals(2, histograma.contarEntre(-10, 1000));
+        assertEquals(0, histograma.contarEntre(30, 10));
+    }
+
+    @Test
+    @DisplayName("Deve rejeitar idades fora do intervalo")
+    public void testIdadeInvalida() {
+        HistogramaIdade histograma = new HistogramaIdade();
+
+        assertFalse(histograma.registrar(-1));
+        assertFalse(histograma.registrar(151));
+        assertEquals(0, histograma.getTotal());
+        assertEquals(2, histograma.getForaDoIntervalo());
+    }
+
+    @Test
+    @DisplayName("Deve retornar cópia da distribuição")
+    public void testDistribuicao() {
+        HistogramaIdade histograma = new HistogramaIdade();
+        histograma.registrar(42);
+
+        long[] distribuicao = histograma.distribuicao();
+        assertEquals(HistogramaIdade.IDADE_MAXIMA + 1, distribuicao.length);
+        assertEquals(1, distribuicao[42]);
+
+        distribuicao[42] = 100;
+        assertEquals(1, histograma.contarEntre(42, 42));
+    }
+
+    @Test
+    @DisplayName("Deve manter contagem correta com várias threads")
+    public void testRegistroConcorrente() throws Exception {
+        HistogramaIdade histograma = new HistogramaIdade();
+        int threads = 8;
+        int registrosPorThread = 10000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch concluido = new CountDownLatch(threads);
+
+        for (int t = 0; t < threads; t++) {
+            executor.submit(() -> {
+                for (int i = 0; i < registrosPorThread; i++) {
+                    histograma.registrar(i % 100);
+                }
+                concluido.countDown();
+            });
+        }
+
+        assertTrue(concluido.await(10, TimeUnit.SECONDS));
+        executor.shutdown();
+
+        assertEquals((long) threads * registrosPorThread, histograma.getTotal());
+        assertEquals((long) threads * registrosPorThread / 100, histograma.contarEntre(7, 7));
+    }
+}
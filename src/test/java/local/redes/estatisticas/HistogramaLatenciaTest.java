@@ -0,0 +1,62 @@
+package local.redes.estatisticas;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testes unitários para a classe HistogramaLatencia.
+ */
+public class HistogramaLatenciaTest {
+
+    @Test
+    @DisplayName("Deve calcular percentis com erro relativo limitado")
+    public void testPercentis() {
+        HistogramaLatencia histograma = new HistogramaLatencia();
+        for (long valor = 1; valor <= 10000; valor++) {
+            histograma.registrar(valor * 1000);
+        }
+
+        HistogramaLatencia.Retrato retrato = histograma.retrato();
+        assertEquals(10000, retrato.getContagem());
+        assertEquals(5_000_000, retrato.percentil(50), 5_000_000 * 0.07);
+        assertEquals(9_900_000, retrato.percentil(99), 9_900_000 * 0.07);
+        assertEquals(10_000_000, retrato.getMaximo(), 10_000_000 * 0.07);
+    }
+
+    @Test
+    @DisplayName("Deve representar valores pequenos exatamente")
+    public void testValoresPequenos() {
+        HistogramaLatencia histograma = new HistogramaLatencia();
+        histograma.registrar(3);
+        histograma.registrar(-5);
+
+        HistogramaLatencia.Retrato retrato = histograma.retrato();
+        assertEquals(0, retrato.percentil(50));
+        assertEquals(3, retrato.getMaximo());
+    }
+
+    @Test
+    @DisplayName("Deve zerar contagens ao tirar retrato do intervalo")
+    public void testRetratoEZerar() {
+        HistogramaLatencia histograma = new HistogramaLatencia();
+        histograma.registrar(1000);
+
+        assertEquals(1, histograma.retratoEZerar().getContagem());
+        assertEquals(0, histograma.retrato().getContagem());
+        assertEquals(0, histograma.retrato().percentil(99));
+    }
+
+    @Test
+    @DisplayName("Faixas devem ser contínuas e crescentes")
+    public void testFaixasContinuas() {
+        int anterior = -1;
+        for (long valor = 0; valor < 100000; valor++) {
+            int indice = HistogramaLatencia.indice(valor);
+            assertTrue(indice == anterior || indice == anterior + 1, "Faixa descontínua em " + valor);
+            assertTrue(HistogramaLatencia.limiteSuperior(indice) >= valor);
+            anterior = indice;
+        }
+    }
+}
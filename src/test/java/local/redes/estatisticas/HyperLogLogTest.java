@@ -0,0 +1,51 @@
+package local.redes.estatisticas;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testes unitários para a classe HyperLogLog.
+ */
+public class HyperLogLogTest {
+
+    @Test
+    @DisplayName("Deve estimar zero para conjunto vazio")
+    public void testConjuntoVazio() {
+        HyperLogLog hll = new HyperLogLog(12);
+
+        assertEquals(0, hll.estimar());
+    }
+
+    @Test
+    @DisplayName("Deve ignorar elementos repetidos")
+    public void testElementosRepetidos() {
+        HyperLogLog hll = new HyperLogLog(12);
+        for (int i = 0; i < 1000; i++) {
+            hll.adicionar("Maria");
+        }
+
+        assertEquals(1, hll.estimar());
+    }
+
+    @Test
+    @DisplayName("Deve estimar cardinalidade com erro pequeno")
+    public void testEstimativaGrande() {
+        HyperLogLog hll = new HyperLogLog(12);
+        int distintos = 100000;
+        for (int i = 0; i < distintos; i++) {
+            hll.adicionar("cliente-" + i);
+        }
+
+        double erro = Math.abs(hll.estimar() - distintos) / (double) distintos;
+        assertTrue(erro < 0.05, "Erro relativo deve ser menor que 5%, foi " + erro);
+    }
+
+    @Test
+    @DisplayName("Deve rejeitar precisão inválida")
+    public void testPrecisaoInvalida() {
+        assertThrows(IllegalArgumentException.class, () -> new HyperLogLog(2));
+        assertThrows(IllegalArgumentException.class, () -> new HyperLogLog(30));
+    }
+}
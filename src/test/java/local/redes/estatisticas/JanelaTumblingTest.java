@@ -0,0 +1,106 @@
+package local.redes.estatisticas;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testes unitários para a classe JanelaTumbling e seu mapa primitivo.
+ */
+public class JanelaTumblingTest {
+
+    /**
+     * Consumidor que copia o conteúdo das janelas fechadas.
+     */
+    private static class ConsumidorColetor implements ConsumidorJanela {
+        private final List<long[]> linhas = new ArrayList<>();
+        private final List<Long> inicios = new ArrayList<>();
+
+        @Override
+        public void janelaFechada(long inicioMillis, long duracaoMillis, MapaContadoresCliente contadores) {
+            inicios.add(inicioMillis);
+            contadores.paraCada((chave, requisicoes, bytes) ->
+                    linhas.add(new long[]{inicioMillis, chave, requisicoes, bytes}));
+        }
+    }
+
+    @Test
+    @DisplayName("Deve empacotar endereço IPv4 e porta na chave")
+    public void testChaveCliente() throws Exception {
+        long chave = MapaContadoresCliente.chave(InetAddress.getByName("192.168.0.10"), 50000);
+
+        assertEquals("192.168.0.10:50000", MapaContadoresCliente.descrever(chave));
+        assertTrue(chave >= 0);
+    }
+
+    @Test
+    @DisplayName("Deve acumular contadores e crescer o mapa primitivo")
+    public void testMapaContadores() {
+        MapaContadoresCliente mapa = new MapaContadoresCliente();
+        for (long chave = 0; chave < 1000; chave++) {
+            mapa.adicionar(chave, 10);
+            mapa.adicionar(chave, 5);
+        }
+
+        assertEquals(1000, mapa.tamanho());
+        assertEquals(2, mapa.getRequisicoes(123));
+        assertEquals(15, mapa.getBytes(999));
+        assertEquals(0, mapa.getRequisicoes(5000));
+
+        mapa.limpar();
+        assertEquals(0, mapa.tamanho());
+    }
+
+    @Test
+    @DisplayName("Deve fechar janela ao cruzar o limite de tempo")
+    public void testRotacaoJanela() {
+        ConsumidorColetor coletor = new ConsumidorColetor();
+        JanelaTumbling janela = new JanelaTumbling(1000, 4, coletor);
+
+        janela.registrar(1L, 100, 10_000);
+        janela.registrar(1L, 50, 10_500);
+        janela.registrar(2L, 70, 10_999);
+
+        // Ainda dentro da mesma janela
+        assertTrue(coletor.inicios.isEmpty());
+
+        // Primeiro pacote da janela seguinte fecha a anterior
+        janela.registrar(1L, 10, 11_000);
+
+        assertEquals(1, coletor.inicios.size());
+        assertEquals(10_000L, (long) coletor.inicios.get(0));
+        assertEquals(2, coletor.linhas.size());
+        for (long[] linha : coletor.linhas) {
+            if (linha[1] == 1L) {
+                assertEquals(2, linha[2]);
+                assertEquals(150, linha[3]);
+            } else {
+                assertEquals(1, linha[2]);
+                assertEquals(70, linha[3]);
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Deve fechar janela ociosa na rotação periódica")
+    public void testRotacaoPeriodica() {
+        ConsumidorColetor coletor = new ConsumidorColetor();
+        JanelaTumbling janela = new JanelaTumbling(60_000, 2, coletor);
+
+        janela.registrar(7L, 20, 120_000);
+        janela.rotacionarSeNecessario(150_000);
+        assertTrue(coletor.inicios.isEmpty());
+
+        janela.rotacionarSeNecessario(180_000);
+        assertEquals(1, coletor.inicios.size());
+
+        // Janela vazia não é entregue
+        janela.rotacionarSeNecessario(240_000);
+        assertEquals(1, coletor.inicios.size());
+    }
+}
@@ -0,0 +1,70 @@
+package local.redes.estatisticas;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testes unitários para o quadro de estatísticas e o monitor que o agrega.
+ */
+public class QuadroEstatisticasTest {
+
+    private QuadroEstatisticas criarQuadro(long id, long requisicoes) {
+        return new QuadroEstatisticas(id, 50000, 1_700_000_000_000L, 1000,
+                requisicoes, 2, 150, 400, 900, 1500, 3, 4, 12345);
+    }
+
+    @Test
+    @DisplayName("Deve codificar e decodificar o quadro sem perdas")
+    public void testCodificacao() {
+        byte[] dados = criarQuadro(42L, 250).codificar();
+
+        assertEquals(QuadroEstatisticas.TAMANHO, dados.length);
+        assertTrue(QuadroEstatisticas.ehQuadro(dados, 0, dados.length));
+
+        QuadroEstatisticas quadro = QuadroEstatisticas.decodificar(dados, 0, dados.length);
+        assertEquals(42L, quadro.getIdServidor());
+        assertEquals(50000, quadro.getPorta());
+        assertEquals(1_700_000_000_000L, quadro.getEpochMillis());
+        assertEquals(250, quadro.getRequisicoes());
+        assertEquals(2, quadro.getDescartadas());
+        assertEquals(150, quadro.getLatenciaP50Micros());
+        assertEquals(400, quadro.getLatenciaP90Micros());
+        assertEquals(900, quadro.getLatenciaP99Micros());
+        assertEquals(1500, quadro.getLatenciaMaximaMicros());
+        assertEquals(3, quadro.getPendentes());
+        assertEquals(4, quadro.getThreadsAtivas());
+        assertEquals(12345, quadro.getTotalRequisicoes());
+        assertEquals(250.0, quadro.getVazao(), 0.001);
+    }
+
+    @Test
+    @DisplayName("Deve rejeitar dados que não são quadros")
+    public void testDadosInvalidos() {
+        byte[] texto = "Fulano entrou no chat.".getBytes();
+
+        assertFalse(QuadroEstatisticas.ehQuadro(texto, 0, texto.length));
+        assertThrows(IllegalArgumentException.class,
+                () -> QuadroEstatisticas.decodificar(texto, 0, texto.length));
+    }
+
+    @Test
+    @DisplayName("Monitor deve agregar quadros de vários servidores")
+    public void testMonitorAgregaServidores() throws Exception {
+        MonitorEstatisticas monitor = new MonitorEstatisticas();
+        InetAddress origem = InetAddress.getByName("127.0.0.1");
+
+        byte[] primeiro = criarQuadro(1L, 100).codificar();
+        byte[] segundo = criarQuadro(2L, 300).codificar();
+        monitor.onPacketReceived(ByteBuffer.wrap(primeiro), origem);
+        monitor.onPacketReceived(ByteBuffer.wrap(segundo), origem);
+
+        String relatorio = monitor.montarRelatorio();
+        assertTrue(relatorio.contains("Frota (2 servidores)"));
+        assertTrue(relatorio.contains("400.0"));
+    }
+}
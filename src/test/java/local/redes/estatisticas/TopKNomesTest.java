@@ -0,0 +1,79 @@
+package local.redes.estatisticas;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testes unitários para a classe TopKNomes.
+ */
+public class TopKNomesTest {
+
+    @Test
+    @DisplayName("Deve reportar os nomes mais frequentes em ordem")
+    public void testRetratoOrdenado() {
+        TopKNomes topK = new TopKNomes(3);
+        registrarVezes(topK, "Ana", 50);
+        registrarVezes(topK, "João", 30);
+        registrarVezes(topK, "Maria", 20);
+        for (int i = 0; i < 200; i++) {
+            topK.registrar("raro-" + i);
+        }
+
+        List<Map.Entry<String, Long>> retrato = topK.retrato();
+
+        assertEquals(3, retrato.size());
+        assertEquals("Ana", retrato.get(0).getKey());
+        assertEquals("João", retrato.get(1).getKey());
+        assertEquals("Maria", retrato.get(2).getKey());
+        assertTrue(retrato.get(0).getValue() >= 50, "Count-Min nunca subestima");
+    }
+
+    @Test
+    @DisplayName("Deve ignorar nomes nulos")
+    public void testNomeNulo() {
+        TopKNomes topK = new TopKNomes(2);
+        topK.registrar(null);
+
+        assertTrue(topK.retrato().isEmpty());
+    }
+
+    @Test
+    @DisplayName("Deve aceitar registros concorrentes")
+    public void testRegistroConcorrente() throws Exception {
+        TopKNomes topK = new TopKNomes(2);
+        int threads = 4;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch concluido = new CountDownLatch(threads);
+
+        for (int t = 0; t < threads; t++) {
+            executor.submit(() -> {
+                for (int i = 0; i < 5000; i++) {
+                    topK.registrar(i % 2 == 0 ? "Pedro" : "nome-" + i);
+                }
+                concluido.countDown();
+            });
+        }
+
+        assertTrue(concluido.await(10, TimeUnit.SECONDS));
+        executor.shutdown();
+
+        List<Map.Entry<String, Long>> retrato = topK.retrato();
+        assertEquals("Pedro", retrato.get(0).getKey());
+        assertTrue(retrato.get(0).getValue() >= 10000);
+    }
+
+    private void registrarVezes(TopKNomes topK, String nome, int vezes) {
+        for (int i = 0; i < vezes; i++) {
+            topK.registrar(nome);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package local.redes.multicast;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import javax.swing.SwingUtilities;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testes para a escrita em lotes no histórico do chat.
+ * Usam apenas a lista e a thread de eventos, sem janelas.
+ */
+public class ChatAreaAppenderTest {
+
+    /**
+     * Cria uma lista com espaço para todas as mensagens do teste.
+     */
+    private static ChatHistoryView newView() {
+        return new ChatHistoryView(new ChatHistory(50000, null));
+    }
+
+    /**
+     * Lê o tamanho do histórico na thread de eventos.
+     */
+    private static int lineCount(ChatHistoryView view) throws Exception {
+        final int[] lines = new int[1];
+        SwingUtilities.invokeAndWait(() -> lines[0] = view.getHistory().getSize());
+        return lines[0];
+    }
+
+    @Test
+    @DisplayName("Deve escrever todas as mensagens em ordem com poucas atualizações")
+    public void testAgrupaAtualizacoes() throws Exception {
+        ChatHistoryView view = newView();
+        ChatAreaAppender appender = new ChatAreaAppender(view);
+
+        for (int i = 0; i < 20000; i++) {
+            appender.append("mensagem " + i);
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (lineCount(view) < 20000 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+
+        final String[] lines = new String[20000];
+        final long[] flushes = new long[1];
+        SwingUtilities.invokeAndWait(() -> {
+            for (int i = 0; i < lines.length; i++) {
+                lines[i] = view.getHistory().getElementAt(i);
+            }
+            flushes[0] = appender.getFlushes();
+        });
+        assertEquals(20000, lineCount(view));
+        assertTrue(lines[0].endsWith("] mensagem 0"));
+        assertTrue(lines[12345].endsWith("] mensagem 12345"));
+        assertTrue(lines[19999].endsWith("] mensagem 19999"));
+        assertTrue(flushes[0] <= 20000 / ChatAreaAppender.MAX_LINES_PER_FLUSH + 2,
+                "Uma rajada deve ser escrita em poucas atualizações: " + flushes[0]);
+    }
+
+    @Test
+    @DisplayName("Deve manter a thread de eventos responsiva a 10 mil mensagens por segundo")
+    public void testResponsividadeSobCarga() throws Exception {
+        ChatHistoryView view = newView();
+        ChatAreaAppender appender = new ChatAreaAppender(view);
+        final int total = 20000;
+        final long intervalNanos = TimeUnit.SECONDS.toNanos(1) / 10000;
+
+        Thread producer = new Thread(() -> {
+            long start = System.nanoTime();
+            for (int i = 0; i < total; i++) {
+                long wait = start + i * intervalNanos - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                appender.append("usuario diz: mensagem de carga " + i);
+            }
+        });
+        producer.start();
+
+        // Mede quanto uma tarefa qualquer espera pela thread de eventos
+        AtomicLong worst = new AtomicLong();
+        while (producer.isAlive()) {
+            long sent = System.nanoTime();
+            SwingUtilities.invokeAndWait(() -> { });
+            worst.accumulateAndGet(System.nanoTime() - sent, Math::max);
+            Thread.sleep(5);
+        }
+        producer.join();
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (lineCount(view) < total && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(total, lineCount(view));
+
+        final long[] flushes = new long[1];
+        SwingUtilities.invokeAndWait(() -> flushes[0] = appender.getFlushes());
+        // ~2 s de carga a no máximo uma atualização por quadro
+        assertTrue(flushes[0] < total / 20, "Atualizações demais: " + flushes[0]);
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(worst.get()) < 500,
+                "A thread de eventos ficou presa por " + TimeUnit.NANOSECONDS.toMillis(worst.get()) + " ms");
+    }
+
+    @Test
+    @DisplayName("Deve escrever na hora quando a atualização é antecipada")
+    public void testFlushImediato() throws Exception {
+        ChatHistoryView view = newView();
+        ChatAreaAppender appender = new ChatAreaAppender(view);
+
+        SwingUtilities.invokeAndWait(() -> {
+            appender.append("Você diz: oi");
+            appender.flush();
+            assertTrue(view.getHistory().getElementAt(0).endsWith("] Você diz: oi"));
+            assertEquals(1, appender.getAppended());
+        });
+    }
+}
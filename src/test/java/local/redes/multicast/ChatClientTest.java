@@ -28,7 +28,7 @@ public class ChatClientTest {
     private MulticastManager mockManager;
     
     private ChatClient client;
-    private JTextArea chatArea;
+    private ChatHistoryView chatView;
     private JTextField messageField;
 
     /**
@@ -40,11 +40,11 @@ public class ChatClientTest {
         client = createChatClientWithMockManager();
         
         // Acessar componentes de UI
-        chatArea = getComponent(client, "chatArea", JTextArea.class);
+        chatView = getComponent(client, "chatView", ChatHistoryView.class);
         messageField = getComponent(client, "messageField", JTextField.class);
         
-        // Limpar o conteúdo do chatArea para isolar os testes
-        chatArea.setText("");
+        // Limpar o histórico do chat para isolar os testes
+        chatView.getHistory().clear();
     }
     
     /**
@@ -104,13 +104,25 @@ public class ChatClientTest {
         return method.invoke(instance, params);
     }
 
+    /**
+     * Junta as linhas do histórico exibido em um único texto.
+     */
+    private String chatText() {
+        ChatHistory history = chatView.getHistory();
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < history.getSize(); i++) {
+            text.append(history.getElementAt(i)).append('\n');
+        }
+        return text.toString();
+    }
+
     @Test
     @DisplayName("Deve configurar componentes da interface corretamente")
     public void testInterfaceComponentsInitialization() throws Exception {
         // Verificar componentes principais
-        assertNotNull(chatArea);
-        assertFalse(chatArea.isEditable());
-        assertTrue(chatArea.getLineWrap());
+        assertNotNull(chatView);
+        assertEquals(ChatHistory.DEFAULT_CAPACITY, chatView.getHistory().getCapacity());
+        assertTrue(chatView.getFixedCellHeight() > 0, "As linhas devem ter altura fixa");
         
         assertNotNull(messageField);
         assertNotNull(getComponent(client, "sendButton", JButton.class));
@@ -132,8 +144,9 @@ public class ChatClientTest {
         // Chamar método sendMessage
         callPrivateMethod(client, "sendMessage", new Class<?>[]{}, new Object[]{});
         
-        // Verificar que o manager foi chamado para enviar a mensagem
-        verify(mockManager).sendMessage("Mensagem de teste");
+        // Verificar que a mensagem foi publicada sem esperar pelo socket
+        verify(mockManager).publishAsync(eq("Mensagem de teste"), any(MulticastManager.SendFailureListener.class));
+        verify(mockManager, never()).sendMessage(anyString());
         
         // Verificar que o campo de texto foi limpo
         assertEquals("", messageField.getText());
@@ -161,6 +174,7 @@ public class ChatClientTest {
         
         // Verificar que o manager NÃO foi chamado para enviar mensagem
         verify(mockManager, never()).sendMessage(anyString());
+        verify(mockManager, never()).publishAsync(anyString(), any());
     }
     
     @Test
@@ -171,7 +185,7 @@ public class ChatClientTest {
         callPrivateMethod(client, "appendSystemMessage", new Class<?>[]{String.class}, new Object[]{message});
         
         // Verificar texto exibido
-        String chatText = chatArea.getText();
+        String chatText = chatText();
         assertTrue(chatText.contains(message), "O texto no chat deve conter a mensagem");
         assertTrue(chatText.contains("["), "O texto no chat deve conter um timestamp entre colchetes");
     }
@@ -184,7 +198,7 @@ public class ChatClientTest {
         callPrivateMethod(client, "appendMyMessage", new Class<?>[]{String.class}, new Object[]{message});
         
         // Verificar texto exibido
-        String chatText = chatArea.getText();
+        String chatText = chatText();
         assertTrue(chatText.contains(message), "O texto no chat deve conter a mensagem");
         assertTrue(chatText.contains("Você diz:"), "O texto no chat deve conter 'Você diz:'");
     }
@@ -195,17 +209,19 @@ public class ChatClientTest {
         // Simular recebimento de mensagem
         String message = "User1 diz: Olá!";
         
-        // Primeiro vamos verificar que o chatArea está vazio
-        assertEquals("", chatArea.getText(), "chatArea deve estar vazio antes do teste");
+        // Primeiro vamos verificar que o histórico está vazio
+        assertEquals(0, chatView.getHistory().getSize(), "O histórico deve estar vazio antes do teste");
+        
+        // A mensagem recebida só é acumulada até a próxima atualização da tela
+        client.onMessageReceived(message, "User1");
         
-        // Chamar o método diretamente em vez de usar EventDispatchThread
-        Method appendReceivedMethod = ChatClient.class.getDeclaredMethod(
-                "appendReceivedMessage", String.class, String.class);
-        appendReceivedMethod.setAccessible(true);
-        appendReceivedMethod.invoke(client, "User1", message);
+        // Antecipar a atualização em vez de esperar o próximo quadro
+        Field appenderField = ChatClient.class.getDeclaredField("chatAppender");
+        appenderField.setAccessible(true);
+        ((ChatAreaAppender) appenderField.get(client)).flush();
         
-        // Verificar texto exibido após chamar o método diretamente
-        String chatText = chatArea.getText();
+        // Verificar texto exibido após a atualização
+        String chatText = chatText();
         assertTrue(chatText.contains(message), "O texto no chat deve conter a mensagem");
     }
 }
@@ -0,0 +1,129 @@
+package local.redes.multicast;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.swing.event.ListDataEvent;
+import javax.swing.event.ListDataListener;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testes para o histórico do chat com memória limitada.
+ */
+public class ChatHistoryTest {
+
+    private static List<String> lines(int from, int to) {
+        List<String> lines = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            lines.add("linha " + i);
+        }
+        return lines;
+    }
+
+    @Test
+    @DisplayName("Deve manter apenas as linhas mais recentes e gravar as antigas em ordem")
+    public void testLimiteEGravacao(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("historico.log");
+        ChatHistory history = new ChatHistory(100, file);
+
+        for (int i = 0; i < 1000; i += 7) {
+            history.addAll(lines(i, Math.min(i + 7, 1000)));
+        }
+
+        assertEquals(100, history.getSize());
+        assertEquals("linha 900", history.getElementAt(0));
+        assertEquals("linha 999", history.getElementAt(99));
+        assertEquals(900, history.getSpilled());
+
+        history.awaitSpill();
+        List<String> spilled = Files.readAllLines(file, StandardCharsets.UTF_8);
+        assertEquals(lines(0, 900), spilled);
+        history.close();
+    }
+
+    @Test
+    @DisplayName("Deve apagar o arquivo temporário ao fechar e manter o informado")
+    public void testArquivoTemporarioApagado(@TempDir Path dir) throws Exception {
+        ChatHistory temporary = new ChatHistory(2, null);
+        temporary.addAll(lines(0, 5));
+        temporary.awaitSpill();
+        Path file = temporary.getSpillFile();
+        assertTrue(Files.exists(file));
+        temporary.close();
+        temporary.awaitSpill();
+        assertFalse(Files.exists(file), "O arquivo temporário deve ser apagado");
+        assertNull(temporary.getSpillFile());
+
+        Path kept = dir.resolve("historico.log");
+        ChatHistory named = new ChatHistory(2, kept);
+        named.addAll(lines(0, 5));
+        named.close();
+        named.awaitSpill();
+        assertEquals(lines(0, 3), Files.readAllLines(kept, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    @DisplayName("Deve gravar direto no disco o excesso de um lote maior que a capacidade")
+    public void testLoteMaiorQueCapacidade(@TempDir Path dir) throws Exception {
+        Path file = dir.resolve("historico.log");
+        ChatHistory history = new ChatHistory(10, file);
+        history.addAll(lines(0, 5));
+        history.addAll(lines(5, 30));
+
+        assertEquals(10, history.getSize());
+        assertEquals("linha 20", history.getElementAt(0));
+        assertEquals("linha 29", history.getElementAt(9));
+
+        history.awaitSpill();
+        assertEquals(lines(0, 20), Files.readAllLines(file, StandardCharsets.UTF_8));
+        history.close();
+    }
+
+    @Test
+    @DisplayName("Deve avisar a lista apenas do trecho que saiu e do que entrou")
+    public void testEventosDaLista(@TempDir Path dir) throws Exception {
+        ChatHistory history = new ChatHistory(4, dir.resolve("historico.log"));
+        final List<String> events = new ArrayList<>();
+        history.addListDataListener(new ListDataListener() {
+            @Override
+            public void intervalAdded(ListDataEvent e) {
+                events.add("+" + e.getIndex0() + "-" + e.getIndex1());
+            }
+
+            @Override
+            public void intervalRemoved(ListDataEvent e) {
+                events.add("-" + e.getIndex0() + "-" + e.getIndex1());
+            }
+
+            @Override
+            public void contentsChanged(ListDataEvent e) {
+                events.add("*");
+            }
+        });
+
+        history.addAll(lines(0, 3));
+        history.addAll(lines(3, 6));
+        history.add("linha 6");
+        history.clear();
+
+        assertEquals(Arrays.asList("+0-2", "-0-1", "+1-3", "-0-0", "+3-3", "-0-3"), events);
+        assertEquals(0, history.getSize());
+        assertEquals(7, history.getSpilled());
+        assertThrows(IndexOutOfBoundsException.class, () -> history.getElementAt(0));
+        history.close();
+    }
+
+    @Test
+    @DisplayName("Deve rejeitar capacidade inválida")
+    public void testCapacidadeInvalida() {
+        assertThrows(IllegalArgumentException.class, () -> new ChatHistory(0, null));
+    }
+}
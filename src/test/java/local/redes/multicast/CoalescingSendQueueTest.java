@@ -0,0 +1,290 @@
+package local.redes.multicast;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MulticastSocket;
+import java.net.NetworkInterface;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testes para a fila de envio assíncrona do MulticastManager.
+ *
+ * Nota: Estes testes requerem suporte a multicast na rede local.
+ */
+public class CoalescingSendQueueTest {
+
+    private InetAddress groupAddress;
+    private final int port = 50511;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        groupAddress = InetAddress.getByName("239.255.255.250");
+    }
+
+    @Test
+    @DisplayName("Deve agrupar mensagens de chat e entregá-las em ordem (teste de integração)")
+    public void testAgrupaMensagensDeChat() throws Exception {
+        final int total = 200;
+        final List<String> received = Collections.synchronizedList(new ArrayList<>());
+        final CountDownLatch allReceived = new CountDownLatch(total);
+
+        MulticastManager receiver = new MulticastManager(groupAddress, port, "Receiver");
+        receiver.setMessageListener((message, sender) -> {
+            if ("Publisher".equals(sender)) {
+                received.add(message);
+                allReceived.countDown();
+            }
+        });
+        receiver.startReceiving();
+
+        MulticastManager sender = new MulticastManager(groupAddress, port, "Publisher");
+        sender.enableSendQueue(5000, 1024);
+        sender.startReceiving();
+
+        Thread.sleep(500);
+
+        try {
+            for (int i = 0; i < total; i++) {
+                sender.sendMessage("mensagem " + i);
+            }
+
+            assertTrue(allReceived.await(5, TimeUnit.SECONDS), "Todas as mensagens devem ser recebidas");
+            for (int i = 0; i < total; i++) {
+                assertEquals("Publisher diz: mensagem " + i, received.get(i));
+            }
+            CoalescingSendQueue queue = sender.getSendQueue();
+            // O contador só avança depois do envio, que pode terminar depois da entrega
+            long deadline = System.currentTimeMillis() + 2000;
+            while (queue.getMessagesSent() < total && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(total, queue.getMessagesSent());
+            assertTrue(queue.getFramesSent() < total, "As mensagens devem ser agrupadas em menos datagramas");
+        } finally {
+            receiver.stop();
+            sender.stop();
+        }
+    }
+
+    @Test
+    @DisplayName("Deve entregar cada pacote binário de um lote separadamente (teste de integração)")
+    public void testDesmontaLoteBinario() throws Exception {
+        final int total = 100;
+        final boolean[] received = new boolean[total];
+        final CountDownLatch allReceived = new CountDownLatch(total);
+
+        MulticastManager receiver = new MulticastManager(groupAddress, port, "Receiver");
+        receiver.setRawMessageListener((data, source) -> {
+            if (data.remaining() == 100 && data.get(data.position() + 99) == 42) {
+                int index = data.get(data.position()) & 0xFF;
+                synchronized (received) {
+                    if (!received[index]) {
+                        received[index] = true;
+                        allReceived.countDown();
+                    }
+                }
+            }
+        });
+        receiver.startReceiving();
+
+        MulticastManager sender = new MulticastManager(groupAddress, port, "Publisher");
+        sender.enableSendQueue(5000, 1024);
+
+        Thread.sleep(500);
+
+        try {
+            byte[] payload = new byte[100];
+            payload[99] = 42;
+            for (int i = 0; i < total; i++) {
+                // O mesmo array é reutilizado: a fila deve guardar uma cópia
+                payload[0] = (byte) i;
+                sender.sendBytes(payload);
+            }
+
+            assertTrue(allReceived.await(5, TimeUnit.SECONDS), "Todos os pacotes devem ser recebidos");
+            assertTrue(sender.getSendQueue().getFramesSent() < total);
+        } finally {
+            receiver.stop();
+            sender.stop();
+        }
+    }
+
+    @Test
+    @DisplayName("Deve enviar as mensagens pendentes ao parar (teste de integração)")
+    public void testEsvaziaFilaAoParar() throws Exception {
+        final CountDownLatch received = new CountDownLatch(1);
+
+        MulticastManager receiver = new MulticastManager(groupAddress, port, "Receiver");
+        receiver.setMessageListener((message, sender) -> {
+            if ("Publisher diz: última".equals(message)) {
+                received.countDown();
+            }
+        });
+        receiver.startReceiving();
+
+        MulticastManager sender = new MulticastManager(groupAddress, port, "Publisher");
+        // Janela longa: só o fechamento da fila faz a mensagem sair a tempo
+        sender.enableSendQueue(TimeUnit.SECONDS.toMicros(30), 16);
+        sender.startReceiving();
+
+        Thread.sleep(500);
+
+        try {
+            sender.sendMessage("primeira");
+            sender.sendMessage("última");
+            sender.stop();
+
+            assertTrue(received.await(5, TimeUnit.SECONDS), "A mensagem pendente deve ser enviada");
+        } finally {
+            receiver.stop();
+        }
+    }
+
+    @Test
+    @DisplayName("Deve descontar o bloco de rastreio do tamanho do lote (teste de integração)")
+    public void testLoteComRastreio() throws Exception {
+        // 13 entradas de 105 bytes cabem no lote sem rastreio, mas estourariam com ele
+        final int rawPort = 50512;
+        NetworkInterface iface = MulticastManager.defaultInterface(groupAddress);
+        InetSocketAddress group = new InetSocketAddress(groupAddress, 0);
+        MulticastSocket socket = new MulticastSocket(rawPort);
+        socket.joinGroup(group, iface);
+        socket.setSoTimeout(2000);
+
+        MulticastManager sender = new MulticastManager(groupAddress, rawPort, "Publisher");
+        sender.enableTracing();
+        sender.enableSendQueue(50000, 1024);
+
+        try {
+            byte[] payload = new byte[102];
+            for (int i = 0; i < 40; i++) {
+                sender.sendBytes(payload);
+            }
+
+            byte[] buffer = new byte[MulticastReactor.MAX_DATAGRAM_SIZE];
+            int batches = 0;
+            int largest = 0;
+            long deadline = System.currentTimeMillis() + 5000;
+            while (batches < 3 && System.currentTimeMillis() < deadline) {
+                DatagramPacket packet = new DatagramPacket(buffer, buffer.length);
+                socket.receive(packet);
+                if (packet.getLength() > 3 && buffer[3] == MulticastFrame.TYPE_BATCH) {
+                    batches++;
+                    largest = Math.max(largest, packet.getLength());
+                }
+            }
+            assertEquals(3, batches, "As mensagens devem sair em lotes");
+            assertTrue(largest <= CoalescingSendQueue.MAX_BATCH_SIZE, "Maior lote: " + largest + " bytes");
+        } finally {
+            sender.startReceiving();
+            sender.stop();
+            socket.leaveGroup(group, iface);
+            socket.close();
+        }
+    }
+
+    @Test
+    @DisplayName("Deve rejeitar ativar a fila duas vezes e parâmetros inválidos")
+    public void testValidacao() throws Exception {
+        MulticastManager manager = new MulticastManager(groupAddress, port, "Publisher");
+        try {
+            assertThrows(IllegalArgumentException.class, () -> manager.enableSendQueue(-1, 16));
+            assertThrows(IllegalArgumentException.class, () -> manager.enableSendQueue(1000, 0));
+            assertNull(manager.getSendQueue());
+
+            manager.enableSendQueue();
+            assertEquals(CoalescingSendQueue.DEFAULT_LINGER_MICROS, manager.getSendQueue().getLingerMicros());
+            assertThrows(IllegalStateException.class, manager::enableSendQueue);
+        } finally {
+            manager.startReceiving();
+            manager.stop();
+        }
+    }
+
+    @Test
+    @DisplayName("Deve publicar sem esperar pelo socket e medir a latência de envio (teste de integração)")
+    public void testPublicacaoAssincrona() throws Exception {
+        final CountDownLatch receivedLatch = new CountDownLatch(1);
+        MulticastManager receiver = new MulticastManager(groupAddress, port, "Receiver");
+        receiver.setMessageListener((message, sender) -> {
+            if ("Async diz: olá".equals(message)) {
+                receivedLatch.countDown();
+            }
+        });
+        receiver.startReceiving();
+
+        MulticastManager sender = new MulticastManager(groupAddress, port, "Async");
+        sender.startReceiving();
+        Thread.sleep(300);
+
+        try {
+            assertNull(sender.getSendQueue());
+            final AtomicReference<IOException> failure = new AtomicReference<>();
+            assertTrue(sender.publishAsync("olá", (message, cause) -> failure.set(cause)));
+
+            // A publicação ativa a fila sem janela de espera
+            CoalescingSendQueue queue = sender.getSendQueue();
+            assertNotNull(queue);
+            assertEquals(0, queue.getLingerMicros());
+
+            assertTrue(receivedLatch.await(5, TimeUnit.SECONDS), "A mensagem publicada deve ser recebida");
+            assertNull(failure.get());
+            // A latência é registrada depois que o envio retorna, o que pode vir após a recepção
+            long deadline = System.currentTimeMillis() + 2000;
+            while (queue.getLatency().retrato().getContagem() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertEquals(1, queue.getLatency().retrato().getContagem());
+            assertTrue(queue.getLatency().retrato().getMaximo() > 0);
+        } finally {
+            receiver.stop();
+            sender.stop();
+        }
+    }
+
+    @Test
+    @DisplayName("Deve avisar o ouvinte das mensagens que não puderam ser enviadas")
+    public void testFalhaNaPublicacao() throws Exception {
+        MulticastManager sender = new MulticastManager(groupAddress, port, "Async");
+        final CountDownLatch failed = new CountDownLatch(1);
+        final AtomicReference<String> failedMessage = new AtomicReference<>();
+        final AtomicReference<Thread> callbackThread = new AtomicReference<>();
+
+        StringBuilder huge = new StringBuilder();
+        for (int i = 0; i < 70000; i++) {
+            huge.append('x');
+        }
+        try {
+            // Aceita na hora; a falha aparece na thread de envio
+            assertTrue(sender.publishAsync(huge.toString(), (message, cause) -> {
+                failedMessage.set(message);
+                callbackThread.set(Thread.currentThread());
+                failed.countDown();
+            }));
+            assertTrue(failed.await(5, TimeUnit.SECONDS), "O ouvinte deve ser avisado da falha");
+            assertEquals(huge.toString(), failedMessage.get());
+            assertNotSame(Thread.currentThread(), callbackThread.get());
+            assertEquals(1, sender.getSendQueue().getMessagesDropped());
+        } finally {
+            sender.stop();
+        }
+
+        // Depois de parado, a recusa é avisada na thread de quem publicou
+        final AtomicReference<IOException> refused = new AtomicReference<>();
+        assertFalse(sender.publishAsync("tarde demais", (message, cause) -> refused.set(cause)));
+        assertNotNull(refused.get());
+    }
+}
@@ -0,0 +1,145 @@
+package local.redes.multicast;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testes para o descarte de quadros repetidos.
+ *
+ * Os testes do filtro passam o relógio explicitamente; o último requer
+ * suporte a multicast na rede local.
+ */
+public class DuplicateFilterTest {
+
+    @Test
+    @DisplayName("Deve descartar sequências repetidas dentro da janela, fora de ordem")
+    public void testJanela() {
+        DuplicateFilter filter = new DuplicateFilter();
+        long now = System.nanoTime();
+
+        assertTrue(filter.accept(1L, 10, now));
+        assertTrue(filter.accept(1L, 12, now));
+        assertTrue(filter.accept(1L, 11, now), "Fora de ordem, mas nova");
+        assertFalse(filter.accept(1L, 10, now));
+        assertFalse(filter.accept(1L, 12, now));
+
+        // Outro remetente com as mesmas sequências
+        assertTrue(filter.accept(2L, 10, now));
+
+        // Avançar a janela libera as posições reaproveitadas sem perder as recentes
+        assertTrue(filter.accept(1L, 10 + DuplicateFilter.WINDOW - 1, now));
+        assertTrue(filter.accept(1L, 12 + DuplicateFilter.WINDOW, now));
+        assertFalse(filter.accept(1L, 10 + DuplicateFilter.WINDOW - 1, now));
+
+        assertEquals(3, filter.getDuplicates());
+        assertEquals(3, filter.getDuplicates(1L));
+        assertEquals(0, filter.getDuplicates(2L));
+        assertEquals(0, filter.getLateDuplicates());
+        assertEquals(6, filter.getAccepted());
+    }
+
+    @Test
+    @DisplayName("Deve achar no filtro de Bloom as repetições mais antigas que a janela")
+    public void testAtrasadas() {
+        DuplicateFilter filter = new DuplicateFilter();
+        long now = System.nanoTime();
+
+        for (long seq = 1; seq <= 5000; seq++) {
+            assertTrue(filter.accept(1L, seq, now));
+        }
+        // Sequências fora da janela, já vistas
+        int late = 0;
+        for (long seq = 1; seq <= 1000; seq++) {
+            if (!filter.accept(1L, seq, now)) {
+                late++;
+            }
+        }
+        assertEquals(1000, late);
+        assertEquals(1000, filter.getLateDuplicates());
+
+        // Depois de duas gerações o filtro esquece e o quadro volta a ser aceito
+        long later = now + TimeUnit.SECONDS.toNanos(DuplicateFilter.BUCKET_SECONDS * 2 + 1);
+        filter.accept(3L, 1, now + TimeUnit.SECONDS.toNanos(DuplicateFilter.BUCKET_SECONDS + 1));
+        assertTrue(filter.accept(1L, 1, later));
+    }
+
+    @Test
+    @DisplayName("Deve limitar a tabela e ainda descartar repetições de quem saiu dela")
+    public void testMuitosRemetentes() {
+        DuplicateFilter filter = new DuplicateFilter();
+        long now = System.nanoTime();
+
+        for (long id = 1; id <= DuplicateFilter.MAX_SENDERS * 4; id++) {
+            assertTrue(filter.accept(id, 1, now));
+        }
+        assertEquals(DuplicateFilter.MAX_SENDERS, filter.getSenderCount());
+
+        // O primeiro remetente saiu da tabela, mas o filtro de Bloom lembra dele
+        assertFalse(filter.accept(1L, 1, now));
+        assertEquals(1, filter.getLateDuplicates());
+        assertTrue(filter.accept(1L, 2, now));
+        // A nova janela dele não viu a sequência 1, mas o filtro ainda lembra
+        assertFalse(filter.accept(1L, 1, now));
+        assertEquals(2, filter.getLateDuplicates());
+    }
+
+    @Test
+    @DisplayName("Deve aceitar o primeiro quadro de remetentes novos sem consultar o filtro de Bloom")
+    public void testRemetentesNovos() {
+        DuplicateFilter filter = new DuplicateFilter();
+        long now = System.nanoTime();
+
+        // Filtro quase cheio: cerca de 1,7% de falso positivo
+        for (long seq = 1; seq <= 12000; seq++) {
+            assertTrue(filter.accept(1L, seq, now));
+        }
+        for (long id = 2; id <= 1000; id++) {
+            assertTrue(filter.accept(id, 1, now), "Remetente novo " + id);
+        }
+        assertEquals(0, filter.getLateDuplicates());
+    }
+
+    @Test
+    @DisplayName("Deve entregar uma vez só o quadro recebido repetido (teste de integração)")
+    public void testRepeticaoEntreGerenciadores() throws Exception {
+        InetAddress group = InetAddress.getByName("239.255.42.97");
+        final int port = 50562;
+        MulticastManager receiver = new MulticastManager(group, port, "receptor");
+        MulticastManager relay = new MulticastManager(group, port, "retransmissor");
+        try {
+            final AtomicInteger received = new AtomicInteger();
+            receiver.setRawMessageListener((data, source) -> received.incrementAndGet());
+            receiver.startReceiving();
+            Thread.sleep(200);
+
+            // Quadros de um terceiro remetente, repetidos como faria um retransmissor
+            ByteBuffer frame = ByteBuffer.allocate(MulticastFrame.HEADER_SIZE + 4);
+            for (long seq = 1; seq <= 2; seq++) {
+                for (int copy = 0; copy < 3; copy++) {
+                    frame.clear();
+                    MulticastFrame.writeHeader(frame, MulticastFrame.TYPE_DATA, (short) 0, 0x5EEDL, seq,
+                            System.currentTimeMillis());
+                    frame.putInt(42);
+                    frame.flip();
+                    relay.transmit(frame);
+                    Thread.sleep(20);
+                }
+            }
+            Thread.sleep(300);
+
+            assertEquals(2, received.get());
+            assertEquals(4, receiver.getDuplicateFilter().getDuplicates());
+            assertEquals(4, receiver.getDuplicateFilter().getDuplicates(0x5EEDL));
+        } finally {
+            receiver.stop();
+            relay.stop();
+        }
+    }
+}
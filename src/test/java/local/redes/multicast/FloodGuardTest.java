@@ -0,0 +1,157 @@
+package local.redes.multicast;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testes para o limite de quadros por remetente.
+ *
+ * Os testes do balde passam o relógio explicitamente; o último requer
+ * suporte a multicast na rede local.
+ */
+public class FloodGuardTest {
+
+    private static final long MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final InetAddress SOURCE = InetAddress.getLoopbackAddress();
+
+    @Test
+    @DisplayName("Deve aceitar a rajada e depois a taxa configurada")
+    public void testBaldeDeFichas() {
+        FloodGuard guard = new FloodGuard(100, 10, 0);
+        long now = System.nanoTime();
+
+        int accepted = 0;
+        for (int i = 0; i < 50; i++) {
+            if (guard.allow(7L, SOURCE, now)) {
+                accepted++;
+            }
+        }
+        assertEquals(10, accepted, "Só a rajada passa de uma vez");
+
+        // 100 por segundo: uma ficha a cada 10 ms
+        assertFalse(guard.allow(7L, SOURCE, now + 5 * MILLI));
+        assertTrue(guard.allow(7L, SOURCE, now + 15 * MILLI));
+        assertFalse(guard.allow(7L, SOURCE, now + 16 * MILLI));
+
+        // Outro remetente tem o próprio balde
+        assertTrue(guard.allow(8L, SOURCE, now));
+        assertEquals(12, guard.getAccepted());
+        assertEquals(42, guard.getDropped());
+        assertEquals(0, guard.getMutes(), "Sem silêncio configurado");
+    }
+
+    @Test
+    @DisplayName("Deve silenciar quem manda o dobro do limite e liberar depois do período")
+    public void testSilencio() {
+        FloodGuard guard = new FloodGuard(100, 10, 1000);
+        List<Long> muted = new ArrayList<>();
+        guard.addListener((senderId, source, millis) -> muted.add(senderId));
+        long now = System.nanoTime();
+
+        // 1000 quadros em 100 ms: mais de 100 descartes em menos de um segundo
+        for (int i = 0; i < 1000; i++) {
+            guard.allow(7L, SOURCE, now + i * MILLI / 10);
+        }
+        assertEquals(1, guard.getMutes());
+        assertEquals("[7]", muted.toString());
+
+        FloodGuard.SenderStats stats = guard.getSenders().get(0);
+        assertTrue(stats.isMuted());
+        assertEquals(1, stats.getMutes());
+        assertEquals(1000, stats.getAccepted() + stats.getDropped());
+
+        // Silenciado, nada passa mesmo com o balde cheio
+        assertFalse(guard.allow(7L, SOURCE, now + 900 * MILLI));
+        assertTrue(guard.allow(7L, SOURCE, now + 1200 * MILLI));
+    }
+
+    @Test
+    @DisplayName("Deve limitar a tabela e colocar remetentes excedentes em um balde comum")
+    public void testMuitosRemetentes() {
+        FloodGuard guard = new FloodGuard(100, 1, 0);
+        long now = System.nanoTime();
+        for (long id = 1; id <= FloodGuard.MAX_SENDERS; id++) {
+            assertTrue(guard.allow(id, SOURCE, now));
+        }
+        // Identificadores novos a cada pacote dividem um único balde
+        int accepted = 0;
+        for (long id = 0; id < 1000; id++) {
+            if (guard.allow(1_000_000 + id, SOURCE, now)) {
+                accepted++;
+            }
+        }
+        assertEquals(1, accepted);
+        assertEquals(FloodGuard.MAX_SENDERS + 1, guard.getSenders().size());
+
+        // Inativos por mais de um minuto liberam espaço
+        long later = now + TimeUnit.SECONDS.toNanos(120);
+        assertTrue(guard.allow(2_000_000L, SOURCE, later));
+        assertTrue(guard.getSenders().size() < 10);
+    }
+
+    @Test
+    @DisplayName("Deve descartar a inundação de um remetente sem atrasar os outros (teste de integração)")
+    public void testInundacaoEntreGerenciadores() throws Exception {
+        InetAddress group = InetAddress.getByName("239.255.42.96");
+        final int port = 50561;
+        MulticastManager receiver = new MulticastManager(group, port, "receptor", 3);
+        MulticastManager flooder = new MulticastManager(group, port, "inundador", 3);
+        MulticastManager polite = new MulticastManager(group, port, "educado", 3);
+        try {
+            final AtomicInteger fromFlooder = new AtomicInteger();
+            final CountDownLatch politeReceived = new CountDownLatch(1);
+            receiver.setMessageListener((message, sender) -> {
+                if ("inundador".equals(sender)) {
+                    fromFlooder.incrementAndGet();
+                } else if ("educado".equals(sender)) {
+                    politeReceived.countDown();
+                }
+            });
+            FloodGuard guard = receiver.enableFloodGuard(100, 20, 5000);
+            final CountDownLatch muted = new CountDownLatch(1);
+            guard.addListener((senderId, source, millis) -> {
+                if (senderId == flooder.getSenderId()) {
+                    muted.countDown();
+                }
+            });
+            receiver.startReceiving();
+            Thread.sleep(200);
+
+            for (int i = 0; i < 3000; i++) {
+                try {
+                    flooder.sendMessage("spam " + i);
+                } catch (IOException e) {
+                    // Buffer do sistema cheio: o pacote é perdido, como em uma inundação real
+                }
+            }
+            assertTrue(muted.await(5, TimeUnit.SECONDS), "O inundador deve ser silenciado");
+
+            // O canal é o mesmo do inundador: o envio espera o buffer esvaziar e
+            // não pode falhar, mas o buffer de recepção pode ter transbordado
+            // durante a inundação, então a mensagem é reenviada até chegar
+            for (int attempt = 0; attempt < 20 && politeReceived.getCount() > 0; attempt++) {
+                polite.sendMessage("bom dia");
+                politeReceived.await(100, TimeUnit.MILLISECONDS);
+            }
+            assertEquals(0, politeReceived.getCount(), "O remetente educado deve ser entregue");
+            assertEquals(0, polite.getSendDrops(), "O envio educado não pode ser descartado");
+            Thread.sleep(200);
+            assertTrue(fromFlooder.get() <= 150, "Mensagens do inundador entregues: " + fromFlooder.get());
+            assertTrue(guard.getDropped() > 0);
+        } finally {
+            receiver.stop();
+            flooder.stop();
+            polite.stop();
+        }
+    }
+}
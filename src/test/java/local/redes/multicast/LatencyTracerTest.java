@@ -0,0 +1,110 @@
+package local.redes.multicast;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testes para a medição de latência dos quadros rastreados.
+ *
+ * Nota: O teste de integração requer suporte a multicast na rede local.
+ */
+public class LatencyTracerTest {
+
+    @Test
+    @DisplayName("Deve registrar a latência por remetente e separar amostras negativas")
+    public void testRegistro() {
+        LatencyTracer tracer = new LatencyTracer();
+        AtomicInteger samples = new AtomicInteger();
+        tracer.addListener((senderId, traceId, latency) -> samples.incrementAndGet());
+
+        long now = LatencyTracer.epochNanos();
+        assertTrue(Math.abs(now / 1_000_000 - System.currentTimeMillis()) < 1000, "Relógio em nanos da época");
+
+        tracer.record(1L, 10L, now - TimeUnit.MILLISECONDS.toNanos(2));
+        tracer.record(1L, 11L, now - TimeUnit.MILLISECONDS.toNanos(4));
+        tracer.record(2L, 12L, now + TimeUnit.SECONDS.toNanos(10));
+
+        LatencyTracer.SenderLatency first = tracer.getSender(1L);
+        assertEquals(2, first.getHistogram().retrato().getContagem());
+        assertTrue(first.getHistogram().retrato().getMaximo() >= TimeUnit.MILLISECONDS.toNanos(4));
+        assertEquals(11L, first.getLastTraceId());
+
+        LatencyTracer.SenderLatency second = tracer.getSender(2L);
+        assertEquals(0, second.getHistogram().retrato().getContagem());
+        assertEquals(1, second.getNegativeSamples());
+
+        assertEquals(2, tracer.getTotal().retrato().getContagem());
+        assertEquals(3, samples.get());
+        assertNull(tracer.getSender(3L));
+
+        String dump = tracer.dump();
+        assertTrue(dump.contains("0000000000000001"));
+        assertTrue(dump.contains("total"));
+        assertEquals(4, dump.trim().split("\n").length);
+    }
+
+    @Test
+    @DisplayName("Deve medir a latência dos quadros rastreados entre gerenciadores (teste de integração)")
+    public void testRastreamentoEntreGerenciadores() throws Exception {
+        InetAddress group = InetAddress.getByName("239.255.42.97");
+        final int port = 50551;
+        final int messages = 200;
+        MulticastManager receiver = new MulticastManager(group, port, "receptor", 5);
+        MulticastManager sender = new MulticastManager(group, port, "remetente", 5);
+        try {
+            final CountDownLatch received = new CountDownLatch(messages);
+            final AtomicReference<byte[]> raw = new AtomicReference<>();
+            final CountDownLatch rawReceived = new CountDownLatch(1);
+            receiver.setMessageListener((message, from) -> {
+                if (message.startsWith("remetente diz: ")) {
+                    received.countDown();
+                }
+            });
+            receiver.setRawMessageListener((data, address) -> {
+                byte[] bytes = new byte[data.remaining()];
+                data.get(bytes);
+                raw.set(bytes);
+                rawReceived.countDown();
+            });
+            receiver.startReceiving();
+            Thread.sleep(200);
+
+            sender.enableTracing();
+            assertTrue(sender.isTracing());
+            for (int i = 0; i < messages; i++) {
+                sender.sendMessage("mensagem " + i);
+            }
+            sender.sendBytes(ByteBuffer.wrap(new byte[]{1, 2, 3}));
+
+            assertTrue(received.await(5, TimeUnit.SECONDS), "As mensagens rastreadas devem ser entregues");
+            assertTrue(rawReceived.await(5, TimeUnit.SECONDS), "O pacote binário rastreado deve ser entregue");
+            assertArrayEquals(new byte[]{1, 2, 3}, raw.get(), "O bloco de rastreamento não entra no corpo");
+
+            LatencyTracer.SenderLatency latency = receiver.getLatencyTracer().getSender(sender.getSenderId());
+            assertNotNull(latency);
+            assertEquals(messages + 1, latency.getHistogram().retrato().getContagem());
+            assertEquals(0, latency.getNegativeSamples());
+            assertTrue(latency.getHistogram().retrato().percentil(50) < TimeUnit.SECONDS.toNanos(1));
+            assertTrue(receiver.getLatencyTracer().dump().contains(String.format("%016x", sender.getSenderId())));
+
+            // Sem rastreamento, nada mais é medido
+            sender.disableTracing();
+            sender.sendMessage("sem rastreamento");
+            Thread.sleep(300);
+            assertEquals(messages + 1, latency.getHistogram().retrato().getContagem());
+            assertEquals(1, receiver.getLatencyTracer().getSenders().size());
+        } finally {
+            receiver.stop();
+            sender.stop();
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package local.redes.multicast;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testes para o motor multicast compartilhado.
+ *
+ * Nota: Estes testes requerem suporte a multicast na rede local.
+ */
+public class MulticastEngineTest {
+
+    private final int port = 50521;
+
+    @Test
+    @DisplayName("Deve atender 500 salas com um canal e uma inscrição por grupo (teste de integração)")
+    public void testQuinhentasSalas() throws Exception {
+        MulticastEngine engine = MulticastEngine.getInstance();
+        int channelsBefore = engine.getChannelCount();
+        int membershipsBefore = engine.getMembershipCount();
+        int roomsBefore = engine.getRoomCount();
+
+        final int rooms = 500;
+        final int groups = 5;
+        final AtomicInteger wrongRoom = new AtomicInteger();
+        final CountDownLatch received = new CountDownLatch(1);
+        List<MulticastManager> managers = new ArrayList<>();
+        MulticastManager sender = null;
+        try {
+            for (int room = 0; room < rooms; room++) {
+                final int target = 123;
+                final int own = room;
+                InetAddress group = InetAddress.getByName("239.255.77." + (1 + room % groups));
+                MulticastManager manager = new MulticastManager(group, port, "sala-" + room, room + 1000);
+                manager.setMessageListener((message, from) -> {
+                    if (from == null) {
+                        return;
+                    }
+                    if (own == target) {
+                        received.countDown();
+                    } else {
+                        wrongRoom.incrementAndGet();
+                    }
+                });
+                manager.startReceiving();
+                managers.add(manager);
+            }
+
+            assertEquals(channelsBefore + 1, engine.getChannelCount());
+            assertEquals(membershipsBefore + groups, engine.getMembershipCount());
+            assertEquals(roomsBefore + rooms, engine.getRoomCount());
+
+            Thread.sleep(300);
+            sender = new MulticastManager(InetAddress.getByName("239.255.77." + (1 + 123 % groups)), port,
+                    "remetente", 1123);
+            sender.sendMessage("só para a sala 123");
+
+            assertTrue(received.await(5, TimeUnit.SECONDS), "A sala de destino deve receber a mensagem");
+            Thread.sleep(200);
+            assertEquals(0, wrongRoom.get(), "Outras salas não devem receber a mensagem");
+        } finally {
+            if (sender != null) {
+                sender.stop();
+            }
+            for (MulticastManager manager : managers) {
+                manager.stop();
+            }
+        }
+
+        assertEquals(channelsBefore, engine.getChannelCount());
+        assertEquals(membershipsBefore, engine.getMembershipCount());
+        assertEquals(roomsBefore, engine.getRoomCount());
+    }
+
+    @Test
+    @DisplayName("Deve manter a inscrição no grupo enquanto houver participantes")
+    public void testContagemDeReferencias() throws Exception {
+        MulticastEngine engine = MulticastEngine.getInstance();
+        int membershipsBefore = engine.getMembershipCount();
+        InetAddress group = InetAddress.getByName("239.255.77.100");
+
+        MulticastManager first = new MulticastManager(group, port + 1, "primeiro", 1);
+        MulticastManager second = new MulticastManager(group, port + 1, "segundo", 2);
+        try {
+            assertEquals(membershipsBefore + 1, engine.getMembershipCount());
+
+            first.stop();
+            assertEquals(membershipsBefore + 1, engine.getMembershipCount());
+
+            // Parar de novo não deve liberar a referência do outro participante
+            first.stop();
+            assertEquals(membershipsBefore + 1, engine.getMembershipCount());
+        } finally {
+            second.stop();
+        }
+        assertEquals(membershipsBefore, engine.getMembershipCount());
+    }
+
+    @Test
+    @DisplayName("Deve recusar a mesma sala em outro grupo da mesma porta")
+    public void testSalaDeOutroGrupo() throws Exception {
+        InetAddress group = InetAddress.getByName("239.255.77.101");
+        InetAddress other = InetAddress.getByName("239.255.77.102");
+        MulticastManager first = new MulticastManager(group, port + 2, "primeiro");
+        try {
+            IOException error = assertThrows(IOException.class,
+                    () -> new MulticastManager(other, port + 2, "outro"));
+            assertTrue(error.getMessage().contains("239.255.77.101"), error.getMessage());
+
+            // Outra sala do outro grupo e a mesma sala do mesmo grupo continuam permitidas
+            new MulticastManager(other, port + 2, "outro", 1).stop();
+            new MulticastManager(group, port + 2, "segundo").stop();
+        } finally {
+            first.stop();
+        }
+        // Sem participantes, a sala fica livre para outro grupo
+        new MulticastManager(other, port + 2, "outro").stop();
+    }
+
+    @Test
+    @DisplayName("Deve rejeitar salas fora do intervalo do cabeçalho")
+    public void testSalaInvalida() throws Exception {
+        InetAddress group = InetAddress.getByName("239.255.77.100");
+        assertThrows(IllegalArgumentException.class,
+                () -> new MulticastManager(group, port, "fora", MulticastFrame.MAX_ROOM + 1));
+        assertThrows(IllegalArgumentException.class, () -> new MulticastManager(group, port, "fora", -1));
+    }
+}
@@ -0,0 +1,88 @@
+package local.redes.multicast;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testes unitários para o cabeçalho binário dos quadros multicast.
+ */
+public class MulticastFrameTest {
+
+    @Test
+    @DisplayName("Deve escrever e ler o cabeçalho sem perdas")
+    public void testCabecalhoIdaEVolta() {
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        MulticastFrame.writeHeader(buffer, MulticastFrame.TYPE_CHAT, (short) 0x0102, -42L, 7L, 1_700_000_000_000L);
+        assertEquals(MulticastFrame.HEADER_SIZE, buffer.position());
+        buffer.flip();
+
+        assertTrue(MulticastFrame.isFrame(buffer));
+        assertEquals(MulticastFrame.TYPE_CHAT, MulticastFrame.type(buffer));
+        assertEquals((short) 0x0102, MulticastFrame.flags(buffer));
+        assertEquals(-42L, MulticastFrame.senderId(buffer));
+        assertEquals(7L, MulticastFrame.sequence(buffer));
+        assertEquals(1_700_000_000_000L, MulticastFrame.timestamp(buffer));
+        assertEquals(0, buffer.position(), "A leitura não deve mover a posição");
+    }
+
+    @Test
+    @DisplayName("Deve ler o cabeçalho a partir da posição do buffer")
+    public void testCabecalhoComDeslocamento() {
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        buffer.position(5);
+        MulticastFrame.writeHeader(buffer, MulticastFrame.TYPE_DATA, (short) 0, 99L, 1L, 0L);
+        buffer.flip();
+        buffer.position(5);
+
+        assertTrue(MulticastFrame.isFrame(buffer));
+        assertEquals(99L, MulticastFrame.senderId(buffer));
+    }
+
+    @Test
+    @DisplayName("Deve gravar a sala no cabeçalho, sem sinal")
+    public void testSala() {
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        MulticastFrame.writeHeader(buffer, MulticastFrame.TYPE_CHAT, (short) 0, MulticastFrame.MAX_ROOM, 1L, 1L, 0L);
+        buffer.flip();
+        assertEquals(MulticastFrame.MAX_ROOM, MulticastFrame.room(buffer));
+
+        buffer.clear();
+        MulticastFrame.writeHeader(buffer, MulticastFrame.TYPE_CHAT, (short) 0, 1L, 1L, 0L);
+        buffer.flip();
+        assertEquals(MulticastFrame.DEFAULT_ROOM, MulticastFrame.room(buffer));
+    }
+
+    @Test
+    @DisplayName("Não deve reconhecer texto ou dados curtos como quadro")
+    public void testRejeitaNaoQuadro() {
+        byte[] texto = "Maria diz: ola, tudo bem com voces?".getBytes(StandardCharsets.UTF_8);
+        assertFalse(MulticastFrame.isFrame(ByteBuffer.wrap(texto)));
+        assertFalse(MulticastFrame.isFrame(ByteBuffer.wrap(new byte[]{'M', 'C', 1})));
+    }
+
+    @Test
+    @DisplayName("Deve pular o bloco de rastreamento ao achar o corpo")
+    public void testBlocoDeRastreamento() {
+        ByteBuffer buffer = ByteBuffer.allocate(128);
+        buffer.position(3);
+        MulticastFrame.writeHeader(buffer, MulticastFrame.TYPE_CHAT, MulticastFrame.FLAG_TRACE, 9L, 1L, 0L);
+        buffer.putLong(77L).putLong(123_456_789L).put((byte) 42);
+        buffer.flip();
+        buffer.position(3);
+
+        assertEquals(3 + MulticastFrame.HEADER_SIZE + MulticastFrame.TRACE_SIZE, MulticastFrame.bodyStart(buffer));
+        assertEquals(77L, MulticastFrame.traceId(buffer));
+        assertEquals(123_456_789L, MulticastFrame.traceNanos(buffer));
+        assertEquals(42, buffer.get(MulticastFrame.bodyStart(buffer)));
+
+        buffer.clear();
+        MulticastFrame.writeHeader(buffer, MulticastFrame.TYPE_CHAT, (short) 0, 9L, 1L, 0L);
+        buffer.flip();
+        assertEquals(MulticastFrame.HEADER_SIZE, MulticastFrame.bodyStart(buffer));
+    }
+}
@@ -0,0 +1,162 @@
+package local.redes.multicast;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testes para o gateway entre multicast e unicast.
+ *
+ * O primeiro chama a tabela de origens diretamente; os outros requerem
+ * suporte a multicast na rede local.
+ */
+public class MulticastGatewayTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private static void awaitSize(List<String> messages, int size) throws InterruptedException {
+        long deadline = System.nanoTime() + 5 * SECOND;
+        while (messages.size() < size && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+        // Dar tempo a cópias que não deveriam chegar
+        Thread.sleep(300);
+    }
+
+    @Test
+    @DisplayName("Deve repassar só pelo enlace de origem e reaprender depois do silêncio")
+    public void testOrigem() throws Exception {
+        MulticastGateway gateway = new MulticastGateway(InetAddress.getByName("239.255.42.99"), 50564, 0, 0);
+        try {
+            long now = System.nanoTime();
+            assertTrue(gateway.route(7L, MulticastGateway.GROUP_LINK, now));
+            assertTrue(gateway.route(7L, MulticastGateway.GROUP_LINK, now + SECOND));
+            // O eco do mesmo remetente por outro enlace é descartado
+            assertFalse(gateway.route(7L, 3, now + SECOND));
+            assertTrue(gateway.route(8L, 3, now));
+            assertFalse(gateway.route(8L, MulticastGateway.GROUP_LINK, now));
+            assertEquals(2, gateway.getLoopsDropped());
+
+            // Depois do silêncio, a origem pode mudar
+            long later = now + SECOND + TimeUnit.MILLISECONDS.toNanos(MulticastGateway.ORIGIN_TIMEOUT_MILLIS) + 1;
+            assertTrue(gateway.route(7L, 3, later));
+            assertFalse(gateway.route(7L, MulticastGateway.GROUP_LINK, later));
+
+            // Tabela cheia: remetentes novos são descartados até algum ficar em silêncio
+            assertTrue(gateway.route(8L, 3, later));
+            for (long id = 100; id < 100 + MulticastGateway.MAX_SENDERS - 2; id++) {
+                assertTrue(gateway.route(id, MulticastGateway.GROUP_LINK, later));
+            }
+            assertFalse(gateway.route(50_000L, MulticastGateway.GROUP_LINK, later));
+            assertEquals(1, gateway.getUnknownDropped());
+            long muchLater = later + TimeUnit.MILLISECONDS.toNanos(MulticastGateway.ORIGIN_TIMEOUT_MILLIS) + SECOND;
+            assertTrue(gateway.route(50_000L, MulticastGateway.GROUP_LINK, muchLater));
+        } finally {
+            gateway.stop();
+        }
+    }
+
+    @Test
+    @DisplayName("Deve ligar um cliente unicast remoto à sala multicast (teste de integração)")
+    public void testClienteRemoto() throws Exception {
+        InetAddress group = InetAddress.getByName("239.255.42.100");
+        MulticastGateway gateway = new MulticastGateway(group, 50565, 2, 0);
+        gateway.start();
+        MulticastManager local = new MulticastManager(group, 50565, "local", 2);
+        MulticastManager remote;
+        System.setProperty(MulticastManager.HUB_PROPERTY, "127.0.0.1:" + gateway.getUnicastPort());
+        try {
+            remote = new MulticastManager(group, 50565, "remoto", 2);
+        } finally {
+            System.clearProperty(MulticastManager.HUB_PROPERTY);
+        }
+        try {
+            List<String> atLocal = new CopyOnWriteArrayList<>();
+            List<String> atRemote = new CopyOnWriteArrayList<>();
+            local.setMessageListener((message, sender) -> {
+                if ("remoto".equals(sender)) {
+                    atLocal.add(message);
+                }
+            });
+            remote.setMessageListener((message, sender) -> {
+                if ("local".equals(sender)) {
+                    atRemote.add(message);
+                }
+            });
+            local.startReceiving();
+            remote.startReceiving();
+            Thread.sleep(300);
+            assertEquals(1, gateway.getClientCount());
+
+            local.sendMessage("do grupo");
+            remote.sendMessage("de fora");
+            awaitSize(atRemote, 1);
+            awaitSize(atLocal, 1);
+
+            assertEquals(1, atRemote.size(), "Recebidas pelo remoto: " + atRemote);
+            assertEquals(1, atLocal.size(), "Recebidas no grupo: " + atLocal);
+            assertTrue(gateway.getLoopsDropped() > 0, "O eco do gateway no grupo deve ser descartado");
+        } finally {
+            remote.stop();
+            local.stop();
+            gateway.stop();
+        }
+    }
+
+    @Test
+    @DisplayName("Deve ligar duas sub-redes por gateways parceiros sem laços (teste de integração)")
+    public void testGatewaysParceiros() throws Exception {
+        // Grupos e portas diferentes fazem o papel de duas sub-redes
+        InetAddress groupA = InetAddress.getByName("239.255.42.101");
+        InetAddress groupB = InetAddress.getByName("239.255.42.102");
+        MulticastGateway gatewayA = new MulticastGateway(groupA, 50566, 0, 0);
+        MulticastGateway gatewayB = new MulticastGateway(groupB, 50567, 0, 0);
+        gatewayA.addPeer(new InetSocketAddress("127.0.0.1", gatewayB.getUnicastPort()));
+        gatewayB.addPeer(new InetSocketAddress("127.0.0.1", gatewayA.getUnicastPort()));
+        gatewayA.start();
+        gatewayB.start();
+        MulticastManager alice = new MulticastManager(groupA, 50566, "alice");
+        MulticastManager bob = new MulticastManager(groupB, 50567, "bob");
+        try {
+            List<String> atAlice = new CopyOnWriteArrayList<>();
+            List<String> atBob = new CopyOnWriteArrayList<>();
+            alice.setMessageListener((message, sender) -> {
+                if ("bob".equals(sender)) {
+                    atAlice.add(message);
+                }
+            });
+            bob.setMessageListener((message, sender) -> {
+                if ("alice".equals(sender)) {
+                    atBob.add(message);
+                }
+            });
+            alice.startReceiving();
+            bob.startReceiving();
+            Thread.sleep(300);
+
+            for (int i = 0; i < 5; i++) {
+                alice.sendMessage("a" + i);
+                bob.sendMessage("b" + i);
+            }
+            awaitSize(atBob, 5);
+            awaitSize(atAlice, 5);
+
+            assertEquals(5, atBob.size(), "Recebidas por bob: " + atBob);
+            assertEquals(5, atAlice.size(), "Recebidas por alice: " + atAlice);
+            assertTrue(gatewayA.getLoopsDropped() > 0);
+            assertTrue(gatewayB.getLoopsDropped() > 0);
+        } finally {
+            alice.stop();
+            bob.stop();
+            gatewayA.stop();
+            gatewayB.stop();
+        }
+    }
+}
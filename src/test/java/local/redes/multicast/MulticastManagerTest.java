@@ -144,4 +144,153 @@ public class MulticastManagerTest {
             sender.stop();
         }
     }
+    
+    @Test
+    @DisplayName("Deve entregar pacotes binários ao ouvinte bruto (teste de integração)")
+    public void testEnvioRecebimentoBinario() throws Exception {
+        final CountDownLatch packetReceived = new CountDownLatch(1);
+        final byte[][] receivedData = new byte[1][];
+        
+        MulticastManager receiver = new MulticastManager(groupAddress, port, "Receiver");
+        receiver.setRawMessageListener((data, source) -> {
+            // O buffer é reutilizado, então copiamos os dados durante a chamada
+            byte[] copy = new byte[data.remaining()];
+            data.get(copy);
+            if (copy.length == 3 && copy[0] == 1) {
+                receivedData[0] = copy;
+                packetReceived.countDown();
+            }
+        });
+        receiver.startReceiving();
+        
+        Thread.sleep(500);
+        
+        MulticastManager sender = new MulticastManager(groupAddress, port, "Sender");
+        
+        try {
+            sender.sendBytes(new byte[]{1, 2, 3});
+            
+            assertTrue(packetReceived.await(5, TimeUnit.SECONDS), "O pacote deve ser recebido em 5 segundos");
+            assertArrayEquals(new byte[]{1, 2, 3}, receivedData[0]);
+        } finally {
+            receiver.stop();
+            sender.stop();
+        }
+    }
+    
+    @Test
+    @DisplayName("Deve entregar mensagens de usuário cujo nome começa com o do receptor (teste de integração)")
+    public void testNomesComPrefixoComum() throws Exception {
+        final CountDownLatch messageReceived = new CountDownLatch(1);
+        final String[] receivedSender = new String[1];
+        
+        MulticastManager receiver = new MulticastManager(groupAddress, port, "Ana");
+        receiver.setMessageListener((message, sender) -> {
+            if (sender != null) {
+                receivedSender[0] = sender;
+                messageReceived.countDown();
+            }
+        });
+        receiver.startReceiving();
+        
+        Thread.sleep(500);
+        
+        MulticastManager sender = new MulticastManager(groupAddress, port, "Ana Maria");
+        
+        try {
+            sender.sendMessage("Olá, Ana!");
+            
+            assertTrue(messageReceived.await(5, TimeUnit.SECONDS), "A mensagem deve ser recebida em 5 segundos");
+            assertEquals("Ana Maria", receivedSender[0]);
+            assertNotEquals(receiver.getSenderId(), sender.getSenderId());
+        } finally {
+            receiver.stop();
+            sender.stop();
+        }
+    }
+    
+    @Test
+    @DisplayName("Deve recuperar pacotes perdidos no modo confiável (teste de integração)")
+    public void testModoConfiavelRecuperaPerdas() throws Exception {
+        final int total = 50;
+        final boolean[] received = new boolean[total];
+        final CountDownLatch allReceived = new CountDownLatch(total);
+        
+        MulticastManager receiver = new MulticastManager(groupAddress, port, "Receiver");
+        receiver.enableReliableMode();
+        receiver.setSimulatedLossRate(0.3);
+        receiver.setRawMessageListener((data, source) -> {
+            int index = data.get(data.position());
+            synchronized (received) {
+                if (!received[index]) {
+                    received[index] = true;
+                    allReceived.countDown();
+                }
+            }
+        });
+        receiver.startReceiving();
+        
+        MulticastManager sender = new MulticastManager(groupAddress, port, "Sender");
+        sender.enableReliableMode();
+        sender.startReceiving();
+        
+        Thread.sleep(500);
+        
+        try {
+            for (int i = 0; i < total; i++) {
+                sender.sendBytes(new byte[]{(byte) i});
+            }
+            
+            assertTrue(allReceived.await(10, TimeUnit.SECONDS), "Todos os pacotes devem ser recuperados");
+            assertTrue(receiver.getReliability().getNacksSent() > 0);
+            assertTrue(sender.getReliability().getRetransmissions() > 0);
+            assertEquals(0, receiver.getReliability().getLostFrames());
+        } finally {
+            receiver.stop();
+            sender.stop();
+        }
+    }
+    
+    @Test
+    @DisplayName("Deve entregar a vários inscritos sem que um ouvinte lento atrase os outros (teste de integração)")
+    public void testInscritosIndependentes() throws Exception {
+        final int total = 20;
+        final CountDownLatch fastReceived = new CountDownLatch(total);
+        final CountDownLatch release = new CountDownLatch(1);
+        
+        MulticastManager receiver = new MulticastManager(groupAddress, port, "Receiver");
+        Subscription slow = receiver.subscribe((message, sender) -> {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, 8, Subscription.OverflowPolicy.DROP_NEWEST);
+        Subscription fast = receiver.subscribe((message, sender) -> {
+            if (sender != null) {
+                fastReceived.countDown();
+            }
+        });
+        receiver.startReceiving();
+        
+        Thread.sleep(500);
+        
+        MulticastManager sender = new MulticastManager(groupAddress, port, "Sender");
+        
+        try {
+            for (int i = 0; i < total; i++) {
+                sender.sendMessage("mensagem " + i);
+            }
+            
+            assertTrue(fastReceived.await(5, TimeUnit.SECONDS), "O ouvinte rápido deve receber tudo");
+            assertEquals(2, receiver.getSubscriptions().size());
+            assertTrue(slow.getDropped() > 0, "O ouvinte lento deve perder mensagens da própria fila");
+            assertEquals(8, slow.getLag());
+            assertEquals(0, fast.getDropped());
+        } finally {
+            release.countDown();
+            receiver.stop();
+            sender.stop();
+        }
+    }
 }
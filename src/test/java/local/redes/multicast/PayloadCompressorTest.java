@@ -0,0 +1,115 @@
+package local.redes.multicast;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testes para a compressão das cargas com dicionário.
+ *
+ * Os primeiros chamam o compressor diretamente; o último troca mensagens
+ * comprimidas entre gerenciadores e requer suporte a multicast na rede local.
+ */
+public class PayloadCompressorTest {
+
+    private static final String TEXTO = "bom dia pessoal, alguém sabe se o servidor está fora do ar? "
+            + "a mensagem não chegou e eu vou verificar daqui a pouco";
+
+    @Test
+    @DisplayName("Deve comprimir e descomprimir preservando a carga")
+    public void testIdaEVolta() throws Exception {
+        byte[] carga = TEXTO.getBytes(StandardCharsets.UTF_8);
+        byte[] comprimida = new byte[carga.length];
+        int tamanho = PayloadCompressor.CHAT.compress(carga, 0, carga.length, comprimida, 0);
+        assertTrue(tamanho > 0 && tamanho < carga.length, "Comprimida: " + tamanho);
+        assertEquals(carga.length, PayloadCompressor.uncompressedLength(comprimida, 0));
+
+        byte[] destino = new byte[carga.length + 10];
+        assertEquals(carga.length, PayloadCompressor.CHAT.decompress(comprimida, 0, tamanho, destino, 10));
+        assertArrayEquals(carga, Arrays.copyOfRange(destino, 10, destino.length));
+    }
+
+    @Test
+    @DisplayName("Deve economizar mais com o dicionário do que sem ele")
+    public void testDicionario() {
+        byte[] carga = TEXTO.getBytes(StandardCharsets.UTF_8);
+        byte[] comprimida = new byte[carga.length];
+        int comDicionario = PayloadCompressor.CHAT.compress(carga, 0, carga.length, comprimida, 0);
+        int semDicionario = new PayloadCompressor(null, PayloadCompressor.DEFAULT_MIN_SIZE)
+                .compress(carga, 0, carga.length, comprimida, 0);
+        assertTrue(comDicionario < semDicionario, comDicionario + " >= " + semDicionario);
+    }
+
+    @Test
+    @DisplayName("Deve pular cargas pequenas ou que não encolhem")
+    public void testPulaSemGanho() {
+        byte[] pequena = "oi".getBytes(StandardCharsets.UTF_8);
+        byte[] destino = new byte[PayloadCompressor.MAX_SIZE];
+        assertEquals(-1, PayloadCompressor.CHAT.compress(pequena, 0, pequena.length, destino, 0));
+
+        byte[] aleatoria = new byte[512];
+        new Random(3).nextBytes(aleatoria);
+        assertEquals(-1, PayloadCompressor.CHAT.compress(aleatoria, 0, aleatoria.length, destino, 0));
+    }
+
+    @Test
+    @DisplayName("Deve recusar carga truncada ou com outro dicionário")
+    public void testCargaInvalida() {
+        byte[] carga = TEXTO.getBytes(StandardCharsets.UTF_8);
+        byte[] comprimida = new byte[carga.length];
+        int tamanho = PayloadCompressor.CHAT.compress(carga, 0, carga.length, comprimida, 0);
+        byte[] destino = new byte[carga.length];
+
+        assertThrows(DataFormatException.class,
+                () -> PayloadCompressor.CHAT.decompress(comprimida, 0, tamanho - 3, destino, 0));
+        assertThrows(DataFormatException.class,
+                () -> PayloadCompressor.CHAT.decompress(comprimida, 0, tamanho, new byte[10], 0));
+        PayloadCompressor outro = new PayloadCompressor("outro dicionário".getBytes(StandardCharsets.UTF_8), 0);
+        assertThrows(DataFormatException.class, () -> outro.decompress(comprimida, 0, tamanho, destino, 0));
+    }
+
+    @Test
+    @DisplayName("Deve entregar mensagens comprimidas a quem não comprime (teste de integração)")
+    public void testGerenciadores() throws Exception {
+        InetAddress group = InetAddress.getByName("239.255.42.103");
+        MulticastManager alice = new MulticastManager(group, 50568, "alice");
+        MulticastManager bob = new MulticastManager(group, 50568, "bob");
+        try {
+            alice.enableCompression();
+            alice.enableTracing();
+            List<String> atBob = new CopyOnWriteArrayList<>();
+            bob.setMessageListener((message, sender) -> {
+                if ("alice".equals(sender)) {
+                    atBob.add(message);
+                }
+            });
+            alice.startReceiving();
+            bob.startReceiving();
+            Thread.sleep(200);
+
+            alice.sendMessage(TEXTO);
+            alice.sendMessage("oi");
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+            while (atBob.size() < 2 && System.nanoTime() < deadline) {
+                Thread.sleep(20);
+            }
+
+            assertEquals(Arrays.asList("alice diz: " + TEXTO, "alice diz: oi"), atBob);
+            assertEquals(1, alice.getCompressedFrames(), "Só a mensagem longa compensa");
+            assertTrue(alice.getCompressionSavedBytes() > 0);
+        } finally {
+            alice.stop();
+            bob.stop();
+        }
+    }
+}
@@ -0,0 +1,181 @@
+package local.redes.multicast;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testes para a tabela de presença mantida por batimentos.
+ *
+ * Os testes da roda de tempo passam o relógio explicitamente; o último
+ * requer suporte a multicast na rede local.
+ */
+public class PresenceTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final List<String> changes = new ArrayList<>();
+
+    private Presence newPresence() {
+        Presence presence = new Presence(null, 1L, new byte[0]);
+        presence.addListener((member, change) -> changes.add(change + " " + member.getName()));
+        return presence;
+    }
+
+    private static Presence.Member member(long id) {
+        return new Presence.Member(id, "m" + id, InetAddress.getLoopbackAddress(), System.currentTimeMillis());
+    }
+
+    @Test
+    @DisplayName("Deve expirar o participante depois de três intervalos sem batimento")
+    public void testExpiracao() {
+        Presence presence = newPresence();
+        long start = System.nanoTime();
+
+        presence.join(member(2), 1000, start);
+        assertEquals(1, presence.getMemberCount());
+        assertEquals("[JOINED m2]", changes.toString());
+
+        // Batimentos em dia mantêm o participante
+        for (int i = 1; i <= 10; i++) {
+            presence.advance(start + i * SECOND);
+            assertTrue(presence.renew(2, 1000, start + i * SECOND));
+        }
+        assertEquals(1, presence.getMemberCount());
+
+        presence.advance(start + 12 * SECOND + SECOND / 2);
+        assertEquals(1, presence.getMemberCount(), "Ainda dentro do prazo");
+
+        presence.advance(start + 14 * SECOND);
+        assertEquals(0, presence.getMemberCount());
+        assertEquals("[JOINED m2, TIMED_OUT m2]", changes.toString());
+        assertEquals(1, presence.getTimeouts());
+        assertFalse(presence.renew(2, 1000, start + 14 * SECOND));
+    }
+
+    @Test
+    @DisplayName("Deve remover na hora quem avisa a saída e ignorar entradas repetidas")
+    public void testSaida() {
+        Presence presence = newPresence();
+        long start = System.nanoTime();
+
+        presence.join(member(2), 1000, start);
+        presence.join(member(3), 1000, start);
+        presence.join(member(2), 1000, start);
+        presence.leave(2);
+        presence.leave(2);
+        assertEquals(1, presence.getMemberCount());
+        assertEquals(3L, presence.getMembers().get(0).getSenderId());
+
+        // O participante que saiu não expira de novo
+        presence.advance(start + 10 * SECOND);
+        assertEquals("[JOINED m2, JOINED m3, LEFT m2, TIMED_OUT m3]", changes.toString());
+    }
+
+    @Test
+    @DisplayName("Deve tratar prazos maiores que uma volta da roda e pausas longas")
+    public void testVoltasDaRoda() {
+        Presence presence = newPresence();
+        long start = System.nanoTime();
+        long wheelNanos = Presence.WHEEL_SIZE * TimeUnit.MILLISECONDS.toNanos(Presence.TICK_MILLIS);
+
+        // Prazo de 3 minutos, bem maior que a volta de 51,2 s
+        presence.join(member(2), 60000, start);
+        presence.join(member(3), 1000, start);
+        presence.advance(start + wheelNanos + SECOND);
+        assertEquals(1, presence.getMemberCount());
+        presence.advance(start + 2 * wheelNanos + SECOND);
+        assertEquals(1, presence.getMemberCount());
+
+        // Um salto maior que a roda inteira ainda expira o participante
+        presence.advance(start + 10 * wheelNanos);
+        assertEquals(0, presence.getMemberCount());
+    }
+
+    @Test
+    @DisplayName("Deve manter milhares de participantes com custo constante por batimento")
+    public void testMilharesDeParticipantes() {
+        Presence presence = newPresence();
+        final int members = 5000;
+        long start = System.nanoTime();
+        for (int i = 0; i < members; i++) {
+            presence.join(member(100 + i), 2000, start);
+        }
+
+        // Todos batem a cada segundo, exceto os pares a partir do quinto segundo
+        long now = start;
+        for (int second = 1; second <= 15; second++) {
+            now = start + second * SECOND;
+            presence.advance(now);
+            for (int i = 0; i < members; i++) {
+                if (second < 5 || i % 2 == 1) {
+                    presence.renew(100 + i, 2000, now);
+                }
+            }
+        }
+        assertEquals(members / 2, presence.getMemberCount());
+        assertEquals(members / 2, presence.getTimeouts());
+        for (Presence.Member member : presence.getMembers()) {
+            assertEquals(1, (member.getSenderId() - 100) % 2);
+        }
+
+        // Um milhão de batimentos não deve levar mais que alguns décimos de segundo
+        long begin = System.nanoTime();
+        for (int round = 0; round < 400; round++) {
+            for (int i = 1; i < members; i += 2) {
+                presence.renew(100 + i, 2000, now);
+            }
+        }
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+        assertTrue(millis < 2000, "1 milhão de batimentos em " + millis + " ms");
+    }
+
+    @Test
+    @DisplayName("Deve descobrir os participantes pelos batimentos e remover quem sai (teste de integração)")
+    public void testBatimentosEntreGerenciadores() throws Exception {
+        InetAddress group = InetAddress.getByName("239.255.42.99");
+        final int port = 50531;
+        List<String> seen = new CopyOnWriteArrayList<>();
+        MulticastManager ana = new MulticastManager(group, port, "ana", 42);
+        MulticastManager bruno = new MulticastManager(group, port, "bruno", 42);
+        try {
+            ana.getPresence().addListener((member, change) -> seen.add(change + " " + member.getName()));
+            ana.getPresence().setInterval(200);
+            bruno.getPresence().setInterval(200);
+            ana.startReceiving();
+            bruno.startReceiving();
+
+            long deadline = System.currentTimeMillis() + 5000;
+            while (ana.getPresence().getMemberCount() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            assertEquals(1, ana.getPresence().getMemberCount());
+            Presence.Member member = ana.getPresence().getMembers().get(0);
+            assertEquals("bruno", member.getName());
+            assertEquals(bruno.getSenderId(), member.getSenderId());
+
+            // Com batimentos a cada 200 ms, o participante continua presente
+            Thread.sleep(1000);
+            assertEquals(1, ana.getPresence().getMemberCount());
+            assertTrue(ana.getPresence().getHeartbeatsReceived() >= 3);
+
+            bruno.stop();
+            deadline = System.currentTimeMillis() + 5000;
+            while (ana.getPresence().getMemberCount() > 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(20);
+            }
+            assertEquals(0, ana.getPresence().getMemberCount());
+            assertEquals("[JOINED bruno, LEFT bruno]", seen.toString());
+        } finally {
+            ana.stop();
+            bruno.stop();
+        }
+    }
+}
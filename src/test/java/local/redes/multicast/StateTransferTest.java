@@ -0,0 +1,180 @@
+package local.redes.multicast;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testes para a transferência das últimas mensagens a quem entra na sala.
+ *
+ * Nota: O teste de integração requer suporte a multicast na rede local.
+ */
+public class StateTransferTest {
+
+    @Test
+    @DisplayName("Deve guardar apenas as últimas mensagens")
+    public void testHistoricoLimitado() {
+        StateTransfer transfer = new StateTransfer(null, 1L);
+        for (int i = 0; i < StateTransfer.HISTORY_SIZE + 30; i++) {
+            transfer.record(i, "ana", "mensagem " + i);
+        }
+        List<StateTransfer.Message> recent = transfer.recent(StateTransfer.HISTORY_SIZE);
+        assertEquals(StateTransfer.HISTORY_SIZE, recent.size());
+        assertEquals("mensagem 30", recent.get(0).getText());
+        assertEquals("ana diz: mensagem " + (StateTransfer.HISTORY_SIZE + 29), recent.get(recent.size() - 1).toString());
+        assertEquals(5, transfer.recent(5).size());
+        assertEquals("mensagem 125", transfer.recent(5).get(0).getText());
+    }
+
+    @Test
+    @DisplayName("Deve comprimir a resposta e recusar o que não cabe no datagrama")
+    public void testCodificacao() throws Exception {
+        StateTransfer transfer = new StateTransfer(null, 1L);
+        List<StateTransfer.Message> messages = new ArrayList<>();
+        int rawSize = 0;
+        for (int i = 0; i < 100; i++) {
+            StateTransfer.Message message = new StateTransfer.Message(1000L + i, "usuário" + (i % 3),
+                    "bom dia a todos, reunião às " + (i % 24) + "h na sala de sempre");
+            messages.add(message);
+            rawSize += 11 + message.getSender().getBytes("UTF-8").length + message.getText().getBytes("UTF-8").length;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate(MulticastReactor.MAX_DATAGRAM_SIZE);
+        assertTrue(transfer.encode(messages, 7L, 3, buffer));
+        int length = buffer.position();
+        assertTrue(length < rawSize / 3, "Comprimido em " + length + " de " + rawSize + " bytes");
+
+        List<StateTransfer.Message> decoded = transfer.decode(buffer, 0, length);
+        assertEquals(100, decoded.size());
+        assertEquals(1099L, decoded.get(99).getTimestamp());
+        assertEquals("usuário0", decoded.get(99).getSender());
+        assertEquals(messages.get(50).getText(), decoded.get(50).getText());
+
+        // Sem espaço, nada é escrito
+        ByteBuffer small = ByteBuffer.allocate(64);
+        assertFalse(transfer.encode(messages, 7L, 3, small));
+        assertEquals(0, small.position());
+    }
+
+    @Test
+    @DisplayName("Deve responder com o histórico mesmo sem ouvinte de mensagens (teste de integração)")
+    public void testRespostaSemOuvinte() throws Exception {
+        InetAddress group = InetAddress.getByName("239.255.42.98");
+        final int port = 50542;
+        final int room = 78;
+
+        MulticastManager sender = new MulticastManager(group, port, "remetente", room);
+        MulticastManager silent = new MulticastManager(group, port, "silencioso", room);
+        MulticastManager joiner = null;
+        try {
+            // O remetente guarda as próprias mensagens; só o silencioso pode responder
+            sender.startReceiving();
+            silent.startReceiving();
+            Thread.sleep(200);
+            for (int i = 0; i < 5; i++) {
+                sender.sendMessage("mensagem " + i);
+            }
+            Thread.sleep(200);
+            sender.stop();
+
+            joiner = new MulticastManager(group, port, "novato", room);
+            joiner.startReceiving();
+            final AtomicReference<List<StateTransfer.Message>> state = new AtomicReference<>();
+            final CountDownLatch received = new CountDownLatch(1);
+            joiner.requestState(10, result -> {
+                state.set(result);
+                received.countDown();
+            });
+
+            assertTrue(received.await(5, TimeUnit.SECONDS), "O participante sem ouvinte deve responder");
+            List<StateTransfer.Message> result = state.get();
+            assertEquals(5, result.size());
+            assertEquals("remetente diz: mensagem 4", result.get(4).toString());
+        } finally {
+            if (joiner != null) {
+                joiner.stop();
+            }
+            sender.stop();
+            silent.stop();
+        }
+    }
+
+    @Test
+    @DisplayName("Deve entregar as mensagens anteriores com uma única resposta da sala (teste de integração)")
+    public void testEntradaTardia() throws Exception {
+        InetAddress group = InetAddress.getByName("239.255.42.98");
+        final int port = 50541;
+        final int room = 77;
+        final int peers = 4;
+        final int messages = 30;
+
+        List<MulticastManager> managers = new ArrayList<>();
+        MulticastManager joiner = null;
+        try {
+            final CountDownLatch seen = new CountDownLatch((peers - 1) * messages);
+            for (int i = 0; i < peers; i++) {
+                MulticastManager peer = new MulticastManager(group, port, "par" + i, room);
+                peer.setMessageListener((message, sender) -> {
+                    if (sender != null) {
+                        seen.countDown();
+                    }
+                });
+                peer.startReceiving();
+                managers.add(peer);
+            }
+            Thread.sleep(200);
+            for (int i = 0; i < messages; i++) {
+                managers.get(0).sendMessage("mensagem " + i);
+            }
+            assertTrue(seen.await(5, TimeUnit.SECONDS), "Os participantes devem receber as mensagens");
+
+            joiner = new MulticastManager(group, port, "novato", room);
+            joiner.setMessageListener((message, sender) -> { });
+            joiner.startReceiving();
+
+            final AtomicReference<List<StateTransfer.Message>> state = new AtomicReference<>();
+            final AtomicInteger deliveries = new AtomicInteger();
+            final CountDownLatch received = new CountDownLatch(1);
+            joiner.requestState(20, result -> {
+                state.set(result);
+                deliveries.incrementAndGet();
+                received.countDown();
+            });
+
+            assertTrue(received.await(5, TimeUnit.SECONDS), "O novato deve receber o histórico");
+            Thread.sleep(2 * StateTransfer.MAX_REPLY_DELAY_MILLIS + 200);
+
+            List<StateTransfer.Message> result = state.get();
+            assertEquals(20, result.size());
+            assertEquals("mensagem 10", result.get(0).getText());
+            assertEquals("par0 diz: mensagem 29", result.get(19).toString());
+            assertEquals(1, deliveries.get());
+
+            long sent = 0;
+            long suppressed = 0;
+            for (MulticastManager peer : managers) {
+                sent += peer.getStateTransfer().getRepliesSent();
+                suppressed += peer.getStateTransfer().getRepliesSuppressed();
+            }
+            assertEquals(peers, sent + suppressed, "Cada participante responde ou é suprimido");
+            assertTrue(sent >= 1 && sent <= 2, "Respostas enviadas: " + sent);
+        } finally {
+            if (joiner != null) {
+                joiner.stop();
+            }
+            for (MulticastManager peer : managers) {
+                peer.stop();
+            }
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package local.redes.multicast;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testes unitários para a classe Subscription.
+ */
+public class SubscriptionTest {
+
+    private static Subscription.Message message(int i) {
+        return new Subscription.Message("mensagem " + i, "Remetente");
+    }
+
+    /**
+     * Espera até a condição valer ou o tempo acabar.
+     */
+    private static void awaitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    @DisplayName("Deve entregar as mensagens em ordem fora da thread que enfileira")
+    public void testEntregaEmOrdem() throws Exception {
+        final List<String> received = Collections.synchronizedList(new ArrayList<>());
+        final Thread producer = Thread.currentThread();
+        final boolean[] sameThread = new boolean[1];
+        Subscription subscription = new Subscription((text, sender) -> {
+            if (Thread.currentThread() == producer) {
+                sameThread[0] = true;
+            }
+            received.add(text);
+        }, 1000, Subscription.OverflowPolicy.BLOCK);
+
+        assertEquals(1024, subscription.getCapacity());
+        for (int i = 0; i < 5000; i++) {
+            subscription.offer(message(i));
+        }
+
+        awaitUntil(() -> received.size() == 5000);
+        assertEquals(5000, received.size());
+        for (int i = 0; i < 5000; i++) {
+            assertEquals("mensagem " + i, received.get(i));
+        }
+        assertFalse(sameThread[0], "O ouvinte não deve rodar na thread que enfileira");
+        assertEquals(5000, subscription.getDelivered());
+        assertEquals(0, subscription.getDropped());
+        assertEquals(0, subscription.getLag());
+    }
+
+    @Test
+    @DisplayName("Deve descartar as mensagens novas com DROP_NEWEST e reportar o atraso")
+    public void testDescartaNovas() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<String> received = Collections.synchronizedList(new ArrayList<>());
+        Subscription subscription = new Subscription((text, sender) -> {
+            awaitQuietly(release);
+            received.add(text);
+        }, 4, Subscription.OverflowPolicy.DROP_NEWEST);
+
+        subscription.offer(message(0));
+        awaitUntil(() -> subscription.getLag() == 0);
+        // A mensagem 0 está presa no ouvinte; as próximas 4 enchem a fila
+        for (int i = 1; i <= 10; i++) {
+            subscription.offer(message(i));
+        }
+        assertEquals(4, subscription.getLag());
+        assertEquals(6, subscription.getDropped());
+        assertEquals(4, subscription.getMaxLag());
+
+        release.countDown();
+        awaitUntil(() -> received.size() == 5);
+        assertEquals(5, received.size());
+        assertEquals("mensagem 4", received.get(4));
+    }
+
+    @Test
+    @DisplayName("Deve descartar as mensagens antigas com DROP_OLDEST")
+    public void testDescartaAntigas() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<String> received = Collections.synchronizedList(new ArrayList<>());
+        Subscription subscription = new Subscription((text, sender) -> {
+            awaitQuietly(release);
+            received.add(text);
+        }, 4, Subscription.OverflowPolicy.DROP_OLDEST);
+
+        subscription.offer(message(0));
+        awaitUntil(() -> subscription.getLag() == 0);
+        for (int i = 1; i <= 10; i++) {
+            subscription.offer(message(i));
+        }
+        assertEquals(6, subscription.getDropped());
+
+        release.countDown();
+        awaitUntil(() -> received.size() == 5);
+        assertEquals("mensagem 0", received.get(0));
+        assertEquals("mensagem 7", received.get(1));
+        assertEquals("mensagem 10", received.get(4));
+    }
+
+    @Test
+    @DisplayName("Deve parar de entregar após o cancelamento")
+    public void testCancelamento() throws Exception {
+        final List<String> received = Collections.synchronizedList(new ArrayList<>());
+        Subscription subscription = new Subscription((text, sender) -> received.add(text),
+                16, Subscription.OverflowPolicy.DROP_NEWEST);
+
+        subscription.cancel();
+        subscription.offer(message(1));
+        Thread.sleep(50);
+
+        assertTrue(subscription.isCancelled());
+        assertTrue(received.isEmpty());
+        assertThrows(IllegalArgumentException.class,
+                () -> new Subscription((text, sender) -> { }, 0, Subscription.OverflowPolicy.BLOCK));
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
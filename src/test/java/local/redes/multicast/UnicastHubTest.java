@@ -0,0 +1,210 @@
+package local.redes.multicast;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testes para o hub unicast.
+ *
+ * Os primeiros chamam o hub diretamente, com clientes falsos em canais de
+ * loopback; o último passa mensagens entre gerenciadores pelo hub.
+ */
+public class UnicastHubTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private static ByteBuffer frame(byte type, short flags, int room, long senderId, long sequence, int bodySize) {
+        ByteBuffer buffer = ByteBuffer.allocate(MulticastFrame.HEADER_SIZE + bodySize);
+        MulticastFrame.writeHeader(buffer, type, flags, room, senderId, sequence, System.currentTimeMillis());
+        while (buffer.hasRemaining()) {
+            buffer.put((byte) 7);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static DatagramChannel client() throws IOException {
+        DatagramChannel channel = DatagramChannel.open();
+        channel.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        channel.socket().setSoTimeout(2000);
+        return channel;
+    }
+
+    private static InetSocketAddress address(DatagramChannel channel) throws IOException {
+        return (InetSocketAddress) channel.getLocalAddress();
+    }
+
+    private static ByteBuffer receive(DatagramChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(MulticastReactor.MAX_DATAGRAM_SIZE);
+        channel.configureBlocking(false);
+        long deadline = System.nanoTime() + 2 * SECOND;
+        while (channel.receive(buffer) == null) {
+            if (System.nanoTime() > deadline) {
+                fail("Nenhum datagrama do hub");
+            }
+            Thread.yield();
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    @Test
+    @DisplayName("Deve juntar os quadros de uma leva em um só datagrama por inscrito")
+    public void testLeva() throws Exception {
+        UnicastHub hub = new UnicastHub(0);
+        try (DatagramChannel first = client(); DatagramChannel second = client()) {
+            long now = System.nanoTime();
+            hub.onDatagram(frame(MulticastFrame.TYPE_SUBSCRIBE, (short) 0, 3, 1L, 0, 0), address(first), now);
+            hub.onDatagram(frame(MulticastFrame.TYPE_SUBSCRIBE, (short) 0, 3, 2L, 0, 0), address(second), now);
+            assertEquals(2, hub.getSubscriberCount());
+
+            for (int i = 0; i < 3; i++) {
+                hub.onDatagram(frame(MulticastFrame.TYPE_DATA, (short) 0, 3, 1L, i + 1, 100), address(first), now);
+            }
+            // Outra sala, sem inscritos
+            hub.onDatagram(frame(MulticastFrame.TYPE_DATA, (short) 0, 4, 1L, 9, 100), address(first), now);
+            hub.flushPending();
+
+            for (DatagramChannel client : new DatagramChannel[]{first, second}) {
+                ByteBuffer relay = receive(client);
+                assertEquals(MulticastFrame.TYPE_RELAY, MulticastFrame.type(relay));
+                assertEquals(3, MulticastFrame.room(relay));
+                assertEquals(MulticastFrame.HEADER_SIZE + 3 * (2 + MulticastFrame.HEADER_SIZE + 100), relay.remaining());
+                relay.position(MulticastFrame.HEADER_SIZE + 2);
+                assertEquals(1L, MulticastFrame.senderId(relay));
+            }
+            assertEquals(3, hub.getFramesRelayed());
+            assertEquals(2, hub.getDatagramsSent());
+
+            // Um quadro sozinho sai sem envelope, e um grande não espera a leva
+            hub.onDatagram(frame(MulticastFrame.TYPE_DATA, (short) 0, 3, 2L, 1, 10), address(second), now);
+            hub.flushPending();
+            assertEquals(MulticastFrame.TYPE_DATA, MulticastFrame.type(receive(first)));
+            hub.onDatagram(frame(MulticastFrame.TYPE_DATA, (short) 0, 3, 2L, 2, 5000), address(second), now);
+            ByteBuffer large = receive(first);
+            assertEquals(MulticastFrame.TYPE_DATA, MulticastFrame.type(large));
+            assertEquals(MulticastFrame.HEADER_SIZE + 5000, large.remaining());
+        } finally {
+            hub.stop();
+        }
+    }
+
+    @Test
+    @DisplayName("Deve despejar quem perde mensagens demais e expirar quem não renova")
+    public void testDespejoEExpiracao() throws Exception {
+        UnicastHub hub = new UnicastHub(0);
+        try (DatagramChannel slow = client(); DatagramChannel idle = client()) {
+            long now = System.nanoTime();
+            hub.onDatagram(frame(MulticastFrame.TYPE_SUBSCRIBE, (short) 0, 0, 1L, 0, 0), address(slow), now);
+            hub.onDatagram(frame(MulticastFrame.TYPE_SUBSCRIBE, (short) 0, 0, 2L, 0, 0), address(idle), now);
+
+            for (int i = 0; i < UnicastHub.MIN_LOSS_SAMPLE * 2; i++) {
+                hub.onDatagram(frame(MulticastFrame.TYPE_DATA, (short) 0, 0, 3L, i + 1, 10),
+                        new InetSocketAddress(InetAddress.getLoopbackAddress(), 9), now);
+                hub.flushPending();
+            }
+
+            // A renovação diz que só metade chegou
+            hub.onDatagram(frame(MulticastFrame.TYPE_SUBSCRIBE, (short) 0, 0, 1L, UnicastHub.MIN_LOSS_SAMPLE, 0),
+                    address(slow), now + SECOND);
+            assertEquals(1, hub.getEvictions());
+            assertEquals(1, hub.getSubscriberCount());
+
+            // O aviso de despejo chega depois dos quadros repassados
+            boolean notified = false;
+            for (int i = 0; i <= UnicastHub.MIN_LOSS_SAMPLE * 2 && !notified; i++) {
+                ByteBuffer datagram = receive(slow);
+                notified = MulticastFrame.type(datagram) == MulticastFrame.TYPE_SUBSCRIBE
+                        && (MulticastFrame.flags(datagram) & MulticastFrame.FLAG_LEAVE) != 0;
+            }
+            assertTrue(notified, "O despejado deve ser avisado");
+
+            // Durante o despejo as renovações são ignoradas
+            hub.onDatagram(frame(MulticastFrame.TYPE_SUBSCRIBE, (short) 0, 0, 1L, 0, 0), address(slow), now + 2 * SECOND);
+            assertEquals(1, hub.getSubscriberCount());
+
+            // Sem renovação, o outro inscrito expira; depois do despejo, o primeiro volta
+            long later = now + TimeUnit.MILLISECONDS.toNanos(UnicastHub.EVICTION_MILLIS) + SECOND;
+            hub.expire(later);
+            assertEquals(0, hub.getSubscriberCount());
+            assertEquals(1, hub.getExpirations());
+            hub.onDatagram(frame(MulticastFrame.TYPE_SUBSCRIBE, (short) 0, 0, 1L, 0, 0), address(slow), later);
+            assertEquals(1, hub.getSubscriberCount());
+
+            // Saída explícita
+            hub.onDatagram(frame(MulticastFrame.TYPE_SUBSCRIBE, MulticastFrame.FLAG_LEAVE, 0, 1L, 0, 0),
+                    address(slow), later);
+            assertEquals(0, hub.getSubscriberCount());
+        } finally {
+            hub.stop();
+        }
+    }
+
+    @Test
+    @DisplayName("Deve interpretar o endereço do hub com e sem porta")
+    public void testEnderecoHub() {
+        assertEquals(new InetSocketAddress("127.0.0.1", 6000), MulticastManager.parseHubAddress("127.0.0.1:6000"));
+        assertEquals(new InetSocketAddress("127.0.0.1", UnicastHub.DEFAULT_PORT),
+                MulticastManager.parseHubAddress("127.0.0.1"));
+        assertEquals(new InetSocketAddress("::1", 6000), MulticastManager.parseHubAddress("[::1]:6000"));
+        assertEquals(new InetSocketAddress("::1", UnicastHub.DEFAULT_PORT), MulticastManager.parseHubAddress("::1"));
+    }
+
+    @Test
+    @DisplayName("Deve trocar mensagens entre gerenciadores pelo hub (teste de integração)")
+    public void testGerenciadoresPeloHub() throws Exception {
+        UnicastHub hub = new UnicastHub(0);
+        hub.start();
+        InetAddress group = InetAddress.getByName("239.255.42.98");
+        MulticastManager alice;
+        MulticastManager bob;
+        System.setProperty(MulticastManager.HUB_PROPERTY, "127.0.0.1:" + hub.getPort());
+        try {
+            alice = new MulticastManager(group, 50563, "alice", 5);
+            bob = new MulticastManager(group, 50563, "bob", 5);
+        } finally {
+            System.clearProperty(MulticastManager.HUB_PROPERTY);
+        }
+        try {
+            final CountDownLatch received = new CountDownLatch(20);
+            bob.setMessageListener((message, sender) -> {
+                if ("alice".equals(sender) && message.contains("oi ")) {
+                    received.countDown();
+                }
+            });
+            alice.startReceiving();
+            bob.startReceiving();
+            Thread.sleep(200);
+            assertEquals(2, hub.getSubscriberCount());
+
+            for (int i = 0; i < 20; i++) {
+                alice.sendMessage("oi " + i);
+            }
+            assertTrue(received.await(5, TimeUnit.SECONDS), "Faltaram " + received.getCount() + " mensagens");
+            assertTrue(hub.getFramesRelayed() >= 20);
+
+            // A presença também passa pelo hub
+            long deadline = System.nanoTime() + 5 * SECOND;
+            while (bob.getPresence().getMember(alice.getSenderId()) == null && System.nanoTime() < deadline) {
+                Thread.sleep(50);
+            }
+            assertNotNull(bob.getPresence().getMember(alice.getSenderId()));
+        } finally {
+            alice.stop();
+            bob.stop();
+        }
+        Thread.sleep(200);
+        assertEquals(0, hub.getSubscriberCount(), "A saída cancela a inscrição");
+        hub.stop();
+    }
+}
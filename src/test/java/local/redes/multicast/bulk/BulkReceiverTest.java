@@ -0,0 +1,75 @@
+package local.redes.multicast.bulk;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testes unitários para a transferência em massa com FEC, sem rede.
+ */
+public class BulkReceiverTest {
+
+    @TempDir
+    Path diretorio;
+
+    @Test
+    @DisplayName("Deve reconstruir o arquivo perdendo até m pacotes por bloco")
+    public void testTransferenciaComPerdas() throws Exception {
+        byte[] conteudo = new byte[10_000];
+        new Random(5).nextBytes(conteudo);
+        Path[] concluido = new Path[1];
+        BulkReceiver receptor = new BulkReceiver(diretorio, (id, arquivo, tamanho) -> concluido[0] = arquivo);
+
+        // Descarta os dois primeiros pacotes de cada bloco (k = 4, m = 2)
+        BulkSender remetente = new BulkSender(pacote -> {
+            int simbolo = pacote.get(pacote.position() + 28);
+            if (simbolo >= 2) {
+                receptor.onPacket(pacote);
+            }
+            pacote.position(pacote.limit());
+        }, 256, 4, 2, 0);
+
+        remetente.send(new ByteArrayInputStream(conteudo), conteudo.length);
+
+        assertNotNull(concluido[0], "A transferência deve ser concluída");
+        assertArrayEquals(conteudo, Files.readAllBytes(concluido[0]));
+        assertEquals(0, receptor.getPendingBlocks());
+        assertTrue(receptor.getRecoveredShards() > 0);
+    }
+
+    @Test
+    @DisplayName("Deve manter o bloco pendente com perdas acima da redundância")
+    public void testPerdaAlemDaRedundancia() throws Exception {
+        byte[] conteudo = new byte[1024];
+        BulkReceiver receptor = new BulkReceiver(diretorio, null);
+
+        BulkSender remetente = new BulkSender(pacote -> {
+            int simbolo = pacote.get(pacote.position() + 28);
+            if (simbolo >= 3) {
+                receptor.onPacket(pacote);
+            }
+            pacote.position(pacote.limit());
+        }, 256, 4, 2, 0);
+
+        remetente.send(new ByteArrayInputStream(conteudo), conteudo.length);
+
+        assertEquals(1, receptor.getPendingBlocks());
+        receptor.close();
+    }
+
+    @Test
+    @DisplayName("Deve ignorar pacotes que não são de transferência")
+    public void testIgnoraOutrosPacotes() throws Exception {
+        BulkReceiver receptor = new BulkReceiver(diretorio, null);
+        receptor.onPacket(ByteBuffer.wrap("texto qualquer que nao e um pacote".getBytes("UTF-8")));
+        assertEquals(0, receptor.getPacketsReceived());
+    }
+}
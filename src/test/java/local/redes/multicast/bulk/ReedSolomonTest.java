@@ -0,0 +1,76 @@
+package local.redes.multicast.bulk;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testes unitários para o código de apagamento Reed-Solomon.
+ */
+public class ReedSolomonTest {
+
+    private byte[][] codificar(ReedSolomon codec, int k, int m, int tamanho, long semente) {
+        Random random = new Random(semente);
+        byte[][] shards = new byte[k + m][tamanho];
+        for (int i = 0; i < k; i++) {
+            random.nextBytes(shards[i]);
+        }
+        codec.encode(shards, tamanho);
+        return shards;
+    }
+
+    @Test
+    @DisplayName("Deve recuperar os dados com quaisquer m símbolos perdidos")
+    public void testRecuperaQualquerCombinacao() {
+        int k = 6;
+        int m = 3;
+        ReedSolomon codec = new ReedSolomon(k, m);
+        byte[][] original = codificar(codec, k, m, 64, 1);
+        Random random = new Random(2);
+
+        for (int rodada = 0; rodada < 200; rodada++) {
+            byte[][] recebidos = new byte[k + m][];
+            boolean[] presentes = new boolean[k + m];
+            for (int i = 0; i < k + m; i++) {
+                recebidos[i] = original[i].clone();
+                presentes[i] = true;
+            }
+            for (int perdidos = 0; perdidos < m; ) {
+                int indice = random.nextInt(k + m);
+                if (presentes[indice]) {
+                    presentes[indice] = false;
+                    recebidos[indice] = null;
+                    perdidos++;
+                }
+            }
+
+            assertTrue(codec.decode(recebidos, presentes, 64));
+            for (int i = 0; i < k; i++) {
+                assertArrayEquals(original[i], recebidos[i], "Símbolo " + i + " na rodada " + rodada);
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Não deve decodificar com menos de k símbolos")
+    public void testSimbolosInsuficientes() {
+        ReedSolomon codec = new ReedSolomon(4, 2);
+        byte[][] shards = codificar(codec, 4, 2, 16, 3);
+        boolean[] presentes = {false, false, false, true, true, true};
+        shards[0] = null;
+        shards[1] = null;
+        shards[2] = null;
+
+        assertFalse(codec.decode(shards, presentes, 16));
+    }
+
+    @Test
+    @DisplayName("Deve rejeitar parâmetros fora do corpo finito")
+    public void testParametrosInvalidos() {
+        assertThrows(IllegalArgumentException.class, () -> new ReedSolomon(250, 10));
+        assertThrows(IllegalArgumentException.class, () -> new ReedSolomon(0, 2));
+    }
+}
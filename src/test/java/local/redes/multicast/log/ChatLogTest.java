@@ -0,0 +1,173 @@
+package local.redes.multicast.log;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Testes para o histórico persistente e indexado das salas.
+ */
+public class ChatLogTest {
+
+    @Test
+    @DisplayName("Deve recusar abrir a mesma sala duas vezes ao mesmo tempo")
+    public void testSalaAbertaDuasVezes(@TempDir Path dir) throws Exception {
+        String previous = System.getProperty(ChatLog.DIRECTORY_PROPERTY);
+        System.setProperty(ChatLog.DIRECTORY_PROPERTY, dir.toString());
+        try {
+            InetAddress group = InetAddress.getByName("239.255.42.1");
+            try (ChatLog first = ChatLog.openRoom(group, 50000, 3)) {
+                first.append(1000L, "ana", "ana diz: primeira mensagem da ana");
+                IOException error = assertThrows(IOException.class, () -> ChatLog.openRoom(group, 50000, 3));
+                assertTrue(error.getMessage().contains("já aberto"), error.getMessage());
+                first.append(2000L, "ana", "ana diz: segunda");
+            }
+
+            // Depois de fechado, a sala abre de novo com tudo o que foi gravado
+            try (ChatLog reopened = ChatLog.openRoom(group, 50000, 3)) {
+                assertEquals(2, reopened.size());
+                assertEquals(1, reopened.search("primeira", 10).size());
+                assertEquals("ana diz: primeira mensagem da ana", reopened.get(0).getText());
+            }
+        } finally {
+            if (previous == null) {
+                System.clearProperty(ChatLog.DIRECTORY_PROPERTY);
+            } else {
+                System.setProperty(ChatLog.DIRECTORY_PROPERTY, previous);
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Deve manter as mensagens ao reabrir o histórico")
+    public void testReabrir(@TempDir Path dir) throws Exception {
+        try (ChatLog log = ChatLog.open(dir)) {
+            assertEquals(0, log.append(1000L, "ana", "ana diz: bom dia"));
+            assertEquals(1, log.append(2000L, null, "bruno entrou na sala"));
+            assertEquals(2, log.append(3000L, "bruno", "bruno diz: olá, Ana!"));
+        }
+
+        try (ChatLog log = ChatLog.open(dir)) {
+            assertEquals(3, log.size());
+            List<ChatLog.Entry> tail = log.tail(2);
+            assertEquals(2, tail.size());
+            assertNull(tail.get(0).getSender());
+            assertEquals("bruno diz: olá, Ana!", tail.get(1).getText());
+            assertEquals(3000L, tail.get(1).getTimestamp());
+            assertEquals("ana", log.get(0).getSender());
+            assertTrue(log.get(0).toString().endsWith("] ana diz: bom dia"));
+
+            // O índice também continua valendo, e novas mensagens seguem a numeração
+            assertEquals(2, log.search("ana", 10).size());
+            assertEquals(3, log.append(4000L, "ana", "ana diz: tchau"));
+            assertEquals(3, log.search("@ana", 10).get(0).getId());
+        }
+    }
+
+    @Test
+    @DisplayName("Deve buscar por todas as palavras, ignorando maiúsculas e acentos")
+    public void testBusca(@TempDir Path dir) throws Exception {
+        try (ChatLog log = ChatLog.open(dir)) {
+            log.append(1L, "ana", "ana diz: a reunião foi adiada");
+            log.append(2L, "bruno", "bruno diz: qual reuniao?");
+            log.append(3L, "ana", "ana diz: a REUNIÃO de amanhã");
+            log.append(4L, "carla", "carla diz: amanhã não posso");
+
+            List<ChatLog.Entry> results = log.search("Reuniao", 10);
+            assertEquals(3, results.size());
+            assertEquals(2, results.get(0).getId(), "Mais recentes primeiro");
+            assertEquals(0, results.get(2).getId());
+
+            results = log.search("reunião amanhã", 10);
+            assertEquals(1, results.size());
+            assertEquals(2, results.get(0).getId());
+
+            results = log.search("@bruno reuniao", 10);
+            assertEquals(1, results.size());
+            assertEquals(1, results.get(0).getId());
+
+            assertEquals(1, log.search("reuniao", 1).size());
+            assertTrue(log.search("inexistente", 10).isEmpty());
+            assertTrue(log.search("  ", 10).isEmpty());
+        }
+    }
+
+    @Test
+    @DisplayName("Deve gravar registros em vários segmentos sem atravessar o limite")
+    public void testSegmentos(@TempDir Path dir) throws Exception {
+        StringBuilder longText = new StringBuilder();
+        for (int i = 0; i < 300; i++) {
+            longText.append('x');
+        }
+        try (ChatLog log = new ChatLog(dir, 1024)) {
+            for (int i = 0; i < 50; i++) {
+                log.append(i, "u" + i, "mensagem " + i + " " + longText);
+            }
+        }
+        try (ChatLog log = new ChatLog(dir, 1024)) {
+            for (int i = 0; i < 50; i++) {
+                ChatLog.Entry entry = log.get(i);
+                assertEquals("u" + i, entry.getSender());
+                assertEquals("mensagem " + i + " " + longText, entry.getText());
+            }
+            assertThrows(IndexOutOfBoundsException.class, () -> log.get(50));
+        }
+    }
+
+    @Test
+    @DisplayName("Deve buscar rapidamente em um histórico grande e dar o mesmo resultado da busca linear")
+    public void testHistoricoGrande(@TempDir Path dir) throws Exception {
+        final int messages = 200000;
+        Random random = new Random(42);
+        String[] users = {"ana", "bruno", "carla", "davi", "eva"};
+        List<String> texts = new ArrayList<>(messages);
+
+        try (ChatLog log = ChatLog.open(dir)) {
+            for (int i = 0; i < messages; i++) {
+                // Vocabulário grande o bastante para a tabela de termos crescer
+                String text = users[i % users.length] + " diz: palavra" + random.nextInt(50000)
+                        + " comum" + random.nextInt(20) + " raro" + random.nextInt(5000);
+                texts.add(text);
+                log.append(i, users[i % users.length], text);
+            }
+            assertTrue(log.getTermCount() > 50000);
+
+            // Resultado esperado pela busca linear
+            List<Integer> expected = new ArrayList<>();
+            for (int i = messages - 1; i >= 0; i--) {
+                String text = texts.get(i);
+                if (text.startsWith("carla ") && text.contains(" comum7 ") && text.endsWith(" raro123")) {
+                    expected.add(i);
+                }
+            }
+
+            List<ChatLog.Entry> results = log.search("@carla comum7 raro123", 1000);
+            List<Integer> ids = new ArrayList<>();
+            for (ChatLog.Entry entry : results) {
+                ids.add(entry.getId());
+            }
+            assertEquals(expected, ids);
+
+            // Aquecer e medir uma busca por termo raro
+            for (int i = 0; i < 1000; i++) {
+                log.search("raro" + (i % 5000), 20);
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < 1000; i++) {
+                log.search("raro" + (i % 5000) + " comum" + (i % 20), 20);
+            }
+            long averageMicros = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start) / 1000;
+            assertTrue(averageMicros < 5000, "Busca média de " + averageMicros + " µs");
+        }
+    }
+}